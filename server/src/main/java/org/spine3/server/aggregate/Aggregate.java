@@ -97,7 +97,7 @@ import static org.spine3.validate.Validate.checkPositive;
  *
  * <p>In order to improve performance of loading aggregates an
  * {@link AggregateRepository} periodically stores aggregate snapshots.
- * See {@link AggregateRepository#setSnapshotTrigger(int)} for details.
+ * See {@link AggregateRepository#setSnapshotPolicy(SnapshotPolicy)} for details.
  *
  * <p>An event applier is a method that changes the state of the aggregate
  * in response to an event. An event applier takes a single parameter of the
@@ -142,6 +142,13 @@ public abstract class Aggregate<I, S extends Message, B extends Message.Builder>
      */
     private final List<Event> uncommittedEvents = Lists.newLinkedList();
 
+    /**
+     * The statistics of the events stored after the last snapshot of the aggregate.
+     *
+     * @see SnapshotPolicy
+     */
+    private final EventTail eventTail = new EventTail();
+
     /**
      * Creates a new instance.
      *
@@ -370,14 +377,18 @@ public abstract class Aggregate<I, S extends Message, B extends Message.Builder>
      */
     private void apply(Iterable<? extends Message> events, CommandContext commandContext)
             throws InvocationTargetException {
+        final long applyStart = System.nanoTime();
+        int appliedCount = 0;
         createBuilder();
         try {
             for (Message message : events) {
                 apply(message, commandContext);
+                appliedCount++;
             }
         } finally {
             updateState();
         }
+        eventTail.onApplied(appliedCount, System.nanoTime() - applyStart);
     }
 
     private void apply(Message eventOrMsg, CommandContext commandContext) throws InvocationTargetException {
@@ -520,15 +531,22 @@ public abstract class Aggregate<I, S extends Message, B extends Message.Builder>
      */
     @CheckReturnValue
     Snapshot toSnapshot() {
-        final Any state = AnyPacker.pack(getState());
-        final int version = getVersion();
-        final Timestamp whenModified = whenModified();
-        final Snapshot.Builder builder = Snapshot.newBuilder()
-                .setState(state)
-                .setWhenModified(whenModified)
-                .setVersion(version)
-                .setTimestamp(getCurrentTime());
-        return builder.build();
+        return captureState().toSnapshot();
+    }
+
+    /**
+     * Captures the current state of the aggregate for making a snapshot later.
+     *
+     * @return the captured state with the current time as the time of the snapshot
+     */
+    CapturedState captureState() {
+        final CapturedState result = new CapturedState(getState(), getVersion(), whenModified(), getCurrentTime());
+        return result;
+    }
+
+    /** Obtains the statistics of the events stored after the last snapshot. */
+    EventTail getEventTail() {
+        return eventTail;
     }
 
     // Factory methods for exceptions
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.spine3.server.aggregate;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A bounded cache of the aggregates loaded by an {@link AggregateRepository}.
+ *
+ * <p>Each cached aggregate is accompanied by the {@linkplain AggregateStorage#readLastEventId(Object) ID
+ * of the latest stored event}, which the instance reflects. An aggregate is taken from the cache only if
+ * the ID still matches the one in the storage, i.e. no events were stored for the aggregate by someone else.
+ *
+ * <p>An aggregate is removed from the cache when it is taken, so that the instance is never
+ * used by more than one thread at a time. The repository puts the aggregate back once the changes
+ * made to it are stored.
+ *
+ * <p>The aggregates are evicted when the cache exceeds its maximum size and when
+ * they were not accessed for the expiration period.
+ *
+ * @param <I> the type of the aggregate IDs
+ * @param <A> the type of the aggregates
+ */
+final class AggregateCache<I, A extends Aggregate<I, ?, ?>> {
+
+    private final Cache<I, Entry<A>> entries;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maximumSize the maximum number of aggregates in the cache
+     * @param expiration  the period after the last access, in which a cached aggregate is evicted
+     * @param unit        the unit of the expiration period
+     */
+    AggregateCache(long maximumSize, long expiration, TimeUnit unit) {
+        checkArgument(maximumSize > 0, "Maximum cache size must be positive.");
+        checkArgument(expiration > 0, "Cache expiration period must be positive.");
+        checkNotNull(unit);
+        this.entries = CacheBuilder.newBuilder()
+                                   .maximumSize(maximumSize)
+                                   .expireAfterAccess(expiration, unit)
+                                   .build();
+    }
+
+    /**
+     * Takes the aggregate out of the cache.
+     *
+     * @param id          the ID of the aggregate
+     * @param lastEventId the ID of the latest event of the aggregate in the storage
+     * @return the cached aggregate or {@code null} if there is no aggregate with the passed ID
+     *         in the cache, or the cached one does not reflect the latest stored event
+     */
+    @Nullable
+    A take(I id, String lastEventId) {
+        final Entry<A> entry = entries.asMap()
+                                      .remove(id);
+        if (entry == null || !entry.lastEventId.equals(lastEventId)) {
+            return null;
+        }
+        return entry.aggregate;
+    }
+
+    /**
+     * Puts the aggregate into the cache.
+     *
+     * @param aggregate   the aggregate with no uncommitted events
+     * @param lastEventId the ID of the latest stored event, which the aggregate reflects
+     */
+    void put(A aggregate, String lastEventId) {
+        checkNotNull(lastEventId);
+        entries.put(aggregate.getId(), new Entry<>(aggregate, lastEventId));
+    }
+
+    /** Removes all the aggregates from the cache. */
+    void clear() {
+        entries.invalidateAll();
+    }
+
+    long size() {
+        return entries.size();
+    }
+
+    private static final class Entry<A> {
+
+        private final A aggregate;
+        private final String lastEventId;
+
+        private Entry(A aggregate, String lastEventId) {
+            this.aggregate = aggregate;
+            this.lastEventId = lastEventId;
+        }
+    }
+}
@@ -21,6 +21,9 @@ package org.spine3.server.aggregate;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,12 +47,25 @@ import org.spine3.server.storage.StorageFactory;
 import org.spine3.server.type.CommandClass;
 
 import javax.annotation.CheckReturnValue;
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static org.spine3.base.Commands.getId;
 import static org.spine3.base.Commands.getMessage;
+import static org.spine3.base.Stringifiers.idToString;
 import static org.spine3.server.entity.Entity.STATE_CLASS_GENERIC_INDEX;
 import static org.spine3.server.reflect.Classes.getGenericParameterType;
 import static org.spine3.validate.Validate.isNotDefault;
@@ -83,6 +99,14 @@ public abstract class AggregateRepository<I, A extends Aggregate<I, ?, ?>>
     /** The default number of events to be stored before a next snapshot is made. */
     public static final int DEFAULT_SNAPSHOT_TRIGGER = 100;
 
+    /** The number of locks shared by the aggregates in the serial dispatching mode. */
+    private static final int DISPATCHING_LOCK_STRIPES = 1024;
+
+    private static final String SNAPSHOT_THREAD_NAME_FORMAT = "AggregateRepository-snapshots-%d";
+
+    /** The maximum time of waiting for the background snapshots to be written upon closing. */
+    private static final long SNAPSHOT_SHUTDOWN_TIMEOUT_SECONDS = 60;
+
     private final GetTargetIdFromCommand<I, Message> getIdFunction = GetTargetIdFromCommand.newInstance();
     private final CommandStatusService commandStatusService;
     private final EventBus eventBus;
@@ -91,6 +115,24 @@ public abstract class AggregateRepository<I, A extends Aggregate<I, ?, ?>>
     /** The number of events to store between snapshots. */
     private int snapshotTrigger = DEFAULT_SNAPSHOT_TRIGGER;
 
+    /** Decides when to make snapshots of the aggregates. */
+    private volatile SnapshotPolicy snapshotPolicy = SnapshotPolicies.eventCount(DEFAULT_SNAPSHOT_TRIGGER);
+
+    /** The executor writing snapshots in the background or {@code null} if they are written in {@link #store}. */
+    @Nullable
+    private volatile ExecutorService snapshotExecutor;
+
+    /** The cache of loaded aggregates or {@code null} if caching is disabled. */
+    @Nullable
+    private volatile AggregateCache<I, A> cache;
+
+    /** The locks of the aggregates or {@code null} if the commands are dispatched optimistically. */
+    @Nullable
+    private volatile Striped<Lock> dispatchingLocks;
+
+    /** The events, which are stored in the serial dispatching mode and wait for posting, by aggregate IDs. */
+    private final ConcurrentMap<I, PendingEvents> pendingEvents = new ConcurrentHashMap<>();
+
     /**
      * Creates a new repository instance.
      *
@@ -135,28 +177,117 @@ public abstract class AggregateRepository<I, A extends Aggregate<I, ?, ?>>
      * <p>The repository loads the aggregate by this ID, or creates a new aggregate
      * if there is no aggregate with such ID.
      *
+     * <p>In the {@linkplain #setSerialDispatching(boolean) serial dispatching} mode, the commands
+     * to the same aggregate are dispatched one at a time.
+     *
      * @param request the request to dispatch
      * @throws IllegalStateException if storage for the repository was not initialized
      */
-    @SuppressWarnings("OverlyBroadCatchBlock")      // the exception handling is the same for all exception types.
     @Override
     @CheckReturnValue
     public void dispatch(Command request) throws IllegalStateException {
-        final Message command = getMessage(checkNotNull(request));
-        final CommandContext context = request.getContext();
-        final CommandId commandId = context.getCommandId();
-        final I aggregateId = getAggregateId(command);
-        A aggregate = loadAndDispatch(aggregateId, commandId, command, context);
+        checkNotNull(request);
+        dispatchAll(ImmutableList.of(request));
+    }
+
+    /**
+     * Processes the batch of commands sent to the same aggregate.
+     *
+     * <p>The repository loads the aggregate once and dispatches the commands to it in the order
+     * of the passed list. Then the events produced by all the commands are stored at once,
+     * with at most one snapshot, and posted to the {@link EventBus} together.
+     *
+     * <p>A command, the handling of which fails, does not prevent the dispatching of the commands
+     * following it. The outcome is thus the same as if the commands were dispatched one by one.
+     *
+     * @param requests the non-empty list of commands to the same aggregate
+     * @throws IllegalArgumentException if the list is empty or the commands are sent to different aggregates
+     * @throws IllegalStateException    if storage for the repository was not initialized
+     */
+    public void dispatchAll(List<Command> requests) throws IllegalStateException {
+        checkNotNull(requests);
+        checkArgument(!requests.isEmpty(), "No commands to dispatch.");
+        final I aggregateId = getAggregateId(requests);
+        final Striped<Lock> dispatchingLocks = this.dispatchingLocks;
+        if (dispatchingLocks == null) {
+            final List<Event> events = dispatchTo(aggregateId, requests);
+            postEvents(events);
+            setOk(requests);
+            return;
+        }
+        final Lock lock = dispatchingLocks.get(aggregateId);
+        final PendingEvents pending;
+        lock.lock();
+        try {
+            final List<Event> events = dispatchTo(aggregateId, requests);
+            pending = queueForPosting(aggregateId, events);
+        } finally {
+            lock.unlock();
+        }
+        // The events are posted outside of the lock, as their subscribers may dispatch commands to other
+        // aggregates, waiting for which while holding the lock may cause a deadlock.
+        pending.post(aggregateId);
+        setOk(requests);
+    }
+
+    /**
+     * Dispatches the commands to the aggregate and stores it.
+     *
+     * @return the events produced by the aggregate, which are to be posted
+     */
+    @SuppressWarnings("OverlyBroadCatchBlock")      // the exception handling is the same for all exception types.
+    private List<Event> dispatchTo(I aggregateId, List<Command> commands) {
+        final AggregateCache<I, A> cache = this.cache;
+        final DispatchedAggregate<A> dispatched = loadAndDispatch(aggregateId, commands, cache);
+        final A aggregate = dispatched.aggregate;
 
         final List<Event> events = aggregate.getUncommittedEvents();
         try {
             store(aggregate);
             standFunnel.post(aggregate);
+            if (cache != null && dispatched.succeeded) {
+                cache.put(aggregate, lastEventIdAfter(dispatched.lastEventId, events));
+            }
         } catch (Exception e) {
-            commandStatusService.setToError(commandId, e);
+            for (Command command : commands) {
+                commandStatusService.setToError(getId(command), e);
+            }
+        }
+        return events;
+    }
+
+    private void setOk(List<Command> commands) {
+        for (Command command : commands) {
+            commandStatusService.setOk(getId(command));
+        }
+    }
+
+    /**
+     * Queues the events of the aggregate for posting behind its events stored earlier.
+     *
+     * <p>Must be called under the lock of the aggregate, so that the events are queued in the order of storing.
+     */
+    private PendingEvents queueForPosting(I aggregateId, List<Event> events) {
+        while (true) {
+            final PendingEvents pending = pendingEventsOf(aggregateId);
+            if (pending.add(events)) {
+                return pending;
+            }
+            // The queue has been emptied and retired after we obtained it.
+        }
+    }
+
+    private PendingEvents pendingEventsOf(I aggregateId) {
+        final PendingEvents existing = pendingEvents.get(aggregateId);
+        if (existing != null) {
+            return existing;
         }
-        postEvents(events);
-        commandStatusService.setOk(commandId);
+        final PendingEvents created = new PendingEvents();
+        final PendingEvents previous = pendingEvents.putIfAbsent(aggregateId, created);
+        final PendingEvents result = previous == null
+                                     ? created
+                                     : previous;
+        return result;
     }
 
     /**
@@ -175,12 +306,160 @@ public abstract class AggregateRepository<I, A extends Aggregate<I, ?, ?>>
      *
      * <p>The default value is defined in {@link #DEFAULT_SNAPSHOT_TRIGGER}.
      *
+     * <p>Replaces the current {@linkplain #setSnapshotPolicy(SnapshotPolicy) snapshot policy}
+     * with the {@linkplain SnapshotPolicies#eventCount(int) event count} policy.
+     *
      * @param snapshotTrigger a positive number of the snapshot trigger
      */
     @SuppressWarnings("unused")
     public void setSnapshotTrigger(int snapshotTrigger) {
         checkArgument(snapshotTrigger > 0);
         this.snapshotTrigger = snapshotTrigger;
+        this.snapshotPolicy = SnapshotPolicies.eventCount(snapshotTrigger);
+    }
+
+    /**
+     * Returns the policy, which decides when to make snapshots of the aggregates.
+     */
+    public SnapshotPolicy getSnapshotPolicy() {
+        return snapshotPolicy;
+    }
+
+    /**
+     * Sets the policy, which decides when to make snapshots of the aggregates.
+     *
+     * <p>By default, a snapshot is made each {@link #getSnapshotTrigger()} events.
+     * See {@link SnapshotPolicies} for the policies based on the cost of loading the aggregates.
+     *
+     * @param snapshotPolicy the policy to use
+     */
+    public void setSnapshotPolicy(SnapshotPolicy snapshotPolicy) {
+        this.snapshotPolicy = checkNotNull(snapshotPolicy);
+    }
+
+    /**
+     * Turns the background writing of the snapshots on or off.
+     *
+     * <p>By default, when the {@linkplain #setSnapshotPolicy(SnapshotPolicy) snapshot policy} demands
+     * a snapshot, it is made and written in {@link #store(Aggregate)}, i.e. by the command, which
+     * happens to cross the threshold.
+     *
+     * <p>With the background writing turned on, {@code store()} only captures the current state
+     * of the aggregate, which is cheap as the state is an immutable message. The state is then
+     * serialized and written to the storage by a low-priority background thread of the repository.
+     * Until the snapshot is written, the aggregate is loaded from the previous snapshot.
+     *
+     * <p>Turning the background writing off lets the pending snapshots be written.
+     * {@link #close()} waits until they are written.
+     *
+     * @param background {@code true} to write the snapshots in the background,
+     *                   {@code false} to write them in {@code store()}
+     */
+    public void setBackgroundSnapshots(boolean background) {
+        final ExecutorService previous = this.snapshotExecutor;
+        if (background == (previous != null)) {
+            return;
+        }
+        this.snapshotExecutor = background
+                                ? newSnapshotExecutor()
+                                : null;
+        if (previous != null) {
+            previous.shutdown();
+        }
+    }
+
+    /**
+     * Returns {@code true} if the snapshots are written in the background,
+     * {@code false} if they are written in {@link #store(Aggregate)}.
+     */
+    public boolean isBackgroundSnapshots() {
+        return snapshotExecutor != null;
+    }
+
+    private static ExecutorService newSnapshotExecutor() {
+        final ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat(SNAPSHOT_THREAD_NAME_FORMAT)
+                                                                      .setDaemon(true)
+                                                                      .setPriority(Thread.MIN_PRIORITY)
+                                                                      .build();
+        return Executors.newSingleThreadExecutor(threadFactory);
+    }
+
+    /**
+     * Turns the serial dispatching of the commands on or off.
+     *
+     * <p>By default, a command is dispatched optimistically. If the events of the target aggregate
+     * are stored concurrently, the aggregate is loaded and the command is dispatched again. A hot
+     * aggregate may thus spend most of the time in replaying its events over and over.
+     *
+     * <p>In the serial mode, the repository dispatches the commands to the same aggregate one at a time,
+     * so that concurrent commands wait for their turn instead of repeating the dispatching. The commands
+     * to different aggregates are still dispatched in parallel, except for the rare aggregates sharing
+     * a lock. Events stored by other instances of the application are still detected optimistically.
+     *
+     * <p>The lock of the aggregate is released before posting the events, so that the subscribers may
+     * dispatch commands to other aggregates without waiting for their locks while holding this one.
+     * The events of each aggregate are still posted in the order of storing, though possibly
+     * by the thread, which dispatched a later command to the aggregate.
+     *
+     * @param serial {@code true} to dispatch the commands to an aggregate one at a time,
+     *               {@code false} to dispatch them optimistically
+     */
+    public void setSerialDispatching(boolean serial) {
+        this.dispatchingLocks = serial
+                                ? Striped.lazyWeakLock(DISPATCHING_LOCK_STRIPES)
+                                : null;
+    }
+
+    /**
+     * Returns {@code true} if the commands to an aggregate are dispatched one at a time,
+     * {@code false} if they are dispatched optimistically.
+     */
+    public boolean isSerialDispatching() {
+        return dispatchingLocks != null;
+    }
+
+    /**
+     * Enables caching of the aggregates, which handled commands.
+     *
+     * <p>A cached aggregate handles the next command sent to it without reading its events from the storage
+     * and replaying them. Before that, the {@linkplain AggregateStorage#readLastEventId(Object) latest
+     * stored event} of the aggregate is checked, so that the aggregate is loaded from the storage as usual
+     * if other instances of the application stored events for it in the meantime.
+     *
+     * <p>The aggregates are evicted from the cache when it exceeds the maximum size and when
+     * they do not handle commands during the expiration period.
+     *
+     * <p>Calling this method again replaces the cache with a new empty one.
+     *
+     * @param maximumSize the maximum number of cached aggregates
+     * @param expiration  the period after the last command, in which a cached aggregate is evicted
+     * @param unit        the unit of the expiration period
+     */
+    public void enableCache(long maximumSize, long expiration, TimeUnit unit) {
+        this.cache = new AggregateCache<>(maximumSize, expiration, unit);
+    }
+
+    /** Disables caching of the aggregates and drops the cached ones. */
+    public void disableCache() {
+        final AggregateCache<I, A> cache = this.cache;
+        this.cache = null;
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /** Returns {@code true} if the aggregates are cached, {@code false} otherwise. */
+    public boolean isCacheEnabled() {
+        return cache != null;
+    }
+
+    /** Returns the number of the cached aggregates or {@code 0} if caching is disabled. */
+    @VisibleForTesting
+    long getCacheSize() {
+        final AggregateCache<I, A> cache = this.cache;
+        return cache == null
+               ? 0
+               : cache.size();
     }
 
     protected AggregateStorage<I> aggregateStorage() {
@@ -201,38 +480,95 @@ public abstract class AggregateRepository<I, A extends Aggregate<I, ?, ?>>
         final Snapshot snapshot = aggregateEvents.getSnapshot();
         final A result = create(id);
         final List<Event> events = aggregateEvents.getEventList();
+        final long replayStart = System.nanoTime();
         if (isNotDefault(snapshot)) {
             result.restore(snapshot);
         }
         result.play(events);
+        result.getEventTail()
+              .onLoaded(aggregateEvents, System.nanoTime() - replayStart);
         return result;
     }
 
     /**
      * Stores the passed aggregate and commits its uncommitted events.
      *
+     * <p>The events are written to the storage at once. If the {@linkplain #getSnapshotPolicy()
+     * snapshot policy} demands it, a snapshot of the aggregate is written after the events,
+     * either right away or {@linkplain #setBackgroundSnapshots(boolean) in the background}.
+     *
      * @param aggregate an instance to store
      */
     @Override
     public void store(A aggregate) {
         final I id = aggregate.getId();
-        final int snapshotTrigger = getSnapshotTrigger();
+        final SnapshotPolicy snapshotPolicy = getSnapshotPolicy();
         final AggregateStorage<I> storage = aggregateStorage();
         int eventCount = storage.readEventCountAfterLastSnapshot(id);
-        final Iterable<Event> uncommittedEvents = aggregate.getUncommittedEvents();
-        for (Event event : uncommittedEvents) {
-            storage.writeEvent(id, event);
-            ++eventCount;
-            if (eventCount >= snapshotTrigger) {
-                final Snapshot snapshot = aggregate.toSnapshot();
-                storage.write(id, snapshot);
+        final List<Event> uncommittedEvents = aggregate.getUncommittedEvents();
+        if (!uncommittedEvents.isEmpty()) {
+            storage.writeEvents(id, uncommittedEvents);
+            eventCount += uncommittedEvents.size();
+            final EventTail eventTail = aggregate.getEventTail();
+            eventTail.onStored(uncommittedEvents);
+            final SnapshotCandidate candidate = new SnapshotCandidate(aggregate.getState(), eventCount, eventTail);
+            if (snapshotPolicy.shouldSnapshot(candidate)) {
+                final CapturedState capturedState = aggregate.captureState();
+                writeSnapshot(storage, id, capturedState);
                 eventCount = 0;
+                eventTail.onSnapshot(capturedState.getTimestamp());
             }
         }
         aggregate.commitEvents();
         storage.writeEventCountAfterLastSnapshot(id, eventCount);
     }
 
+    private void writeSnapshot(final AggregateStorage<I> storage, final I id, final CapturedState capturedState) {
+        final ExecutorService snapshotExecutor = this.snapshotExecutor;
+        if (snapshotExecutor != null) {
+            try {
+                snapshotExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        writeSnapshotInBackground(storage, id, capturedState);
+                    }
+                });
+                return;
+            } catch (RejectedExecutionException ignored) {
+                // The background writing has just been turned off.
+            }
+        }
+        storage.write(id, capturedState.toSnapshot());
+    }
+
+    private void writeSnapshotInBackground(AggregateStorage<I> storage, I id, CapturedState capturedState) {
+        try {
+            storage.write(id, capturedState.toSnapshot());
+        } catch (RuntimeException e) {
+            // The aggregate is loaded from the previous snapshot until the next one is made.
+            log().error("Cannot write the snapshot of {} {}.", getAggregateClass(), id, e);
+        }
+    }
+
+    /**
+     * Waits until the snapshots being written in the background are written,
+     * and closes the repository.
+     *
+     * @throws Exception which occurred during closing of the storage
+     */
+    @Override
+    public void close() throws Exception {
+        final ExecutorService snapshotExecutor = this.snapshotExecutor;
+        this.snapshotExecutor = null;
+        if (snapshotExecutor != null) {
+            snapshotExecutor.shutdown();
+            if (!snapshotExecutor.awaitTermination(SNAPSHOT_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log().warn("Not all the snapshots of {} were written upon closing.", getAggregateClass());
+            }
+        }
+        super.close();
+    }
+
     /**
      * Loads the aggregate by the passed ID, or creates it if the aggregate was not found.
      *
@@ -253,7 +589,7 @@ public abstract class AggregateRepository<I, A extends Aggregate<I, ?, ?>>
     }
 
     /**
-     * Loads an aggregate and dispatches the command to it.
+     * Loads an aggregate and dispatches the commands to it.
      *
      * <p>During the command dispatching and event applying, the original list of events may
      * have been changed by other actors in the system.
@@ -263,13 +599,17 @@ public abstract class AggregateRepository<I, A extends Aggregate<I, ?, ?>>
      * during the {@link AggregateRepository#load(Object)}
      * and {@link Aggregate#dispatch(Message, CommandContext)}.
      *
-     * <p>In case the new events are detected, {@code Aggregate} loading and {@code Command}
-     * dispatching is repeated from scratch.
+     * <p>In case the new events are detected, {@code Aggregate} loading and dispatching of
+     * all the commands is repeated from scratch.
+     *
+     * <p>If the cache is passed, the aggregate is taken from it when possible instead of loading.
      */
     @SuppressWarnings("ChainOfInstanceofChecks")        // it's a rare case of handing an exception, so we are OK.
-    private A loadAndDispatch(I aggregateId, CommandId commandId, Message command, CommandContext context) {
+    private DispatchedAggregate<A> loadAndDispatch(I aggregateId,
+                                                   List<Command> commands,
+                                                   @Nullable AggregateCache<I, A> cache) {
         final AggregateStorage<I> aggregateStorage = aggregateStorage();
-        A aggregate;
+        DispatchedAggregate<A> result;
 
         Integer eventCountBeforeSave = null;
         int eventCountBeforeDispatch = 0;
@@ -277,39 +617,127 @@ public abstract class AggregateRepository<I, A extends Aggregate<I, ?, ?>>
             if (eventCountBeforeSave != null) {
                 final int newEventCount = eventCountBeforeSave - eventCountBeforeDispatch;
                 log().warn("Detected the concurrent modification of {} {}" +
-                                   "New events detected while dispatching the command {} " +
+                                   "New events detected while dispatching the commands {} " +
                                    "The number of new events is {}. " +
                                    "Restarting the command dispatching.",
-                           getAggregateClass(), aggregateId, command, newEventCount);
+                           getAggregateClass(), aggregateId, commandMessages(commands), newEventCount);
             }
             eventCountBeforeDispatch = aggregateStorage.readEventCountAfterLastSnapshot(aggregateId);
-            aggregate = loadOrCreate(aggregateId);
+            final String lastEventId;
+            final A aggregate;
+            if (cache == null) {
+                lastEventId = "";
+                aggregate = loadOrCreate(aggregateId);
+            } else {
+                // The ID is read before loading, so that a concurrent change can only make it outdated.
+                lastEventId = aggregateStorage.readLastEventId(aggregateId);
+                final A cached = cache.take(aggregateId, lastEventId);
+                aggregate = cached != null
+                            ? cached
+                            : loadOrCreate(aggregateId);
+            }
 
-            try {
-                aggregate.dispatch(command, context);
-            } catch (RuntimeException e) {
-                final Throwable cause = e.getCause();
-                if (cause instanceof Exception) {
-                    final Exception exception = (Exception) cause;
-                    commandStatusService.setToError(commandId, exception);
-                } else if (cause instanceof FailureThrowable) {
-                    final FailureThrowable failure = (FailureThrowable) cause;
-                    commandStatusService.setToFailure(commandId, failure);
-                } else {
-                    commandStatusService.setToError(commandId, Errors.fromThrowable(cause));
+            boolean succeeded = true;
+            for (Command command : commands) {
+                try {
+                    aggregate.dispatch(getMessage(command), command.getContext());
+                } catch (RuntimeException e) {
+                    succeeded = false;
+                    final CommandId commandId = getId(command);
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        final Exception exception = (Exception) cause;
+                        commandStatusService.setToError(commandId, exception);
+                    } else if (cause instanceof FailureThrowable) {
+                        final FailureThrowable failure = (FailureThrowable) cause;
+                        commandStatusService.setToFailure(commandId, failure);
+                    } else {
+                        commandStatusService.setToError(commandId, Errors.fromThrowable(cause));
+                    }
                 }
             }
 
+            result = new DispatchedAggregate<>(aggregate, lastEventId, succeeded);
             eventCountBeforeSave = aggregateStorage.readEventCountAfterLastSnapshot(aggregateId);
         } while (eventCountBeforeDispatch != eventCountBeforeSave);
 
-        return aggregate;
+        return result;
+    }
+
+    /**
+     * Obtains the ID of the latest stored event of an aggregate after its new events are stored.
+     *
+     * @param lastEventId the ID of the latest stored event before the new events
+     * @param events      the new events of the aggregate
+     * @see AggregateStorage#readLastEventId(Object)
+     */
+    private static String lastEventIdAfter(String lastEventId, List<Event> events) {
+        if (events.isEmpty()) {
+            return lastEventId;
+        }
+        final Event lastEvent = events.get(events.size() - 1);
+        final String result = idToString(lastEvent.getContext()
+                                                  .getEventId());
+        return result;
     }
 
     /** Posts passed events to {@link EventBus}. */
     private void postEvents(Iterable<Event> events) {
-        for (Event event : events) {
-            eventBus.post(event);
+        eventBus.post(events);
+    }
+
+    /**
+     * The events of an aggregate waiting for posting in the serial dispatching mode.
+     *
+     * <p>The events are posted by one thread at a time in the order of queuing. A thread, which queues
+     * the events while another one is posting, leaves its events to that thread.
+     *
+     * <p>The queue is retired and removed from the repository when it becomes empty.
+     */
+    private class PendingEvents {
+
+        private final Queue<List<Event>> queue = new ArrayDeque<>();
+        private boolean posting;
+        private boolean retired;
+
+        /**
+         * Queues the events.
+         *
+         * @return {@code true} if the events are queued, {@code false} if the queue is already retired
+         */
+        private synchronized boolean add(List<Event> events) {
+            if (retired) {
+                return false;
+            }
+            queue.add(events);
+            return true;
+        }
+
+        /** Posts the queued events unless another thread is already posting them. */
+        private void post(I aggregateId) {
+            synchronized (this) {
+                if (posting) {
+                    return;
+                }
+                posting = true;
+            }
+            while (true) {
+                final List<Event> events;
+                synchronized (this) {
+                    events = queue.poll();
+                    if (events == null) {
+                        posting = false;
+                        retired = true;
+                        pendingEvents.remove(aggregateId, this);
+                        return;
+                    }
+                }
+                try {
+                    postEvents(events);
+                } catch (RuntimeException e) {
+                    log().error("Cannot post the events of {} {}.", getAggregateClass(), aggregateId, e);
+                }
+            }
         }
     }
 
@@ -318,6 +746,48 @@ public abstract class AggregateRepository<I, A extends Aggregate<I, ?, ?>>
         return id;
     }
 
+    /**
+     * Obtains the ID of the aggregate, to which all the passed commands are sent.
+     *
+     * @throws IllegalArgumentException if the commands are sent to different aggregates
+     */
+    private I getAggregateId(List<Command> commands) {
+        final I result = getAggregateId(getMessage(commands.get(0)));
+        for (Command command : commands) {
+            final I id = getAggregateId(getMessage(command));
+            checkArgument(result.equals(id),
+                          "All the commands must be sent to the same aggregate. Expected ID: %s, found: %s.",
+                          result, id);
+        }
+        return result;
+    }
+
+    private static List<Message> commandMessages(List<Command> commands) {
+        final ImmutableList.Builder<Message> result = ImmutableList.builder();
+        for (Command command : commands) {
+            result.add(getMessage(command));
+        }
+        return result.build();
+    }
+
+    /** An aggregate, to which commands were dispatched. */
+    private static final class DispatchedAggregate<A> {
+
+        private final A aggregate;
+
+        /** The ID of the latest stored event of the aggregate before the commands were dispatched. */
+        private final String lastEventId;
+
+        /** {@code false} if handling of a command failed and the aggregate state is not reliable. */
+        private final boolean succeeded;
+
+        private DispatchedAggregate(A aggregate, String lastEventId, boolean succeeded) {
+            this.aggregate = aggregate;
+            this.lastEventId = lastEventId;
+            this.succeeded = succeeded;
+        }
+    }
+
     private enum LogSingleton {
         INSTANCE;
 
@@ -20,6 +20,7 @@
 
 package org.spine3.server.aggregate;
 
+import com.google.common.collect.ImmutableList;
 import com.google.protobuf.Any;
 import com.google.protobuf.Timestamp;
 import org.spine3.SPI;
@@ -115,10 +116,7 @@ public abstract class AggregateStorage<I> extends AbstractStorage<I, AggregateEv
         final List<Event> eventList = events.getEventList();
         checkArgument(!eventList.isEmpty(), "Event list must not be empty.");
 
-        for (final Event event : eventList) {
-            final AggregateStorageRecord record = toStorageRecord(event);
-            writeRecord(id, record);
-        }
+        writeRecords(id, toStorageRecords(eventList));
     }
 
     /**
@@ -137,6 +135,23 @@ public abstract class AggregateStorage<I> extends AbstractStorage<I, AggregateEv
         writeRecord(id, record);
     }
 
+    /**
+     * Writes the events of an aggregate to the storage at once.
+     *
+     * @param id     the aggregate ID
+     * @param events the non-empty list of events to write
+     * @throws IllegalStateException    if the storage is closed
+     * @throws IllegalArgumentException if the event list is empty
+     */
+    protected void writeEvents(I id, List<Event> events) {
+        checkNotClosed();
+        checkNotNull(id);
+        checkNotNull(events);
+        checkArgument(!events.isEmpty(), "Event list must not be empty.");
+
+        writeRecords(id, toStorageRecords(events));
+    }
+
     /**
      * Writes a {@code snapshot} by an {@code aggregateId} to the storage.
      *
@@ -181,6 +196,42 @@ public abstract class AggregateStorage<I> extends AbstractStorage<I, AggregateEv
      */
     protected abstract void writeEventCountAfterLastSnapshot(I id, int eventCount);
 
+    /**
+     * Reads the ID of the latest event stored for the aggregate.
+     *
+     * <p>As every event has a unique ID, an unchanged value means that no events were stored
+     * for the aggregate since the value was obtained. Snapshots do not affect the value.
+     *
+     * <p>The default implementation walks the {@linkplain #historyBackward(Object) history} up to
+     * the latest event record. Storage implementations may override it with a cheaper lookup.
+     *
+     * @param aggregateId the ID of the aggregate
+     * @return the {@linkplain org.spine3.base.Stringifiers#idToString(Object) string form} of the event ID
+     *         or an empty string if no events were stored for the aggregate
+     * @throws IllegalStateException if the storage is closed
+     */
+    protected String readLastEventId(I aggregateId) {
+        checkNotClosed();
+        checkNotNull(aggregateId);
+
+        final Iterator<AggregateStorageRecord> historyBackward = historyBackward(aggregateId);
+        while (historyBackward.hasNext()) {
+            final AggregateStorageRecord record = historyBackward.next();
+            if (record.getKindCase() == AggregateStorageRecord.KindCase.EVENT) {
+                return record.getEventId();
+            }
+        }
+        return "";
+    }
+
+    private static List<AggregateStorageRecord> toStorageRecords(List<Event> events) {
+        final ImmutableList.Builder<AggregateStorageRecord> result = ImmutableList.builder();
+        for (Event event : events) {
+            result.add(toStorageRecord(event));
+        }
+        return result.build();
+    }
+
     private static AggregateStorageRecord toStorageRecord(Event event) {
         checkArgument(event.hasContext(), "Event context must be set.");
         final EventContext context = event.getContext();
@@ -215,6 +266,21 @@ public abstract class AggregateStorage<I> extends AbstractStorage<I, AggregateEv
      */
     protected abstract void writeRecord(I id, AggregateStorageRecord record);
 
+    /**
+     * Writes the batch of records of an aggregate into the storage.
+     *
+     * <p>The default implementation writes the records one by one. Override this method
+     * if the storage can write several records at once, for example, in a single transaction.
+     *
+     * @param id      the aggregate ID
+     * @param records the non-empty list of the records to write in the order of writing
+     */
+    protected void writeRecords(I id, List<AggregateStorageRecord> records) {
+        for (AggregateStorageRecord record : records) {
+            writeRecord(id, record);
+        }
+    }
+
     /**
      * Creates iterator of aggregate event history with the reverse traversal.
      * Records are sorted by timestamp descending (from newer to older).
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.spine3.server.aggregate;
+
+import com.google.protobuf.Any;
+import com.google.protobuf.Message;
+import com.google.protobuf.Timestamp;
+import org.spine3.protobuf.AnyPacker;
+import org.spine3.server.aggregate.storage.Snapshot;
+
+/**
+ * An immutable copy of the state of an aggregate, from which a {@link Snapshot} is made.
+ *
+ * <p>Capturing the state is cheap, as the aggregate state is an immutable message. The expensive
+ * part of making a snapshot, the serialization of the state, may thus be done later in another thread,
+ * while the aggregate keeps changing.
+ */
+final class CapturedState {
+
+    private final Message state;
+    private final int version;
+    private final Timestamp whenModified;
+    private final Timestamp timestamp;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param state        the state of the aggregate
+     * @param version      the version of the aggregate
+     * @param whenModified the time of the last modification of the aggregate
+     * @param timestamp    the time of the snapshot
+     */
+    CapturedState(Message state, int version, Timestamp whenModified, Timestamp timestamp) {
+        this.state = state;
+        this.version = version;
+        this.whenModified = whenModified;
+        this.timestamp = timestamp;
+    }
+
+    /** Returns the time of the snapshot. */
+    Timestamp getTimestamp() {
+        return timestamp;
+    }
+
+    /** Serializes the state into a snapshot. */
+    Snapshot toSnapshot() {
+        final Any packedState = AnyPacker.pack(state);
+        final Snapshot result = Snapshot.newBuilder()
+                                        .setState(packedState)
+                                        .setWhenModified(whenModified)
+                                        .setVersion(version)
+                                        .setTimestamp(timestamp)
+                                        .build();
+        return result;
+    }
+}
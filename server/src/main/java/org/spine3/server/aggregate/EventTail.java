@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.spine3.server.aggregate;
+
+import com.google.common.base.Optional;
+import com.google.protobuf.Timestamp;
+import org.spine3.base.Event;
+import org.spine3.server.aggregate.storage.AggregateEvents;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * The statistics of the events of an aggregate stored after its last snapshot.
+ *
+ * <p>The statistics are maintained by an {@link AggregateRepository} for each aggregate instance
+ * it loads, and are passed to the {@link SnapshotPolicy} of the repository
+ * in the form of a {@link SnapshotCandidate}.
+ *
+ * <p>The instances are not thread-safe, as an aggregate is used by one thread at a time.
+ */
+final class EventTail {
+
+    /** The time of replaying one event measured when the aggregate was loaded. */
+    private long replayNanosPerEvent;
+
+    /** The number of the events applied by the aggregate since it was loaded or created. */
+    private long appliedCount;
+
+    /** The total time of applying the {@link #appliedCount} events. */
+    private long applyNanos;
+
+    /** The serialized size of the events after the last snapshot. */
+    private long serializedSize;
+
+    /** The time of the first event after the last snapshot. */
+    @Nullable
+    private Timestamp firstEventTime;
+
+    /** The time of the last snapshot. */
+    @Nullable
+    private Timestamp lastSnapshotTime;
+
+    /**
+     * Updates the statistics upon loading of the aggregate.
+     *
+     * @param loaded     the snapshot and the events, from which the aggregate was loaded
+     * @param replayTime the time of restoring the snapshot and replaying the events in nanoseconds
+     */
+    void onLoaded(AggregateEvents loaded, long replayTime) {
+        final List<Event> events = loaded.getEventList();
+        if (!events.isEmpty()) {
+            replayNanosPerEvent = replayTime / events.size();
+        }
+        serializedSize = 0;
+        firstEventTime = null;
+        onStored(events);
+        lastSnapshotTime = loaded.hasSnapshot()
+                           ? loaded.getSnapshot()
+                                   .getTimestamp()
+                           : null;
+    }
+
+    /**
+     * Updates the statistics upon applying new events by the aggregate.
+     *
+     * @param eventCount the number of the applied events
+     * @param applyTime  the time of applying the events in nanoseconds
+     */
+    void onApplied(int eventCount, long applyTime) {
+        appliedCount += eventCount;
+        applyNanos += applyTime;
+    }
+
+    /**
+     * Updates the statistics upon storing new events of the aggregate.
+     */
+    void onStored(List<Event> events) {
+        for (Event event : events) {
+            serializedSize += event.getSerializedSize();
+        }
+        if (firstEventTime == null && !events.isEmpty()) {
+            firstEventTime = events.get(0)
+                                   .getContext()
+                                   .getTimestamp();
+        }
+    }
+
+    /**
+     * Resets the statistics upon storing a snapshot of the aggregate.
+     *
+     * @param snapshotTime the time of the snapshot
+     */
+    void onSnapshot(Timestamp snapshotTime) {
+        serializedSize = 0;
+        firstEventTime = null;
+        lastSnapshotTime = snapshotTime;
+    }
+
+    /**
+     * Returns the time of replaying one event.
+     *
+     * <p>If no events were replayed upon loading, e.g. the aggregate was created anew,
+     * the time is estimated by the events applied by the aggregate since then.
+     *
+     * @return the time in nanoseconds or zero if the aggregate neither replayed nor applied any events
+     */
+    long getNanosPerEvent() {
+        if (replayNanosPerEvent > 0 || appliedCount == 0) {
+            return replayNanosPerEvent;
+        }
+        final long result = applyNanos / appliedCount;
+        return result;
+    }
+
+    long getSerializedSize() {
+        return serializedSize;
+    }
+
+    Optional<Timestamp> getFirstEventTime() {
+        return Optional.fromNullable(firstEventTime);
+    }
+
+    Optional<Timestamp> getLastSnapshotTime() {
+        return Optional.fromNullable(lastSnapshotTime);
+    }
+}
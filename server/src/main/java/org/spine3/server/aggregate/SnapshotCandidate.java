@@ -0,0 +1,109 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.spine3.server.aggregate;
+
+import com.google.common.base.Optional;
+import com.google.protobuf.Duration;
+import com.google.protobuf.Message;
+import com.google.protobuf.Timestamp;
+import org.spine3.protobuf.Durations;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * An aggregate, which has just stored new events, as seen by a {@link SnapshotPolicy}.
+ *
+ * <p>Describes the current state of the aggregate and the events stored after its last snapshot,
+ * i.e. the events, which have to be replayed to load the aggregate.
+ */
+public final class SnapshotCandidate {
+
+    private final Message state;
+    private final int eventCount;
+    private final long eventSize;
+    private final long replayNanos;
+    private final Optional<Timestamp> firstEventTime;
+    private final Optional<Timestamp> lastSnapshotTime;
+
+    SnapshotCandidate(Message state, int eventCount, EventTail tail) {
+        checkNotNull(state);
+        checkArgument(eventCount >= 0, "Event count must not be negative.");
+        checkNotNull(tail);
+        this.state = state;
+        this.eventCount = eventCount;
+        this.eventSize = tail.getSerializedSize();
+        this.replayNanos = tail.getNanosPerEvent() * eventCount;
+        this.firstEventTime = tail.getFirstEventTime();
+        this.lastSnapshotTime = tail.getLastSnapshotTime();
+    }
+
+    /** Returns the current state of the aggregate. */
+    public Message getState() {
+        return state;
+    }
+
+    /** Returns the number of the events stored after the last snapshot, including the new ones. */
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Returns the serialized size of the events stored after the last snapshot in bytes.
+     *
+     * <p>The events stored by other instances of the application since the aggregate was loaded
+     * are not taken into account.
+     */
+    public long getEventSize() {
+        return eventSize;
+    }
+
+    /**
+     * Returns the estimated time of replaying the events stored after the last snapshot.
+     *
+     * <p>The estimation is based on the time of replaying the events, which was measured
+     * when the aggregate was loaded. If no events were replayed at that time, the time of applying
+     * the events produced by the aggregate since then is used instead.
+     *
+     * <p>The time is zero if the aggregate neither replayed nor applied any events.
+     */
+    public Duration getReplayTime() {
+        return Durations.nanos(replayNanos);
+    }
+
+    /**
+     * Returns the time of the first event stored after the last snapshot.
+     *
+     * <p>The value is absent if there are no such events known to the aggregate.
+     */
+    public Optional<Timestamp> getFirstEventTime() {
+        return firstEventTime;
+    }
+
+    /**
+     * Returns the time of the last snapshot of the aggregate.
+     *
+     * <p>The value is absent if the aggregate has no snapshots.
+     */
+    public Optional<Timestamp> getLastSnapshotTime() {
+        return lastSnapshotTime;
+    }
+}
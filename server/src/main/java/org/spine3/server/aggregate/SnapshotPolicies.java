@@ -0,0 +1,210 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.spine3.server.aggregate;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.Duration;
+import com.google.protobuf.Timestamp;
+
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.spine3.protobuf.Durations.isPositive;
+import static org.spine3.protobuf.Durations.toNanos;
+import static org.spine3.protobuf.Timestamps.convertToNanos;
+import static org.spine3.protobuf.Timestamps.getCurrentTime;
+
+/**
+ * The built-in {@linkplain SnapshotPolicy snapshot policies}.
+ */
+public class SnapshotPolicies {
+
+    private SnapshotPolicies() {}
+
+    /**
+     * Obtains the policy, which makes a snapshot each time the given number of events
+     * is stored after the last snapshot.
+     *
+     * <p>This is the default policy of an {@link AggregateRepository}.
+     *
+     * @param count a positive number of events
+     * @see AggregateRepository#DEFAULT_SNAPSHOT_TRIGGER
+     */
+    public static SnapshotPolicy eventCount(int count) {
+        checkArgument(count > 0, "Event count must be positive.");
+        return new EventCount(count);
+    }
+
+    /**
+     * Obtains the policy, which makes a snapshot when the estimated time of replaying the events
+     * stored after the last snapshot reaches the given threshold.
+     *
+     * <p>Suits the aggregates with the events, which are expensive to apply.
+     *
+     * @param threshold a positive replay time
+     * @see SnapshotCandidate#getReplayTime()
+     */
+    public static SnapshotPolicy replayTime(Duration threshold) {
+        checkNotNull(threshold);
+        checkArgument(isPositive(threshold), "Replay time threshold must be positive.");
+        return new ReplayTime(toNanos(threshold));
+    }
+
+    /**
+     * Obtains the policy, which makes a snapshot when the events stored after the last snapshot
+     * are larger than the serialized state of the aggregate by the given ratio.
+     *
+     * <p>Loading such an aggregate from a snapshot reads less data than replaying the events.
+     * The aggregates with large states thus get their snapshots less often than the ones
+     * with small states.
+     *
+     * @param ratio a positive ratio of the size of the events to the size of the state
+     * @see SnapshotCandidate#getEventSize()
+     */
+    public static SnapshotPolicy stateSizeRatio(double ratio) {
+        checkArgument(ratio > 0, "State size ratio must be positive.");
+        return new StateSizeRatio(ratio);
+    }
+
+    /**
+     * Obtains the policy, which makes a snapshot when the given period elapses since the last
+     * snapshot, or since the first event if the aggregate has no snapshots.
+     *
+     * <p>No snapshot is made if no events were stored after the last one.
+     *
+     * @param period a positive period between snapshots
+     */
+    public static SnapshotPolicy elapsedTime(Duration period) {
+        checkNotNull(period);
+        checkArgument(isPositive(period), "Period must be positive.");
+        return new ElapsedTime(toNanos(period));
+    }
+
+    /**
+     * Obtains the policy, which makes a snapshot when any of the passed policies demands it.
+     *
+     * @param first the first policy
+     * @param other other policies
+     */
+    public static SnapshotPolicy anyOf(SnapshotPolicy first, SnapshotPolicy... other) {
+        checkNotNull(first);
+        checkNotNull(other);
+        final ImmutableList<SnapshotPolicy> policies = ImmutableList.<SnapshotPolicy>builder()
+                                                                    .add(first)
+                                                                    .add(other)
+                                                                    .build();
+        return new AnyOf(policies);
+    }
+
+    private static final class EventCount implements SnapshotPolicy {
+
+        private final int count;
+
+        private EventCount(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public boolean shouldSnapshot(SnapshotCandidate candidate) {
+            return candidate.getEventCount() >= count;
+        }
+    }
+
+    private static final class ReplayTime implements SnapshotPolicy {
+
+        private final long thresholdNanos;
+
+        private ReplayTime(long thresholdNanos) {
+            this.thresholdNanos = thresholdNanos;
+        }
+
+        @Override
+        public boolean shouldSnapshot(SnapshotCandidate candidate) {
+            return toNanos(candidate.getReplayTime()) >= thresholdNanos;
+        }
+    }
+
+    private static final class StateSizeRatio implements SnapshotPolicy {
+
+        private final double ratio;
+
+        private StateSizeRatio(double ratio) {
+            this.ratio = ratio;
+        }
+
+        @Override
+        public boolean shouldSnapshot(SnapshotCandidate candidate) {
+            final long eventSize = candidate.getEventSize();
+            if (eventSize == 0) {
+                return false;
+            }
+            final int stateSize = candidate.getState()
+                                           .getSerializedSize();
+            return eventSize >= ratio * stateSize;
+        }
+    }
+
+    private static final class ElapsedTime implements SnapshotPolicy {
+
+        private final long periodNanos;
+
+        private ElapsedTime(long periodNanos) {
+            this.periodNanos = periodNanos;
+        }
+
+        @Override
+        public boolean shouldSnapshot(SnapshotCandidate candidate) {
+            if (candidate.getEventCount() == 0) {
+                return false;
+            }
+            final Optional<Timestamp> lastSnapshotTime = candidate.getLastSnapshotTime();
+            final Optional<Timestamp> since = lastSnapshotTime.isPresent()
+                                              ? lastSnapshotTime
+                                              : candidate.getFirstEventTime();
+            if (!since.isPresent()) {
+                return false;
+            }
+            final long elapsedNanos = convertToNanos(getCurrentTime()) - convertToNanos(since.get());
+            return elapsedNanos >= periodNanos;
+        }
+    }
+
+    private static final class AnyOf implements SnapshotPolicy {
+
+        private final List<SnapshotPolicy> policies;
+
+        private AnyOf(List<SnapshotPolicy> policies) {
+            this.policies = policies;
+        }
+
+        @Override
+        public boolean shouldSnapshot(SnapshotCandidate candidate) {
+            for (SnapshotPolicy policy : policies) {
+                if (policy.shouldSnapshot(candidate)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
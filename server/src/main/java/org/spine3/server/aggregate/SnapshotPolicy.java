@@ -0,0 +1,47 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.spine3.server.aggregate;
+
+import org.spine3.SPI;
+
+/**
+ * Decides when an {@link AggregateRepository} makes a snapshot of an aggregate.
+ *
+ * <p>A snapshot saves the replay of the events stored before it, but costs its serialization
+ * and storing. The policy is consulted each time the repository stores new events of an aggregate.
+ *
+ * <p>See {@link SnapshotPolicies} for the built-in policies.
+ *
+ * @see AggregateRepository#setSnapshotPolicy(SnapshotPolicy)
+ */
+@SPI
+public interface SnapshotPolicy {
+
+    /**
+     * Decides if a snapshot of the aggregate should be made.
+     *
+     * <p>The method is called in the command handling thread, so it should be fast.
+     *
+     * @param candidate the aggregate, which has just stored new events
+     * @return {@code true} if the snapshot should be made, {@code false} otherwise
+     */
+    boolean shouldSnapshot(SnapshotCandidate candidate);
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.delivery;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import org.spine3.Internal;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * An immutable set of consumers of some kind of deliverable items, indexed by the consumer class.
+ *
+ * <p>The index is built once per change of the set of consumers, so that neither the delivery to all
+ * of the consumers nor the lookup of the consumers of a certain class allocates new collections.
+ *
+ * @param <C> the type of consumer
+ */
+@Internal
+public final class ConsumerIndex<C> {
+
+    private static final ConsumerIndex<Object> EMPTY = new ConsumerIndex<>(ImmutableList.of());
+
+    private final ImmutableList<C> consumers;
+    private final ImmutableListMultimap<Class<?>, C> consumersByClass;
+
+    private ConsumerIndex(ImmutableList<C> consumers) {
+        this.consumers = consumers;
+        final ImmutableListMultimap.Builder<Class<?>, C> byClass = ImmutableListMultimap.builder();
+        for (C consumer : consumers) {
+            byClass.put(consumer.getClass(), consumer);
+        }
+        this.consumersByClass = byClass.build();
+    }
+
+    /**
+     * Creates a new index of the passed consumers.
+     *
+     * @param consumers the consumers to index
+     * @param <C>       the type of consumer
+     * @return the new index
+     */
+    public static <C> ConsumerIndex<C> of(Iterable<? extends C> consumers) {
+        checkNotNull(consumers);
+        final ImmutableList<C> list = ImmutableList.copyOf(consumers);
+        if (list.isEmpty()) {
+            return empty();
+        }
+        final ConsumerIndex<C> result = new ConsumerIndex<>(list);
+        return result;
+    }
+
+    /** Returns the index which contains no consumers. */
+    @SuppressWarnings("unchecked") // The empty index does not contain instances of any type.
+    public static <C> ConsumerIndex<C> empty() {
+        return (ConsumerIndex<C>) EMPTY;
+    }
+
+    /** Returns all the consumers in the index. */
+    public ImmutableList<C> getAll() {
+        return consumers;
+    }
+
+    /**
+     * Returns the consumers of exactly the given class.
+     *
+     * @param consumerClass the class of the consumers
+     * @return the consumers of the class or an empty list if there are none
+     */
+    public ImmutableList<C> getOfClass(Class<?> consumerClass) {
+        checkNotNull(consumerClass);
+        return consumersByClass.get(consumerClass);
+    }
+
+    public boolean isEmpty() {
+        return consumers.isEmpty();
+    }
+
+    public int size() {
+        return consumers.size();
+    }
+}
@@ -19,16 +19,14 @@
  */
 package org.spine3.server.delivery;
 
-import com.google.common.base.Predicate;
-import com.google.common.collect.Iterables;
 import com.google.common.util.concurrent.MoreExecutors;
 import org.spine3.Internal;
 
-import javax.annotation.Nullable;
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.Executor;
 
-import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
 
 /**
  * Base class for the strategies to deliver the packaged items to the specific consumers.
@@ -106,10 +104,25 @@ public abstract class Delivery<D, C> {
     @Internal           // It is `public` as long as it is accessed from various framework packages.
     public void deliver(D deliverable) {
         final Collection<C> consumers = consumersFor(deliverable);
+        deliver(deliverable, consumers);
+    }
+
+    /**
+     * Passes the deliverable to the given consumers using the {@code executor} configured for this instance
+     * of {@code Delivery}.
+     *
+     * <p>Allows to avoid the repeated lookup of the consumers, if they are already known to the caller.
+     *
+     * @param deliverable the item to deliver
+     * @param consumers   the consumers obtained by {@link #consumersFor(Object)} for the deliverable
+     * @see #deliver(Object)
+     */
+    @Internal
+    public void deliver(D deliverable, Collection<C> consumers) {
         for (C consumer : consumers) {
             final boolean shouldPostpone = shouldPostponeDelivery(deliverable, consumer);
             if (!shouldPostpone) {
-                deliverNow(deliverable, consumer.getClass());
+                deliverTo(consumer, deliverable);
             }
         }
     }
@@ -121,27 +134,69 @@ public abstract class Delivery<D, C> {
      * @param consumerClass the class of the target consumer
      */
     @SuppressWarnings("WeakerAccess")       // Part of API.
-    public void deliverNow(final D deliverable, final Class<?> consumerClass) {
-        final Collection<C> consumers = consumersFor(deliverable);
-        final Iterable<C> matching = Iterables.filter(consumers, matchClass(consumerClass));
+    public void deliverNow(D deliverable, Class<?> consumerClass) {
+        final Collection<C> matching = consumersFor(deliverable, consumerClass);
+        for (C targetConsumer : matching) {
+            deliverTo(targetConsumer, deliverable);
+        }
+    }
 
-        for (final C targetConsumer : matching) {
-            final Runnable deliveryAction = getDeliveryAction(targetConsumer, deliverable);
-            execute(deliveryAction);
+    /**
+     * Determines the consumers of exactly the given class for the given {@code deliverable}.
+     *
+     * <p>Used to find the targets of the postponed delivery.
+     *
+     * <p>By default, filters the result of {@link #consumersFor(Object)}. The descendants, which keep
+     * the consumers indexed by class, should override this method to avoid the linear scan.
+     *
+     * @param deliverable   the item to deliver
+     * @param consumerClass the class of the consumers
+     * @return the collection of the consumers of the given class
+     */
+    protected Collection<C> consumersFor(D deliverable, Class<?> consumerClass) {
+        final Collection<C> consumers = consumersFor(deliverable);
+        final List<C> result = newArrayListWithCapacity(consumers.size());
+        for (C consumer : consumers) {
+            if (consumerClass.equals(consumer.getClass())) {
+                result.add(consumer);
+            }
         }
+        return result;
     }
 
-    private void execute(Runnable command) {
-        delegate.execute(command);
+    private void deliverTo(C consumer, D deliverable) {
+        final Runnable deliveryAction = getDeliveryAction(consumer, deliverable);
+        final Runnable decorated = decorate(deliveryAction, consumer, deliverable);
+        execute(decorated, consumer, deliverable);
     }
 
-    private static <T> Predicate<T> matchClass(final Class<? extends T> classToMatch) {
-        return new Predicate<T>() {
-            @Override
-            public boolean apply(@Nullable T input) {
-                checkNotNull(input);
-                return classToMatch.equals(input.getClass());
-            }
-        };
+    /**
+     * Decorates the action delivering the item to the consumer before it is executed.
+     *
+     * <p>Allows to perform some routines, such as measuring the time of the delivery, in the thread
+     * executing the action. By default, returns the passed action.
+     *
+     * @param deliveryAction the action obtained from {@link #getDeliveryAction(Object, Object)}
+     * @param consumer       the consumer the item is delivered to
+     * @param deliverable    the item being delivered
+     * @return the action to execute
+     */
+    protected Runnable decorate(Runnable deliveryAction, C consumer, D deliverable) {
+        return deliveryAction;
+    }
+
+    /**
+     * Executes the action delivering the item to the consumer.
+     *
+     * <p>By default, passes the action to the {@code executor} configured for this instance of {@code Delivery}.
+     * Descendants may override this method to choose the way of execution by the consumer and the item.
+     *
+     * @param deliveryAction the action obtained from {@link #getDeliveryAction(Object, Object)}
+     *                       and {@linkplain #decorate(Runnable, Object, Object) decorated}
+     * @param consumer       the consumer the item is delivered to
+     * @param deliverable    the item being delivered
+     */
+    protected void execute(Runnable deliveryAction, C consumer, D deliverable) {
+        delegate.execute(deliveryAction);
     }
 }
@@ -0,0 +1,410 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.delivery;
+
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spine3.Internal;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * An executor which runs tasks in a fixed number of partitions, each served by a single worker thread.
+ *
+ * <p>The partition for a task is selected by the hash code of the key passed along with it.
+ * Tasks with equal keys are always executed sequentially in the order of submission, while tasks
+ * with keys falling into different partitions are executed in parallel.
+ *
+ * <p>Each partition is backed by a bounded queue. When the queue is full, the submitting thread
+ * blocks until the worker frees some space, which throttles the producers down to the pace of
+ * the consumers. The only exception are the tasks submitted by the worker threads: such a task
+ * is queued beyond the capacity to avoid the workers waiting for each other, still in the order of submission.
+ *
+ * <p>Several executors may share a {@linkplain #PartitionedExecutor(int, int, String, Set) group of workers}.
+ * Then the workers of any executor of the group are treated as the workers of each of them, so that
+ * the executors, which submit tasks to each other, never block each other's workers.
+ *
+ * <p>A task may also be {@linkplain #executeExclusively(Runnable) executed exclusively}, that is after all
+ * the previously submitted tasks and before all the subsequent ones in all of the partitions. Such a task
+ * cannot be submitted by the worker threads.
+ *
+ * <p>{@link #close()} stops accepting new tasks and waits until all the queued ones are executed.
+ */
+@Internal
+public class PartitionedExecutor implements AutoCloseable {
+
+    /** The marker task, which tells a worker to stop after everything submitted before it is executed. */
+    private static final Runnable STOP = new Runnable() {
+        @Override
+        public void run() {
+            // Is never executed.
+        }
+    };
+
+    private final Partition[] partitions;
+
+    /** The workers of this executor and of the other executors of its group. */
+    private final Set<Thread> workerGroup;
+
+    /**
+     * The number of tasks being submitted at the moment.
+     *
+     * <p>Allows {@link #close()} to wait for them, so that no task is queued behind the stop marker.
+     */
+    private final AtomicInteger submitting = new AtomicInteger();
+
+    /** Guards the submission of the {@linkplain #executeExclusively(Runnable) exclusive} tasks. */
+    private final Object barrierLock = new Object();
+
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a new instance and starts the worker threads.
+     *
+     * @param partitionCount the number of partitions, each served by its own thread
+     * @param capacity       the maximum number of tasks queued per partition
+     * @param namePrefix     the prefix for the names of the worker threads
+     */
+    public PartitionedExecutor(int partitionCount, int capacity, String namePrefix) {
+        this(partitionCount, capacity, namePrefix, Sets.<Thread>newConcurrentHashSet());
+    }
+
+    /**
+     * Creates a new instance, which belongs to the passed group of workers, and starts the worker threads.
+     *
+     * <p>The worker threads are added to the group upon the start and removed from it upon the stop.
+     *
+     * @param partitionCount the number of partitions, each served by its own thread
+     * @param capacity       the maximum number of tasks queued per partition
+     * @param namePrefix     the prefix for the names of the worker threads
+     * @param workerGroup    the thread-safe set of the workers shared by the executors of the group
+     */
+    public PartitionedExecutor(int partitionCount, int capacity, String namePrefix, Set<Thread> workerGroup) {
+        checkArgument(partitionCount > 0, "Partition count must be positive.");
+        checkArgument(capacity > 0, "Partition capacity must be positive.");
+        checkNotNull(namePrefix);
+        checkNotNull(workerGroup);
+
+        final ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat(namePrefix + "-%d")
+                                                                      .setDaemon(true)
+                                                                      .build();
+        this.workerGroup = workerGroup;
+        this.partitions = new Partition[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            final Partition partition = new Partition(capacity, threadFactory, workerGroup);
+            partitions[i] = partition;
+            workerGroup.add(partition.worker);
+        }
+        for (Partition partition : partitions) {
+            partition.worker.start();
+        }
+    }
+
+    /**
+     * Submits the task for the execution in the partition matching the passed key.
+     *
+     * <p>Blocks if the queue of the partition is full, unless called by one of the worker threads
+     * of the group.
+     *
+     * <p>After the executor is closed, only the tasks submitted by the worker threads of the group are accepted.
+     * They are queued until the partition is stopped and executed in the submitting thread afterwards.
+     *
+     * @param key  the key defining the partition; tasks with equal keys are executed in order
+     * @param task the task to execute
+     * @throws IllegalStateException if the executor is closed
+     */
+    public void execute(Object key, Runnable task) {
+        checkNotNull(key);
+        checkNotNull(task);
+        final boolean fromWorker = isWorkerThread();
+        submitting.incrementAndGet();
+        try {
+            // A task submitted by a worker after closing is a consequence of one of the tasks being drained.
+            checkState(!closed || fromWorker, "The executor is closed.");
+            final Partition partition = partitionFor(key);
+            final boolean queued = partition.submit(task, fromWorker);
+            if (!queued) {
+                runSafely(task);
+            }
+        } finally {
+            submitting.decrementAndGet();
+        }
+    }
+
+    /**
+     * Submits the task for the execution, while none of the partitions executes anything else.
+     *
+     * <p>All the tasks submitted before this one are executed before it, and all the tasks submitted after it
+     * are executed after it, regardless of their partitions.
+     *
+     * <p>Blocks if the queue of any partition is full.
+     *
+     * <p>The task cannot be submitted by one of the worker threads of the group, as the exclusive execution
+     * would wait for the task being executed by the worker.
+     *
+     * @param task the task to execute
+     * @throws IllegalStateException if the executor is closed or the method is called by a worker thread
+     * @see #isWorkerThread()
+     */
+    public void executeExclusively(Runnable task) {
+        checkNotNull(task);
+        checkState(!isWorkerThread(), "An exclusive task cannot be submitted by a worker thread.");
+        submitting.incrementAndGet();
+        try {
+            checkState(!closed, "The executor is closed.");
+            final Runnable barrierAction = new Barrier(partitions.length, task);
+            // The barriers must be queued in the same order in all partitions, otherwise they wait for each other.
+            synchronized (barrierLock) {
+                for (Partition partition : partitions) {
+                    partition.submit(barrierAction, false);
+                }
+            }
+        } finally {
+            submitting.decrementAndGet();
+        }
+    }
+
+    /** Returns {@code true} if the current thread is one of the worker threads of the group of this executor. */
+    public boolean isWorkerThread() {
+        return workerGroup.contains(Thread.currentThread());
+    }
+
+    /** Returns the number of partitions of this executor. */
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+    /** Returns the total number of tasks waiting for the execution in all partitions. */
+    public int getQueuedTaskCount() {
+        int result = 0;
+        for (Partition partition : partitions) {
+            result += partition.size();
+        }
+        return result;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Stops accepting new tasks and waits until all the previously submitted tasks are executed.
+     *
+     * <p>If called by one of the worker threads, does not wait for the tasks queued in its partition.
+     *
+     * <p>Subsequent calls have no effect.
+     */
+    @Override
+    public synchronized void close() throws InterruptedException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        // The tasks submitted concurrently with setting the flag are still on their way to the queues.
+        while (submitting.get() > 0) {
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        for (Partition partition : partitions) {
+            partition.stop();
+        }
+        for (Partition partition : partitions) {
+            // A worker closing the executor finishes the queued tasks after the current one.
+            if (partition.worker != Thread.currentThread()) {
+                partition.worker.join();
+            }
+        }
+    }
+
+    private Partition partitionFor(Object key) {
+        final int hash = key.hashCode();
+        final int index = (hash & Integer.MAX_VALUE) % partitions.length;
+        return partitions[index];
+    }
+
+    private static void runSafely(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            log().error("Error executing the partitioned task.", e);
+        }
+    }
+
+    /**
+     * The task, which is queued into each of the partitions and executes the wrapped task when all
+     * of the partitions reach it.
+     */
+    private static class Barrier implements Runnable {
+
+        private final CyclicBarrier barrier;
+
+        private Barrier(int partitionCount, final Runnable task) {
+            this.barrier = new CyclicBarrier(partitionCount, new Runnable() {
+                @Override
+                public void run() {
+                    runSafely(task);
+                }
+            });
+        }
+
+        @Override
+        public void run() {
+            try {
+                barrier.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread()
+                      .interrupt();
+                log().error("Interrupted while waiting for the other partitions.", e);
+            } catch (BrokenBarrierException e) {
+                log().error("The exclusive task is not executed.", e);
+            }
+        }
+    }
+
+    /** A queue of tasks served by a dedicated thread. */
+    private static class Partition implements Runnable {
+
+        private final int capacity;
+        private final Queue<Runnable> queue = new ArrayDeque<>();
+        private final Lock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+        private final Condition notFull = lock.newCondition();
+        private final Thread worker;
+        private final Set<Thread> workerGroup;
+
+        /** Whether the {@link #STOP} task is queued; guarded by {@link #lock}. */
+        private boolean stopped;
+
+        private Partition(int capacity, ThreadFactory threadFactory, Set<Thread> workerGroup) {
+            this.capacity = capacity;
+            this.worker = threadFactory.newThread(this);
+            this.workerGroup = workerGroup;
+        }
+
+        /**
+         * Queues the task.
+         *
+         * @return {@code true} if the task is queued, {@code false} if the partition is already stopped
+         */
+        private boolean submit(Runnable task, boolean fromWorker) {
+            lock.lock();
+            try {
+                if (stopped) {
+                    return false;
+                }
+                // Waiting for the space in the queue from a worker thread of the group may block it forever,
+                // as the worker of this partition may wait for the space in the queue of that worker.
+                // So such a task is queued beyond the capacity, still behind all the tasks submitted before it.
+                if (!fromWorker) {
+                    while (queue.size() >= capacity) {
+                        notFull.await();
+                    }
+                }
+                enqueue(task);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread()
+                      .interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the partition queue.", e);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void stop() {
+            lock.lock();
+            try {
+                stopped = true;
+                enqueue(STOP);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void enqueue(Runnable task) {
+            queue.add(task);
+            notEmpty.signal();
+        }
+
+        private Runnable take() {
+            lock.lock();
+            try {
+                // The workers are stopped only by the `STOP` task so that no queued tasks are lost.
+                while (queue.isEmpty()) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                final Runnable result = queue.poll();
+                notFull.signal();
+                return result;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int size() {
+            lock.lock();
+            try {
+                return queue.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final Runnable task = take();
+                    if (task == STOP) {
+                        return;
+                    }
+                    runSafely(task);
+                }
+            } finally {
+                workerGroup.remove(worker);
+            }
+        }
+    }
+
+    private enum LogSingleton {
+        INSTANCE;
+        @SuppressWarnings("NonSerializableFieldInSerializableClass")
+        private final Logger value = LoggerFactory.getLogger(PartitionedExecutor.class);
+    }
+
+    private static Logger log() {
+        return LogSingleton.INSTANCE.value;
+    }
+}
@@ -40,7 +40,7 @@ import java.util.Set;
  */
 public abstract class EventDispatchingRepository<I, E extends Entity<I, S>, S extends Message>
         extends RecordBasedRepository<I, E, S>
-                implements EntityEventDispatcher<I> {
+                implements TargetedEventDispatcher<I> {
 
     private final IdSetFunctions<I> idSetFunctions;
 
@@ -97,6 +97,13 @@ public abstract class EventDispatchingRepository<I, E extends Entity<I, S>, S ex
         return idSetFunctions.findAndApply(event, context);
     }
 
+    @Override
+    public Set<I> getTargetIds(Event event) {
+        final Message eventMessage = Events.getMessage(event);
+        final Set<I> result = findIds(eventMessage, event.getContext());
+        return result;
+    }
+
     /**
      * Loads or creates an entity by the passed ID.
      *
@@ -123,10 +130,23 @@ public abstract class EventDispatchingRepository<I, E extends Entity<I, S>, S ex
      */
     @Override
     public void dispatch(Event event) {
+        dispatch(event, getTargetIds(event));
+    }
+
+    /**
+     * Dispatches the passed event to the entities with the passed IDs.
+     *
+     * <p>The descendants, which check the event before dispatching it, should override this method
+     * rather than {@link #dispatch(Event)}, as the parallel delivery calls this method directly.
+     *
+     * @param event     the event to dispatch
+     * @param targetIds the IDs of the entities
+     */
+    @Override
+    public void dispatch(Event event, Set<I> targetIds) {
         final Message eventMessage = Events.getMessage(event);
         final EventContext context = event.getContext();
-        final Set<I> ids = findIds(eventMessage, context);
-        for (I id : ids) {
+        for (I id : targetIds) {
             dispatchToEntity(id, eventMessage, context);
         }
     }
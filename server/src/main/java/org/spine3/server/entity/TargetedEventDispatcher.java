@@ -0,0 +1,55 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.spine3.server.entity;
+
+import org.spine3.base.Event;
+
+import java.util.Set;
+
+/**
+ * An {@link EntityEventDispatcher}, which tells the IDs of the target entities of an event before dispatching it.
+ *
+ * <p>Allows a delivery to distribute the events between threads by their target entities, such as
+ * {@link org.spine3.server.event.ParallelDispatcherEventDelivery ParallelDispatcherEventDelivery} does.
+ * The IDs are obtained once and then passed to {@link #dispatch(Event, Set)}.
+ *
+ * @param <I> the type of entity IDs
+ */
+public interface TargetedEventDispatcher<I> extends EntityEventDispatcher<I> {
+
+    /**
+     * Obtains the IDs of the entities, to which the passed event is dispatched.
+     *
+     * @param event the event to dispatch
+     * @return the set of entity IDs
+     */
+    Set<I> getTargetIds(Event event);
+
+    /**
+     * Dispatches the event to the entities with the passed IDs.
+     *
+     * <p>Must have the same effect as {@link #dispatch(Event)}.
+     *
+     * @param event     the event to dispatch
+     * @param targetIds the IDs obtained by {@link #getTargetIds(Event)} for the event
+     */
+    void dispatch(Event event, Set<I> targetIds);
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.event;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spine3.base.Event;
+import org.spine3.server.type.EventClass;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The default {@link DeadEventSink}, which counts the dead events by their class and keeps
+ * the most recent of them.
+ *
+ * <p>The events are kept in a ring buffer of the fixed capacity, so that the older events are
+ * overwritten by the newer ones.
+ *
+ * <p>A warning is logged only when the first dead event of some class is met.
+ */
+public class DeadEventBuffer implements DeadEventSink {
+
+    /** The default number of the most recent dead events kept by the buffer. */
+    public static final int DEFAULT_CAPACITY = 100;
+
+    private final AtomicReferenceArray<Event> recent;
+
+    /** The total number of the dead events, which also is the position of the next event in the buffer. */
+    private final AtomicLong totalCount = new AtomicLong();
+
+    private final ConcurrentMap<EventClass, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    /** Creates a buffer of the {@linkplain #DEFAULT_CAPACITY default capacity}. */
+    public DeadEventBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a buffer of the given capacity.
+     *
+     * @param capacity the number of the most recent dead events to keep
+     */
+    public DeadEventBuffer(int capacity) {
+        checkArgument(capacity > 0, "Capacity must be positive.");
+        this.recent = new AtomicReferenceArray<>(capacity);
+    }
+
+    @Override
+    public void onDeadEvent(Event event) {
+        checkNotNull(event);
+        final EventClass eventClass = EventClass.of(event);
+        final long classCount = counterFor(eventClass).incrementAndGet();
+        if (classCount == 1) {
+            log().warn("No subscriber or dispatcher defined for the event class: {}", eventClass);
+        }
+        final long position = totalCount.getAndIncrement();
+        recent.set(indexOf(position), event);
+    }
+
+    /** Returns the number of the dead events of the given class. */
+    public long getCount(EventClass eventClass) {
+        checkNotNull(eventClass);
+        final AtomicLong counter = counters.get(eventClass);
+        final long result = counter == null
+                            ? 0
+                            : counter.get();
+        return result;
+    }
+
+    /** Returns the number of all the dead events. */
+    public long getTotalCount() {
+        return totalCount.get();
+    }
+
+    /** Returns the numbers of the dead events by their classes. */
+    public Map<EventClass, Long> getCounts() {
+        final ImmutableMap.Builder<EventClass, Long> result = ImmutableMap.builder();
+        for (Map.Entry<EventClass, AtomicLong> entry : counters.entrySet()) {
+            result.put(entry.getKey(), entry.getValue()
+                                            .get());
+        }
+        return result.build();
+    }
+
+    /**
+     * Returns the most recent dead events, starting from the oldest one.
+     *
+     * <p>The events received concurrently with this call may or may not be included.
+     */
+    public List<Event> getRecent() {
+        final long end = totalCount.get();
+        final long start = Math.max(0, end - recent.length());
+        final ImmutableList.Builder<Event> result = ImmutableList.builder();
+        for (long position = start; position < end; position++) {
+            final Event event = recent.get(indexOf(position));
+            if (event != null) {
+                result.add(event);
+            }
+        }
+        return result.build();
+    }
+
+    /** Returns the capacity of the buffer. */
+    public int getCapacity() {
+        return recent.length();
+    }
+
+    private int indexOf(long position) {
+        return (int) (position % recent.length());
+    }
+
+    private AtomicLong counterFor(EventClass eventClass) {
+        final AtomicLong existing = counters.get(eventClass);
+        if (existing != null) {
+            return existing;
+        }
+        final AtomicLong created = new AtomicLong();
+        final AtomicLong previous = counters.putIfAbsent(eventClass, created);
+        final AtomicLong result = previous == null
+                                  ? created
+                                  : previous;
+        return result;
+    }
+
+    private enum LogSingleton {
+        INSTANCE;
+        @SuppressWarnings("NonSerializableFieldInSerializableClass")
+        private final Logger value = LoggerFactory.getLogger(DeadEventBuffer.class);
+    }
+
+    private static Logger log() {
+        return LogSingleton.INSTANCE.value;
+    }
+}
@@ -65,27 +65,37 @@ public abstract class DispatcherEventDelivery extends EventDelivery<EventDispatc
     }
 
     /**
-     * Obtains a pre-defined instance of the {@code DispatcherEventDelivery}, which does NOT postpone any
+     * Called by the {@link EventBus} after the dispatcher is unregistered from it.
+     *
+     * <p>Allows to release the resources allocated for the dispatcher. Does nothing by default.
+     *
+     * @param dispatcher the unregistered dispatcher
+     */
+    protected void onUnregistered(EventDispatcher dispatcher) {
+        // Do nothing by default.
+    }
+
+    /**
+     * Creates a new instance of the {@code DispatcherEventDelivery}, which does NOT postpone any
      * event dispatching and uses {@link MoreExecutors#directExecutor()} for operation.
      *
-     * @return the pre-configured default executor.
+     * <p>Each {@link EventBus} needs its own instance, as the bus passes its consumers and metrics to it.
+     *
+     * @return the new direct delivery
      */
     public static DispatcherEventDelivery directDelivery() {
-        return PredefinedDeliveryStrategies.DIRECT_DELIVERY;
+        return new DirectDelivery();
     }
 
-    /** Utility wrapper class for predefined delivery strategies designed to be constants. */
-    private static final class PredefinedDeliveryStrategies {
+    /**
+     * The {@code DispatcherEventDelivery}, which does not postpone any event dispatching
+     * and uses {@link MoreExecutors#directExecutor()} for operation.
+     */
+    private static final class DirectDelivery extends DispatcherEventDelivery {
 
-        /**
-         * A pre-defined instance of the {@code DispatcherEventDelivery}, which does not postpone any event dispatching
-         * and uses {@link MoreExecutors#directExecutor()} for operation.
-         */
-        private static final DispatcherEventDelivery DIRECT_DELIVERY = new DispatcherEventDelivery() {
-            @Override
-            public boolean shouldPostponeDelivery(Event event, EventDispatcher dispatcher) {
-                return false;
-            }
-        };
+        @Override
+        public boolean shouldPostponeDelivery(Event event, EventDispatcher dispatcher) {
+            return false;
+        }
     }
 }
@@ -21,26 +21,40 @@
 package org.spine3.server.event;
 
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import org.spine3.server.delivery.ConsumerIndex;
 import org.spine3.server.type.EventClass;
 
+import java.util.Map;
 import java.util.Set;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Maps.newHashMap;
 
 /**
  * The registry of objects that dispatch event to handlers.
  *
  * <p>There can be multiple dispatchers per event class.
  *
+ * <p>The registry is safe for the concurrent use. The changes are serialized, and each of them publishes
+ * an immutable snapshot of the dispatchers. The lookups read the latest snapshot without locking.
+ *
  * @author Alexander Yevsyukov
  */
 class DispatcherRegistry {
 
     private final HashMultimap<EventClass, EventDispatcher> dispatchers = HashMultimap.create();
 
-    void register(EventDispatcher dispatcher) {
+    /**
+     * The snapshot of the dispatchers of each event class.
+     *
+     * <p>Is replaced by a new immutable map upon each change of {@link #dispatchers}.
+     */
+    private volatile ImmutableMap<EventClass, ConsumerIndex<EventDispatcher>> index = ImmutableMap.of();
+
+    synchronized void register(EventDispatcher dispatcher) {
         checkNotNull(dispatcher);
         final Set<EventClass> eventClasses = dispatcher.getEventClasses();
         checkNotEmpty(dispatcher, eventClasses);
@@ -48,31 +62,69 @@ class DispatcherRegistry {
         for (EventClass eventClass : eventClasses) {
             dispatchers.put(eventClass, dispatcher);
         }
+        updateIndex(eventClasses);
     }
 
     Set<EventDispatcher> getDispatchers(EventClass eventClass) {
-        final Set<EventDispatcher> result = this.dispatchers.get(eventClass);
-        return ImmutableSet.copyOf(result);
+        final ConsumerIndex<EventDispatcher> dispatchers = getDispatcherIndex(eventClass);
+        return ImmutableSet.copyOf(dispatchers.getAll());
+    }
+
+    /**
+     * Obtains the precomputed index of the dispatchers of the given event class.
+     *
+     * @return the index of the dispatchers or an empty index if there are none
+     */
+    ConsumerIndex<EventDispatcher> getDispatcherIndex(EventClass eventClass) {
+        final ConsumerIndex<EventDispatcher> result = index.get(eventClass);
+        return result == null
+               ? ConsumerIndex.<EventDispatcher>empty()
+               : result;
     }
 
-    void unregister(EventDispatcher dispatcher) {
+    synchronized void unregister(EventDispatcher dispatcher) {
         final Set<EventClass> eventClasses = dispatcher.getEventClasses();
         checkNotEmpty(dispatcher, eventClasses);
         for (EventClass eventClass : eventClasses) {
             dispatchers.remove(eventClass, dispatcher);
         }
+        updateIndex(eventClasses);
     }
 
-    void unregisterAll() {
+    synchronized void unregisterAll() {
         dispatchers.clear();
+        index = ImmutableMap.of();
+    }
+
+    /** Returns the event classes, which have at least one of the registered dispatchers. */
+    Set<EventClass> getEventClasses() {
+        return index.keySet();
     }
 
     boolean hasDispatchersFor(EventClass eventClass) {
-        final Set<EventDispatcher> dispatchers = getDispatchers(eventClass);
+        final ConsumerIndex<EventDispatcher> dispatchers = getDispatcherIndex(eventClass);
         final boolean result = !dispatchers.isEmpty();
         return result;
     }
 
+    /**
+     * Publishes the new snapshot of the index with the entries for the given event classes rebuilt.
+     *
+     * <p>Must be called under the lock guarding {@link #dispatchers}.
+     */
+    private void updateIndex(Iterable<EventClass> eventClasses) {
+        final Map<EventClass, ConsumerIndex<EventDispatcher>> updated = newHashMap(index);
+        for (EventClass eventClass : eventClasses) {
+            final Set<EventDispatcher> classDispatchers = dispatchers.get(eventClass);
+            if (classDispatchers.isEmpty()) {
+                updated.remove(eventClass);
+            } else {
+                updated.put(eventClass, ConsumerIndex.of(classDispatchers));
+            }
+        }
+        index = ImmutableMap.copyOf(updated);
+    }
+
     /**
      * Ensures that the dispatcher forwards at least one event.
      *
@@ -22,7 +22,9 @@ package org.spine3.server.event;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.Any;
 import com.google.protobuf.Message;
 import io.grpc.stub.StreamObserver;
 import org.slf4j.Logger;
@@ -33,9 +35,14 @@ import org.spine3.base.Response;
 import org.spine3.base.Responses;
 import org.spine3.server.Statuses;
 import org.spine3.server.aggregate.AggregateRepository;
+import org.spine3.server.delivery.ConsumerIndex;
+import org.spine3.server.delivery.PartitionedExecutor;
 import org.spine3.server.event.enrich.EventEnricher;
 import org.spine3.server.event.error.InvalidEventException;
 import org.spine3.server.event.error.UnsupportedEventException;
+import org.spine3.server.event.metrics.EventMetrics;
+import org.spine3.server.event.metrics.InMemoryEventMetrics;
+import org.spine3.server.event.metrics.NoOpEventMetrics;
 import org.spine3.server.procman.ProcessManager;
 import org.spine3.server.storage.StorageFactory;
 import org.spine3.server.type.EventClass;
@@ -43,13 +50,16 @@ import org.spine3.server.validate.MessageValidator;
 import org.spine3.validate.ConstraintViolation;
 
 import javax.annotation.Nullable;
-import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executor;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+import static com.google.common.collect.Maps.newHashMap;
 
 /**
  * Dispatches incoming events to subscribers, and provides ways for registering those subscribers.
@@ -68,6 +78,7 @@ import static com.google.common.base.Preconditions.checkState;
  * <h2>Posting Events</h2>
  * <p>Events are posted to an EventBus using {@link #post(Event)} method. Normally this
  * is done by an {@link AggregateRepository} in the process of handling a command, or by a {@link ProcessManager}.
+ * Several events produced at once may be posted with {@link #post(Iterable)}.
  *
  * <p>The passed {@link Event} is stored in the {@link EventStore} associated with the {@code EventBus}
  * <strong>before</strong> it is passed to subscribers.
@@ -75,8 +86,27 @@ import static com.google.common.base.Preconditions.checkState;
  * <p>The delivery of the events to the subscribers and dispatchers is performed by an {@link SubscriberEventDelivery}
  * and {@link DispatcherEventDelivery} strategies associated with the instance of the {@code EventBus}, respectively.
  *
- * <p>If there is no subscribers or dispatchers for the posted event, the fact is logged as warning,
- * with no further processing.
+ * <p>If there is no subscribers or dispatchers for the posted event, it is passed to the {@link DeadEventSink}
+ * with no further processing. Such an event is not enriched, and is stored only if the
+ * {@link UnconsumedEventPolicy} of the bus says so. By default, the sink is a {@link DeadEventBuffer}, which counts such events
+ * by their classes and keeps the most recent of them.
+ *
+ * <h2>Asynchronous Posting</h2>
+ * <p>By default, events are enriched and delivered in the thread calling {@link #post(Event)}.
+ * If the {@code EventBus} is built with a {@linkplain Builder#setPostingPartitionCount(int) posting partition count},
+ * {@link #post(Event)} returns right after the event is stored, and the rest of the processing happens in one of
+ * the posting partitions.
+ *
+ * <p>The partition is selected by the ID of the event producer. Therefore events produced by the same aggregate
+ * are delivered in the order of posting, while events of different aggregates are delivered in parallel.
+ * The queue of each partition is bounded; if it is full, {@link #post(Event)} blocks until there is space for
+ * the event. {@link #close()} waits until all the posted events are delivered.
+ *
+ * <h2>Metrics</h2>
+ * <p>The bus reports the posted events, the time of storing, enrichment and delivery of the events, and the time
+ * of handling by each consumer to its {@link EventMetrics}. The depth of the posting queue is reported
+ * as {@code EventBus-posting}. By default, the measurements are {@linkplain NoOpEventMetrics ignored};
+ * set an {@link InMemoryEventMetrics} in the {@link Builder} to keep them in memory.
  *
  * @author Mikhail Melnik
  * @author Alexander Yevsyuov
@@ -90,6 +120,9 @@ public class EventBus implements AutoCloseable {
      * on final or anonymous classes).
      **/
 
+    /** The prefix of the names of threads delivering events in the asynchronous mode. */
+    private static final String POSTING_THREAD_NAME_PREFIX = "EventBus-posting";
+
     /** The registry of event dispatchers. */
     private final DispatcherRegistry dispatcherRegistry = new DispatcherRegistry();
 
@@ -108,6 +141,22 @@ public class EventBus implements AutoCloseable {
     /** The validator for events posted to the bus. */
     private final MessageValidator eventValidator;
 
+    /** The executor for the asynchronous event delivery or {@code null} if events are delivered synchronously. */
+    @Nullable
+    private final PartitionedExecutor postingExecutor;
+
+    /** The event classes, which have dispatchers or subscribers. */
+    private final EventRoutingTable routingTable = new EventRoutingTable();
+
+    /** The sink for the events, which have neither dispatchers nor subscribers. */
+    private final DeadEventSink deadEventSink;
+
+    /** Defines whether the events, which have neither dispatchers nor subscribers, are stored. */
+    private final UnconsumedEventPolicy unconsumedEventPolicy;
+
+    /** The measurements of the event processing. */
+    private final EventMetrics metrics;
+
     /** The enricher for posted events or {@code null} if the enrichment is not supported. */
     @Nullable
     private EventEnricher enricher;
@@ -121,6 +170,14 @@ public class EventBus implements AutoCloseable {
         this.enricher = builder.enricher;
         this.subscriberEventDelivery = builder.subscriberEventDelivery;
         this.dispatcherEventDelivery = builder.dispatcherEventDelivery;
+        this.deadEventSink = builder.deadEventSink;
+        this.unconsumedEventPolicy = builder.unconsumedEventPolicy;
+        this.metrics = builder.metrics;
+        this.postingExecutor = builder.postingPartitionCount == null
+                               ? null
+                               : new PartitionedExecutor(builder.postingPartitionCount,
+                                                         builder.postingQueueCapacity,
+                                                         POSTING_THREAD_NAME_PREFIX);
 
         /**
          * Sets up the {@code DispatcherEventDelivery} and {@code SubscriberEventDelivery} with an ability to obtain
@@ -131,27 +188,29 @@ public class EventBus implements AutoCloseable {
          **/
         injectDispatcherProvider();
         injectSubscriberProvider();
+        dispatcherEventDelivery.setMetrics(metrics);
+        subscriberEventDelivery.setMetrics(metrics);
     }
 
     private void injectDispatcherProvider() {
-        dispatcherEventDelivery.setConsumerProvider(new Function<EventClass, Set<EventDispatcher>>() {
+        dispatcherEventDelivery.setConsumerProvider(new Function<EventClass, ConsumerIndex<EventDispatcher>>() {
             @Nullable
             @Override
-            public Set<EventDispatcher> apply(@Nullable EventClass eventClass) {
+            public ConsumerIndex<EventDispatcher> apply(@Nullable EventClass eventClass) {
                 checkNotNull(eventClass);
-                final Set<EventDispatcher> dispatchers = dispatcherRegistry.getDispatchers(eventClass);
+                final ConsumerIndex<EventDispatcher> dispatchers = dispatcherRegistry.getDispatcherIndex(eventClass);
                 return dispatchers;
             }
         });
     }
 
     private void injectSubscriberProvider() {
-        subscriberEventDelivery.setConsumerProvider(new Function<EventClass, Set<EventSubscriber>>() {
+        subscriberEventDelivery.setConsumerProvider(new Function<EventClass, ConsumerIndex<EventSubscriber>>() {
             @Nullable
             @Override
-            public Set<EventSubscriber> apply(@Nullable EventClass eventClass) {
+            public ConsumerIndex<EventSubscriber> apply(@Nullable EventClass eventClass) {
                 checkNotNull(eventClass);
-                final Set<EventSubscriber> subscribers = subscriberRegistry.getSubscribers(eventClass);
+                final ConsumerIndex<EventSubscriber> subscribers = subscriberRegistry.getSubscriberIndex(eventClass);
                 return subscribers;
             }
         });
@@ -185,6 +244,12 @@ public class EventBus implements AutoCloseable {
         return subscriberEventDelivery;
     }
 
+    @VisibleForTesting
+    @Nullable
+    PartitionedExecutor getPostingExecutor() {
+        return postingExecutor;
+    }
+
     /**
      * Subscribes the event subscriber to receive events from the bus.
      *
@@ -197,11 +262,17 @@ public class EventBus implements AutoCloseable {
     public void subscribe(EventSubscriber object) {
         checkNotNull(object);
         subscriberRegistry.subscribe(object);
+        updateRoutingTable();
     }
 
     /** Registers the passed dispatcher with the bus. */
     public void register(EventDispatcher dispatcher) {
         dispatcherRegistry.register(dispatcher);
+        updateRoutingTable();
+    }
+
+    private void updateRoutingTable() {
+        routingTable.update(dispatcherRegistry, subscriberRegistry);
     }
 
     @VisibleForTesting
@@ -230,11 +301,32 @@ public class EventBus implements AutoCloseable {
     public void unsubscribe(EventSubscriber object) {
         checkNotNull(object);
         subscriberRegistry.unsubscribe(object);
+        updateRoutingTable();
     }
 
     /** Removes dispatcher from the bus. */
     public void unregister(EventDispatcher dispatcher) {
         dispatcherRegistry.unregister(dispatcher);
+        updateRoutingTable();
+        dispatcherEventDelivery.onUnregistered(dispatcher);
+    }
+
+    /**
+     * Returns the sink for the events, which have neither dispatchers nor subscribers.
+     *
+     * <p>Unless set in the {@link Builder}, it is a {@link DeadEventBuffer}.
+     */
+    public DeadEventSink getDeadEventSink() {
+        return deadEventSink;
+    }
+
+    /**
+     * Returns the measurements of the event processing in the bus.
+     *
+     * <p>Unless set in the {@link Builder}, it is the {@link NoOpEventMetrics}.
+     */
+    public EventMetrics getMetrics() {
+        return metrics;
     }
 
     /** Returns {@link EventStore} associated with the bus. */
@@ -247,56 +339,179 @@ public class EventBus implements AutoCloseable {
      *
      * <p>The event is stored in the associated {@link EventStore} before passing it to dispatchers and subscribers.
      *
+     * <p>If the bus works in the asynchronous mode, the event is passed to dispatchers and subscribers
+     * after this method returns.
+     *
+     * <p>If there are neither dispatchers nor subscribers for the event, it is not enriched and is either stored
+     * or dropped according to the {@link UnconsumedEventPolicy} of the bus.
+     *
      * @param event the event to be handled
      */
     public void post(Event event) {
-        store(event);
-        final Event enriched = enrich(event);
-        final int dispatchersCalled = callDispatchers(enriched);
-        final int subscribersInvoked = invokeSubscribers(enriched);
+        final EventClass eventClass = EventClass.of(event);
+        metrics.onPosted(eventClass);
+        final boolean consumed = routingTable.isConsumed(eventClass);
+        if (consumed || unconsumedEventPolicy == UnconsumedEventPolicy.STORE) {
+            store(event);
+        }
+        route(event, consumed);
+    }
 
-        if (dispatchersCalled == 0 && subscribersInvoked == 0) {
-            handleDeadEvent(event);
+    /**
+     * Posts the batch of events for handling.
+     *
+     * <p>All the events are stored in the associated {@link EventStore} at once before passing them to
+     * dispatchers and subscribers. The dispatchers and subscribers are looked up once per each event class
+     * met in the batch.
+     *
+     * <p>The events are delivered in the order of iteration.
+     *
+     * @param events the events to be handled
+     * @see #post(Event)
+     */
+    public void post(Iterable<Event> events) {
+        checkNotNull(events);
+        final List<Event> batch = ImmutableList.copyOf(events);
+        if (batch.isEmpty()) {
+            return;
+        }
+        final boolean[] consumed = new boolean[batch.size()];
+        final List<Event> toStore = newArrayListWithCapacity(batch.size());
+        for (int i = 0; i < consumed.length; i++) {
+            final Event event = batch.get(i);
+            final EventClass eventClass = EventClass.of(event);
+            metrics.onPosted(eventClass);
+            consumed[i] = routingTable.isConsumed(eventClass);
+            if (consumed[i] || unconsumedEventPolicy == UnconsumedEventPolicy.STORE) {
+                toStore.add(event);
+            }
+        }
+        if (!toStore.isEmpty()) {
+            final long start = System.nanoTime();
+            eventStore.appendAll(toStore);
+            metrics.onStored(toStore.size(), System.nanoTime() - start);
+        }
+        final Map<EventClass, ConsumerIndex<EventDispatcher>> dispatchers = newHashMap();
+        final Map<EventClass, ConsumerIndex<EventSubscriber>> subscribers = newHashMap();
+        for (int i = 0; i < consumed.length; i++) {
+            final Event event = batch.get(i);
+            if (!consumed[i]) {
+                handleDeadEvent(event);
+                continue;
+            }
+            final EventClass eventClass = EventClass.of(event);
+            ConsumerIndex<EventDispatcher> eventDispatchers = dispatchers.get(eventClass);
+            ConsumerIndex<EventSubscriber> eventSubscribers = subscribers.get(eventClass);
+            if (eventDispatchers == null) {
+                eventDispatchers = dispatcherRegistry.getDispatcherIndex(eventClass);
+                eventSubscribers = subscriberRegistry.getSubscriberIndex(eventClass);
+                dispatchers.put(eventClass, eventDispatchers);
+                subscribers.put(eventClass, eventSubscribers);
+            }
+            if (postingExecutor == null) {
+                deliver(event, eventDispatchers, eventSubscribers);
+            } else {
+                deliverAsync(event, eventDispatchers, eventSubscribers);
+            }
         }
     }
 
-    private Event enrich(Event event) {
-        if (enricher == null ||
-                !enricher.canBeEnriched(event)) {
-            return event;
+    /** Passes the stored event to its consumers, or to the {@link DeadEventSink} if it has none. */
+    private void route(Event event, boolean consumed) {
+        if (!consumed) {
+            handleDeadEvent(event);
+        } else if (postingExecutor == null) {
+            deliver(event);
+        } else {
+            deliverAsync(event);
         }
-        final Event enriched = enricher.enrich(event);
-        return enriched;
     }
 
     /**
-     * Call the dispatchers for the {@code event}.
+     * Queues the event for the delivery in the partition defined by its producer.
      *
-     * @param event the event to pass to the dispatchers.
-     * @return the number of the dispatchers called, or {@code 0} if there weren't any.
+     * <p>If the bus is being closed, the event is delivered in the current thread.
      */
-    private int callDispatchers(Event event) {
+    private void deliverAsync(Event event) {
+        final EventClass eventClass = EventClass.of(event);
+        final ConsumerIndex<EventDispatcher> dispatchers = dispatcherRegistry.getDispatcherIndex(eventClass);
+        final ConsumerIndex<EventSubscriber> subscribers = subscriberRegistry.getSubscriberIndex(eventClass);
+        deliverAsync(event, dispatchers, subscribers);
+    }
+
+    private void deliverAsync(final Event event,
+                              final ConsumerIndex<EventDispatcher> dispatchers,
+                              final ConsumerIndex<EventSubscriber> subscribers) {
+        checkNotNull(postingExecutor);
+        if (postingExecutor.isClosed()) {
+            deliver(event, dispatchers, subscribers);
+            return;
+        }
+        final Any producerId = event.getContext()
+                                    .getProducerId();
+        try {
+            postingExecutor.execute(producerId, new Runnable() {
+                @Override
+                public void run() {
+                    deliver(event, dispatchers, subscribers);
+                }
+            });
+        } catch (IllegalStateException e) {
+            if (!postingExecutor.isClosed()) {
+                throw e;
+            }
+            // The bus is closed after the check above; the event is already stored and must be delivered.
+            deliver(event, dispatchers, subscribers);
+            return;
+        }
+        metrics.onQueueDepth(POSTING_THREAD_NAME_PREFIX, postingExecutor.getQueuedTaskCount());
+    }
+
+    private void deliver(Event event) {
         final EventClass eventClass = EventClass.of(event);
-        final Collection<EventDispatcher> dispatchers = dispatcherRegistry.getDispatchers(eventClass);
-        dispatcherEventDelivery.deliver(event);
-        return dispatchers.size();
+        final ConsumerIndex<EventDispatcher> dispatchers = dispatcherRegistry.getDispatcherIndex(eventClass);
+        final ConsumerIndex<EventSubscriber> subscribers = subscriberRegistry.getSubscriberIndex(eventClass);
+        deliver(event, dispatchers, subscribers);
     }
 
     /**
-     * Invoke the subscribers for the {@code event}.
+     * Enriches the event and passes it to the dispatchers and subscribers.
      *
-     * @param event the event to pass to the subscribers.
-     * @return the number of the subscribers invoked, or {@code 0} if no subscribers were invoked.
+     * @param event       the event to deliver
+     * @param dispatchers the dispatchers of the event class
+     * @param subscribers the subscribers of the event class
      */
-    private int invokeSubscribers(Event event) {
+    private void deliver(Event event,
+                         ConsumerIndex<EventDispatcher> dispatchers,
+                         ConsumerIndex<EventSubscriber> subscribers) {
+        if (dispatchers.isEmpty() && subscribers.isEmpty()) {
+            // The consumers were removed after the event had been routed.
+            handleDeadEvent(event);
+            return;
+        }
         final EventClass eventClass = EventClass.of(event);
-        final Set<EventSubscriber> subscribers = subscriberRegistry.getSubscribers(eventClass);
-        subscriberEventDelivery.deliver(event);
-        return subscribers.size();
+        final Event enriched = enrich(event, eventClass);
+        final long start = System.nanoTime();
+        dispatcherEventDelivery.deliver(enriched, dispatchers.getAll());
+        subscriberEventDelivery.deliver(enriched, subscribers.getAll());
+        metrics.onDelivered(eventClass, System.nanoTime() - start);
+    }
+
+    private Event enrich(Event event, EventClass eventClass) {
+        if (enricher == null ||
+                !enricher.canBeEnriched(event)) {
+            return event;
+        }
+        final long start = System.nanoTime();
+        final Event enriched = enricher.enrich(event);
+        metrics.onEnriched(eventClass, System.nanoTime() - start);
+        return enriched;
     }
 
     private void store(Event event) {
+        final long start = System.nanoTime();
         eventStore.append(event);
+        metrics.onStored(1, System.nanoTime() - start);
     }
 
     /**
@@ -354,21 +569,33 @@ public class EventBus implements AutoCloseable {
     }
 
     private boolean isUnsupportedEvent(EventClass eventClass) {
-        final boolean noDispatchers = !dispatcherRegistry.hasDispatchersFor(eventClass);
-        final boolean noSubscribers = !hasSubscribers(eventClass);
-        final boolean isUnsupported = noDispatchers && noSubscribers;
+        final boolean isUnsupported = !routingTable.isConsumed(eventClass);
         return isUnsupported;
     }
 
-    private static void handleDeadEvent(Message event) {
-        log().warn("No subscriber or dispatcher defined for the event class: " + event.getClass()
-                                                                                      .getName());
+    private void handleDeadEvent(Event event) {
+        deadEventSink.onDeadEvent(event);
     }
 
+    /**
+     * Closes the bus.
+     *
+     * <p>If the bus works in the asynchronous mode, waits until all the posted events are delivered.
+     */
     @Override
     public void close() throws Exception {
+        if (postingExecutor != null) {
+            postingExecutor.close();
+        }
+        if (dispatcherEventDelivery instanceof AutoCloseable) {
+            ((AutoCloseable) dispatcherEventDelivery).close();
+        }
+        if (subscriberEventDelivery instanceof AutoCloseable) {
+            ((AutoCloseable) subscriberEventDelivery).close();
+        }
         dispatcherRegistry.unregisterAll();
         subscriberRegistry.unsubscribeAll();
+        updateRoutingTable();
         eventStore.close();
     }
 
@@ -377,6 +604,9 @@ public class EventBus implements AutoCloseable {
 
         private static final String EVENT_STORE_CONFIGURED_MESSAGE = "EventStore is already configured.";
 
+        /** The default maximum number of events waiting for the delivery in a posting partition. */
+        public static final int DEFAULT_POSTING_QUEUE_CAPACITY = 1000;
+
         /**
          * A {@code StorageFactory} for configuring the {@code EventStore} instance for this {@code EventBus}.
          *
@@ -442,6 +672,46 @@ public class EventBus implements AutoCloseable {
         @Nullable
         private EventEnricher enricher;
 
+        /**
+         * Optional number of partitions for the asynchronous event delivery.
+         *
+         * <p>If not set, events are delivered synchronously.
+         */
+        @Nullable
+        private Integer postingPartitionCount;
+
+        /**
+         * Optional maximum number of events waiting for the delivery in each posting partition.
+         *
+         * <p>If not set, {@link #DEFAULT_POSTING_QUEUE_CAPACITY} will be used in the asynchronous mode.
+         */
+        @Nullable
+        private Integer postingQueueCapacity;
+
+        /**
+         * Optional sink for the events, which have neither dispatchers nor subscribers.
+         *
+         * <p>If not set, a {@link DeadEventBuffer} will be used.
+         */
+        @Nullable
+        private DeadEventSink deadEventSink;
+
+        /**
+         * Optional policy for the events, which have neither dispatchers nor subscribers.
+         *
+         * <p>If not set, {@link UnconsumedEventPolicy#STORE} will be used.
+         */
+        @Nullable
+        private UnconsumedEventPolicy unconsumedEventPolicy;
+
+        /**
+         * Optional metrics of the event processing.
+         *
+         * <p>If not set, the {@link NoOpEventMetrics} will be used.
+         */
+        @Nullable
+        private EventMetrics metrics;
+
         private Builder() {
         }
 
@@ -514,8 +784,10 @@ public class EventBus implements AutoCloseable {
          * Sets a {@code SubscriberEventDelivery} to be used for the event delivery to the subscribers
          * in the {@code EventBus} we build.
          *
-         * <p>If the {@code SubscriberEventDelivery} is not set, {@link SubscriberEventDelivery#directDelivery()}
+         * <p>If the {@code SubscriberEventDelivery} is not set, a new {@linkplain SubscriberEventDelivery#directDelivery() direct delivery}
          * will be used.
+         *
+         * <p>The delivery must not be shared with other instances of {@code EventBus}.
          */
         public Builder setSubscriberEventDelivery(SubscriberEventDelivery delivery) {
             this.subscriberEventDelivery = checkNotNull(delivery);
@@ -530,8 +802,10 @@ public class EventBus implements AutoCloseable {
          * Sets a {@code DispatcherEventDelivery} to be used for the event delivery to the dispatchers
          * in the {@code EventBus} we build.
          *
-         * <p>If the {@code DispatcherEventDelivery} is not set, {@link DispatcherEventDelivery#directDelivery()}
+         * <p>If the {@code DispatcherEventDelivery} is not set, a new {@linkplain DispatcherEventDelivery#directDelivery() direct delivery}
          * will be used.
+         *
+         * <p>The delivery must not be shared with other instances of {@code EventBus}.
          */
         public Builder setDispatcherEventDelivery(DispatcherEventDelivery delivery) {
             this.dispatcherEventDelivery = checkNotNull(delivery);
@@ -568,6 +842,90 @@ public class EventBus implements AutoCloseable {
             return Optional.fromNullable(enricher);
         }
 
+        /**
+         * Turns on the asynchronous event delivery in the {@code EventBus} we build.
+         *
+         * <p>Events are distributed between the passed number of partitions by their producer IDs.
+         * Each partition delivers its events in a separate thread in the order of posting.
+         *
+         * <p>A reasonable value is the number of available processors.
+         *
+         * @param partitionCount a positive number of the posting partitions
+         * @see #setPostingQueueCapacity(int)
+         */
+        public Builder setPostingPartitionCount(int partitionCount) {
+            checkArgument(partitionCount > 0, "Posting partition count must be positive.");
+            this.postingPartitionCount = partitionCount;
+            return this;
+        }
+
+        public Optional<Integer> getPostingPartitionCount() {
+            return Optional.fromNullable(postingPartitionCount);
+        }
+
+        /**
+         * Sets the maximum number of events waiting for the delivery in each posting partition.
+         *
+         * <p>When the queue of a partition is full, the posting thread waits until there is space for the event.
+         *
+         * <p>Makes sense only in the asynchronous mode. If not set,
+         * {@link #DEFAULT_POSTING_QUEUE_CAPACITY} will be used.
+         *
+         * @param capacity a positive number of events
+         * @see #setPostingPartitionCount(int)
+         */
+        public Builder setPostingQueueCapacity(int capacity) {
+            checkArgument(capacity > 0, "Posting queue capacity must be positive.");
+            this.postingQueueCapacity = capacity;
+            return this;
+        }
+
+        public Optional<Integer> getPostingQueueCapacity() {
+            return Optional.fromNullable(postingQueueCapacity);
+        }
+
+        /**
+         * Sets the sink for the events, which have neither dispatchers nor subscribers.
+         *
+         * <p>If not set, a {@link DeadEventBuffer} of the default capacity will be used.
+         */
+        public Builder setDeadEventSink(DeadEventSink sink) {
+            this.deadEventSink = checkNotNull(sink);
+            return this;
+        }
+
+        public Optional<DeadEventSink> getDeadEventSink() {
+            return Optional.fromNullable(deadEventSink);
+        }
+
+        /**
+         * Sets the policy for the events, which have neither dispatchers nor subscribers.
+         *
+         * <p>If not set, {@link UnconsumedEventPolicy#STORE} will be used.
+         */
+        public Builder setUnconsumedEventPolicy(UnconsumedEventPolicy policy) {
+            this.unconsumedEventPolicy = checkNotNull(policy);
+            return this;
+        }
+
+        public Optional<UnconsumedEventPolicy> getUnconsumedEventPolicy() {
+            return Optional.fromNullable(unconsumedEventPolicy);
+        }
+
+        /**
+         * Sets the metrics, to which the {@code EventBus} we build reports the event processing.
+         *
+         * <p>If not set, the {@link NoOpEventMetrics} will be used.
+         */
+        public Builder setMetrics(EventMetrics metrics) {
+            this.metrics = checkNotNull(metrics);
+            return this;
+        }
+
+        public Optional<EventMetrics> getMetrics() {
+            return Optional.fromNullable(metrics);
+        }
+
         public EventBus build() {
             checkState(storageFactory != null || eventStore != null,
                        "Either storageFactory or eventStore must be set to build the EventBus instance");
@@ -596,6 +954,22 @@ public class EventBus implements AutoCloseable {
                 eventValidator = MessageValidator.newInstance();
             }
 
+            if (postingQueueCapacity == null) {
+                postingQueueCapacity = DEFAULT_POSTING_QUEUE_CAPACITY;
+            }
+
+            if (deadEventSink == null) {
+                deadEventSink = new DeadEventBuffer();
+            }
+
+            if (unconsumedEventPolicy == null) {
+                unconsumedEventPolicy = UnconsumedEventPolicy.STORE;
+            }
+
+            if (metrics == null) {
+                metrics = NoOpEventMetrics.getInstance();
+            }
+
             final EventBus result = new EventBus(this);
             return result;
         }
@@ -22,13 +22,18 @@ package org.spine3.server.event;
 import com.google.common.base.Function;
 import org.spine3.Internal;
 import org.spine3.base.Event;
+import org.spine3.server.delivery.ConsumerIndex;
 import org.spine3.server.delivery.Delivery;
+import org.spine3.server.event.metrics.EventMetrics;
+import org.spine3.server.event.metrics.NoOpEventMetrics;
 import org.spine3.server.type.EventClass;
 
+import javax.annotation.Nullable;
 import java.util.Collection;
-import java.util.Set;
 import java.util.concurrent.Executor;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 /**
  * Base functionality for the routines delivering the {@link org.spine3.base.Event}s to event consumers,
  * such as {@link EventDispatcher}s or {@link EventSubscriber}s.
@@ -39,7 +44,10 @@ import java.util.concurrent.Executor;
 @Internal
 abstract class EventDelivery<C> extends Delivery<Event, C> {
 
-    private Function<EventClass, Set<C>> consumerProvider;
+    private Function<EventClass, ConsumerIndex<C>> consumerProvider;
+
+    @Nullable
+    private EventMetrics metrics;
 
     /** {@inheritDoc} */
     EventDelivery(Executor delegate) {
@@ -52,13 +60,60 @@ abstract class EventDelivery<C> extends Delivery<Event, C> {
     }
 
     /** Used by the instance of {@link EventBus} to inject the knowledge about up-to-date consumers for the event */
-    void setConsumerProvider(Function<EventClass, Set<C>> consumerProvider) {
+    void setConsumerProvider(Function<EventClass, ConsumerIndex<C>> consumerProvider) {
         this.consumerProvider = consumerProvider;
     }
 
+    /** Used by the instance of {@link EventBus} to inject the metrics of the bus. */
+    void setMetrics(EventMetrics metrics) {
+        this.metrics = checkNotNull(metrics);
+    }
+
+    /** Returns the metrics of the {@link EventBus} or {@code null} if the delivery is not used by a bus yet. */
+    @Nullable
+    EventMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Measures the time of handling the event by the consumer, if the delivery is used by an {@link EventBus}
+     * with the metrics other than the {@link NoOpEventMetrics}.
+     */
+    @Override
+    protected Runnable decorate(final Runnable deliveryAction, final C consumer, Event event) {
+        final EventMetrics currentMetrics = metrics;
+        if (currentMetrics == null || currentMetrics == NoOpEventMetrics.getInstance()) {
+            return deliveryAction;
+        }
+        final Runnable result = new Runnable() {
+            @Override
+            public void run() {
+                final long start = System.nanoTime();
+                try {
+                    deliveryAction.run();
+                } finally {
+                    currentMetrics.onHandled(consumer.getClass(), System.nanoTime() - start);
+                }
+            }
+        };
+        return result;
+    }
+
     @Override
     protected final Collection<C> consumersFor(Event event) {
+        final ConsumerIndex<C> consumers = indexFor(event);
+        return consumers.getAll();
+    }
+
+    @Override
+    protected final Collection<C> consumersFor(Event event, Class<?> consumerClass) {
+        final ConsumerIndex<C> consumers = indexFor(event);
+        return consumers.getOfClass(consumerClass);
+    }
+
+    private ConsumerIndex<C> indexFor(Event event) {
         final EventClass eventClass = EventClass.of(event);
-        return consumerProvider.apply(eventClass);
+        final ConsumerIndex<C> result = consumerProvider.apply(eventClass);
+        return result;
     }
 }
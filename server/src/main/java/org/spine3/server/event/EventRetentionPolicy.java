@@ -0,0 +1,169 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.event;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableMap;
+import com.google.protobuf.Duration;
+import com.google.protobuf.Message;
+import com.google.protobuf.Timestamp;
+import org.spine3.protobuf.Timestamps;
+import org.spine3.protobuf.TypeUrl;
+import org.spine3.server.event.storage.EventStorageRecord;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Maps.newHashMap;
+import static com.google.protobuf.util.Timestamps.subtract;
+import static org.spine3.protobuf.Durations.toNanos;
+
+/**
+ * Defines which events an {@link EventStorage} no longer needs to keep.
+ *
+ * <p>An event expires if any of the following is true:
+ * <ul>
+ *     <li>the {@linkplain Builder#setRetention(Class, Duration) retention period} is set for the class
+ *         of the event, and the event is older than the period;
+ *     <li>the {@linkplain Builder#setSnapshotHorizon(SnapshotHorizon) snapshot horizon} is set,
+ *         and the event happened before the latest snapshot of its aggregate.
+ * </ul>
+ *
+ * <p>The events of other classes are kept forever.
+ *
+ * @see EventStorage#applyRetention(EventRetentionPolicy)
+ */
+public final class EventRetentionPolicy {
+
+    /** The retention periods by the type names of the events. */
+    private final ImmutableMap<String, Duration> retentionByType;
+
+    @Nullable
+    private final SnapshotHorizon snapshotHorizon;
+
+    private EventRetentionPolicy(Builder builder) {
+        this.retentionByType = ImmutableMap.copyOf(builder.retentionByType);
+        this.snapshotHorizon = builder.snapshotHorizon;
+    }
+
+    /** Creates a builder for new {@code EventRetentionPolicy}. */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Obtains the predicate matching the records of the events, which expire at the given time.
+     *
+     * @param now the current time
+     */
+    public Predicate<EventStorageRecord> expiredAt(Timestamp now) {
+        checkNotNull(now);
+        final ImmutableMap.Builder<String, Timestamp> cutoffs = ImmutableMap.builder();
+        for (Map.Entry<String, Duration> retention : retentionByType.entrySet()) {
+            cutoffs.put(retention.getKey(), subtract(now, retention.getValue()));
+        }
+        final Predicate<EventStorageRecord> result = new IsExpired(cutoffs.build(), snapshotHorizon);
+        return result;
+    }
+
+    /** The builder for {@link EventRetentionPolicy}. */
+    public static class Builder {
+
+        private final Map<String, Duration> retentionByType = newHashMap();
+        @Nullable
+        private SnapshotHorizon snapshotHorizon;
+
+        private Builder() {}
+
+        /**
+         * Sets the period to keep the events of the given class for.
+         *
+         * @param eventClass the class of the event messages
+         * @param period     the positive retention period
+         */
+        public Builder setRetention(Class<? extends Message> eventClass, Duration period) {
+            checkNotNull(eventClass);
+            checkNotNull(period);
+            checkArgument(toNanos(period) > 0, "Retention period must be positive.");
+            final String typeName = TypeUrl.of(eventClass)
+                                           .getTypeName();
+            retentionByType.put(typeName, period);
+            return this;
+        }
+
+        public Map<String, Duration> getRetentionByType() {
+            return ImmutableMap.copyOf(retentionByType);
+        }
+
+        /**
+         * Sets the horizon, before which the events of an aggregate are covered by its snapshot,
+         * and may thus be removed regardless of their class.
+         */
+        public Builder setSnapshotHorizon(SnapshotHorizon snapshotHorizon) {
+            this.snapshotHorizon = checkNotNull(snapshotHorizon);
+            return this;
+        }
+
+        @Nullable
+        public SnapshotHorizon getSnapshotHorizon() {
+            return snapshotHorizon;
+        }
+
+        public EventRetentionPolicy build() {
+            final EventRetentionPolicy result = new EventRetentionPolicy(this);
+            return result;
+        }
+    }
+
+    /** Matches the records of the expired events. */
+    private static class IsExpired implements Predicate<EventStorageRecord> {
+
+        /** The times, before which the events of the types expire, by the type names. */
+        private final ImmutableMap<String, Timestamp> cutoffs;
+
+        @Nullable
+        private final SnapshotHorizon snapshotHorizon;
+
+        private IsExpired(ImmutableMap<String, Timestamp> cutoffs, @Nullable SnapshotHorizon snapshotHorizon) {
+            this.cutoffs = cutoffs;
+            this.snapshotHorizon = snapshotHorizon;
+        }
+
+        @Override
+        public boolean apply(@Nullable EventStorageRecord record) {
+            if (record == null) {
+                return false;
+            }
+            final Timestamp time = record.getTimestamp();
+            final Timestamp cutoff = cutoffs.get(record.getEventType());
+            if (cutoff != null && Timestamps.compare(time, cutoff) < 0) {
+                return true;
+            }
+            if (snapshotHorizon == null) {
+                return false;
+            }
+            final Timestamp snapshotTime = snapshotHorizon.getSnapshotTime(record);
+            final boolean result = snapshotTime != null && Timestamps.compare(time, snapshotTime) < 0;
+            return result;
+        }
+    }
+}
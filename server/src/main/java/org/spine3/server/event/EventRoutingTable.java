@@ -0,0 +1,56 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.event;
+
+import com.google.common.collect.ImmutableSet;
+import org.spine3.server.type.EventClass;
+
+/**
+ * The set of event classes, which have at least one dispatcher or subscriber in the {@link EventBus}.
+ *
+ * <p>Allows to decide how to route a posted event with a single lookup, before the event is stored or enriched.
+ *
+ * <p>The table is rebuilt from the registries upon each change of them. The lookups read the latest
+ * snapshot without locking.
+ *
+ * @see UnconsumedEventPolicy
+ */
+class EventRoutingTable {
+
+    private volatile ImmutableSet<EventClass> consumedClasses = ImmutableSet.of();
+
+    /**
+     * Rebuilds the table from the current state of the registries.
+     *
+     * @param dispatchers the registry of the event dispatchers
+     * @param subscribers the registry of the event subscribers
+     */
+    synchronized void update(DispatcherRegistry dispatchers, SubscriberRegistry subscribers) {
+        consumedClasses = ImmutableSet.<EventClass>builder()
+                                      .addAll(dispatchers.getEventClasses())
+                                      .addAll(subscribers.getEventClasses())
+                                      .build();
+    }
+
+    /** Returns {@code true} if there is a dispatcher or a subscriber for the events of the given class. */
+    boolean isConsumed(EventClass eventClass) {
+        return consumedClasses.contains(eventClass);
+    }
+}
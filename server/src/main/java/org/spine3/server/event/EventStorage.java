@@ -22,12 +22,15 @@ package org.spine3.server.event;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.protobuf.Any;
 import com.google.protobuf.Timestamp;
 import org.spine3.SPI;
+import org.spine3.base.CommandContext;
 import org.spine3.base.Event;
 import org.spine3.base.EventContext;
 import org.spine3.base.EventId;
@@ -41,6 +44,7 @@ import java.util.List;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.spine3.base.Stringifiers.idToString;
+import static org.spine3.protobuf.Timestamps.getCurrentTime;
 import static org.spine3.protobuf.TypeUrl.ofEnclosed;
 import static org.spine3.validate.Validate.checkNotEmptyOrBlank;
 import static org.spine3.validate.Validate.checkPositive;
@@ -78,6 +82,65 @@ public abstract class EventStorage extends AbstractStorage<EventId, Event> {
         writeRecord(record);
     }
 
+    /**
+     * Writes the passed events into the storage.
+     *
+     * <p>The events are identified by the IDs from their contexts.
+     *
+     * <p>All the events are validated before writing any of them.
+     *
+     * <p>The consecutive events produced by the same command share a single instance of
+     * the {@link CommandContext} in the written records, so that the storages keeping the records
+     * in memory do not hold the copies of the context.
+     *
+     * @param events the events to write
+     */
+    public void writeAll(Iterable<Event> events) {
+        checkNotClosed();
+        checkNotNull(events);
+
+        final ImmutableList.Builder<EventStorageRecord> records = ImmutableList.builder();
+        CommandContext previousCommandContext = null;
+        for (Event event : events) {
+            final EventId id = event.getContext()
+                                    .getEventId();
+            final EventStorageRecord record = shareCommandContext(toEventStorageRecord(id, event),
+                                                                  previousCommandContext);
+            records.add(record);
+            final EventContext context = record.getContext();
+            previousCommandContext = context.hasCommandContext()
+                                     ? context.getCommandContext()
+                                     : null;
+        }
+        final List<EventStorageRecord> batch = records.build();
+        if (!batch.isEmpty()) {
+            writeRecords(batch);
+        }
+    }
+
+    /**
+     * Replaces the command context of the record with the passed instance if they are equal.
+     */
+    @VisibleForTesting
+    static EventStorageRecord shareCommandContext(EventStorageRecord record,
+                                                  @Nullable CommandContext commandContext) {
+        final EventContext context = record.getContext();
+        if (commandContext == null
+                || !context.hasCommandContext()
+                || context.getCommandContext() == commandContext
+                || !context.getCommandContext()
+                           .equals(commandContext)) {
+            return record;
+        }
+        final EventContext sharedContext = context.toBuilder()
+                                                  .setCommandContext(commandContext)
+                                                  .build();
+        final EventStorageRecord result = record.toBuilder()
+                                                .setContext(sharedContext)
+                                                .build();
+        return result;
+    }
+
     @Override
     public Event read(EventId id) {
         checkNotClosed();
@@ -99,6 +162,67 @@ public abstract class EventStorage extends AbstractStorage<EventId, Event> {
      */
     protected abstract Iterator<Event> iterator(EventStreamQuery query);
 
+    /**
+     * Splits the query into the queries of the consecutive time ranges, which can be read in parallel.
+     *
+     * <p>The time range of the stored events is split into the ranges of approximately equal length.
+     * Reading the partitions one by one gives the same events in the same order as reading
+     * the whole query.
+     *
+     * <p>If the storage does not provide the {@linkplain #getEarliestTime() earliest} and
+     * the {@linkplain #getLatestTime() latest} times of the events, the time range of the query is split.
+     * The query without both the time bounds is not split in this case.
+     *
+     * @param query the query to split
+     * @param count the maximum number of partitions
+     * @return the partitions in the chronological order
+     */
+    public List<EventStreamQuery> partitionByTime(EventStreamQuery query, int count) {
+        checkNotClosed();
+        checkNotNull(query);
+        checkPositive(count);
+
+        final Optional<Timestamp> after = query.hasAfter()
+                                          ? Optional.of(query.getAfter())
+                                          : Optional.<Timestamp>absent();
+        final Optional<Timestamp> before = query.hasBefore()
+                                           ? Optional.of(query.getBefore())
+                                           : Optional.<Timestamp>absent();
+        final Optional<Timestamp> earliest = getEarliestTime().or(after);
+        final Optional<Timestamp> latest = getLatestTime().or(before);
+        if (!earliest.isPresent() || !latest.isPresent()) {
+            return ImmutableList.of(query);
+        }
+        final List<EventStreamQuery> result = QueryPartitions.byTime(query, earliest.get(), latest.get(), count);
+        return result;
+    }
+
+    /**
+     * Obtains the time of the earliest stored event.
+     *
+     * <p>The default implementation returns {@code Optional.absent()}. Override this method
+     * if the storage can obtain the time without reading all the events.
+     *
+     * @return the time of the earliest event or {@code Optional.absent()} if the storage is empty
+     *         or does not track the time
+     */
+    protected Optional<Timestamp> getEarliestTime() {
+        return Optional.absent();
+    }
+
+    /**
+     * Obtains the time of the latest stored event.
+     *
+     * <p>The default implementation returns {@code Optional.absent()}. Override this method
+     * if the storage can obtain the time without reading all the events.
+     *
+     * @return the time of the latest event or {@code Optional.absent()} if the storage is empty
+     *         or does not track the time
+     */
+    protected Optional<Timestamp> getLatestTime() {
+        return Optional.absent();
+    }
+
     /**
      * Writes record into the storage.
      *
@@ -106,6 +230,45 @@ public abstract class EventStorage extends AbstractStorage<EventId, Event> {
      */
     protected abstract void writeRecord(EventStorageRecord record);
 
+    /**
+     * Writes the batch of records into the storage.
+     *
+     * <p>The default implementation writes the records one by one. Override this method
+     * if the storage can write several records at once, for example, in a single transaction.
+     *
+     * @param records the non-empty list of the records to write in the order of writing
+     */
+    protected void writeRecords(List<EventStorageRecord> records) {
+        for (EventStorageRecord record : records) {
+            writeRecord(record);
+        }
+    }
+
+    /**
+     * Removes the events, which have expired according to the passed policy.
+     *
+     * <p>The storage may keep some of the expired events for a while, if removing them right away
+     * is too expensive. Call this method periodically to keep the size of the storage bounded.
+     *
+     * @param policy the policy defining the expired events
+     * @return the number of the removed events
+     */
+    public long applyRetention(EventRetentionPolicy policy) {
+        checkNotClosed();
+        checkNotNull(policy);
+        final Predicate<EventStorageRecord> expired = policy.expiredAt(getCurrentTime());
+        final long result = removeRecords(expired);
+        return result;
+    }
+
+    /**
+     * Removes the records matching the predicate.
+     *
+     * @param expired the predicate matching the records to remove
+     * @return the number of the removed records
+     */
+    protected abstract long removeRecords(Predicate<EventStorageRecord> expired);
+
     /**
      * Reads storage format record.
      *
@@ -20,21 +20,31 @@
 package org.spine3.server.event;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.TextFormat;
 import io.grpc.ServerServiceDefinition;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spine3.base.Event;
 import org.spine3.base.Response;
 import org.spine3.base.Responses;
+import org.spine3.server.event.PartitionedEventIterator.Ordering;
 import org.spine3.server.event.grpc.EventStoreGrpc;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
@@ -44,7 +54,18 @@ import static com.google.common.base.Preconditions.checkNotNull;
  */
 public abstract class EventStore implements AutoCloseable {
 
+    /** The number of the time ranges per reading thread, which a query is split into for parallel reading. */
+    private static final int PARTITIONS_PER_THREAD = 4;
+
+    /** The maximum number of the events of a partition read in advance. */
+    private static final int PARTITION_BUFFER_SIZE = 1024;
+
+    private static final String READ_THREAD_NAME_FORMAT = "EventStore-read-%d";
+
     private final Executor streamExecutor;
+    private final int readParallelism;
+    @Nullable
+    private final ExecutorService readExecutor;
     @Nullable
     private final Logger logger;
 
@@ -72,11 +93,35 @@ public abstract class EventStore implements AutoCloseable {
      * @param logger         debug logger instance
      */
     protected EventStore(Executor streamExecutor, @Nullable Logger logger) {
+        this(streamExecutor, 1, logger);
+    }
+
+    /**
+     * Constructs an instance, which reads the events of a query in parallel.
+     *
+     * @param streamExecutor  the executor for updating new subscribers
+     * @param readParallelism the number of threads reading the events of a query; if greater than one,
+     *                        the store owns a thread pool, which must be stopped by {@link #stopReading()}
+     * @param logger          debug logger instance
+     */
+    protected EventStore(Executor streamExecutor, int readParallelism, @Nullable Logger logger) {
         super();
+        checkArgument(readParallelism > 0, "Read parallelism must be positive.");
         this.streamExecutor = streamExecutor;
+        this.readParallelism = readParallelism;
+        this.readExecutor = readParallelism > 1
+                            ? newReadExecutor(readParallelism)
+                            : null;
         this.logger = logger;
     }
 
+    private static ExecutorService newReadExecutor(int parallelism) {
+        final ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat(READ_THREAD_NAME_FORMAT)
+                                                                      .setDaemon(true)
+                                                                      .build();
+        return Executors.newFixedThreadPool(parallelism, threadFactory);
+    }
+
     /**
      * Appends the passed event to the history of events.
      *
@@ -87,6 +132,19 @@ public abstract class EventStore implements AutoCloseable {
         logStored(event);
     }
 
+    /**
+     * Appends the passed events to the history of events.
+     *
+     * @param events the events to append
+     */
+    public void appendAll(Iterable<Event> events) {
+        checkNotNull(events);
+        storeAll(events);
+        for (Event event : events) {
+            logStored(event);
+        }
+    }
+
     /**
      * Implement this method for storing the passed event.
      *
@@ -94,6 +152,20 @@ public abstract class EventStore implements AutoCloseable {
      */
     protected abstract void store(Event event);
 
+    /**
+     * Stores the passed events.
+     *
+     * <p>The default implementation stores the events one by one. Override this method
+     * if the storage supports writing several events at once.
+     *
+     * @param events the events to store
+     */
+    protected void storeAll(Iterable<Event> events) {
+        for (Event event : events) {
+            store(event);
+        }
+    }
+
     /**
      * Creates iterator for traversing through the history of events matching the passed query.
      *
@@ -102,22 +174,75 @@ public abstract class EventStore implements AutoCloseable {
      */
     protected abstract Iterator<Event> iterator(EventStreamQuery query);
 
+    /**
+     * Splits the query into the queries of the consecutive time ranges, which can be read in parallel.
+     *
+     * <p>Reading the partitions one by one must give the same events in the same order as reading
+     * the whole query.
+     *
+     * <p>The default implementation does not split the query. Override this method to enable
+     * the parallel reading of the chronological streams.
+     *
+     * @param query the query to split
+     * @param count the maximum number of partitions
+     * @return the partitions in the chronological order
+     */
+    protected List<EventStreamQuery> partitionByTime(EventStreamQuery query, int count) {
+        return ImmutableList.of(query);
+    }
+
     /**
      * Creates the steam with events matching the passed query.
      *
+     * <p>If the passed observer is a {@link ServerCallStreamObserver}, such as the observer of a gRPC call,
+     * the events are passed to it only while it is {@linkplain ServerCallStreamObserver#isReady() ready}.
+     * The reading is suspended when the transport buffers are full, and resumed in the stream executor
+     * when the client takes the events. The reading stops if the call is cancelled.
+     *
+     * <p>Any other observer gets all the events at once.
+     *
+     * <p>If the query specifies the {@linkplain EventStreamQuery#getResumeAfter() cursor}, the stream
+     * starts with the event following the cursor.
+     *
+     * <p>If the {@linkplain Builder#setReadParallelism(int) read parallelism} is greater than one,
+     * the events are read by several threads:
+     * <ul>
+     *     <li>the chronological stream is {@linkplain #partitionByTime(EventStreamQuery, int) split}
+     *         into the consecutive time ranges, which are read concurrently and then streamed one by one;
+     *     <li>the {@link EventStreamOrder#PER_PRODUCER PER_PRODUCER} stream of the query, each filter of which
+     *         specifies the aggregate IDs, is split into the groups of the aggregates, and the events of
+     *         the groups are streamed as they are read.
+     * </ul>
+     *
      * @param request the query with filtering parameters for the event history
      * @param responseObserver observer for the resulting stream
+     * @see EventStreamCursors#resumeAfter(EventStreamQuery, Event)
      */
     public void read(final EventStreamQuery request, final StreamObserver<Event> responseObserver) {
         logReadingStart(request, responseObserver);
 
+        if (responseObserver instanceof ServerCallStreamObserver) {
+            final ServerCallStreamObserver<Event> callObserver = (ServerCallStreamObserver<Event>) responseObserver;
+            final FlowControlledStream stream = new FlowControlledStream(request, callObserver);
+            stream.start();
+            return;
+        }
+
         streamExecutor.execute(new Runnable() {
             @Override
             public void run() {
-                final Iterator<Event> eventRecords = iterator(request);
-                while (eventRecords.hasNext()) {
-                    final Event event = eventRecords.next();
-                    responseObserver.onNext(event);
+                Iterator<Event> eventRecords = null;
+                try {
+                    eventRecords = eventsOf(request);
+                    while (eventRecords.hasNext()) {
+                        final Event event = eventRecords.next();
+                        responseObserver.onNext(event);
+                    }
+                } catch (RuntimeException e) {
+                    responseObserver.onError(e);
+                    return;
+                } finally {
+                    closeIfNeeded(eventRecords);
                 }
                 responseObserver.onCompleted();
                 logCatchUpComplete(responseObserver);
@@ -125,6 +250,157 @@ public abstract class EventStore implements AutoCloseable {
         });
     }
 
+    private Iterator<Event> eventsOf(EventStreamQuery query) {
+        final EventStreamCursors.StorageQuery storage = new EventStreamCursors.StorageQuery() {
+            @Override
+            public Iterator<Event> iterator(EventStreamQuery storageQuery) {
+                return EventStore.this.iterator(storageQuery);
+            }
+        };
+        final Executor executor = readExecutor;
+        if (executor == null) {
+            return EventStreamCursors.eventsAfterCursor(query, storage);
+        }
+        final boolean perProducer = query.getOrder() == EventStreamOrder.PER_PRODUCER
+                && !query.hasResumeAfter()
+                && QueryPartitions.isSplittableByProducer(query);
+        if (perProducer) {
+            final List<EventStreamQuery> partitions = QueryPartitions.byProducer(query, readParallelism);
+            return readPartitions(partitions, storage, executor, Ordering.INTERLEAVED);
+        }
+        final EventStreamCursors.StorageQuery partitionedStorage = new EventStreamCursors.StorageQuery() {
+            @Override
+            public Iterator<Event> iterator(EventStreamQuery storageQuery) {
+                final List<EventStreamQuery> partitions =
+                        partitionByTime(storageQuery, readParallelism * PARTITIONS_PER_THREAD);
+                return readPartitions(partitions, storage, executor, Ordering.SEQUENTIAL);
+            }
+        };
+        final Iterator<Event> result = EventStreamCursors.eventsAfterCursor(query, partitionedStorage);
+        return result;
+    }
+
+    private Iterator<Event> readPartitions(List<EventStreamQuery> partitions,
+                                           EventStreamCursors.StorageQuery storage,
+                                           Executor executor,
+                                           Ordering ordering) {
+        if (partitions.size() == 1) {
+            return storage.iterator(partitions.get(0));
+        }
+        final Iterator<Event> result = new PartitionedEventIterator(partitions,
+                                                                    storage,
+                                                                    executor,
+                                                                    readParallelism,
+                                                                    PARTITION_BUFFER_SIZE,
+                                                                    ordering);
+        return result;
+    }
+
+    /**
+     * Stops the threads reading the events in parallel.
+     *
+     * <p>Must be called upon closing the store, if the read parallelism is greater than one.
+     */
+    protected void stopReading() {
+        if (readExecutor != null) {
+            readExecutor.shutdownNow();
+        }
+    }
+
+    /** Stops reading the events in advance, if the iterator does so. */
+    private static void closeIfNeeded(@Nullable Iterator<Event> events) {
+        if (!(events instanceof AutoCloseable)) {
+            return;
+        }
+        try {
+            ((AutoCloseable) events).close();
+        } catch (Exception e) {
+            log().warn("Cannot close the event stream.", e);
+        }
+    }
+
+    /**
+     * The stream of events passed to the observer of a call as the transport gets ready to send them.
+     *
+     * <p>The events are read in the stream executor. At most one task reading the events is scheduled
+     * at a time, so the iterator of the events is never used concurrently.
+     */
+    private class FlowControlledStream implements Runnable {
+
+        private final EventStreamQuery query;
+        private final ServerCallStreamObserver<Event> observer;
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        /** Set when the stream is completed, failed, or cancelled by the client. */
+        private volatile boolean finished = false;
+
+        /** The events to send; iterated only by the scheduled task. */
+        @Nullable
+        private volatile Iterator<Event> events;
+
+        private FlowControlledStream(EventStreamQuery query, ServerCallStreamObserver<Event> observer) {
+            this.query = query;
+            this.observer = observer;
+        }
+
+        /** Subscribes to the readiness of the call; must be called before the call handler returns. */
+        private void start() {
+            observer.setOnCancelHandler(new Runnable() {
+                @Override
+                public void run() {
+                    finished = true;
+                    closeIfNeeded(events);
+                }
+            });
+            observer.setOnReadyHandler(new Runnable() {
+                @Override
+                public void run() {
+                    schedule();
+                }
+            });
+            schedule();
+        }
+
+        private void schedule() {
+            if (!finished && scheduled.compareAndSet(false, true)) {
+                streamExecutor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                sendWhileReady();
+            } catch (RuntimeException e) {
+                finished = true;
+                closeIfNeeded(events);
+                observer.onError(e);
+            } finally {
+                scheduled.set(false);
+            }
+            // The call may have got ready after the last check, and before the flag was cleared,
+            // in which case the ready handler could not schedule the task.
+            if (observer.isReady()) {
+                schedule();
+            }
+        }
+
+        private void sendWhileReady() {
+            if (events == null) {
+                events = eventsOf(query);
+            }
+            final Iterator<Event> iterator = events;
+            while (!finished && observer.isReady() && iterator.hasNext()) {
+                observer.onNext(iterator.next());
+            }
+            if (!finished && !iterator.hasNext()) {
+                finished = true;
+                observer.onCompleted();
+                logCatchUpComplete(observer);
+            }
+        }
+    }
+
     /**
      * Abstract builder base for building.
      *
@@ -134,6 +410,7 @@ public abstract class EventStore implements AutoCloseable {
 
         private Executor streamExecutor;
         private EventStorage eventStorage;
+        private int readParallelism = 1;
         @Nullable
         private Logger logger;
 
@@ -166,6 +443,25 @@ public abstract class EventStore implements AutoCloseable {
             return eventStorage;
         }
 
+        /**
+         * Sets the number of threads reading the events of a query.
+         *
+         * <p>If greater than one, the store reads the parts of the stream in parallel in its own
+         * thread pool, which is stopped upon closing the store. If not set, the events are read
+         * by a single thread.
+         *
+         * @see EventStore#read(EventStreamQuery, StreamObserver)
+         */
+        protected AbstractBuilder setReadParallelism(int readParallelism) {
+            checkArgument(readParallelism > 0, "Read parallelism must be positive.");
+            this.readParallelism = readParallelism;
+            return this;
+        }
+
+        public int getReadParallelism() {
+            return readParallelism;
+        }
+
         protected AbstractBuilder setLogger(@Nullable Logger logger) {
             this.logger = logger;
             return this;
@@ -193,7 +489,10 @@ public abstract class EventStore implements AutoCloseable {
         @Override
         public EventStore build() {
             checkState();
-            final LocalImpl result = new LocalImpl(getStreamExecutor(), getEventStorage(), getLogger());
+            final LocalImpl result = new LocalImpl(getStreamExecutor(),
+                                                   getReadParallelism(),
+                                                   getEventStorage(),
+                                                   getLogger());
             return result;
         }
 
@@ -209,6 +508,12 @@ public abstract class EventStore implements AutoCloseable {
             return this;
         }
 
+        @Override
+        public Builder setReadParallelism(int readParallelism) {
+            super.setReadParallelism(readParallelism);
+            return this;
+        }
+
         @Override
         public Builder setLogger(@Nullable Logger logger) {
             super.setLogger(logger);
@@ -232,8 +537,11 @@ public abstract class EventStore implements AutoCloseable {
 
         private final EventStorage storage;
 
-        private LocalImpl(Executor catchUpExecutor, EventStorage storage, @Nullable Logger logger) {
-            super(catchUpExecutor, logger);
+        private LocalImpl(Executor catchUpExecutor,
+                          int readParallelism,
+                          EventStorage storage,
+                          @Nullable Logger logger) {
+            super(catchUpExecutor, readParallelism, logger);
             this.storage = storage;
         }
 
@@ -242,18 +550,29 @@ public abstract class EventStore implements AutoCloseable {
             storage.write(record.getContext().getEventId(), record);
         }
 
+        @Override
+        protected void storeAll(Iterable<Event> events) {
+            storage.writeAll(events);
+        }
+
         @Override
         protected Iterator<Event> iterator(EventStreamQuery query) {
             return storage.iterator(query);
         }
 
+        @Override
+        protected List<EventStreamQuery> partitionByTime(EventStreamQuery query, int count) {
+            return storage.partitionByTime(query, count);
+        }
+
         /**
-         * Notifies all the subscribers and closes the underlying storage.
+         * Stops the reading threads and closes the underlying storage.
          *
          * @throws IOException if the attempt to close the storage throws an exception
          */
         @Override
         public void close() throws Exception {
+            stopReading();
             storage.close();
         }
     }
@@ -268,7 +587,10 @@ public abstract class EventStore implements AutoCloseable {
         @Override
         public ServerServiceDefinition build() {
             checkState();
-            final LocalImpl eventStore = new LocalImpl(getStreamExecutor(), getEventStorage(), getLogger());
+            final LocalImpl eventStore = new LocalImpl(getStreamExecutor(),
+                                                       getReadParallelism(),
+                                                       getEventStorage(),
+                                                       getLogger());
             final EventStoreGrpc.EventStoreImplBase grpcService = new GrpcService(eventStore);
             final ServerServiceDefinition result = grpcService.bindService();
             return result;
@@ -286,6 +608,12 @@ public abstract class EventStore implements AutoCloseable {
             return this;
         }
 
+        @Override
+        public ServiceBuilder setReadParallelism(int readParallelism) {
+            super.setReadParallelism(readParallelism);
+            return this;
+        }
+
         @Override
         public ServiceBuilder setLogger(@Nullable Logger logger) {
             super.setLogger(logger);
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.event;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import com.google.protobuf.Timestamp;
+import org.spine3.base.Event;
+import org.spine3.base.EventContext;
+import org.spine3.base.EventId;
+import org.spine3.protobuf.Timestamps;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayList;
+import static org.spine3.protobuf.Durations.nanos;
+
+/**
+ * Utilities for resuming the streams of events returned by {@link EventStore}.
+ *
+ * <p>A client, which got disconnected while reading a stream, may continue reading it from
+ * the last received event:
+ * <pre>
+ *     {@code
+ *     final EventStreamQuery resumed = EventStreamCursors.resumeAfter(query, lastReceivedEvent);
+ *     eventStore.read(resumed, observer);
+ *     }
+ * </pre>
+ */
+@SuppressWarnings("UtilityClass")
+public class EventStreamCursors {
+
+    private EventStreamCursors() {}
+
+    /**
+     * Obtains the position of the event in the stream.
+     *
+     * @param event the event received from the stream
+     * @return the cursor pointing at the event
+     */
+    public static EventStreamCursor cursorOf(Event event) {
+        checkNotNull(event);
+        final EventContext context = event.getContext();
+        final EventStreamCursor result = EventStreamCursor.newBuilder()
+                                                          .setTimestamp(context.getTimestamp())
+                                                          .setEventId(context.getEventId())
+                                                          .build();
+        return result;
+    }
+
+    /**
+     * Creates the query for the rest of the stream of the passed query following the passed event.
+     *
+     * @param query             the query of the stream
+     * @param lastReceivedEvent the last event received from the stream
+     * @return the query resuming the stream
+     */
+    public static EventStreamQuery resumeAfter(EventStreamQuery query, Event lastReceivedEvent) {
+        checkNotNull(query);
+        final EventStreamQuery result = query.toBuilder()
+                                             .setResumeAfter(cursorOf(lastReceivedEvent))
+                                             .build();
+        return result;
+    }
+
+    /**
+     * Obtains the events of the resumed stream.
+     *
+     * <p>The storage is queried for the events, which happened not earlier than the event at
+     * the cursor, and the events preceding the cursor are skipped.
+     *
+     * @param query   the query, which may specify the position to resume the stream after
+     * @param storage the function to query the storage with, which does not need to support the cursors
+     * @return the events following the cursor or all the events matching the query if it has no cursor
+     */
+    static Iterator<Event> eventsAfterCursor(EventStreamQuery query, StorageQuery storage) {
+        if (!query.hasResumeAfter()) {
+            return storage.iterator(query);
+        }
+        final EventStreamCursor cursor = query.getResumeAfter();
+        final Timestamp cursorTime = cursor.getTimestamp();
+        final EventStreamQuery.Builder withoutCursor = query.toBuilder()
+                                                            .clearResumeAfter();
+        if (query.hasAfter() && Timestamps.compare(query.getAfter(), cursorTime) >= 0) {
+            // The cursor precedes the start of the stream.
+            return storage.iterator(withoutCursor.build());
+        }
+        if (query.hasBefore() && Timestamps.compare(query.getBefore(), cursorTime) <= 0) {
+            // The stream ends before the cursor.
+            return Collections.emptyIterator();
+        }
+        // The lower bound is exclusive, so it is moved back to include the events with the time of the cursor.
+        final Timestamp justBeforeCursor = com.google.protobuf.util.Timestamps.subtract(cursorTime, nanos(1));
+        final EventStreamQuery storageQuery = withoutCursor.setAfter(justBeforeCursor)
+                                                           .build();
+        final Iterator<Event> events = storage.iterator(storageQuery);
+        final Iterator<Event> result = new AfterCursorIterator(events, cursor);
+        return result;
+    }
+
+    /** A function reading the events matching a query from the storage. */
+    interface StorageQuery {
+
+        Iterator<Event> iterator(EventStreamQuery query);
+    }
+
+    /**
+     * Skips the events preceding the cursor among the events, which happened not earlier than
+     * the event at the cursor.
+     *
+     * <p>If the event at the cursor is not found among the events with the same time, for example,
+     * because it was not stored, none of them is skipped.
+     */
+    private static class AfterCursorIterator extends AbstractIterator<Event> implements AutoCloseable {
+
+        private final Iterator<Event> source;
+        private final PeekingIterator<Event> events;
+        private final EventStreamCursor cursor;
+        private Iterator<Event> eventsAtCursorTime;
+
+        private AfterCursorIterator(Iterator<Event> source, EventStreamCursor cursor) {
+            this.source = source;
+            this.events = Iterators.peekingIterator(source);
+            this.cursor = cursor;
+        }
+
+        /** Closes the source iterator, if it is {@code AutoCloseable}. */
+        @Override
+        public void close() throws Exception {
+            if (source instanceof AutoCloseable) {
+                ((AutoCloseable) source).close();
+            }
+        }
+
+        @Override
+        protected Event computeNext() {
+            if (eventsAtCursorTime == null) {
+                eventsAtCursorTime = eventsFollowingCursor().iterator();
+            }
+            if (eventsAtCursorTime.hasNext()) {
+                return eventsAtCursorTime.next();
+            }
+            if (events.hasNext()) {
+                return events.next();
+            }
+            return endOfData();
+        }
+
+        /** Reads the events with the time of the cursor and skips the ones up to the cursor. */
+        private List<Event> eventsFollowingCursor() {
+            final List<Event> atCursorTime = newArrayList();
+            while (events.hasNext() && isAtCursorTime(events.peek())) {
+                atCursorTime.add(events.next());
+            }
+            final EventId cursorEventId = cursor.getEventId();
+            for (int i = 0; i < atCursorTime.size(); i++) {
+                final EventId eventId = atCursorTime.get(i)
+                                                    .getContext()
+                                                    .getEventId();
+                if (eventId.equals(cursorEventId)) {
+                    return atCursorTime.subList(i + 1, atCursorTime.size());
+                }
+            }
+            return atCursorTime;
+        }
+
+        private boolean isAtCursorTime(Event event) {
+            final Timestamp time = event.getContext()
+                                        .getTimestamp();
+            return time.equals(cursor.getTimestamp());
+        }
+    }
+}
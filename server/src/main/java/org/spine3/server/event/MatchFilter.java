@@ -20,11 +20,14 @@
 
 package org.spine3.server.event;
 
-import com.google.common.base.Function;
+import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
 import com.google.common.base.Strings;
-import com.google.common.collect.Collections2;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.protobuf.Any;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
 import com.google.protobuf.Message;
 import org.spine3.base.Event;
 import org.spine3.base.EventContext;
@@ -32,66 +35,77 @@ import org.spine3.base.Events;
 import org.spine3.base.FieldFilter;
 import org.spine3.protobuf.AnyPacker;
 import org.spine3.protobuf.TypeUrl;
-import org.spine3.server.reflect.Classes;
 
 import javax.annotation.Nullable;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
 /**
  * The predicate for filtering events by {@link EventFilter}.
  *
+ * <p>The filter is compiled once upon the creation of the predicate:
+ * <ul>
+ *     <li>the event type is checked against the type URL of the packed event message, without unpacking it;
+ *     <li>the aggregate IDs and the expected field values are kept in hash sets;
+ *     <li>the expected field values are unpacked once;
+ *     <li>the fields are resolved once per message type.
+ * </ul>
+ *
+ * <p>The event message is unpacked only if the filter has the event field filters.
+ *
+ * <p>The instances are thread-safe, so the predicate may be reused for any number of events.
+ *
  * @author Dmytro Dashenkov
  * @author Alexander Yevsyukov
  */
 class MatchFilter implements Predicate<Event> {
 
+    private static final char TYPE_URL_SEPARATOR = '/';
+
     /**
-     * The type URL of events to accept.
+     * The name of the type of events to accept.
      *
      * <p>If null, all events are accepted.
      */
     @Nullable
-    private final TypeUrl eventTypeUrl;
+    private final String eventTypeName;
 
     /**
-     * The list of aggregate IDs of which events to accept.
+     * The aggregate IDs of which events to accept.
      *
      * <p>If null, all IDs are accepted.
      */
     @Nullable
-    private final List<Any> aggregateIds;
+    private final Set<Any> aggregateIds;
 
-    private final Collection<FieldFilter> eventFieldFilters;
-    private final Collection<FieldFilter> contextFieldFilters;
-
-    private static final Function<Any, Message> ANY_UNPACKER = new Function<Any, Message>() {
-        @Nullable
-        @Override
-        public Message apply(@Nullable Any input) {
-            if (input == null) {
-                return null;
-            }
-
-            return AnyPacker.unpack(input);
-        }
-    };
+    private final List<FieldMatcher> eventFieldMatchers;
+    private final List<FieldMatcher> contextFieldMatchers;
 
     MatchFilter(EventFilter filter) {
         final String eventType = filter.getEventType();
-        this.eventTypeUrl = eventType.isEmpty()
-                            ? null
-                            : TypeUrl.of(eventType);
+        this.eventTypeName = eventType.isEmpty()
+                             ? null
+                             : TypeUrl.of(eventType)
+                                      .getTypeName();
         final List<Any> aggregateIdList = filter.getAggregateIdList();
         this.aggregateIds = aggregateIdList.isEmpty()
                             ? null
-                            : aggregateIdList;
-        this.eventFieldFilters = filter.getEventFieldFilterList();
-        this.contextFieldFilters = filter.getContextFieldFilterList();
+                            : ImmutableSet.copyOf(aggregateIdList);
+        this.eventFieldMatchers = compile(filter.getEventFieldFilterList());
+        this.contextFieldMatchers = compile(filter.getContextFieldFilterList());
+    }
+
+    private static List<FieldMatcher> compile(Collection<FieldFilter> filters) {
+        final ImmutableList.Builder<FieldMatcher> result = ImmutableList.builder();
+        for (FieldFilter filter : filters) {
+            result.add(new FieldMatcher(filter));
+        }
+        return result.build();
     }
 
     @SuppressWarnings("MethodWithMoreThanThreeNegations") // OK as we want tracability of exits.
@@ -101,22 +115,24 @@ class MatchFilter implements Predicate<Event> {
             return false;
         }
 
-        final Message message = Events.getMessage(event);
-        final EventContext context = event.getContext();
-
-        if (!checkEventType(message)) {
+        if (!checkEventType(event.getMessage())) {
             return false;
         }
 
+        final EventContext context = event.getContext();
         if (!checkAggregateIds(context)) {
             return false;
         }
 
-        if (!checkEventFields(message)) {
+        if (!checkFields(context, contextFieldMatchers)) {
             return false;
         }
 
-        final boolean result = checkContextFields(context);
+        if (eventFieldMatchers.isEmpty()) {
+            return true;
+        }
+        final Message message = Events.getMessage(event);
+        final boolean result = checkFields(message, eventFieldMatchers);
         return result;
     }
 
@@ -129,58 +145,90 @@ class MatchFilter implements Predicate<Event> {
         return result;
     }
 
-    private boolean checkEventType(Message message) {
-        final TypeUrl actualTypeUrl = TypeUrl.of(message);
-        if (eventTypeUrl == null) {
+    private boolean checkEventType(Any message) {
+        if (eventTypeName == null) {
             return true;
         }
-        final boolean result = actualTypeUrl.equals(eventTypeUrl);
+        final String typeUrl = message.getTypeUrl();
+        if (!typeUrl.endsWith(eventTypeName)) {
+            return false;
+        }
+        final int nameStart = typeUrl.length() - eventTypeName.length();
+        final boolean result = nameStart == 0 || typeUrl.charAt(nameStart - 1) == TYPE_URL_SEPARATOR;
         return result;
     }
 
-    private boolean checkContextFields(EventContext context) {
-        for (FieldFilter filter : contextFieldFilters) {
-            final boolean matchesFilter = checkFields(context, filter);
-            if (!matchesFilter) {
+    private static boolean checkFields(Message object, List<FieldMatcher> matchers) {
+        for (FieldMatcher matcher : matchers) {
+            if (!matcher.matches(object)) {
                 return false;
             }
         }
         return true;
     }
 
-    private boolean checkEventFields(Message message) {
-        for (FieldFilter filter : eventFieldFilters) {
-            final boolean matchesFilter = checkFields(message, filter);
-            if (!matchesFilter) {
+    /** Checks the value of a message field against the set of expected values. */
+    private static class FieldMatcher {
+
+        private final String fieldName;
+        private final Set<Message> expectedValues;
+
+        /** The fields resolved by the message types; absent if a type has no such field. */
+        private final ConcurrentMap<Descriptor, Optional<FieldDescriptor>> fields = new ConcurrentHashMap<>();
+
+        private FieldMatcher(FieldFilter filter) {
+            final String fieldPath = filter.getFieldPath();
+            this.fieldName = fieldPath.substring(fieldPath.lastIndexOf('.') + 1);
+            checkArgument(!Strings.isNullOrEmpty(fieldName), "Field filter " + filter.toString() + " is invalid");
+            final ImmutableSet.Builder<Message> expected = ImmutableSet.builder();
+            for (Any value : filter.getValueList()) {
+                expected.add(AnyPacker.unpack(value));
+            }
+            this.expectedValues = expected.build();
+        }
+
+        private boolean matches(Message object) {
+            final Optional<FieldDescriptor> field = fieldOf(object.getDescriptorForType());
+            if (!field.isPresent()) {
+                // Wrong Message class -> does not satisfy the criteria
                 return false;
             }
+            final Object value = object.getField(field.get());
+            if (!(value instanceof Message)) {
+                return false;
+            }
+            final Message actualValue = value instanceof Any
+                                        ? AnyPacker.unpack((Any) value)
+                                        : (Message) value;
+            final boolean result = expectedValues.contains(actualValue);
+            return result;
         }
-        return true;
-    }
 
-    private static boolean checkFields(
-            Message object,
-            @SuppressWarnings("TypeMayBeWeakened") /*BuilderOrType interface*/ FieldFilter filter) {
-        final String fieldPath = filter.getFieldPath();
-        final String fieldName = fieldPath.substring(fieldPath.lastIndexOf('.') + 1);
-        checkArgument(!Strings.isNullOrEmpty(fieldName), "Field filter " + filter.toString() + " is invalid");
-
-        final Collection<Any> expectedAnys = filter.getValueList();
-        final Collection<Message> expectedValues = Collections2.transform(expectedAnys, ANY_UNPACKER);
-        Message actualValue;
-
-        try {
-            final Method getter = Classes.getGetterForField(object.getClass(), fieldName);
-            actualValue = (Message) getter.invoke(object);
-            if (actualValue instanceof Any) {
-                actualValue = AnyPacker.unpack((Any) actualValue);
+        private Optional<FieldDescriptor> fieldOf(Descriptor type) {
+            final Optional<FieldDescriptor> cached = fields.get(type);
+            if (cached != null) {
+                return cached;
             }
-        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException ignored) {
-            // Wrong Message class -> does not satisfy the criteria
-            return false;
+            final Optional<FieldDescriptor> result = findField(type, fieldName);
+            fields.putIfAbsent(type, result);
+            return result;
         }
 
-        final boolean result = expectedValues.contains(actualValue);
-        return result;
+        /**
+         * Finds the field by its name either in the Protobuf or in the Java notation.
+         *
+         * <p>The repeated fields are not supported.
+         */
+        private static Optional<FieldDescriptor> findField(Descriptor type, String name) {
+            for (FieldDescriptor field : type.getFields()) {
+                final boolean nameMatches = field.getName()
+                                                 .equals(name) || field.getJsonName()
+                                                                       .equals(name);
+                if (nameMatches && !field.isRepeated()) {
+                    return Optional.of(field);
+                }
+            }
+            return Optional.absent();
+        }
     }
 }
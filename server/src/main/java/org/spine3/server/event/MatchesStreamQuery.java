@@ -22,6 +22,7 @@ package org.spine3.server.event;
 
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
 import com.google.protobuf.Timestamp;
 import org.spine3.base.Event;
 import org.spine3.base.Events;
@@ -33,17 +34,19 @@ import java.util.List;
  * The predicate for filtering {@code Event} instances by
  * {@link EventStreamQuery}.
  *
+ * <p>The query is compiled into the predicates upon the creation of the instance, so a single instance
+ * should be used for all the events of a stream.
+ *
  * @author Alexander Yevsyukov
  * @author Dmytro Dashenkov
  */
 public class MatchesStreamQuery implements Predicate<Event> {
 
-    private final EventStreamQuery query;
     private final Predicate<Event> timePredicate;
+    private final List<MatchFilter> filters;
 
     @SuppressWarnings("IfMayBeConditional")
     public MatchesStreamQuery(EventStreamQuery query) {
-        this.query = query;
         final Timestamp after = query.getAfter();
         final Timestamp before = query.getBefore();
         final boolean afterSpecified = query.hasAfter();
@@ -58,6 +61,11 @@ public class MatchesStreamQuery implements Predicate<Event> {
         } else { // No timestamps specified.
             this.timePredicate = Predicates.alwaysTrue();
         }
+        final ImmutableList.Builder<MatchFilter> filters = ImmutableList.builder();
+        for (EventFilter filter : query.getFilterList()) {
+            filters.add(new MatchFilter(filter));
+        }
+        this.filters = filters.build();
     }
 
     @Override
@@ -65,14 +73,12 @@ public class MatchesStreamQuery implements Predicate<Event> {
         if (!timePredicate.apply(input)) {
             return false;
         }
-        final List<EventFilter> filterList = query.getFilterList();
-        if (filterList.isEmpty()) {
+        if (filters.isEmpty()) {
             return true; // The time range matches, and no filters specified.
         }
         // Check if one of the filters matches. If so, the event matches.
-        for (EventFilter filter : filterList) {
-            final Predicate<Event> filterPredicate = new MatchFilter(filter);
-            if (filterPredicate.apply(input)) {
+        for (MatchFilter filter : filters) {
+            if (filter.apply(input)) {
                 return true;
             }
         }
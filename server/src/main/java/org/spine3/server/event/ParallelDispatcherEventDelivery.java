@@ -0,0 +1,341 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.event;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
+import org.spine3.base.Event;
+import org.spine3.server.delivery.PartitionedExecutor;
+import org.spine3.server.entity.TargetedEventDispatcher;
+import org.spine3.server.event.metrics.EventMetrics;
+
+import javax.annotation.Nullable;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Maps.newHashMap;
+
+/**
+ * A {@link DispatcherEventDelivery}, which dispatches the events in the background threads.
+ *
+ * <p>Each {@link EventDispatcher} gets its own lane of threads, so that a slow dispatcher does not
+ * hold up the others. The number of the threads in the lane is limited by the parallelism set for
+ * the dispatcher class, and the number of the events waiting in each thread is bounded by the lane capacity.
+ * When a lane is full, the posting thread waits until there is space for the event, unless it is a thread
+ * of one of the lanes. Such a thread never waits for another lane, since that lane may wait for it at the same time,
+ * e.g. when two process managers react on the events of each other.
+ *
+ * <p>For a {@link TargetedEventDispatcher}, such as a projection or a process manager repository, the events
+ * are distributed between the threads of the lane by the IDs of the target entities. The events of
+ * the same entity are thus dispatched sequentially, in the order of posting. An event targeting several
+ * entities is dispatched when all the threads of the lane are done with the previously posted events.
+ * If such an event is posted by a thread of any lane, it is dispatched to each of the entities
+ * separately instead.
+ *
+ * <p>The events are passed to any other {@code EventDispatcher} sequentially.
+ *
+ * <p>The number of the events waiting in each lane is reported to the {@linkplain EventBus#getMetrics() metrics}
+ * of the bus as the depth of the {@code EventDispatcher-lane-<dispatcher class name>} queue.
+ *
+ * <p>The lane of a dispatcher is stopped, when the dispatcher is unregistered from the bus.
+ *
+ * <p>{@link #close()} waits until all the events passed to the lanes are dispatched. The {@link EventBus}
+ * closes its dispatcher delivery upon its own closing.
+ */
+@SuppressWarnings("WeakerAccess")   // Part of API.
+public class ParallelDispatcherEventDelivery extends DispatcherEventDelivery implements AutoCloseable {
+
+    private static final String LANE_THREAD_NAME_PREFIX = "EventDispatcher-lane-";
+
+    private final int defaultParallelism;
+    private final Map<Class<? extends EventDispatcher>, Integer> parallelismByClass;
+    private final int laneCapacity;
+
+    private final ConcurrentMap<EventDispatcher, PartitionedExecutor> lanes = new ConcurrentHashMap<>();
+
+    /** The threads of all the lanes, which never wait for the space in a lane. */
+    private final Set<Thread> laneThreads = Sets.newConcurrentHashSet();
+
+    private volatile boolean closed = false;
+
+    protected ParallelDispatcherEventDelivery(Builder builder) {
+        super();
+        this.defaultParallelism = builder.parallelism;
+        this.parallelismByClass = ImmutableMap.copyOf(builder.parallelismByClass);
+        this.laneCapacity = builder.laneCapacity;
+    }
+
+    /** Creates a builder for new {@code ParallelDispatcherEventDelivery}. */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    @Override
+    protected boolean shouldPostponeDelivery(Event event, EventDispatcher dispatcher) {
+        return false;
+    }
+
+    @Override
+    protected void execute(Runnable deliveryAction, EventDispatcher dispatcher, Event event) {
+        if (closed) {
+            deliveryAction.run();
+            return;
+        }
+        final PartitionedExecutor lane = laneFor(dispatcher, event);
+        if (lane == null || lane.isClosed()) {
+            deliveryAction.run();
+            return;
+        }
+        if (!(dispatcher instanceof TargetedEventDispatcher)) {
+            lane.execute(dispatcher, deliveryAction);
+        } else {
+            executeInEntityLane(lane, (TargetedEventDispatcher<?>) dispatcher, event);
+        }
+        reportDepth(lane, dispatcher);
+    }
+
+    /**
+     * Executes the dispatching of the event to the entities in the lane of the dispatcher.
+     *
+     * <p>The passed delivery action is not used, as the target IDs, which are obtained here to choose
+     * the partition, are passed to the dispatcher instead of being obtained by it once again.
+     */
+    private <I> void executeInEntityLane(PartitionedExecutor lane,
+                                         final TargetedEventDispatcher<I> dispatcher,
+                                         final Event event) {
+        final Set<I> targetIds = dispatcher.getTargetIds(event);
+        final Runnable dispatchToTargets = new Runnable() {
+            @Override
+            public void run() {
+                dispatcher.dispatch(event, targetIds);
+            }
+        };
+        final boolean severalTargets = targetIds.size() > 1;
+        if (severalTargets && lane.isWorkerThread()) {
+            executePerTarget(lane, dispatcher, event, targetIds);
+            return;
+        }
+        final Runnable deliveryAction = decorate(dispatchToTargets, dispatcher, event);
+        if (severalTargets) {
+            lane.executeExclusively(deliveryAction);
+            return;
+        }
+        // An event, which targets no entity, may go to any partition.
+        final Object key = targetIds.isEmpty()
+                           ? dispatcher
+                           : Iterables.getOnlyElement(targetIds);
+        lane.execute(key, deliveryAction);
+    }
+
+    /**
+     * Executes the dispatching of the event to each of the entities in the partition of the entity.
+     *
+     * <p>Used for the events posted by the threads of the lane, which cannot wait for the lane to execute
+     * the event exclusively.
+     */
+    private <I> void executePerTarget(PartitionedExecutor lane,
+                                      final TargetedEventDispatcher<I> dispatcher,
+                                      final Event event,
+                                      Set<I> targetIds) {
+        for (final I id : targetIds) {
+            final Runnable dispatchToTarget = new Runnable() {
+                @Override
+                public void run() {
+                    dispatcher.dispatch(event, ImmutableSet.of(id));
+                }
+            };
+            lane.execute(id, decorate(dispatchToTarget, dispatcher, event));
+        }
+    }
+
+    private void reportDepth(PartitionedExecutor lane, EventDispatcher dispatcher) {
+        final EventMetrics metrics = getMetrics();
+        if (metrics != null) {
+            metrics.onQueueDepth(laneName(dispatcher), lane.getQueuedTaskCount());
+        }
+    }
+
+    private static String laneName(EventDispatcher dispatcher) {
+        return LANE_THREAD_NAME_PREFIX + dispatcher.getClass()
+                                                   .getSimpleName();
+    }
+
+    /**
+     * Obtains the lane of the dispatcher, creating it if needed.
+     *
+     * @return the lane or {@code null} if the dispatcher is not registered as a consumer of the event
+     */
+    @Nullable
+    private PartitionedExecutor laneFor(EventDispatcher dispatcher, Event event) {
+        final PartitionedExecutor existing = lanes.get(dispatcher);
+        if (existing != null) {
+            return existing;
+        }
+        synchronized (lanes) {
+            final PartitionedExecutor current = lanes.get(dispatcher);
+            if (current != null) {
+                return current;
+            }
+            // An event may be delivered to a dispatcher, which has already been unregistered,
+            // in which case the lane would never be removed.
+            if (!consumersFor(event).contains(dispatcher)) {
+                return null;
+            }
+            final PartitionedExecutor result = new PartitionedExecutor(parallelismOf(dispatcher),
+                                                                       laneCapacity,
+                                                                       laneName(dispatcher),
+                                                                       laneThreads);
+            lanes.put(dispatcher, result);
+            return result;
+        }
+    }
+
+    /**
+     * Removes the lane of the unregistered dispatcher and stops its threads after the events
+     * passed to the lane are dispatched.
+     */
+    @Override
+    protected void onUnregistered(EventDispatcher dispatcher) {
+        final PartitionedExecutor lane;
+        synchronized (lanes) {
+            lane = lanes.remove(dispatcher);
+        }
+        if (lane == null) {
+            return;
+        }
+        // The lane is closed outside of the lock, as its tasks may need it to dispatch further events.
+        try {
+            lane.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                  .interrupt();
+            throw new IllegalStateException("Interrupted while closing the lane of " + dispatcher, e);
+        }
+    }
+
+    @VisibleForTesting
+    int getLaneCount() {
+        return lanes.size();
+    }
+
+    @VisibleForTesting
+    int parallelismOf(EventDispatcher dispatcher) {
+        if (!(dispatcher instanceof TargetedEventDispatcher)) {
+            return 1;
+        }
+        final Integer result = parallelismByClass.get(dispatcher.getClass());
+        return result == null
+               ? defaultParallelism
+               : result;
+    }
+
+    /**
+     * Waits until all the events passed to the lanes are dispatched and stops the lane threads.
+     *
+     * <p>The events delivered after closing are dispatched in the posting thread.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        final List<PartitionedExecutor> lanesToClose;
+        synchronized (lanes) {
+            lanesToClose = ImmutableList.copyOf(lanes.values());
+        }
+        // The lanes are closed outside of the lock, as their tasks may need it to dispatch further events.
+        for (PartitionedExecutor lane : lanesToClose) {
+            lane.close();
+        }
+    }
+
+    /** The builder for {@link ParallelDispatcherEventDelivery}. */
+    public static class Builder {
+
+        /** The default maximum number of events waiting in each thread of a lane. */
+        public static final int DEFAULT_LANE_CAPACITY = 1000;
+
+        private int parallelism = Runtime.getRuntime()
+                                         .availableProcessors();
+        private final Map<Class<? extends EventDispatcher>, Integer> parallelismByClass = newHashMap();
+        private int laneCapacity = DEFAULT_LANE_CAPACITY;
+
+        private Builder() {}
+
+        /**
+         * Sets the number of threads in the lane of each {@link TargetedEventDispatcher}.
+         *
+         * <p>If not set, the number of the available processors is used.
+         */
+        public Builder setParallelism(int parallelism) {
+            checkArgument(parallelism > 0, "Parallelism must be positive.");
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        /**
+         * Sets the number of threads in the lanes of the dispatchers of the given class.
+         *
+         * <p>Overrides the {@linkplain #setParallelism(int) default parallelism} for these dispatchers.
+         */
+        public Builder setParallelism(Class<? extends TargetedEventDispatcher<?>> dispatcherClass, int parallelism) {
+            checkNotNull(dispatcherClass);
+            checkArgument(parallelism > 0, "Parallelism must be positive.");
+            parallelismByClass.put(dispatcherClass, parallelism);
+            return this;
+        }
+
+        public Map<Class<? extends EventDispatcher>, Integer> getParallelismByClass() {
+            return ImmutableMap.copyOf(parallelismByClass);
+        }
+
+        /**
+         * Sets the maximum number of events waiting in each thread of a lane.
+         *
+         * <p>If not set, {@link #DEFAULT_LANE_CAPACITY} is used.
+         */
+        public Builder setLaneCapacity(int laneCapacity) {
+            checkArgument(laneCapacity > 0, "Lane capacity must be positive.");
+            this.laneCapacity = laneCapacity;
+            return this;
+        }
+
+        public int getLaneCapacity() {
+            return laneCapacity;
+        }
+
+        public ParallelDispatcherEventDelivery build() {
+            final ParallelDispatcherEventDelivery result = new ParallelDispatcherEventDelivery(this);
+            return result;
+        }
+    }
+}
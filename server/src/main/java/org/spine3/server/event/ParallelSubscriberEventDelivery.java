@@ -0,0 +1,296 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.event;
+
+import com.google.common.base.Optional;
+import org.spine3.base.Event;
+
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+import static org.spine3.base.Stringifiers.idToString;
+
+/**
+ * A {@link SubscriberEventDelivery}, which passes an event to its subscribers in parallel.
+ *
+ * <p>When an event has at least the {@linkplain Builder#setMinFanOut(int) minimal fan-out} number of subscribers,
+ * each of them is called in a separate task of a {@link ForkJoinPool}. One of the subscribers is called in
+ * the posting thread. The delivery completes when all the subscribers are done with the event, so the events
+ * are still delivered to the subscribers one after another, in the order of posting.
+ *
+ * <p>The subscribers are isolated from each other: an exception thrown by one of them is logged and does
+ * not affect the delivery to the others.
+ *
+ * <p>Upon completion of each parallel delivery, the slowest of the subscribers is passed to
+ * {@link #onSlowestSubscriber(Event, EventSubscriber, long)}. By default, it is logged if it takes longer than
+ * the {@linkplain Builder#setSlowSubscriberThreshold(long, TimeUnit) threshold}.
+ *
+ * <p>Since the subscribers handle the same event concurrently, they must not share a mutable state
+ * without a synchronization.
+ *
+ * <p>If the pool is created by the delivery, it is shut down by {@link #close()}. The {@link EventBus} closes its
+ * subscriber delivery upon its own closing.
+ */
+@SuppressWarnings("WeakerAccess")   // Part of API.
+public class ParallelSubscriberEventDelivery extends SubscriberEventDelivery implements AutoCloseable {
+
+    private final ForkJoinPool pool;
+    private final boolean ownPool;
+    private final int minFanOut;
+    @Nullable
+    private final Long slowSubscriberThresholdNanos;
+
+    protected ParallelSubscriberEventDelivery(Builder builder) {
+        super();
+        this.ownPool = builder.pool == null;
+        this.pool = ownPool
+                    ? new ForkJoinPool(builder.parallelism)
+                    : builder.pool;
+        this.minFanOut = builder.minFanOut;
+        this.slowSubscriberThresholdNanos = builder.slowSubscriberThresholdNanos;
+    }
+
+    /** Creates a builder for new {@code ParallelSubscriberEventDelivery}. */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    @Override
+    protected boolean shouldPostponeDelivery(Event event, EventSubscriber subscriber) {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Calls the subscribers in parallel if there are enough of them and waits until all of them are done.
+     */
+    @Override
+    public void deliver(Event event, Collection<EventSubscriber> subscribers) {
+        if (subscribers.size() < minFanOut || pool.isShutdown()) {
+            super.deliver(event, subscribers);
+            return;
+        }
+        final List<SubscriberTask> tasks = newArrayListWithCapacity(subscribers.size());
+        for (EventSubscriber subscriber : subscribers) {
+            if (!shouldPostponeDelivery(event, subscriber)) {
+                final Runnable action = decorate(getDeliveryAction(subscriber, event), subscriber, event);
+                tasks.add(new SubscriberTask(subscriber, event, action));
+            }
+        }
+        if (tasks.isEmpty()) {
+            return;
+        }
+        fanOut(event, tasks);
+    }
+
+    private void fanOut(Event event, List<SubscriberTask> tasks) {
+        final int lastIndex = tasks.size() - 1;
+        for (int i = 0; i < lastIndex; i++) {
+            pool.execute(tasks.get(i));
+        }
+        // The posting thread takes its share of the work instead of just waiting.
+        tasks.get(lastIndex)
+             .invoke();
+
+        SubscriberTask slowest = tasks.get(lastIndex);
+        for (int i = 0; i < lastIndex; i++) {
+            final SubscriberTask task = tasks.get(i);
+            task.join();
+            if (task.nanos > slowest.nanos) {
+                slowest = task;
+            }
+        }
+        onSlowestSubscriber(event, slowest.subscriber, slowest.nanos);
+    }
+
+    /**
+     * Called after all the subscribers are done with an event delivered in parallel.
+     *
+     * <p>Logs the subscriber if it takes longer than the slow subscriber threshold, if one is set.
+     *
+     * @param event      the delivered event
+     * @param subscriber the subscriber, which took the longest time to handle the event
+     * @param nanos      the time of handling the event by the subscriber
+     */
+    protected void onSlowestSubscriber(Event event, EventSubscriber subscriber, long nanos) {
+        if (slowSubscriberThresholdNanos != null && nanos > slowSubscriberThresholdNanos) {
+            log().warn("Subscriber {} took {} ms to handle the event {}.",
+                       subscriber.getClass()
+                                 .getName(),
+                       TimeUnit.NANOSECONDS.toMillis(nanos),
+                       idToString(event.getContext()
+                                       .getEventId()));
+        }
+    }
+
+    /**
+     * Shuts down the pool, if it was created by this delivery, and waits until the running subscribers are done.
+     *
+     * <p>The events delivered after closing are passed to the subscribers in the posting thread.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        if (!ownPool) {
+            return;
+        }
+        pool.shutdown();
+        while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+            log().debug("Waiting for the subscribers to complete.");
+        }
+    }
+
+    /**
+     * The action delivering the event to a single subscriber, which measures the time of its work
+     * and isolates its failure from the other subscribers.
+     */
+    @SuppressWarnings("serial")  // The tasks are never serialized.
+    private static class SubscriberTask extends ForkJoinTask<Void> {
+
+        private final EventSubscriber subscriber;
+        private final Event event;
+        private final Runnable action;
+
+        /** The time of the delivery; written before the task completes, so safely read after joining it. */
+        private long nanos;
+
+        private SubscriberTask(EventSubscriber subscriber, Event event, Runnable action) {
+            this.subscriber = subscriber;
+            this.event = event;
+            this.action = action;
+        }
+
+        @Override
+        public Void getRawResult() {
+            return null;
+        }
+
+        @Override
+        protected void setRawResult(Void value) {
+            // No result.
+        }
+
+        @Override
+        protected boolean exec() {
+            final long start = System.nanoTime();
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                handleSubscriberException(e, event, event.getContext());
+            } finally {
+                nanos = System.nanoTime() - start;
+            }
+            return true;
+        }
+    }
+
+    /** The builder for {@link ParallelSubscriberEventDelivery}. */
+    public static class Builder {
+
+        /** The default minimal number of subscribers of an event, which are called in parallel. */
+        public static final int DEFAULT_MIN_FAN_OUT = 2;
+
+        @Nullable
+        private ForkJoinPool pool;
+        private int parallelism = Runtime.getRuntime()
+                                         .availableProcessors();
+        private int minFanOut = DEFAULT_MIN_FAN_OUT;
+        @Nullable
+        private Long slowSubscriberThresholdNanos;
+
+        private Builder() {}
+
+        /**
+         * Sets the pool to call the subscribers in.
+         *
+         * <p>The pool is not shut down upon closing the delivery.
+         *
+         * <p>If not set, a new pool of the {@linkplain #setParallelism(int) given parallelism} is created.
+         */
+        public Builder setPool(ForkJoinPool pool) {
+            this.pool = checkNotNull(pool);
+            return this;
+        }
+
+        public Optional<ForkJoinPool> getPool() {
+            return Optional.fromNullable(pool);
+        }
+
+        /**
+         * Sets the parallelism of the pool created by the delivery.
+         *
+         * <p>If not set, the number of the available processors is used. Ignored if the pool is
+         * {@linkplain #setPool(ForkJoinPool) set explicitly}.
+         */
+        public Builder setParallelism(int parallelism) {
+            checkArgument(parallelism > 0, "Parallelism must be positive.");
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        /**
+         * Sets the minimal number of subscribers of an event, starting from which they are called in parallel.
+         *
+         * <p>The subscribers of the events having less subscribers are called one after another in the posting
+         * thread. If not set, {@link #DEFAULT_MIN_FAN_OUT} is used.
+         */
+        public Builder setMinFanOut(int minFanOut) {
+            checkArgument(minFanOut > 1, "Minimal fan-out must be greater than one.");
+            this.minFanOut = minFanOut;
+            return this;
+        }
+
+        public int getMinFanOut() {
+            return minFanOut;
+        }
+
+        /**
+         * Sets the time, after which the slowest subscriber of an event delivered in parallel is logged.
+         *
+         * <p>If not set, the subscribers are not logged.
+         */
+        public Builder setSlowSubscriberThreshold(long threshold, TimeUnit unit) {
+            checkArgument(threshold >= 0, "Slow subscriber threshold must not be negative.");
+            checkNotNull(unit);
+            this.slowSubscriberThresholdNanos = unit.toNanos(threshold);
+            return this;
+        }
+
+        public Optional<Long> getSlowSubscriberThresholdNanos() {
+            return Optional.fromNullable(slowSubscriberThresholdNanos);
+        }
+
+        public ParallelSubscriberEventDelivery build() {
+            final ParallelSubscriberEventDelivery result = new ParallelSubscriberEventDelivery(this);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.event;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Lists;
+import org.spine3.base.Event;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Reads the partitions of a query concurrently.
+ *
+ * <p>Each partition is read by a task in the executor, which passes the events to the consumer
+ * through a bounded buffer. At most {@code parallelism} partitions are read at a time. The next
+ * partition is started when the consumer takes the last event of one of the partitions being read.
+ *
+ * <p>If the iterator is {@linkplain Ordering#SEQUENTIAL sequential}, each partition has its own buffer, and
+ * the events of a partition are returned after all the events of the previous ones. Otherwise, all
+ * the partitions share the buffer, and the events are returned as they are read, keeping only the order
+ * of each partition.
+ *
+ * <p>A task, which finds the buffer full, does not wait for the consumer. It leaves the executor thread
+ * and is resubmitted to the executor when the consumer frees a half of the buffer. Thus a slow consumer
+ * does not hold the threads, which the iterators of the other consumers may use.
+ *
+ * <p>The iterator is not thread-safe, except for {@link #close()}.
+ */
+final class PartitionedEventIterator extends AbstractIterator<Event> implements AutoCloseable {
+
+    /** The interval, at which the waiting consumer checks if the iterator is closed. */
+    private static final long CLOSE_CHECK_INTERVAL_MS = 100;
+
+    private final EventStreamCursors.StorageQuery storage;
+    private final Executor executor;
+    private final int bufferSize;
+    private final Ordering ordering;
+
+    /** The partitions, which are not read yet. */
+    private final Queue<EventStreamQuery> pending;
+
+    /** The buffers of the partitions being read, in the order of the partitions. */
+    private final Queue<BlockingQueue<Object>> buffers = new ArrayDeque<>();
+
+    /** The readers of the partitions being read. */
+    private final List<PartitionReader> readers = Lists.newLinkedList();
+
+    private volatile boolean closed = false;
+
+    /**
+     * Creates the iterator and starts reading the first partitions.
+     *
+     * @param partitions  the partitions to read
+     * @param storage     the function reading a partition from the storage
+     * @param executor    the executor to read the partitions in
+     * @param parallelism the maximum number of the partitions read at a time
+     * @param bufferSize  the maximum number of the events read in advance per partition
+     * @param ordering    the order of the returned events
+     */
+    PartitionedEventIterator(List<EventStreamQuery> partitions,
+                             EventStreamCursors.StorageQuery storage,
+                             Executor executor,
+                             int parallelism,
+                             int bufferSize,
+                             Ordering ordering) {
+        super();
+        checkArgument(parallelism > 0, "Parallelism must be positive.");
+        checkArgument(bufferSize > 0, "Buffer size must be positive.");
+        this.storage = storage;
+        this.executor = executor;
+        this.bufferSize = bufferSize;
+        this.ordering = ordering;
+        this.pending = new ArrayDeque<>(partitions);
+        if (ordering == Ordering.INTERLEAVED) {
+            buffers.add(new ArrayBlockingQueue<>(bufferSize * parallelism));
+        }
+        for (int i = 0; i < parallelism && !pending.isEmpty(); i++) {
+            startNextPartition();
+        }
+    }
+
+    private void startNextPartition() {
+        final EventStreamQuery partition = pending.poll();
+        final BlockingQueue<Object> buffer;
+        if (ordering == Ordering.SEQUENTIAL) {
+            buffer = new ArrayBlockingQueue<>(bufferSize);
+            buffers.add(buffer);
+        } else {
+            buffer = buffers.peek();
+        }
+        final PartitionReader reader = new PartitionReader(partition, buffer);
+        readers.add(reader);
+        executor.execute(reader);
+    }
+
+    @Override
+    protected Event computeNext() {
+        while (!readers.isEmpty()) {
+            final BlockingQueue<Object> buffer = buffers.peek();
+            final Object item = take(buffer);
+            if (item == null) {
+                break;
+            }
+            resumeReaders(buffer);
+            if (item instanceof Event) {
+                return (Event) item;
+            }
+            onPartitionEnd((EndOfPartition) item);
+        }
+        return endOfData();
+    }
+
+    /** Resumes the readers of the buffer, which wait for the space in it. */
+    private void resumeReaders(BlockingQueue<Object> buffer) {
+        for (PartitionReader reader : readers) {
+            if (reader.buffer == buffer) {
+                reader.resumeIfParked();
+            }
+        }
+    }
+
+    private void onPartitionEnd(EndOfPartition end) {
+        readers.remove(end.reader);
+        if (ordering == Ordering.SEQUENTIAL) {
+            buffers.poll();
+        }
+        final RuntimeException failure = end.failure;
+        if (failure != null) {
+            close();
+            throw failure;
+        }
+        if (!pending.isEmpty()) {
+            startNextPartition();
+        }
+    }
+
+    /**
+     * Takes the next item from the buffer, waiting for it if needed.
+     *
+     * @return the item or {@code null} if the iterator is closed
+     */
+    @Nullable
+    private Object take(BlockingQueue<Object> buffer) {
+        try {
+            while (!closed) {
+                final Object result = buffer.poll(CLOSE_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (result != null) {
+                    return result;
+                }
+            }
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                  .interrupt();
+            throw new IllegalStateException("Interrupted while waiting for events.", e);
+        }
+    }
+
+    /**
+     * Stops reading the partitions.
+     *
+     * <p>The tasks reading the partitions finish soon after the closing. Any further call to
+     * {@link #hasNext()} returns {@code false}.
+     */
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    /** The order of the events returned by the iterator. */
+    enum Ordering {
+
+        /** The events of each partition follow the events of the previous partitions. */
+        SEQUENTIAL,
+
+        /** Only the order of the events of each partition is kept. */
+        INTERLEAVED
+    }
+
+    /** Marks the end of the events of a partition. */
+    private static final class EndOfPartition {
+
+        private final PartitionReader reader;
+
+        /** The cause of the failure of reading the partition or {@code null} if the partition is read. */
+        @Nullable
+        private final RuntimeException failure;
+
+        private EndOfPartition(PartitionReader reader, @Nullable RuntimeException failure) {
+            this.reader = reader;
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * Reads a partition into the buffer.
+     *
+     * <p>When the buffer is full, the reader is parked: the task finishes, keeping the item, which did not fit.
+     * The consumer resumes a parked reader by submitting it to the executor again once there is enough space.
+     * Both sides resume the reader only by resetting the {@link #parked} flag, so that it is never run twice
+     * at a time and never left parked with the space in the buffer.
+     */
+    private class PartitionReader implements Runnable {
+
+        private final EventStreamQuery partition;
+        private final BlockingQueue<Object> buffer;
+
+        /** The space in the buffer, which allows the parked reader to continue. */
+        private final int resumeCapacity;
+
+        private final AtomicBoolean parked = new AtomicBoolean();
+
+        /*
+         * The fields below are accessed by one task at a time. The setting of the `parked` flag publishes them
+         * to the next task.
+         */
+
+        @Nullable
+        private Iterator<Event> events;
+
+        /** The item, which did not fit into the full buffer. */
+        @Nullable
+        private Object carried;
+
+        private boolean finished;
+
+        private PartitionReader(EventStreamQuery partition, BlockingQueue<Object> buffer) {
+            this.partition = partition;
+            this.buffer = buffer;
+            this.resumeCapacity = Math.max(1, (buffer.size() + buffer.remainingCapacity()) / 2);
+        }
+
+        @Override
+        public void run() {
+            while (!closed) {
+                final Object item = nextItem();
+                if (item == null) {
+                    return;
+                }
+                if (!buffer.offer(item)) {
+                    carried = item;
+                    if (!continueAfterParking()) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Obtains the next item to put into the buffer.
+         *
+         * @return the item or {@code null} if the partition end is already put
+         */
+        @Nullable
+        private Object nextItem() {
+            final Object carried = this.carried;
+            if (carried != null) {
+                this.carried = null;
+                return carried;
+            }
+            if (finished) {
+                return null;
+            }
+            try {
+                if (events == null) {
+                    events = storage.iterator(partition);
+                }
+                if (events.hasNext()) {
+                    return events.next();
+                }
+                finished = true;
+                return new EndOfPartition(this, null);
+            } catch (RuntimeException e) {
+                finished = true;
+                return new EndOfPartition(this, e);
+            }
+        }
+
+        /**
+         * Parks the reader.
+         *
+         * @return {@code true} if the consumer has freed the space meanwhile and the reader continues,
+         *         {@code false} if the reader stays parked until the consumer resumes it
+         */
+        private boolean continueAfterParking() {
+            parked.set(true);
+            final boolean result = hasSpace() && parked.compareAndSet(true, false);
+            return result;
+        }
+
+        /** Resubmits the reader, if it is parked and there is enough space in the buffer. */
+        private void resumeIfParked() {
+            if (hasSpace() && parked.compareAndSet(true, false)) {
+                executor.execute(this);
+            }
+        }
+
+        private boolean hasSpace() {
+            return buffer.remainingCapacity() >= resumeCapacity;
+        }
+    }
+}
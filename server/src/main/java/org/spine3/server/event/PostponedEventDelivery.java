@@ -0,0 +1,617 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.event;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.spine3.Internal;
+import org.spine3.SPI;
+import org.spine3.base.Event;
+import org.spine3.server.event.metrics.EventMetrics;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+import static com.google.common.collect.Maps.newHashMap;
+
+/**
+ * A {@link SubscriberEventDelivery}, which queues the events for the postponed subscriber classes and
+ * delivers them later in batches.
+ *
+ * <p>The delivery to the subscribers of some class is postponed after the class is passed to
+ * {@link #postpone(Class)} and until it is passed to {@link #resume(Class)}. This allows to throttle
+ * the expensive subscribers during the peaks of load.
+ *
+ * <p>Each of the postponed subscriber classes has its own backlog of events. The backlog is flushed:
+ * <ul>
+ *     <li>upon the {@link #flush(Class)} call;
+ *     <li>when it reaches the {@linkplain Builder#setFlushSize(int) flush size}, if one is set;
+ *     <li>when its oldest event waits longer than the {@linkplain Builder#setMaxDelay(long, TimeUnit) maximum
+ *         delay}, if one is set. The age of the backlog is checked upon each postponed event and by
+ *         {@link #flushExpired()}, which is run periodically if a {@linkplain Builder#setScheduler scheduler}
+ *         is set.
+ * </ul>
+ *
+ * <p>The events are kept in memory up to the {@linkplain Builder#setCapacity(int) capacity} of the backlog.
+ * When the capacity is exceeded, the oldest batch of the events is moved to the {@link SpillStorage}, if one
+ * is set, or delivered right away otherwise. Either way, no event is lost.
+ *
+ * <p>The events are always flushed in the order they were postponed in. Upon {@linkplain #resume(Class) resuming}
+ * a subscriber class, its backlog is flushed before the class gets any new events.
+ *
+ * <p>The size of each backlog is reported to the {@linkplain EventBus#getMetrics() metrics} of the bus
+ * as the depth of the {@code postponed.<subscriber class name>} queue.
+ *
+ * <p>{@link #close()} stops the periodic flushing and flushes all the backlogs. The {@link EventBus}
+ * closes its subscriber delivery upon its own closing.
+ */
+@SPI
+@SuppressWarnings("WeakerAccess")   // Part of API.
+public class PostponedEventDelivery extends SubscriberEventDelivery implements AutoCloseable {
+
+    private final int capacity;
+    private final int batchSize;
+    @Nullable
+    private final Integer flushSize;
+    @Nullable
+    private final Long maxDelayNanos;
+    @Nullable
+    private final SpillStorage spillStorage;
+    private final Ticker ticker;
+
+    private final Set<Class<?>> postponedClasses =
+            Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
+    private final ConcurrentMap<Class<?>, Backlog> backlogs = new ConcurrentHashMap<>();
+
+    /** The periodic flushing of the expired backlogs or {@code null} if no scheduler is set. */
+    @Nullable
+    private final ScheduledFuture<?> expiryCheck;
+
+    protected PostponedEventDelivery(Builder builder) {
+        super(builder.executor);
+        this.capacity = builder.capacity;
+        this.batchSize = builder.batchSize;
+        this.flushSize = builder.flushSize;
+        this.maxDelayNanos = builder.maxDelayNanos;
+        this.spillStorage = builder.spillStorage;
+        this.ticker = builder.ticker;
+        this.expiryCheck = builder.scheduler != null
+                           ? scheduleExpiryCheck(builder.scheduler)
+                           : null;
+    }
+
+    private ScheduledFuture<?> scheduleExpiryCheck(ScheduledExecutorService scheduler) {
+        checkNotNull(maxDelayNanos);
+        return scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flushExpired();
+            }
+        }, maxDelayNanos, maxDelayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /** Creates a builder for new {@code PostponedEventDelivery}. */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Starts postponing the delivery of the events to the subscribers of the given class.
+     *
+     * @param subscriberClass the class of the subscribers
+     */
+    public void postpone(Class<? extends EventSubscriber> subscriberClass) {
+        checkNotNull(subscriberClass);
+        postponedClasses.add(subscriberClass);
+    }
+
+    /**
+     * Stops postponing the delivery of the events to the subscribers of the given class.
+     *
+     * <p>The events postponed so far are delivered first. The events posted while they are delivered
+     * are postponed and delivered after them too.
+     *
+     * @param subscriberClass the class of the subscribers
+     */
+    public void resume(Class<? extends EventSubscriber> subscriberClass) {
+        checkNotNull(subscriberClass);
+        backlogFor(subscriberClass).flushAndResume(subscriberClass);
+    }
+
+    /** Returns {@code true} if the delivery to the subscribers of the given class is postponed. */
+    public boolean isPostponed(Class<?> subscriberClass) {
+        return postponedClasses.contains(subscriberClass);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The event is queued once for all the subscribers of a postponed class before it is passed to
+     * the rest of the subscribers. The backlogs, to which the event is queued, are flushed if needed only
+     * after that, so that the flush does not deliver the event to the subscribers, which would queue it again.
+     */
+    @Internal
+    @Override
+    public void deliver(Event event, Collection<EventSubscriber> consumers) {
+        final Map<Class<?>, Backlog> queuedTo = newHashMap();
+        final List<EventSubscriber> notPostponed = newArrayListWithCapacity(consumers.size());
+        for (EventSubscriber consumer : consumers) {
+            final Class<?> subscriberClass = consumer.getClass();
+            if (queuedTo.containsKey(subscriberClass)) {
+                continue;
+            }
+            if (isPostponed(subscriberClass)) {
+                final Backlog backlog = backlogFor(subscriberClass);
+                // The class may be resumed meanwhile, in which case the event is delivered right away.
+                if (backlog.addIfPostponed(event, subscriberClass)) {
+                    queuedTo.put(subscriberClass, backlog);
+                    continue;
+                }
+            }
+            notPostponed.add(consumer);
+        }
+        super.deliver(event, notPostponed);
+        for (Map.Entry<Class<?>, Backlog> queued : queuedTo.entrySet()) {
+            final Class<?> subscriberClass = queued.getKey();
+            final Backlog backlog = queued.getValue();
+            reportDepth(subscriberClass, backlog);
+            flushIfNeeded(subscriberClass, backlog);
+        }
+    }
+
+    /**
+     * Returns {@code false}, as the subscribers of the postponed classes are filtered out by
+     * {@link #deliver(Event, Collection)} before.
+     */
+    @Override
+    protected boolean shouldPostponeDelivery(Event event, EventSubscriber subscriber) {
+        return false;
+    }
+
+    /**
+     * Delivers all the events postponed for the subscribers of the given class.
+     *
+     * <p>The events are delivered in batches. The events postponed while the flush is in progress
+     * are delivered too.
+     *
+     * @param subscriberClass the class of the subscribers
+     * @return the number of the delivered events
+     */
+    public int flush(Class<?> subscriberClass) {
+        checkNotNull(subscriberClass);
+        final Backlog backlog = backlogs.get(subscriberClass);
+        if (backlog == null) {
+            return 0;
+        }
+        final int result = backlog.flush(subscriberClass);
+        return result;
+    }
+
+    /**
+     * Delivers all the postponed events.
+     *
+     * @return the number of the delivered events
+     */
+    public int flushAll() {
+        int result = 0;
+        for (Class<?> subscriberClass : backlogs.keySet()) {
+            result += flush(subscriberClass);
+        }
+        return result;
+    }
+
+    /**
+     * Flushes the backlogs, in which the oldest event waits longer than the maximum delay.
+     *
+     * <p>Does nothing if the maximum delay is not set.
+     *
+     * @return the number of the delivered events
+     */
+    public int flushExpired() {
+        if (maxDelayNanos == null) {
+            return 0;
+        }
+        int result = 0;
+        for (Class<?> subscriberClass : backlogs.keySet()) {
+            final Backlog backlog = backlogs.get(subscriberClass);
+            if (backlog.isExpired()) {
+                result += backlog.flush(subscriberClass);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of the events waiting for the delivery to the subscribers of the given class,
+     * including the spilled ones.
+     */
+    public int getPostponedCount(Class<?> subscriberClass) {
+        final Backlog backlog = backlogs.get(subscriberClass);
+        final int result = backlog == null
+                           ? 0
+                           : backlog.size();
+        return result;
+    }
+
+    /**
+     * Stops the periodic flushing of the expired backlogs, if any, and delivers all the postponed events.
+     */
+    @Override
+    public void close() {
+        if (expiryCheck != null) {
+            expiryCheck.cancel(false);
+        }
+        flushAll();
+    }
+
+    private Backlog backlogFor(Class<?> subscriberClass) {
+        final Backlog existing = backlogs.get(subscriberClass);
+        if (existing != null) {
+            return existing;
+        }
+        final Backlog created = new Backlog();
+        final Backlog previous = backlogs.putIfAbsent(subscriberClass, created);
+        final Backlog result = previous == null
+                               ? created
+                               : previous;
+        return result;
+    }
+
+    /** Reports the current size of the backlog, which changes upon postponing and delivering the events. */
+    private void reportDepth(Class<?> subscriberClass, Backlog backlog) {
+        final EventMetrics metrics = getMetrics();
+        if (metrics != null) {
+            metrics.onQueueDepth("postponed." + subscriberClass.getName(), backlog.size());
+        }
+    }
+
+    private void flushIfNeeded(Class<?> subscriberClass, Backlog backlog) {
+        final boolean sizeReached = flushSize != null && backlog.size() >= flushSize;
+        if (sizeReached || backlog.isExpired()) {
+            backlog.flush(subscriberClass);
+            return;
+        }
+        if (backlog.inMemorySize() > capacity) {
+            backlog.relieve(subscriberClass);
+        }
+    }
+
+    /**
+     * The backlog of events postponed for the subscribers of some class.
+     *
+     * <p>The oldest events are spilled, if any, followed by the events kept in memory.
+     */
+    private class Backlog {
+
+        /** The lock, which keeps the flushes of this backlog sequential. */
+        private final Object flushLock = new Object();
+
+        private final Queue<Event> events = new ArrayDeque<>();
+
+        private int spilledCount;
+
+        /** The time of postponing the oldest event of the backlog, or {@code null} if the backlog is empty. */
+        @Nullable
+        private Long oldestTime;
+
+        /**
+         * Adds the event to the backlog, unless the subscriber class is already resumed.
+         *
+         * @return {@code true} if the event is added, {@code false} otherwise
+         */
+        private synchronized boolean addIfPostponed(Event event, Class<?> subscriberClass) {
+            if (!isPostponed(subscriberClass)) {
+                return false;
+            }
+            events.add(event);
+            if (oldestTime == null) {
+                oldestTime = ticker.read();
+            }
+            return true;
+        }
+
+        private synchronized int size() {
+            return spilledCount + events.size();
+        }
+
+        private synchronized int inMemorySize() {
+            return events.size();
+        }
+
+        private synchronized boolean isExpired() {
+            if (maxDelayNanos == null || oldestTime == null) {
+                return false;
+            }
+            final long waitingTime = ticker.read() - oldestTime;
+            return waitingTime >= maxDelayNanos;
+        }
+
+        /** Moves the oldest batch of the in-memory events to the spill storage or delivers it. */
+        private void relieve(Class<?> subscriberClass) {
+            if (spillStorage == null) {
+                synchronized (flushLock) {
+                    final List<Event> batch = pollBatch();
+                    deliverBatch(batch, subscriberClass);
+                }
+                reportDepth(subscriberClass, this);
+                return;
+            }
+            synchronized (this) {
+                final List<Event> batch = pollBatch();
+                spillStorage.spill(subscriberClass, batch);
+                spilledCount += batch.size();
+            }
+        }
+
+        private int flush(Class<?> subscriberClass) {
+            int result = 0;
+            synchronized (flushLock) {
+                List<Event> batch = nextBatch(subscriberClass);
+                while (!batch.isEmpty()) {
+                    deliverBatch(batch, subscriberClass);
+                    result += batch.size();
+                    batch = nextBatch(subscriberClass);
+                }
+            }
+            reportDepth(subscriberClass, this);
+            return result;
+        }
+
+        /**
+         * Flushes the backlog and stops postponing the events for the subscriber class once it is empty.
+         *
+         * <p>No event is added to the empty backlog before the class is resumed, as the events are added
+         * under the same lock.
+         */
+        private void flushAndResume(Class<?> subscriberClass) {
+            synchronized (flushLock) {
+                while (true) {
+                    flush(subscriberClass);
+                    synchronized (this) {
+                        if (size() == 0) {
+                            postponedClasses.remove(subscriberClass);
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+
+        /** Takes the next batch of the events to flush, starting from the spilled ones. */
+        private synchronized List<Event> nextBatch(Class<?> subscriberClass) {
+            if (spilledCount > 0) {
+                checkNotNull(spillStorage);
+                final List<Event> result = spillStorage.restore(subscriberClass, batchSize);
+                checkState(!result.isEmpty(), "The spilled events of %s are lost.", subscriberClass);
+                spilledCount -= result.size();
+                if (spilledCount == 0 && events.isEmpty()) {
+                    oldestTime = null;
+                }
+                return result;
+            }
+            return pollBatch();
+        }
+
+        private synchronized List<Event> pollBatch() {
+            final int count = Math.min(batchSize, events.size());
+            final List<Event> result = newArrayListWithCapacity(count);
+            for (int i = 0; i < count; i++) {
+                result.add(events.poll());
+            }
+            if (events.isEmpty() && spilledCount == 0) {
+                oldestTime = null;
+            }
+            return result;
+        }
+
+        private void deliverBatch(List<Event> batch, Class<?> subscriberClass) {
+            for (Event event : batch) {
+                deliverNow(event, subscriberClass);
+            }
+        }
+    }
+
+    /**
+     * The storage for the postponed events, which exceed the capacity of the in-memory backlog.
+     *
+     * <p>The storage must keep the events of each subscriber class in the order of spilling.
+     */
+    @SPI
+    public interface SpillStorage {
+
+        /**
+         * Writes the events postponed for the subscribers of the given class.
+         *
+         * @param subscriberClass the class of the subscribers
+         * @param events          the events in the order of postponing
+         */
+        void spill(Class<?> subscriberClass, List<Event> events);
+
+        /**
+         * Reads and removes the oldest spilled events of the given subscriber class.
+         *
+         * @param subscriberClass the class of the subscribers
+         * @param maxCount        the maximum number of the events to read
+         * @return the events in the order of spilling, or an empty list if there are none
+         */
+        List<Event> restore(Class<?> subscriberClass, int maxCount);
+    }
+
+    /** The builder for {@link PostponedEventDelivery}. */
+    public static class Builder {
+
+        /** The default maximum number of the events kept in memory per subscriber class. */
+        public static final int DEFAULT_CAPACITY = 10_000;
+
+        /** The default number of the events delivered in a single batch. */
+        public static final int DEFAULT_BATCH_SIZE = 100;
+
+        private Executor executor = MoreExecutors.directExecutor();
+        private int capacity = DEFAULT_CAPACITY;
+        private int batchSize = DEFAULT_BATCH_SIZE;
+        @Nullable
+        private Integer flushSize;
+        @Nullable
+        private Long maxDelayNanos;
+        @Nullable
+        private ScheduledExecutorService scheduler;
+        @Nullable
+        private SpillStorage spillStorage;
+        private Ticker ticker = Ticker.systemTicker();
+
+        private Builder() {}
+
+        /**
+         * Sets the {@code Executor} used to pass the events to the subscribers.
+         *
+         * <p>If not set, {@link MoreExecutors#directExecutor()} is used.
+         */
+        public Builder setExecutor(Executor executor) {
+            this.executor = checkNotNull(executor);
+            return this;
+        }
+
+        public Executor getExecutor() {
+            return executor;
+        }
+
+        /**
+         * Sets the maximum number of the events kept in memory per subscriber class.
+         *
+         * <p>If not set, {@link #DEFAULT_CAPACITY} is used.
+         */
+        public Builder setCapacity(int capacity) {
+            checkArgument(capacity > 0, "Capacity must be positive.");
+            this.capacity = capacity;
+            return this;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        /**
+         * Sets the number of the events delivered or spilled at once.
+         *
+         * <p>If not set, {@link #DEFAULT_BATCH_SIZE} is used.
+         */
+        public Builder setBatchSize(int batchSize) {
+            checkArgument(batchSize > 0, "Batch size must be positive.");
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        /**
+         * Sets the number of the postponed events, upon reaching which the backlog of a subscriber class
+         * is flushed.
+         *
+         * <p>If not set, the backlog is not flushed by its size.
+         */
+        public Builder setFlushSize(int flushSize) {
+            checkArgument(flushSize > 0, "Flush size must be positive.");
+            this.flushSize = flushSize;
+            return this;
+        }
+
+        public Optional<Integer> getFlushSize() {
+            return Optional.fromNullable(flushSize);
+        }
+
+        /**
+         * Sets the maximum time an event may wait in the backlog before the backlog is flushed.
+         *
+         * <p>If not set, the backlog is not flushed by time.
+         */
+        public Builder setMaxDelay(long maxDelay, TimeUnit unit) {
+            checkArgument(maxDelay > 0, "Maximum delay must be positive.");
+            checkNotNull(unit);
+            this.maxDelayNanos = unit.toNanos(maxDelay);
+            return this;
+        }
+
+        public Optional<Long> getMaxDelayNanos() {
+            return Optional.fromNullable(maxDelayNanos);
+        }
+
+        /**
+         * Sets the scheduler to run {@link PostponedEventDelivery#flushExpired()} with the period of
+         * the {@linkplain #setMaxDelay(long, TimeUnit) maximum delay}.
+         *
+         * <p>If not set, the age of the backlog is checked only when a new event is postponed.
+         */
+        public Builder setScheduler(ScheduledExecutorService scheduler) {
+            this.scheduler = checkNotNull(scheduler);
+            return this;
+        }
+
+        public Optional<ScheduledExecutorService> getScheduler() {
+            return Optional.fromNullable(scheduler);
+        }
+
+        /**
+         * Sets the storage for the events exceeding the {@linkplain #setCapacity(int) capacity}.
+         *
+         * <p>If not set, such events are delivered right away.
+         */
+        public Builder setSpillStorage(SpillStorage spillStorage) {
+            this.spillStorage = checkNotNull(spillStorage);
+            return this;
+        }
+
+        public Optional<SpillStorage> getSpillStorage() {
+            return Optional.fromNullable(spillStorage);
+        }
+
+        @VisibleForTesting
+        Builder setTicker(Ticker ticker) {
+            this.ticker = checkNotNull(ticker);
+            return this;
+        }
+
+        public PostponedEventDelivery build() {
+            checkState(scheduler == null || maxDelayNanos != null,
+                       "The maximum delay must be set along with the scheduler.");
+            final PostponedEventDelivery result = new PostponedEventDelivery(this);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.event;
+
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.Any;
+import com.google.protobuf.Timestamp;
+import org.spine3.protobuf.Timestamps;
+
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.protobuf.util.Timestamps.fromNanos;
+import static com.google.protobuf.util.Timestamps.toNanos;
+
+/**
+ * Splits an {@link EventStreamQuery} into the queries, which together match the same events,
+ * so that the events can be read in parallel.
+ */
+final class QueryPartitions {
+
+    private QueryPartitions() {}
+
+    /**
+     * Splits the query into the queries of the consecutive time ranges.
+     *
+     * <p>The range between the earliest and the latest times is split into the ranges of equal length.
+     * The first partition has the lower bound of the query, and the last one has its upper bound.
+     * So, the events, which are out of the given range, but match the query, are not lost.
+     *
+     * <p>The events with the same timestamp always belong to the same partition. So, reading
+     * the partitions one by one gives the same events in the same order as reading the whole query.
+     *
+     * @param query    the query to split
+     * @param earliest the earliest time of the events to split the range at
+     * @param latest   the latest time of the events to split the range at
+     * @param count    the maximum number of partitions
+     * @return the partitions in the chronological order
+     */
+    static List<EventStreamQuery> byTime(EventStreamQuery query, Timestamp earliest, Timestamp latest, int count) {
+        checkArgument(count > 0, "The number of partitions must be positive.");
+        final long start = toNanos(query.hasAfter() ? max(query.getAfter(), earliest) : earliest);
+        final long end = toNanos(query.hasBefore() ? min(query.getBefore(), latest) : latest);
+        final long length = end - start;
+        if (count == 1 || length < count) {
+            return ImmutableList.of(query);
+        }
+        final ImmutableList.Builder<EventStreamQuery> result = ImmutableList.builder();
+        final EventStreamQuery.Builder first = query.toBuilder();
+        long lastCut = cutAt(start, length, count, 1);
+        first.setBefore(fromNanos(lastCut + 1));
+        result.add(first.build());
+        for (int i = 2; i < count; i++) {
+            final long cut = cutAt(start, length, count, i);
+            final EventStreamQuery partition = query.toBuilder()
+                                                    .setAfter(fromNanos(lastCut))
+                                                    .setBefore(fromNanos(cut + 1))
+                                                    .build();
+            result.add(partition);
+            lastCut = cut;
+        }
+        final EventStreamQuery last = query.toBuilder()
+                                           .setAfter(fromNanos(lastCut))
+                                           .build();
+        result.add(last);
+        return result.build();
+    }
+
+    /** Obtains the time, which ends the partition with the given number, in nanoseconds. */
+    private static long cutAt(long start, long length, int count, int partitionNumber) {
+        // The division goes first to avoid the overflow on long ranges.
+        final long result = start + length / count * partitionNumber + length % count * partitionNumber / count;
+        return result;
+    }
+
+    private static Timestamp max(Timestamp first, Timestamp second) {
+        return Timestamps.compare(first, second) >= 0 ? first : second;
+    }
+
+    private static Timestamp min(Timestamp first, Timestamp second) {
+        return Timestamps.compare(first, second) <= 0 ? first : second;
+    }
+
+    /**
+     * Splits the query into the queries of the disjoint groups of producers.
+     *
+     * <p>Each partition keeps the filters with only the aggregate IDs of its group. The events of
+     * each producer thus belong to exactly one partition.
+     *
+     * @param query the query, each filter of which specifies the aggregate IDs
+     * @param count the maximum number of partitions
+     * @return the partitions, each of which has at least one filter
+     * @throws IllegalArgumentException if some filter of the query does not specify the aggregate IDs
+     */
+    static List<EventStreamQuery> byProducer(EventStreamQuery query, int count) {
+        checkArgument(count > 0, "The number of partitions must be positive.");
+        checkArgument(isSplittableByProducer(query), "Each filter must specify the aggregate IDs.");
+        final ImmutableList.Builder<EventStreamQuery> result = ImmutableList.builder();
+        for (int group = 0; group < count; group++) {
+            final EventStreamQuery.Builder partition = query.toBuilder()
+                                                            .clearFilter();
+            for (EventFilter filter : query.getFilterList()) {
+                final EventFilter.Builder groupFilter = filter.toBuilder()
+                                                              .clearAggregateId();
+                for (Any aggregateId : filter.getAggregateIdList()) {
+                    if (groupOf(aggregateId, count) == group) {
+                        groupFilter.addAggregateId(aggregateId);
+                    }
+                }
+                // The filter without the aggregate IDs would match all the producers.
+                if (groupFilter.getAggregateIdCount() > 0) {
+                    partition.addFilter(groupFilter);
+                }
+            }
+            if (partition.getFilterCount() > 0) {
+                result.add(partition.build());
+            }
+        }
+        return result.build();
+    }
+
+    /** Checks if each filter of the query specifies the aggregate IDs. */
+    static boolean isSplittableByProducer(EventStreamQuery query) {
+        if (query.getFilterCount() == 0) {
+            return false;
+        }
+        for (EventFilter filter : query.getFilterList()) {
+            if (filter.getAggregateIdCount() == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int groupOf(Any aggregateId, int count) {
+        final int result = (aggregateId.hashCode() & Integer.MAX_VALUE) % count;
+        return result;
+    }
+}
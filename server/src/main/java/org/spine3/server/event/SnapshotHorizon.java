@@ -0,0 +1,54 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.event;
+
+import com.google.protobuf.Timestamp;
+import org.spine3.SPI;
+import org.spine3.server.event.storage.EventStorageRecord;
+
+import javax.annotation.Nullable;
+
+/**
+ * Tells which events of an aggregate are covered by its latest snapshot.
+ *
+ * <p>The events of an aggregate, which happened before its latest snapshot, are not needed to
+ * restore the aggregate. An {@link EventRetentionPolicy} with a horizon allows to remove them
+ * from the {@link EventStorage}.
+ *
+ * @see EventRetentionPolicy.Builder#setSnapshotHorizon(SnapshotHorizon)
+ */
+@SPI
+public interface SnapshotHorizon {
+
+    /**
+     * Obtains the time of the latest snapshot of the aggregate, which produced the event.
+     *
+     * <p>The {@linkplain EventStorageRecord#getProducerId() producer ID} alone does not identify
+     * the aggregate, as the aggregates of different types may have equal IDs. The implementations
+     * should tell the type of the aggregate by the {@linkplain EventStorageRecord#getEventType() type}
+     * of the event or by the {@linkplain EventStorageRecord#getContext() context} of the event.
+     *
+     * @param record the record of the event
+     * @return the time of the snapshot or {@code null} if the producer is not an aggregate, or
+     *         the aggregate has no snapshots
+     */
+    @Nullable
+    Timestamp getSnapshotTime(EventStorageRecord record);
+}
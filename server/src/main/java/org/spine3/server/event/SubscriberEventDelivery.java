@@ -73,42 +73,41 @@ public abstract class SubscriberEventDelivery extends EventDelivery<EventSubscri
                 try {
                     consumer.handle(message, context);
                 } catch (InvocationTargetException e) {
-                    handleSubscriberException(e, event, context);
+                    handleSubscriberException(e.getCause(), event, context);
                 }
             }
         };
     }
 
-    private static void handleSubscriberException(InvocationTargetException e,
-                                                  Message eventMessage,
-                                                  EventContext eventContext) {
+    static void handleSubscriberException(Throwable cause,
+                                          Message eventMessage,
+                                          EventContext eventContext) {
         log().error("Exception handling event. Event message: {}, context: {}, cause: {}",
-                    eventMessage, eventContext, e.getCause());
+                    eventMessage, eventContext, cause);
     }
 
     /**
-     * Obtains a pre-defined instance of the {@code SubscriberEventDelivery}, which does NOT postpone any
+     * Creates a new instance of the {@code SubscriberEventDelivery}, which does NOT postpone any
      * event delivery and uses {@link MoreExecutors#directExecutor()} for operation.
      *
-     * @return the pre-configured default executor.
+     * <p>Each {@link EventBus} needs its own instance, as the bus passes its consumers and metrics to it.
+     *
+     * @return the new direct delivery
      */
     public static SubscriberEventDelivery directDelivery() {
-        return PredefinedDeliveryStrategies.DIRECT_DELIVERY;
+        return new DirectDelivery();
     }
 
-    /** Utility wrapper class for predefined executors designed to be constants. */
-    private static final class PredefinedDeliveryStrategies {
+    /**
+     * The {@code SubscriberEventDelivery}, which does not postpone any event delivery
+     * and uses {@link MoreExecutors#directExecutor()} for operation.
+     */
+    private static final class DirectDelivery extends SubscriberEventDelivery {
 
-        /**
-         * A pre-defined instance of the {@code SubscriberEventDelivery}, which does not postpone any event delivery
-         * and uses {@link MoreExecutors#directExecutor()} for operation.
-         */
-        private static final SubscriberEventDelivery DIRECT_DELIVERY = new SubscriberEventDelivery() {
-            @Override
-            protected boolean shouldPostponeDelivery(Event event, EventSubscriber subscriber) {
-                return false;
-            }
-        };
+        @Override
+        protected boolean shouldPostponeDelivery(Event event, EventSubscriber subscriber) {
+            return false;
+        }
     }
 
     private enum LogSingleton {
@@ -21,64 +21,124 @@
 package org.spine3.server.event;
 
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.protobuf.Message;
+import org.spine3.server.delivery.ConsumerIndex;
 import org.spine3.server.reflect.EventSubscriberMethod;
 import org.spine3.server.reflect.MethodMap;
 import org.spine3.server.type.EventClass;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
 
 /**
  * The registry of event subscribers by event class.
  *
  * <p>There can be multiple subscribers per event class.
  *
+ * <p>The registry is safe for the concurrent use. The changes are serialized, and each of them publishes
+ * an immutable snapshot of the subscribers. The lookups read the latest snapshot without locking.
+ *
  * @author Alexander Yevsyukov
  */
 class SubscriberRegistry {
 
     private final HashMultimap<EventClass, EventSubscriber> subscribersByEventClass = HashMultimap.create();
 
-    void subscribe(EventSubscriber object) {
+    /**
+     * The snapshot of the subscribers of each event class.
+     *
+     * <p>Is replaced by a new immutable map upon each change of {@link #subscribersByEventClass}.
+     */
+    private volatile ImmutableMap<EventClass, ConsumerIndex<EventSubscriber>> index = ImmutableMap.of();
+
+    synchronized void subscribe(EventSubscriber object) {
         checkNotNull(object);
         final MethodMap<EventSubscriberMethod> subscribers = EventSubscriberMethod.scan(object);
         final boolean subscribersEmpty = subscribers.isEmpty();
         checkSubscribersNotEmpty(object, subscribersEmpty);
+        final List<EventClass> eventClasses = newArrayList();
         for (Map.Entry<Class<? extends Message>, EventSubscriberMethod> entry : subscribers.entrySet()) {
-            subscribersByEventClass.put(EventClass.of(entry.getKey()), object);
+            final EventClass eventClass = EventClass.of(entry.getKey());
+            subscribersByEventClass.put(eventClass, object);
+            eventClasses.add(eventClass);
         }
+        updateIndex(eventClasses);
     }
 
-    void unsubscribe(EventSubscriber object) {
+    synchronized void unsubscribe(EventSubscriber object) {
         final MethodMap<EventSubscriberMethod> subscribers = EventSubscriberMethod.scan(object);
         final boolean subscribersEmpty = subscribers.isEmpty();
         checkSubscribersNotEmpty(object, subscribersEmpty);
         if (!subscribersEmpty) {
-            for (Class<? extends Message> eventClass : subscribers.keySet()) {
-                subscribersByEventClass.remove(EventClass.of(eventClass), object);
+            final List<EventClass> eventClasses = newArrayList();
+            for (Class<? extends Message> messageClass : subscribers.keySet()) {
+                final EventClass eventClass = EventClass.of(messageClass);
+                subscribersByEventClass.remove(eventClass, object);
+                eventClasses.add(eventClass);
             }
+            updateIndex(eventClasses);
         }
     }
 
-    void unsubscribeAll() {
+    synchronized void unsubscribeAll() {
         subscribersByEventClass.clear();
+        index = ImmutableMap.of();
         EventBus.log().info("All subscribers cleared.");
     }
 
     Set<EventSubscriber> getSubscribers(EventClass c) {
-        return ImmutableSet.copyOf(subscribersByEventClass.get(c));
+        final ConsumerIndex<EventSubscriber> subscribers = getSubscriberIndex(c);
+        return ImmutableSet.copyOf(subscribers.getAll());
+    }
+
+    /**
+     * Obtains the precomputed index of the subscribers of the given event class.
+     *
+     * @return the index of the subscribers or an empty index if there are none
+     */
+    ConsumerIndex<EventSubscriber> getSubscriberIndex(EventClass eventClass) {
+        final ConsumerIndex<EventSubscriber> result = index.get(eventClass);
+        return result == null
+               ? ConsumerIndex.<EventSubscriber>empty()
+               : result;
+    }
+
+    /** Returns the event classes, which have at least one of the registered subscribers. */
+    Set<EventClass> getEventClasses() {
+        return index.keySet();
     }
 
     boolean hasSubscribers(EventClass eventClass) {
-        final Set<EventSubscriber> subscribers = getSubscribers(eventClass);
+        final ConsumerIndex<EventSubscriber> subscribers = getSubscriberIndex(eventClass);
         return !subscribers.isEmpty();
     }
 
+    /**
+     * Publishes the new snapshot of the index with the entries for the given event classes rebuilt.
+     *
+     * <p>Must be called under the lock guarding {@link #subscribersByEventClass}.
+     */
+    private void updateIndex(Iterable<EventClass> eventClasses) {
+        final Map<EventClass, ConsumerIndex<EventSubscriber>> updated = newHashMap(index);
+        for (EventClass eventClass : eventClasses) {
+            final Set<EventSubscriber> classSubscribers = subscribersByEventClass.get(eventClass);
+            if (classSubscribers.isEmpty()) {
+                updated.remove(eventClass);
+            } else {
+                updated.put(eventClass, ConsumerIndex.of(classSubscribers));
+            }
+        }
+        index = ImmutableMap.copyOf(updated);
+    }
+
     private static void checkSubscribersNotEmpty(Object object, boolean subscribersEmpty) {
         checkArgument(!subscribersEmpty, "No event subscriber methods found in %s", object);
     }
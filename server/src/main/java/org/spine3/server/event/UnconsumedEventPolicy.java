@@ -0,0 +1,45 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.event;
+
+/**
+ * Defines what the {@link EventBus} does with a posted event, which has neither dispatchers nor subscribers.
+ *
+ * <p>In any case, such an event is not enriched and is passed to the {@link DeadEventSink}.
+ *
+ * @see EventBus.Builder#setUnconsumedEventPolicy(UnconsumedEventPolicy)
+ */
+public enum UnconsumedEventPolicy {
+
+    /**
+     * The event is stored in the {@link EventStore}, so that it can be read later.
+     *
+     * <p>This is the default policy.
+     */
+    STORE,
+
+    /**
+     * The event is dropped without storing.
+     *
+     * <p>Use this policy only if the events of the classes nobody subscribes to are of no value,
+     * as they are not available for reading from the {@link EventStore} afterwards.
+     */
+    DROP
+}
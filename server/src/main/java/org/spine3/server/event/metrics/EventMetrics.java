@@ -0,0 +1,94 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.event.metrics;
+
+import org.spine3.SPI;
+import org.spine3.server.type.EventClass;
+
+import java.util.Map;
+
+/**
+ * Receives the measurements of the event processing in the {@code EventBus}.
+ *
+ * <p>The methods are called on the hot path of posting events, so the implementations must be fast
+ * and thread-safe. All the durations are passed in nanoseconds.
+ *
+ * @see InMemoryEventMetrics
+ */
+@SPI
+public interface EventMetrics {
+
+    /**
+     * Called upon posting of an event.
+     *
+     * @param eventClass the class of the posted event
+     */
+    void onPosted(EventClass eventClass);
+
+    /**
+     * Called after the events are appended to the {@code EventStore}.
+     *
+     * @param eventCount the number of the events stored at once
+     * @param nanos      the time of storing
+     */
+    void onStored(int eventCount, long nanos);
+
+    /**
+     * Called after an event is enriched.
+     *
+     * @param eventClass the class of the enriched event
+     * @param nanos      the time of enrichment
+     */
+    void onEnriched(EventClass eventClass, long nanos);
+
+    /**
+     * Called after an event is passed to all of its dispatchers and subscribers.
+     *
+     * <p>If the event delivery strategies use the executors other than the direct one, the time does not
+     * include the handling of the event.
+     *
+     * @param eventClass the class of the delivered event
+     * @param nanos      the time of delivery
+     */
+    void onDelivered(EventClass eventClass, long nanos);
+
+    /**
+     * Called after an event dispatcher or subscriber handles an event.
+     *
+     * @param consumerClass the class of the dispatcher or subscriber
+     * @param nanos         the time of handling
+     */
+    void onHandled(Class<?> consumerClass, long nanos);
+
+    /**
+     * Called upon queueing the events for the delivery.
+     *
+     * @param queueName the name of the queue
+     * @param depth     the current number of the items in the queue
+     */
+    void onQueueDepth(String queueName, long depth);
+
+    /**
+     * Obtains the current values of all the measurements by their names.
+     *
+     * <p>The format of the names and values is up to the implementation.
+     */
+    Map<String, Number> dump();
+}
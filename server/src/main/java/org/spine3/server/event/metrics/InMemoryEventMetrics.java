@@ -0,0 +1,249 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.event.metrics;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import org.spine3.server.type.EventClass;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Maps.newTreeMap;
+import static java.util.Collections.unmodifiableSortedMap;
+
+/**
+ * The default {@link EventMetrics}, which keeps the measurements in memory.
+ *
+ * <p>The counters are striped between the threads and the durations are kept in the fixed-size
+ * histograms, so recording a measurement takes a few atomic operations and allocates nothing
+ * after the first event of each class.
+ *
+ * <p>{@link #dump()} returns the measurements by the names in the following format:
+ * <ul>
+ *     <li>{@code posted.<event class>} — the number of the posted events of the class;
+ *     <li>{@code posted.<event class>.rate}, {@code posted.rate} — the average number of the events
+ *         of the class and of all the events posted per second since the creation of the metrics;
+ *     <li>{@code store.latency.*}, {@code enrich.latency.*}, {@code deliver.latency.*} — the durations
+ *         of storing, enrichment and delivery of all the events;
+ *     <li>{@code enrich.<event class>.*}, {@code deliver.<event class>.*} — the durations of enrichment
+ *         and delivery of the events of the class;
+ *     <li>{@code handler.<consumer class>.*} — the durations of the handling by the consumers of the class;
+ *     <li>{@code queue.<name>.depth}, {@code queue.<name>.maxDepth} — the last and the maximum observed
+ *         depth of the queue.
+ * </ul>
+ *
+ * <p>Each of the durations is represented by the {@code count}, {@code mean}, {@code max}, {@code p50},
+ * {@code p90} and {@code p99} values in nanoseconds.
+ */
+public class InMemoryEventMetrics implements EventMetrics {
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final Ticker ticker;
+    private final long startNanos;
+    private final ConcurrentMap<EventClass, EventClassMetrics> eventClassMetrics = new ConcurrentHashMap<>();
+    private final LatencyHistogram storeLatency = new LatencyHistogram();
+    private final LatencyHistogram enrichLatency = new LatencyHistogram();
+    private final LatencyHistogram deliverLatency = new LatencyHistogram();
+    private final ConcurrentMap<Class<?>, LatencyHistogram> handlerLatency = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, QueueDepth> queueDepths = new ConcurrentHashMap<>();
+
+    public InMemoryEventMetrics() {
+        this(Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    InMemoryEventMetrics(Ticker ticker) {
+        this.ticker = checkNotNull(ticker);
+        this.startNanos = ticker.read();
+    }
+
+    @Override
+    public void onPosted(EventClass eventClass) {
+        metricsOf(eventClass).posted.increment();
+    }
+
+    @Override
+    public void onStored(int eventCount, long nanos) {
+        storeLatency.record(nanos);
+    }
+
+    @Override
+    public void onEnriched(EventClass eventClass, long nanos) {
+        metricsOf(eventClass).enrichLatency.record(nanos);
+        enrichLatency.record(nanos);
+    }
+
+    @Override
+    public void onDelivered(EventClass eventClass, long nanos) {
+        metricsOf(eventClass).deliverLatency.record(nanos);
+        deliverLatency.record(nanos);
+    }
+
+    @Override
+    public void onHandled(Class<?> consumerClass, long nanos) {
+        checkNotNull(consumerClass);
+        LatencyHistogram histogram = handlerLatency.get(consumerClass);
+        if (histogram == null) {
+            final LatencyHistogram newHistogram = new LatencyHistogram();
+            final LatencyHistogram existing = handlerLatency.putIfAbsent(consumerClass, newHistogram);
+            histogram = existing == null
+                        ? newHistogram
+                        : existing;
+        }
+        histogram.record(nanos);
+    }
+
+    @Override
+    public void onQueueDepth(String queueName, long depth) {
+        checkNotNull(queueName);
+        QueueDepth queueDepth = queueDepths.get(queueName);
+        if (queueDepth == null) {
+            final QueueDepth newQueueDepth = new QueueDepth();
+            final QueueDepth existing = queueDepths.putIfAbsent(queueName, newQueueDepth);
+            queueDepth = existing == null
+                         ? newQueueDepth
+                         : existing;
+        }
+        queueDepth.update(depth);
+    }
+
+    private EventClassMetrics metricsOf(EventClass eventClass) {
+        checkNotNull(eventClass);
+        EventClassMetrics result = eventClassMetrics.get(eventClass);
+        if (result == null) {
+            final EventClassMetrics newMetrics = new EventClassMetrics();
+            final EventClassMetrics existing = eventClassMetrics.putIfAbsent(eventClass, newMetrics);
+            result = existing == null
+                     ? newMetrics
+                     : existing;
+        }
+        return result;
+    }
+
+    /** Returns the number of the posted events of the given class. */
+    public long getPostedCount(EventClass eventClass) {
+        checkNotNull(eventClass);
+        final EventClassMetrics metrics = eventClassMetrics.get(eventClass);
+        final long result = metrics == null
+                            ? 0
+                            : metrics.posted.get();
+        return result;
+    }
+
+    /**
+     * Returns the average number of the events of the given class posted per second
+     * since this instance was created.
+     */
+    public double getPostRate(EventClass eventClass) {
+        final double result = rateOf(getPostedCount(eventClass));
+        return result;
+    }
+
+    private double rateOf(long count) {
+        final long elapsedNanos = ticker.read() - startNanos;
+        final double result = elapsedNanos <= 0
+                              ? 0
+                              : count * NANOS_PER_SECOND / elapsedNanos;
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return the measurements sorted by their names
+     */
+    @Override
+    public SortedMap<String, Number> dump() {
+        final SortedMap<String, Number> result = newTreeMap();
+        long totalPosted = 0;
+        for (Map.Entry<EventClass, EventClassMetrics> entry : eventClassMetrics.entrySet()) {
+            final String className = entry.getKey()
+                                          .value()
+                                          .getName();
+            final EventClassMetrics metrics = entry.getValue();
+            final long posted = metrics.posted.get();
+            totalPosted += posted;
+            result.put("posted." + className, posted);
+            result.put("posted." + className + ".rate", rateOf(posted));
+            if (metrics.enrichLatency.getCount() > 0) {
+                putLatency(result, "enrich." + className, metrics.enrichLatency);
+            }
+            if (metrics.deliverLatency.getCount() > 0) {
+                putLatency(result, "deliver." + className, metrics.deliverLatency);
+            }
+        }
+        result.put("posted.rate", rateOf(totalPosted));
+        putLatency(result, "store.latency", storeLatency);
+        putLatency(result, "enrich.latency", enrichLatency);
+        putLatency(result, "deliver.latency", deliverLatency);
+        for (Map.Entry<Class<?>, LatencyHistogram> entry : handlerLatency.entrySet()) {
+            final String prefix = "handler." + entry.getKey()
+                                                    .getName();
+            putLatency(result, prefix, entry.getValue());
+        }
+        for (Map.Entry<String, QueueDepth> entry : queueDepths.entrySet()) {
+            final String prefix = "queue." + entry.getKey();
+            final QueueDepth queueDepth = entry.getValue();
+            result.put(prefix + ".depth", queueDepth.current);
+            result.put(prefix + ".maxDepth", queueDepth.max.get());
+        }
+        return unmodifiableSortedMap(result);
+    }
+
+    @VisibleForTesting
+    static void putLatency(Map<String, Number> target, String prefix, LatencyHistogram histogram) {
+        target.put(prefix + ".count", histogram.getCount());
+        target.put(prefix + ".mean", histogram.getMean());
+        target.put(prefix + ".max", histogram.getMax());
+        target.put(prefix + ".p50", histogram.getValueAtPercentile(50));
+        target.put(prefix + ".p90", histogram.getValueAtPercentile(90));
+        target.put(prefix + ".p99", histogram.getValueAtPercentile(99));
+    }
+
+    /** The measurements of the events of a single class. */
+    private static class EventClassMetrics {
+
+        private final StripedCounter posted = new StripedCounter();
+        private final LatencyHistogram enrichLatency = new LatencyHistogram();
+        private final LatencyHistogram deliverLatency = new LatencyHistogram();
+    }
+
+    /** The last and the maximum observed depth of a queue. */
+    private static class QueueDepth {
+
+        private volatile long current;
+        private final AtomicLong max = new AtomicLong();
+
+        private void update(long depth) {
+            current = depth;
+            long currentMax = max.get();
+            while (depth > currentMax && !max.compareAndSet(currentMax, depth)) {
+                currentMax = max.get();
+            }
+        }
+    }
+}
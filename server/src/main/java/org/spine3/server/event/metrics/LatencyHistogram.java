@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.event.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A histogram of durations with the logarithmic buckets, each split into linear sub-buckets.
+ *
+ * <p>Each power of two is split into {@value #SUB_BUCKET_COUNT} sub-buckets, so the recorded values are
+ * kept with the relative error under 12.5% in a fixed amount of memory.
+ *
+ * <p>Recording a value is a couple of atomic increments with no allocation.
+ */
+class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final StripedCounter totalCount = new StripedCounter();
+    private final StripedCounter totalValue = new StripedCounter();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * Records the value.
+     *
+     * @param value a non-negative value; negative values are counted as zero
+     */
+    void record(long value) {
+        final long recorded = Math.max(0, value);
+        counts.incrementAndGet(indexOf(recorded));
+        totalCount.increment();
+        totalValue.add(recorded);
+        updateMax(recorded);
+    }
+
+    long getCount() {
+        return totalCount.get();
+    }
+
+    long getMax() {
+        return maxValue.get();
+    }
+
+    /** Returns the mean of the recorded values or zero if there are none. */
+    long getMean() {
+        final long count = getCount();
+        final long result = count == 0
+                            ? 0
+                            : totalValue.get() / count;
+        return result;
+    }
+
+    /**
+     * Returns the approximate value, below which the given percentage of the recorded values falls.
+     *
+     * @param percentile the percentile in the range {@code (0, 100]}
+     * @return the upper bound of the bucket containing the percentile, or zero if nothing is recorded
+     */
+    long getValueAtPercentile(double percentile) {
+        checkArgument(percentile > 0 && percentile <= 100, "Percentile must be in (0, 100].");
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                final long result = Math.min(upperBoundOf(i), getMax());
+                return result;
+            }
+        }
+        return getMax();
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - SUB_BUCKET_BITS;
+        final int subBucket = (int) (value >>> shift) & (SUB_BUCKET_COUNT - 1);
+        final int result = (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+        return result;
+    }
+
+    /** Returns the largest value falling into the bucket with the given index. */
+    static long upperBoundOf(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKET_COUNT - 1;
+        final long subBucket = index % SUB_BUCKET_COUNT;
+        final long lowerBound = (SUB_BUCKET_COUNT + subBucket) << shift;
+        final long result = lowerBound + (1L << shift) - 1;
+        return result;
+    }
+
+    private void updateMax(long value) {
+        long current = maxValue.get();
+        while (value > current && !maxValue.compareAndSet(current, value)) {
+            current = maxValue.get();
+        }
+    }
+}
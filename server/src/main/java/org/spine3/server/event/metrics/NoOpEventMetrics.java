@@ -0,0 +1,84 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.spine3.server.event.metrics;
+
+import com.google.common.collect.ImmutableMap;
+import org.spine3.server.type.EventClass;
+
+import java.util.Map;
+
+/**
+ * The {@link EventMetrics}, which ignores all the measurements.
+ *
+ * <p>Used by the {@code EventBus} unless other metrics are set. The bus does not measure the time of
+ * handling the events by the consumers, if it uses these metrics.
+ */
+public final class NoOpEventMetrics implements EventMetrics {
+
+    private NoOpEventMetrics() {}
+
+    /** Returns the single instance of the no-op metrics. */
+    public static NoOpEventMetrics getInstance() {
+        return Singleton.INSTANCE.value;
+    }
+
+    @Override
+    public void onPosted(EventClass eventClass) {
+        // Do nothing.
+    }
+
+    @Override
+    public void onStored(int eventCount, long nanos) {
+        // Do nothing.
+    }
+
+    @Override
+    public void onEnriched(EventClass eventClass, long nanos) {
+        // Do nothing.
+    }
+
+    @Override
+    public void onDelivered(EventClass eventClass, long nanos) {
+        // Do nothing.
+    }
+
+    @Override
+    public void onHandled(Class<?> consumerClass, long nanos) {
+        // Do nothing.
+    }
+
+    @Override
+    public void onQueueDepth(String queueName, long depth) {
+        // Do nothing.
+    }
+
+    /** Returns an empty map. */
+    @Override
+    public Map<String, Number> dump() {
+        return ImmutableMap.of();
+    }
+
+    @SuppressWarnings("NonSerializableFieldInSerializableClass")
+    private enum Singleton {
+        INSTANCE;
+        private final NoOpEventMetrics value = new NoOpEventMetrics();
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.event.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter, which spreads the increments of different threads between several cells
+ * to avoid the contention on a single variable.
+ *
+ * <p>The cells are padded to be placed into different cache lines.
+ */
+class StripedCounter {
+
+    private static final int STRIPE_COUNT = 16;
+
+    /** The number of {@code long} values in a cache line. */
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPE_COUNT * PADDING);
+
+    void increment() {
+        add(1);
+    }
+
+    void add(long value) {
+        final int stripe = (int) (Thread.currentThread()
+                                        .getId() % STRIPE_COUNT);
+        cells.addAndGet(stripe * PADDING, value);
+    }
+
+    /**
+     * Returns the sum of the cells.
+     *
+     * <p>The increments made concurrently with this call may or may not be included.
+     */
+    long get() {
+        long result = 0;
+        for (int stripe = 0; stripe < STRIPE_COUNT; stripe++) {
+            result += cells.get(stripe * PADDING);
+        }
+        return result;
+    }
+}
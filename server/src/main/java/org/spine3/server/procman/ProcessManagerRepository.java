@@ -126,9 +126,7 @@ public abstract class ProcessManagerRepository<I, P extends ProcessManager<I, S>
     /** Posts passed events to {@link EventBus}. */
     private void postEvents(Iterable<Event> events) {
         final EventBus eventBus = getBoundedContext().getEventBus();
-        for (Event event : events) {
-            eventBus.post(event);
-        }
+        eventBus.post(events);
     }
 
     /**
@@ -143,9 +141,20 @@ public abstract class ProcessManagerRepository<I, P extends ProcessManager<I, S>
      */
     @Override
     public void dispatch(Event event) throws IllegalArgumentException {
+        // The event class is checked upon obtaining the IDs of the process managers.
+        super.dispatch(event);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException if events of this type are not handled by the process manager
+     */
+    @Override
+    public Set<I> getTargetIds(Event event) throws IllegalArgumentException {
         checkEventClass(event);
 
-        super.dispatch(event);
+        return super.getTargetIds(event);
     }
 
     @Override
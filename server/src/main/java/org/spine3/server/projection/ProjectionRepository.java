@@ -225,11 +225,34 @@ public abstract class ProjectionRepository<I, P extends Projection<I, S>, S exte
         internalDispatch(event);
     }
 
+    /**
+     * Dispatches the passed event to the projections with the passed IDs if the repository is
+     * in {@link Status#ONLINE}.
+     *
+     * @param event     the event to dispatch
+     * @param targetIds the IDs of the projections
+     * @see #dispatch(Event)
+     */
+    @SuppressWarnings("MethodDoesntCallSuperMethod") // We call indirectly via `internalDispatch()`.
+    @Override
+    public void dispatch(Event event, Set<I> targetIds) {
+        if (!isOnline()) {
+            log().trace("Ignoring event {} while repository is not in {} status", event, Status.ONLINE);
+            return;
+        }
+
+        internalDispatch(event, targetIds);
+    }
+
     /**
      * Dispatches the passed event to projections without checking the status.
      */
     private void internalDispatch(Event event) {
-        super.dispatch(event);
+        internalDispatch(event, getTargetIds(event));
+    }
+
+    private void internalDispatch(Event event, Set<I> targetIds) {
+        super.dispatch(event, targetIds);
     }
 
     @Override
@@ -0,0 +1,410 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.storage;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.spine3.Internal;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A compact index of the positions of the stored events by the event IDs.
+ *
+ * <p>Each event ID is reduced to a 128-bit key: an ID in the canonical UUID format is converted to the bits
+ * of the UUID, and any other ID is hashed. The keys and the positions are packed into the primitive arrays
+ * of an open-addressing hash table, so that the index does not keep the IDs and the records on the heap.
+ *
+ * <p>Each table is fronted by a Bloom filter, which rejects most of the absent IDs without touching
+ * the table. A present ID is found with a single probe sequence of the table.
+ *
+ * <p>The meaning of a position is up to the storage. As two different IDs may in theory be reduced to
+ * the same key, the storage should check the ID of the record found by the position.
+ *
+ * <p>The index is split into the stripes by the keys, each guarded by its own lock, so that the concurrent
+ * writers do not wait for each other most of the time.
+ */
+@Internal
+public final class EventIdIndex {
+
+    private static final int STRIPE_COUNT = 16;
+    private static final int STRIPE_MASK = STRIPE_COUNT - 1;
+
+    private static final int UUID_LENGTH = 36;
+
+    private static final HashFunction KEY_HASH = Hashing.murmur3_128();
+
+    private final Stripe[] stripes = new Stripe[STRIPE_COUNT];
+
+    public EventIdIndex() {
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Sets the position of the event.
+     *
+     * @param eventId  the ID of the event
+     * @param position the position of the event in the storage
+     * @return the previous position of the event or {@code Optional.absent()} if it was not indexed
+     */
+    public Optional<Long> put(String eventId, long position) {
+        checkNotNull(eventId);
+        final Key key = Key.of(eventId);
+        return stripeOf(key).put(key, position);
+    }
+
+    /**
+     * Obtains the position of the event.
+     *
+     * @param eventId the ID of the event
+     * @return the position or {@code Optional.absent()} if the event is not indexed
+     */
+    public Optional<Long> get(String eventId) {
+        checkNotNull(eventId);
+        final Key key = Key.of(eventId);
+        return stripeOf(key).get(key);
+    }
+
+    /**
+     * Replaces the position of the event, if it is still the expected one.
+     *
+     * @return {@code true} if the position is replaced, {@code false} otherwise
+     */
+    public boolean replace(String eventId, long expectedPosition, long newPosition) {
+        checkNotNull(eventId);
+        final Key key = Key.of(eventId);
+        return stripeOf(key).replace(key, expectedPosition, newPosition);
+    }
+
+    /**
+     * Removes the event from the index, if it is still at the expected position.
+     *
+     * <p>The event, which has been written again at another position, remains indexed.
+     *
+     * @return {@code true} if the event is removed, {@code false} otherwise
+     */
+    public boolean remove(String eventId, long expectedPosition) {
+        checkNotNull(eventId);
+        final Key key = Key.of(eventId);
+        return stripeOf(key).remove(key, expectedPosition);
+    }
+
+    /** Obtains the number of the indexed events. */
+    public int size() {
+        int result = 0;
+        for (Stripe stripe : stripes) {
+            result += stripe.size();
+        }
+        return result;
+    }
+
+    /** Checks if the Bloom filter lets the ID through to the table. */
+    @VisibleForTesting
+    boolean mightContain(String eventId) {
+        final Key key = Key.of(eventId);
+        return stripeOf(key).mightContain(key);
+    }
+
+    private Stripe stripeOf(Key key) {
+        return stripes[(int) (key.hash >>> 60) & STRIPE_MASK];
+    }
+
+    /** Mixes the bits of the key, so that each bit of the result depends on all the bits of the key. */
+    private static long mix(long first, long second) {
+        long result = first * 0x9E3779B97F4A7C15L ^ second;
+        result ^= result >>> 33;
+        result *= 0xFF51AFD7ED558CCDL;
+        result ^= result >>> 33;
+        return result;
+    }
+
+    /** The 128-bit key of an event ID. */
+    private static final class Key {
+
+        private final long high;
+        private final long low;
+
+        /** The hash addressing the stripe and the slot of the table. */
+        private final long hash;
+
+        /** The hash addressing the bits of the Bloom filter, which is independent of {@link #hash}. */
+        private final long bloomHash;
+
+        private Key(long high, long low) {
+            this.high = high;
+            this.low = low;
+            this.hash = mix(high, low);
+            this.bloomHash = mix(low, high);
+        }
+
+        private static Key of(String eventId) {
+            final Key uuid = parseUuid(eventId);
+            if (uuid != null) {
+                return uuid;
+            }
+            final ByteBuffer hash = ByteBuffer.wrap(KEY_HASH.hashString(eventId, StandardCharsets.UTF_8)
+                                                            .asBytes())
+                                              .order(ByteOrder.LITTLE_ENDIAN);
+            return new Key(hash.getLong(), hash.getLong());
+        }
+
+        /**
+         * Converts the ID in the canonical UUID format, that is the lower case hexadecimal digits
+         * with the dashes, to the key.
+         *
+         * @return the key or {@code null} if the ID is not in the canonical UUID format
+         */
+        private static Key parseUuid(String eventId) {
+            if (eventId.length() != UUID_LENGTH) {
+                return null;
+            }
+            long high = 0;
+            long low = 0;
+            int digits = 0;
+            for (int i = 0; i < UUID_LENGTH; i++) {
+                final char c = eventId.charAt(i);
+                if (i == 8 || i == 13 || i == 18 || i == 23) {
+                    if (c != '-') {
+                        return null;
+                    }
+                    continue;
+                }
+                final int digit;
+                if (c >= '0' && c <= '9') {
+                    digit = c - '0';
+                } else if (c >= 'a' && c <= 'f') {
+                    digit = c - 'a' + 10;
+                } else {
+                    return null;
+                }
+                if (digits < 16) {
+                    high = (high << 4) | digit;
+                } else {
+                    low = (low << 4) | digit;
+                }
+                digits++;
+            }
+            return new Key(high, low);
+        }
+    }
+
+    /**
+     * A part of the index: a hash table with the linear probing and the Bloom filter in front of it.
+     *
+     * <p>The removed entries are not cleared from the Bloom filter. The filter is rebuilt when the table
+     * grows, or when too many entries are removed since the previous rebuild.
+     */
+    private static final class Stripe {
+
+        private static final int INITIAL_CAPACITY = 64;
+
+        /** The maximum share of the occupied slots in percents. */
+        private static final int MAX_LOAD_PERCENT = 70;
+
+        /** The size of the Bloom filter in bits per slot of the table. */
+        private static final int BLOOM_BITS_PER_SLOT = 8;
+
+        private static final int BLOOM_HASH_COUNT = 3;
+
+        private long[] highs;
+        private long[] lows;
+        private long[] positions;
+        private boolean[] occupied;
+        private long[] bloom;
+        private int size;
+        private int removedSinceRebuild;
+
+        private Stripe() {
+            allocate(INITIAL_CAPACITY);
+        }
+
+        private void allocate(int capacity) {
+            highs = new long[capacity];
+            lows = new long[capacity];
+            positions = new long[capacity];
+            occupied = new boolean[capacity];
+            bloom = new long[capacity * BLOOM_BITS_PER_SLOT / Long.SIZE];
+        }
+
+        private synchronized Optional<Long> put(Key key, long position) {
+            final int slot = find(key);
+            if (slot >= 0) {
+                final long previous = positions[slot];
+                positions[slot] = position;
+                return Optional.of(previous);
+            }
+            if ((size + 1) * 100 > highs.length * MAX_LOAD_PERCENT) {
+                grow();
+            }
+            insert(key.high, key.low, position);
+            addToBloom(key.bloomHash);
+            size++;
+            return Optional.absent();
+        }
+
+        private synchronized Optional<Long> get(Key key) {
+            if (!mightContain(key)) {
+                return Optional.absent();
+            }
+            final int slot = find(key);
+            if (slot < 0) {
+                return Optional.absent();
+            }
+            return Optional.of(positions[slot]);
+        }
+
+        private synchronized boolean replace(Key key, long expectedPosition, long newPosition) {
+            final int slot = find(key);
+            if (slot < 0 || positions[slot] != expectedPosition) {
+                return false;
+            }
+            positions[slot] = newPosition;
+            return true;
+        }
+
+        private synchronized boolean remove(Key key, long expectedPosition) {
+            final int slot = find(key);
+            if (slot < 0 || positions[slot] != expectedPosition) {
+                return false;
+            }
+            delete(slot);
+            size--;
+            removedSinceRebuild++;
+            if (removedSinceRebuild > highs.length / 4) {
+                rebuildBloom();
+            }
+            return true;
+        }
+
+        private synchronized int size() {
+            return size;
+        }
+
+        private synchronized boolean mightContain(Key key) {
+            final long hash = key.bloomHash;
+            final int bits = bloom.length * Long.SIZE;
+            final int step = (int) (hash >>> 32) | 1;
+            int bit = (int) hash;
+            for (int i = 0; i < BLOOM_HASH_COUNT; i++) {
+                final int index = (bit & Integer.MAX_VALUE) % bits;
+                if ((bloom[index >>> 6] & (1L << index)) == 0) {
+                    return false;
+                }
+                bit += step;
+            }
+            return true;
+        }
+
+        private void addToBloom(long hash) {
+            final int bits = bloom.length * Long.SIZE;
+            final int step = (int) (hash >>> 32) | 1;
+            int bit = (int) hash;
+            for (int i = 0; i < BLOOM_HASH_COUNT; i++) {
+                final int index = (bit & Integer.MAX_VALUE) % bits;
+                bloom[index >>> 6] |= 1L << index;
+                bit += step;
+            }
+        }
+
+        /** Obtains the slot of the key or {@code -1} if the key is absent. */
+        private int find(Key key) {
+            final int mask = highs.length - 1;
+            int slot = (int) key.hash & mask;
+            while (occupied[slot]) {
+                if (highs[slot] == key.high && lows[slot] == key.low) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private void insert(long high, long low, long position) {
+            final int mask = highs.length - 1;
+            int slot = slotOf(high, low, mask);
+            while (occupied[slot]) {
+                slot = (slot + 1) & mask;
+            }
+            highs[slot] = high;
+            lows[slot] = low;
+            positions[slot] = position;
+            occupied[slot] = true;
+        }
+
+        /** Frees the slot shifting the following entries of the probe sequence back to keep them reachable. */
+        private void delete(int slot) {
+            final int mask = highs.length - 1;
+            int free = slot;
+            int next = (free + 1) & mask;
+            while (occupied[next]) {
+                final int home = slotOf(highs[next], lows[next], mask);
+                // The entry may move to the free slot only if its home slot is not between the two.
+                final boolean movable = free <= next
+                                        ? home <= free || home > next
+                                        : home <= free && home > next;
+                if (movable) {
+                    highs[free] = highs[next];
+                    lows[free] = lows[next];
+                    positions[free] = positions[next];
+                    free = next;
+                }
+                next = (next + 1) & mask;
+            }
+            occupied[free] = false;
+        }
+
+        private void grow() {
+            final long[] oldHighs = highs;
+            final long[] oldLows = lows;
+            final long[] oldPositions = positions;
+            final boolean[] oldOccupied = occupied;
+            allocate(oldHighs.length * 2);
+            for (int i = 0; i < oldHighs.length; i++) {
+                if (oldOccupied[i]) {
+                    insert(oldHighs[i], oldLows[i], oldPositions[i]);
+                    addToBloom(mix(oldLows[i], oldHighs[i]));
+                }
+            }
+            removedSinceRebuild = 0;
+        }
+
+        private void rebuildBloom() {
+            bloom = new long[bloom.length];
+            for (int i = 0; i < highs.length; i++) {
+                if (occupied[i]) {
+                    addToBloom(mix(lows[i], highs[i]));
+                }
+            }
+            removedSinceRebuild = 0;
+        }
+
+        private static int slotOf(long high, long low, int mask) {
+            return (int) mix(high, low) & mask;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.storage.file;
+
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.Timestamp;
+import org.spine3.protobuf.Timestamps;
+import org.spine3.server.event.storage.EventStorageRecord;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * An entry of the sparse timestamp index: a run of consecutive entries of a segment along with
+ * the earliest and the latest timestamps of the events in them.
+ *
+ * <p>A block is extended under the lock of the storage until it is full. The readers work with
+ * the {@linkplain #copy() copies} of the blocks.
+ */
+final class Block {
+
+    private final Segment segment;
+    private final long position;
+    private final long firstSequence;
+
+    private int recordCount;
+    private int length;
+    @Nullable
+    private Timestamp minTime;
+    @Nullable
+    private Timestamp maxTime;
+
+    Block(Segment segment, long position, long firstSequence) {
+        this.segment = segment;
+        this.position = position;
+        this.firstSequence = firstSequence;
+    }
+
+    private Block(Block other) {
+        this(other.segment, other.position, other.firstSequence);
+        this.recordCount = other.recordCount;
+        this.length = other.length;
+        this.minTime = other.minTime;
+        this.maxTime = other.maxTime;
+    }
+
+    /**
+     * Adds the entry written right after the last entry of the block.
+     *
+     * @param records     the records of the entry
+     * @param entryLength the length of the written entry
+     */
+    void add(List<EventStorageRecord> records, int entryLength) {
+        for (EventStorageRecord record : records) {
+            final Timestamp time = record.getTimestamp();
+            if (minTime == null || Timestamps.compare(time, minTime) < 0) {
+                minTime = time;
+            }
+            if (maxTime == null || Timestamps.compare(time, maxTime) > 0) {
+                maxTime = time;
+            }
+        }
+        recordCount += records.size();
+        length += entryLength;
+    }
+
+    Block copy() {
+        return new Block(this);
+    }
+
+    /**
+     * Checks if the block may contain the events, which happened after and before the given points in time.
+     *
+     * @param after  the exclusive lower bound or {@code null} if there is no lower bound
+     * @param before the exclusive upper bound or {@code null} if there is no upper bound
+     */
+    boolean overlaps(@Nullable Timestamp after, @Nullable Timestamp before) {
+        if (recordCount == 0) {
+            return false;
+        }
+        final boolean endsAfter = after == null || Timestamps.compare(maxTime, after) > 0;
+        final boolean startsBefore = before == null || Timestamps.compare(minTime, before) < 0;
+        return endsAfter && startsBefore;
+    }
+
+    /** Reads all the records of the block in the order of writing. */
+    List<EventStorageRecord> readRecords() throws IOException {
+        final ByteBuffer data = segment.read(position, length);
+        final SegmentEncoding encoding = segment.getEncoding();
+        final ImmutableList.Builder<EventStorageRecord> result = ImmutableList.builder();
+        int count = 0;
+        while (count < recordCount) {
+            final List<EventStorageRecord> entry = encoding.decode(data, segment.getDictionary());
+            checkState(entry != null, "Corrupted entry in segment %s.", segment.getFile());
+            result.addAll(entry);
+            count += entry.size();
+        }
+        return result.build();
+    }
+
+    Segment getSegment() {
+        return segment;
+    }
+
+    long getFirstSequence() {
+        return firstSequence;
+    }
+
+    int getRecordCount() {
+        return recordCount;
+    }
+
+    /** Returns the earliest timestamp of the events in the block; must not be called for an empty block. */
+    Timestamp getMinTime() {
+        checkState(minTime != null, "The block is empty.");
+        return minTime;
+    }
+
+    /** Returns the latest timestamp of the events in the block; must not be called for an empty block. */
+    Timestamp getMaxTime() {
+        checkState(maxTime != null, "The block is empty.");
+        return maxTime;
+    }
+}
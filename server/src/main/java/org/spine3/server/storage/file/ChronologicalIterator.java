@@ -0,0 +1,155 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.storage.file;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.protobuf.Timestamp;
+import org.spine3.protobuf.Timestamps;
+import org.spine3.server.event.storage.EventStorageRecord;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+
+import static com.google.common.collect.Lists.newArrayList;
+
+/**
+ * Iterates over the records of the blocks in the chronological order of their events.
+ *
+ * <p>The blocks are read lazily in the order of their earliest timestamps. A block is read only when
+ * the next record to return may not be earlier than the events of the block. So, if the events are
+ * written approximately in the chronological order, only a few blocks are held in memory at a time.
+ *
+ * <p>The events with the same timestamp are returned in the order of writing.
+ */
+final class ChronologicalIterator extends AbstractIterator<EventStorageRecord> {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final Queue<Block> blocks;
+    private final PriorityQueue<SequencedRecord> pending = new PriorityQueue<>(INITIAL_CAPACITY,
+                                                                              new SequencedRecordOrder());
+    @Nullable
+    private final Timestamp after;
+    @Nullable
+    private final Timestamp before;
+
+    /**
+     * Creates a new iterator.
+     *
+     * @param blocks the non-empty blocks in the order of writing
+     * @param after  the exclusive lower bound of event time or {@code null} if there is no lower bound
+     * @param before the exclusive upper bound of event time or {@code null} if there is no upper bound
+     */
+    ChronologicalIterator(List<Block> blocks, @Nullable Timestamp after, @Nullable Timestamp before) {
+        final List<Block> sorted = newArrayList(blocks);
+        // The sort is stable, so the blocks with the same earliest time remain in the order of writing.
+        Collections.sort(sorted, new BlockOrder());
+        this.blocks = new ArrayDeque<>(sorted);
+        this.after = after;
+        this.before = before;
+    }
+
+    @Override
+    protected EventStorageRecord computeNext() {
+        while (!blocks.isEmpty() && mayPrecedePending(blocks.peek())) {
+            read(blocks.poll());
+        }
+        final SequencedRecord next = pending.poll();
+        if (next == null) {
+            return endOfData();
+        }
+        return next.record;
+    }
+
+    private boolean mayPrecedePending(Block block) {
+        final SequencedRecord earliest = pending.peek();
+        final boolean result = earliest == null
+                || Timestamps.compare(block.getMinTime(), earliest.record.getTimestamp()) <= 0;
+        return result;
+    }
+
+    private void read(Block block) {
+        final List<EventStorageRecord> records;
+        try {
+            records = block.readRecords();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        long sequence = block.getFirstSequence();
+        for (EventStorageRecord record : records) {
+            if (isInRange(record.getTimestamp())) {
+                pending.add(new SequencedRecord(record, sequence));
+            }
+            sequence++;
+        }
+    }
+
+    private boolean isInRange(Timestamp time) {
+        final boolean isAfter = after == null || Timestamps.compare(time, after) > 0;
+        final boolean isBefore = before == null || Timestamps.compare(time, before) < 0;
+        return isAfter && isBefore;
+    }
+
+    private static final class SequencedRecord {
+
+        private final EventStorageRecord record;
+        private final long sequence;
+
+        private SequencedRecord(EventStorageRecord record, long sequence) {
+            this.record = record;
+            this.sequence = sequence;
+        }
+    }
+
+    /** Orders the records by the time of their events, and then by the order of writing. */
+    private static class SequencedRecordOrder implements Comparator<SequencedRecord>, Serializable {
+
+        private static final long serialVersionUID = 0L;
+
+        @Override
+        public int compare(SequencedRecord first, SequencedRecord second) {
+            final int byTime = Timestamps.compare(first.record.getTimestamp(), second.record.getTimestamp());
+            if (byTime != 0) {
+                return byTime;
+            }
+            final int result = Long.compare(first.sequence, second.sequence);
+            return result;
+        }
+    }
+
+    /** Orders the blocks by the earliest time of their events. */
+    private static class BlockOrder implements Comparator<Block>, Serializable {
+
+        private static final long serialVersionUID = 0L;
+
+        @Override
+        public int compare(Block first, Block second) {
+            final int result = Timestamps.compare(first.getMinTime(), second.getMinTime());
+            return result;
+        }
+    }
+}
@@ -0,0 +1,848 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.storage.file;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.protobuf.Timestamp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spine3.base.Event;
+import org.spine3.base.EventId;
+import org.spine3.protobuf.Timestamps;
+import org.spine3.server.event.EventStorage;
+import org.spine3.server.event.EventStreamQuery;
+import org.spine3.server.event.MatchesStreamQuery;
+import org.spine3.server.event.storage.EventStorageRecord;
+import org.spine3.server.storage.EventIdIndex;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Iterators.filter;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+
+/**
+ * An {@link EventStorage}, which keeps the events in the local files.
+ *
+ * <p>The records are appended to the end of the current segment file through a {@code FileChannel}.
+ * When the segment reaches the {@linkplain Builder#setMaxSegmentSize(long) maximum size}, a new segment
+ * is started. The records are never appended to the previous segments.
+ *
+ * <p>The segments are read through the read-only memory mappings, so that the reads do not copy
+ * the data through the heap buffers and do not block the writers.
+ *
+ * <p>Each {@linkplain Builder#setIndexInterval(int) run of records} of a segment is described by
+ * the sparse index kept in memory: the position of the run along with the earliest and the latest
+ * timestamps of its events. A read of a time range skips the runs, which are entirely out of the range.
+ * The events are read in the chronological order regardless of the order of writing. The events with
+ * the same timestamp are read in the order of writing.
+ *
+ * <p>If the storage is {@linkplain Builder#setCompressed(boolean) compressed}, the records written
+ * together are deflated into a single entry of the segment. The segment keeps the compression dictionary
+ * made of the first records written to it, so that the type URLs, the IDs and the contexts repeated
+ * by the further events are compressed even in the small entries. The events produced by the same command
+ * do not repeat its {@code CommandContext} in an entry, and share a single instance of it once read.
+ * The segments written with and without the compression may be mixed in the same directory.
+ *
+ * <p>The index is rebuilt from the segments when the storage is opened. If the last segment ends with
+ * a partially written entry, for example, after a crash, the entry is cut off.
+ *
+ * <p>The {@linkplain #applyRetention(org.spine3.server.event.EventRetentionPolicy) expired} records are removed
+ * by the whole segments: a segment is either deleted, moved to the archive, or rewritten without
+ * the expired records.
+ *
+ * <p>Otherwise, the storage is an append-only log. A record written with the ID of an already stored event
+ * does not remove the previous one: both of them are read by a query, and the latest one is
+ * {@linkplain #read(EventId) read} by the ID. The sequence numbers of the records are kept in
+ * the {@link EventIdIndex}, so that a read by the ID reads a single block of records.
+ */
+public class FileEventStorage extends EventStorage {
+
+    private static final byte[] NO_DICTIONARY = {};
+
+    /** The subdirectory of the storage directory to write the compacted segments in. */
+    private static final String COMPACTION_DIRECTORY = "compaction";
+
+    private final File directory;
+    private final long maxSegmentSize;
+    private final int indexInterval;
+    private final SegmentEncoding encoding;
+    @Nullable
+    private final File archiveDirectory;
+
+    /** Serializes the removals of the expired records. */
+    private final Object retentionLock = new Object();
+
+    /** The segments in the order of writing; guarded by {@code this}. */
+    private final List<Segment> segments = newArrayList();
+
+    /** The non-empty blocks of the sparse index in the order of writing; guarded by {@code this}. */
+    private final List<Block> blocks = newArrayList();
+
+    /** The block, which is being filled; guarded by {@code this}. */
+    @Nullable
+    private Block currentBlock;
+
+    /** The sequence numbers of the records by the event IDs; guarded by {@code this}. */
+    private final EventIdIndex index = new EventIdIndex();
+
+    /** The sequence number of the next record to write; guarded by {@code this}. */
+    private long nextSequence;
+
+    protected FileEventStorage(Builder builder) {
+        super(false);
+        this.directory = builder.directory;
+        this.maxSegmentSize = builder.maxSegmentSize;
+        this.indexInterval = builder.indexInterval;
+        this.encoding = builder.compressed
+                        ? SegmentEncoding.DEFLATE
+                        : SegmentEncoding.PLAIN;
+        this.archiveDirectory = builder.archiveDirectory;
+        try {
+            recover();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Creates a builder for new {@code FileEventStorage}. */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Opens the existing segments and rebuilds the sparse index.
+     */
+    private synchronized void recover() throws IOException {
+        deleteUnfinishedCompactions();
+        final File[] files = directory.listFiles(new SegmentFileFilter());
+        checkState(files != null, "Cannot list the files in %s.", directory);
+        // The names of the segments are zero-padded sequence numbers.
+        Arrays.sort(files);
+        for (int i = 0; i < files.length; i++) {
+            final File file = files[i];
+            final boolean last = i == files.length - 1;
+            if (last && Segment.hasTornHeader(file)) {
+                log().warn("Deleting {} with a partially written header.", file);
+                checkState(file.delete(), "Cannot delete %s.", file);
+                break;
+            }
+            final Segment segment = Segment.open(file);
+            segments.add(segment);
+            nextSequence = Math.max(nextSequence, segment.getFirstSequence());
+            final List<String> eventIds = newArrayList();
+            blocks.addAll(indexOf(segment, nextSequence, eventIds, last));
+            for (String eventId : eventIds) {
+                index.put(eventId, nextSequence);
+                nextSequence++;
+            }
+        }
+    }
+
+    private void deleteUnfinishedCompactions() {
+        final File[] files = compactionDirectory().listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            log().warn("Deleting {} left by an unfinished compaction.", file);
+            checkState(file.delete(), "Cannot delete %s.", file);
+        }
+    }
+
+    /**
+     * Reads the entries of the segment into the blocks of the sparse index.
+     *
+     * <p>Only the last segment may end with a partially written entry, which is cut off then.
+     *
+     * @param segment       the segment to index
+     * @param firstSequence the sequence number of the first record of the segment
+     * @param eventIds      the list to add the IDs of the events of the segment to in the order of writing
+     * @param last          whether the segment is the last one, to which the records were appended
+     * @return the non-empty blocks of the segment
+     * @throws IllegalStateException if an entry of the segment is corrupted or the segment is not the last one
+     *                               and ends with a partially written entry
+     */
+    private List<Block> indexOf(Segment segment,
+                                long firstSequence,
+                                List<String> eventIds,
+                                boolean last) throws IOException {
+        final long dataStart = segment.getDataStart();
+        final long size = segment.size();
+        final ByteBuffer data = segment.read(dataStart, (int) (size - dataStart));
+        final SegmentEncoding segmentEncoding = segment.getEncoding();
+        final List<Block> result = newArrayList();
+        Block block = null;
+        long sequence = firstSequence;
+        int position = 0;
+        while (data.hasRemaining()) {
+            final List<EventStorageRecord> entry;
+            try {
+                entry = segmentEncoding.decode(data, segment.getDictionary());
+            } catch (IllegalStateException e) {
+                final String message = String.format("Corrupted entry at the position %s of the segment %s.",
+                                                     dataStart + position, segment.getFile());
+                throw new IllegalStateException(message, e);
+            }
+            if (entry == null) {
+                checkState(last, "Partially written entry at the position %s of the sealed segment %s.",
+                           dataStart + position, segment.getFile());
+                log().warn("Cutting off {} bytes of a partially written entry at the end of {}.",
+                           size - dataStart - position, segment.getFile());
+                segment.truncate(dataStart + position);
+                break;
+            }
+            if (block == null || block.getRecordCount() >= indexInterval) {
+                block = new Block(segment, dataStart + position, sequence);
+                result.add(block);
+            }
+            block.add(entry, data.position() - position);
+            for (EventStorageRecord record : entry) {
+                eventIds.add(record.getEventId());
+            }
+            sequence += entry.size();
+            position = data.position();
+        }
+        return result;
+    }
+
+    @Override
+    protected void writeRecord(EventStorageRecord record) {
+        checkNotNull(record);
+        writeRecords(ImmutableList.of(record));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The records are encoded before taking the lock of the storage. If a new segment with
+     * another compression dictionary is started meanwhile, the records are encoded again under the lock.
+     * The entries fitting into the current segment are appended to it with a single write.
+     */
+    @Override
+    protected void writeRecords(List<EventStorageRecord> records) {
+        checkNotNull(records);
+        for (EventStorageRecord record : records) {
+            checkState(!record.getEventId()
+                              .isEmpty(), "eventId cannot be empty");
+        }
+        final int entrySize = Math.min(indexInterval, encoding.maxRecordsPerEntry());
+        final List<List<EventStorageRecord>> entries = Lists.partition(records, entrySize);
+        final byte[] dictionary = currentDictionary();
+        final List<ByteBuffer> encoded = newArrayListWithCapacity(entries.size());
+        for (List<EventStorageRecord> entry : entries) {
+            encoded.add(encoding.encode(entry, dictionary));
+        }
+        try {
+            append(entries, encoded, dictionary);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Obtains the dictionary of the segment to append to or an empty one if a new segment is needed. */
+    private synchronized byte[] currentDictionary() {
+        final Segment last = lastSegment();
+        final byte[] result = last != null && last.getEncoding() == encoding
+                              ? last.getDictionary()
+                              : NO_DICTIONARY;
+        return result;
+    }
+
+    private synchronized void append(List<List<EventStorageRecord>> entries,
+                                     List<ByteBuffer> encoded,
+                                     byte[] dictionary) throws IOException {
+        final int count = entries.size();
+        byte[] encodedWith = dictionary;
+        int first = 0;
+        while (first < count) {
+            Segment segment = lastSegment();
+            if (segment == null || segment.getEncoding() != encoding) {
+                segment = startSegment(entries.get(first));
+            }
+            if (!sameDictionary(segment.getDictionary(), encodedWith)) {
+                encodedWith = segment.getDictionary();
+                encodeAgain(entries, encoded, first, encodedWith);
+            }
+            if (!segment.isEmpty() && segment.size() + encoded.get(first)
+                                                           .remaining() > maxSegmentSize) {
+                segment = startSegment(entries.get(first));
+                encodedWith = segment.getDictionary();
+                encodeAgain(entries, encoded, first, encodedWith);
+            }
+            final int[] lengths = new int[count - first];
+            lengths[0] = encoded.get(first)
+                                .remaining();
+            int end = first + 1;
+            long runLength = lengths[0];
+            while (end < count) {
+                final int length = encoded.get(end)
+                                          .remaining();
+                if (segment.size() + runLength + length > maxSegmentSize) {
+                    break;
+                }
+                lengths[end - first] = length;
+                runLength += length;
+                end++;
+            }
+            long position = segment.append(concat(encoded.subList(first, end), (int) runLength));
+            for (int i = first; i < end; i++) {
+                final int length = lengths[i - first];
+                addToIndex(segment, position, entries.get(i), length);
+                position += length;
+            }
+            first = end;
+        }
+    }
+
+    private void encodeAgain(List<List<EventStorageRecord>> entries,
+                             List<ByteBuffer> encoded,
+                             int from,
+                             byte[] dictionary) {
+        for (int i = from; i < entries.size(); i++) {
+            encoded.set(i, encoding.encode(entries.get(i), dictionary));
+        }
+    }
+
+    private static boolean sameDictionary(byte[] dictionary, byte[] other) {
+        return dictionary == other || Arrays.equals(dictionary, other);
+    }
+
+    private static ByteBuffer concat(List<ByteBuffer> buffers, int length) {
+        if (buffers.size() == 1) {
+            return buffers.get(0);
+        }
+        final ByteBuffer result = ByteBuffer.allocate(length);
+        for (ByteBuffer buffer : buffers) {
+            result.put(buffer);
+        }
+        result.flip();
+        return result;
+    }
+
+    @Nullable
+    private Segment lastSegment() {
+        return segments.isEmpty()
+               ? null
+               : segments.get(segments.size() - 1);
+    }
+
+    /**
+     * Starts a new segment.
+     *
+     * @param records the records, which are about to be written to the segment first
+     */
+    private Segment startSegment(List<EventStorageRecord> records) throws IOException {
+        final Segment last = lastSegment();
+        if (last != null) {
+            last.force();
+        }
+        final Segment result = Segment.create(directory, nextSequence, encoding, encoding.dictionaryOf(records));
+        segments.add(result);
+        currentBlock = null;
+        return result;
+    }
+
+    private void addToIndex(Segment segment, long position, List<EventStorageRecord> entry, int length) {
+        if (currentBlock == null
+                || currentBlock.getSegment() != segment
+                || currentBlock.getRecordCount() >= indexInterval) {
+            currentBlock = new Block(segment, position, nextSequence);
+            blocks.add(currentBlock);
+        }
+        currentBlock.add(entry, length);
+        for (EventStorageRecord record : entry) {
+            index.put(record.getEventId(), nextSequence);
+            nextSequence++;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The segment being written to is never changed. Each of the other segments is processed as a whole:
+     * <ul>
+     *     <li>if all the records of the segment have expired, the segment is moved to
+     *         the {@linkplain Builder#setArchiveDirectory(File) archive directory} or deleted;
+     *     <li>if at least a half of the records have expired, the segment is rewritten without them;
+     *     <li>otherwise, the expired records are kept until more records of the segment expire.
+     * </ul>
+     *
+     * <p>The readers, which started before the removal, read the removed records.
+     */
+    @Override
+    protected long removeRecords(Predicate<EventStorageRecord> expired) {
+        checkNotNull(expired);
+        synchronized (retentionLock) {
+            long result = 0;
+            try {
+                for (Segment segment : sealedSegments()) {
+                    result += removeRecords(segment, expired);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return result;
+        }
+    }
+
+    /** Obtains all the segments except the one being written to. */
+    private synchronized List<Segment> sealedSegments() {
+        if (segments.isEmpty()) {
+            return ImmutableList.of();
+        }
+        return ImmutableList.copyOf(segments.subList(0, segments.size() - 1));
+    }
+
+    private long removeRecords(Segment segment, Predicate<EventStorageRecord> expired) throws IOException {
+        final SegmentRecords retained = new SegmentRecords();
+        final SegmentRecords removed = new SegmentRecords();
+        for (Block block : blocksOf(segment)) {
+            long sequence = block.getFirstSequence();
+            for (EventStorageRecord record : block.readRecords()) {
+                final SegmentRecords target = expired.apply(record)
+                                              ? removed
+                                              : retained;
+                target.add(record, sequence);
+                sequence++;
+            }
+        }
+        final int removedCount = removed.records.size();
+        if (removedCount < retained.records.size()) {
+            return 0;
+        }
+        if (retained.records.isEmpty()) {
+            retire(segment, removed);
+        } else {
+            compact(segment, retained, removed);
+        }
+        return removedCount;
+    }
+
+    /** Obtains the copies of the blocks of the segment. */
+    private synchronized List<Block> blocksOf(Segment segment) {
+        final ImmutableList.Builder<Block> result = ImmutableList.builder();
+        for (Block block : blocks) {
+            if (block.getSegment() == segment) {
+                result.add(block.copy());
+            }
+        }
+        return result.build();
+    }
+
+    /** Removes the segment from the storage and moves it to the archive, if it is set. */
+    private void retire(Segment segment, SegmentRecords removed) throws IOException {
+        synchronized (this) {
+            segments.remove(segment);
+            replaceBlocks(segment, ImmutableList.<Block>of());
+            removed.removeFrom(index);
+        }
+        segment.detach();
+        final File file = segment.getFile();
+        if (archiveDirectory == null) {
+            checkState(file.delete(), "Cannot delete %s.", file);
+            return;
+        }
+        final File archived = new File(archiveDirectory, file.getName());
+        java.nio.file.Files.move(file.toPath(), archived.toPath());
+    }
+
+    /**
+     * Replaces the segment with the one containing only the retained records.
+     *
+     * <p>The new segment is written aside and then atomically moved over the original file, so that
+     * a crash leaves either the original or the compacted segment.
+     */
+    private void compact(Segment segment, SegmentRecords retained, SegmentRecords removed) throws IOException {
+        final File compactionDirectory = compactionDirectory();
+        checkState(compactionDirectory.isDirectory() || compactionDirectory.mkdirs(),
+                   "Cannot create directory %s.", compactionDirectory);
+        final Segment compacted = Segment.create(compactionDirectory,
+                                                 segment.getFirstSequence(),
+                                                 encoding,
+                                                 encoding.dictionaryOf(retained.records));
+        final int entrySize = Math.min(indexInterval, encoding.maxRecordsPerEntry());
+        for (List<EventStorageRecord> entry : Lists.partition(retained.records, entrySize)) {
+            compacted.append(encoding.encode(entry, compacted.getDictionary()));
+        }
+        compacted.force();
+        compacted.close();
+        final File file = segment.getFile();
+        java.nio.file.Files.move(compacted.getFile()
+                                          .toPath(),
+                                 file.toPath(),
+                                 StandardCopyOption.REPLACE_EXISTING,
+                                 StandardCopyOption.ATOMIC_MOVE);
+        final Segment replacement = Segment.open(file);
+        final long firstSequence = segment.getFirstSequence();
+        final List<Block> replacementBlocks = indexOf(replacement, firstSequence, Lists.<String>newArrayList(), false);
+        synchronized (this) {
+            segments.set(segments.indexOf(segment), replacement);
+            replaceBlocks(segment, replacementBlocks);
+            removed.removeFrom(index);
+            retained.moveTo(firstSequence, index);
+        }
+        segment.detach();
+    }
+
+    /** Replaces the blocks of the segment with the passed ones keeping the order of writing. */
+    private void replaceBlocks(Segment segment, List<Block> replacement) {
+        int position = -1;
+        final Iterator<Block> iterator = blocks.iterator();
+        int index = 0;
+        while (iterator.hasNext()) {
+            if (iterator.next()
+                        .getSegment() == segment) {
+                iterator.remove();
+                if (position < 0) {
+                    position = index;
+                }
+            } else {
+                index++;
+            }
+        }
+        if (!replacement.isEmpty()) {
+            checkState(position >= 0, "The segment %s has no blocks.", segment.getFile());
+            blocks.addAll(position, replacement);
+        }
+    }
+
+    private File compactionDirectory() {
+        return new File(directory, COMPACTION_DIRECTORY);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The iterator reads the records written before its creation.
+     *
+     * @throws IllegalArgumentException if the query has both time bounds, and the lower one is not before
+     *                                  the upper one
+     */
+    @Override
+    public Iterator<Event> iterator(EventStreamQuery query) {
+        checkNotNull(query);
+        final Timestamp after = query.hasAfter() ? query.getAfter() : null;
+        final Timestamp before = query.hasBefore() ? query.getBefore() : null;
+        if (after != null && before != null) {
+            checkArgument(Timestamps.compare(after, before) < 0, "`after` must be before `before`");
+        }
+        final List<Block> blocksInRange = blocksOverlapping(after, before);
+        final Iterator<EventStorageRecord> records = new ChronologicalIterator(blocksInRange, after, before);
+        final Iterator<Event> events = toEventIterator(records);
+        if (query.getFilterCount() == 0) {
+            return events;
+        }
+        // The time bounds are already applied by the iterator.
+        final EventStreamQuery filtersOnly = query.toBuilder()
+                                                  .clearAfter()
+                                                  .clearBefore()
+                                                  .build();
+        final Predicate<Event> matchesFilters = new MatchesStreamQuery(filtersOnly);
+        final Iterator<Event> result = filter(events, matchesFilters);
+        return result;
+    }
+
+    /** Obtains the copies of the blocks, which may contain the events in the given time range. */
+    private synchronized List<Block> blocksOverlapping(@Nullable Timestamp after, @Nullable Timestamp before) {
+        final ImmutableList.Builder<Block> result = ImmutableList.builder();
+        for (Block block : blocks) {
+            if (block.overlaps(after, before)) {
+                result.add(block.copy());
+            }
+        }
+        return result.build();
+    }
+
+    @Override
+    protected synchronized Optional<Timestamp> getEarliestTime() {
+        Timestamp result = null;
+        for (Block block : blocks) {
+            final Timestamp time = block.getMinTime();
+            if (result == null || Timestamps.compare(time, result) < 0) {
+                result = time;
+            }
+        }
+        return Optional.fromNullable(result);
+    }
+
+    @Override
+    protected synchronized Optional<Timestamp> getLatestTime() {
+        Timestamp result = null;
+        for (Block block : blocks) {
+            final Timestamp time = block.getMaxTime();
+            if (result == null || Timestamps.compare(time, result) > 0) {
+                result = time;
+            }
+        }
+        return Optional.fromNullable(result);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The sequence number of the record is found by the ID index, and the block containing it
+     * is then read.
+     */
+    @Nullable
+    @Override
+    protected EventStorageRecord readRecord(EventId eventId) {
+        final String id = eventId.getUuid();
+        final Block block;
+        final long sequence;
+        synchronized (this) {
+            final Optional<Long> found = index.get(id);
+            if (!found.isPresent()) {
+                return null;
+            }
+            sequence = found.get();
+            final Block containing = blockContaining(sequence);
+            checkState(containing != null, "The index refers to a missing record %s.", sequence);
+            block = containing.copy();
+        }
+        final int offset = (int) (sequence - block.getFirstSequence());
+        final EventStorageRecord record = readRecords(block).get(offset);
+        final EventStorageRecord result = id.equals(record.getEventId())
+                                          ? record
+                                          : null;
+        return result;
+    }
+
+    /** Finds the block containing the record with the given sequence number. */
+    @Nullable
+    private Block blockContaining(long sequence) {
+        int low = 0;
+        int high = blocks.size() - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final Block block = blocks.get(middle);
+            if (sequence < block.getFirstSequence()) {
+                high = middle - 1;
+            } else if (sequence >= block.getFirstSequence() + block.getRecordCount()) {
+                low = middle + 1;
+            } else {
+                return block;
+            }
+        }
+        return null;
+    }
+
+    private static List<EventStorageRecord> readRecords(Block block) {
+        try {
+            return block.readRecords();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes the data of the storage to the storage device and closes the segment files.
+     */
+    @Override
+    public void close() throws Exception {
+        super.close();
+        synchronized (this) {
+            for (Segment segment : segments) {
+                segment.force();
+                segment.close();
+            }
+        }
+    }
+
+    /** The builder for {@link FileEventStorage}. */
+    public static class Builder {
+
+        /** The default maximum size of a segment file in bytes. */
+        public static final long DEFAULT_MAX_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+        /** The default number of records described by an entry of the sparse index. */
+        public static final int DEFAULT_INDEX_INTERVAL = 256;
+
+        private File directory;
+        private long maxSegmentSize = DEFAULT_MAX_SEGMENT_SIZE;
+        private int indexInterval = DEFAULT_INDEX_INTERVAL;
+        private boolean compressed;
+        @Nullable
+        private File archiveDirectory;
+
+        private Builder() {}
+
+        /**
+         * Sets the directory to keep the segment files in.
+         *
+         * <p>The directory is created if it does not exist. If it contains the segments of a previously
+         * closed storage, their events are available in the new storage.
+         */
+        public Builder setDirectory(File directory) {
+            this.directory = checkNotNull(directory);
+            return this;
+        }
+
+        public File getDirectory() {
+            return directory;
+        }
+
+        /**
+         * Sets the size of a segment file in bytes, upon reaching which a new segment is started.
+         *
+         * <p>A segment may exceed the size only if it contains a single entry: a record or, if the storage
+         * is compressed, the records written together.
+         *
+         * <p>If not set, {@link #DEFAULT_MAX_SEGMENT_SIZE} is used.
+         */
+        public Builder setMaxSegmentSize(long maxSegmentSize) {
+            checkArgument(maxSegmentSize > 0, "Segment size must be positive.");
+            checkArgument(maxSegmentSize <= Integer.MAX_VALUE, "Segment size must not exceed 2 GB.");
+            this.maxSegmentSize = maxSegmentSize;
+            return this;
+        }
+
+        public long getMaxSegmentSize() {
+            return maxSegmentSize;
+        }
+
+        /**
+         * Sets the number of consecutive records described by an entry of the sparse timestamp index.
+         *
+         * <p>The smaller intervals allow to skip more records out of the time range of a query at the cost
+         * of the memory taken by the index.
+         *
+         * <p>If not set, {@link #DEFAULT_INDEX_INTERVAL} is used.
+         */
+        public Builder setIndexInterval(int indexInterval) {
+            checkArgument(indexInterval > 0, "Index interval must be positive.");
+            this.indexInterval = indexInterval;
+            return this;
+        }
+
+        public int getIndexInterval() {
+            return indexInterval;
+        }
+
+        /**
+         * Sets whether the new records should be compressed.
+         *
+         * <p>The compression takes the CPU time of the writers to save the disk space and the I/O
+         * of the readers. It pays off for the events with the large repeated contexts.
+         *
+         * <p>The setting does not affect the already written segments. If not set, the records
+         * are not compressed.
+         */
+        public Builder setCompressed(boolean compressed) {
+            this.compressed = compressed;
+            return this;
+        }
+
+        public boolean isCompressed() {
+            return compressed;
+        }
+
+        /**
+         * Sets the directory to move the segments with only the expired records to.
+         *
+         * <p>The archived segments keep their format, so that the archive directory may be
+         * {@linkplain #setDirectory(File) opened} as another storage to read them.
+         *
+         * <p>The expired records removed from the segments, which still have some records to keep,
+         * are not archived. If not set, the expired segments are deleted.
+         *
+         * @see EventStorage#applyRetention(org.spine3.server.event.EventRetentionPolicy)
+         */
+        public Builder setArchiveDirectory(File archiveDirectory) {
+            this.archiveDirectory = checkNotNull(archiveDirectory);
+            return this;
+        }
+
+        @Nullable
+        public File getArchiveDirectory() {
+            return archiveDirectory;
+        }
+
+        public FileEventStorage build() {
+            checkState(directory != null, "Directory must be set.");
+            checkState(directory.isDirectory() || directory.mkdirs(), "Cannot create directory %s.", directory);
+            if (archiveDirectory != null) {
+                checkState(archiveDirectory.isDirectory() || archiveDirectory.mkdirs(),
+                           "Cannot create directory %s.", archiveDirectory);
+            }
+            final FileEventStorage result = new FileEventStorage(this);
+            return result;
+        }
+    }
+
+    private static class SegmentFileFilter implements FileFilter {
+        @Override
+        public boolean accept(File file) {
+            return Segment.isSegmentFile(file);
+        }
+    }
+
+    /** The records of a segment along with their sequence numbers. */
+    private static class SegmentRecords {
+
+        private final List<EventStorageRecord> records = newArrayList();
+        private final List<Long> sequences = newArrayList();
+
+        private void add(EventStorageRecord record, long sequence) {
+            records.add(record);
+            sequences.add(sequence);
+        }
+
+        /** Removes the records from the index, unless their events have been written again. */
+        private void removeFrom(EventIdIndex index) {
+            for (int i = 0; i < records.size(); i++) {
+                index.remove(records.get(i)
+                                    .getEventId(), sequences.get(i));
+            }
+        }
+
+        /** Updates the index with the new sequence numbers of the records starting with the given one. */
+        private void moveTo(long firstSequence, EventIdIndex index) {
+            for (int i = 0; i < records.size(); i++) {
+                index.replace(records.get(i)
+                                     .getEventId(), sequences.get(i), firstSequence + i);
+            }
+        }
+    }
+
+    private enum LogSingleton {
+        INSTANCE;
+        @SuppressWarnings("NonSerializableFieldInSerializableClass")
+        private final Logger value = LoggerFactory.getLogger(FileEventStorage.class);
+    }
+
+    private static Logger log() {
+        return LogSingleton.INSTANCE.value;
+    }
+}
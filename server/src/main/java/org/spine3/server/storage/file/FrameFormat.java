@@ -0,0 +1,241 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.storage.file;
+
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.spine3.base.CommandContext;
+import org.spine3.base.EventContext;
+import org.spine3.server.event.storage.EventStorageRecord;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * The format of the compressed frames in the segment files.
+ *
+ * <p>A frame holds the records written together. The frame is written as:
+ * <ol>
+ *     <li>the length of the rest of the frame in four bytes;
+ *     <li>the number of the records in four bytes;
+ *     <li>the length of the uncompressed records in four bytes;
+ *     <li>the records compressed with Deflate using the dictionary of the segment.
+ * </ol>
+ *
+ * <p>Each record is written as a flags byte, the serialized size in four bytes, and the serialized
+ * {@link EventStorageRecord}. If the command context of the record is the same as the one of
+ * the previous record of the frame, the context is not written, which is marked by
+ * the {@link #SAME_COMMAND_CONTEXT} flag. Upon reading, such records share the instance of
+ * the command context.
+ */
+final class FrameFormat {
+
+    /**
+     * The maximum size of the dictionary of a segment.
+     *
+     * <p>The dictionary is stored uncompressed in the header of the segment. A few records are enough
+     * to capture the type URLs and the contexts repeated by the events of the segment.
+     */
+    static final int MAX_DICTIONARY_SIZE = 4 * 1024;
+
+    private static final int HEADER_SIZE = 12;
+    private static final int FRAME_LENGTH_SIZE = 4;
+    private static final byte SAME_COMMAND_CONTEXT = 1;
+    private static final int BUFFER_SIZE = 4096;
+
+    private FrameFormat() {}
+
+    /**
+     * Creates the dictionary for a segment out of the records, which are about to be written to it.
+     *
+     * <p>The dictionary is the concatenation of the serialized records, so that the type URLs,
+     * the field values and the contexts repeating in the further records are compressed well.
+     */
+    static byte[] dictionaryOf(List<EventStorageRecord> records) {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        for (EventStorageRecord record : records) {
+            final byte[] bytes = record.toByteArray();
+            final int length = Math.min(bytes.length, MAX_DICTIONARY_SIZE - result.size());
+            result.write(bytes, 0, length);
+            if (result.size() == MAX_DICTIONARY_SIZE) {
+                break;
+            }
+        }
+        return result.toByteArray();
+    }
+
+    /** Compresses the records into a frame. */
+    static ByteBuffer encode(List<EventStorageRecord> records, byte[] dictionary) {
+        final byte[] uncompressed = serialize(records);
+        final Deflater deflater = new Deflater();
+        try {
+            if (dictionary.length > 0) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(uncompressed);
+            deflater.finish();
+            final ByteArrayOutputStream compressed = new ByteArrayOutputStream(uncompressed.length / 2 + HEADER_SIZE);
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                final int length = deflater.deflate(buffer);
+                compressed.write(buffer, 0, length);
+            }
+            final ByteBuffer result = ByteBuffer.allocate(HEADER_SIZE + compressed.size());
+            result.putInt(HEADER_SIZE - FRAME_LENGTH_SIZE + compressed.size())
+                  .putInt(records.size())
+                  .putInt(uncompressed.length)
+                  .put(compressed.toByteArray());
+            result.flip();
+            return result;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] serialize(List<EventStorageRecord> records) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(bytes);
+        try {
+            CommandContext previous = null;
+            for (EventStorageRecord record : records) {
+                final EventContext context = record.getContext();
+                final boolean sameCommandContext = previous != null
+                        && context.hasCommandContext()
+                        && context.getCommandContext()
+                                  .equals(previous);
+                previous = context.hasCommandContext()
+                           ? context.getCommandContext()
+                           : null;
+                final EventStorageRecord toWrite = sameCommandContext
+                                                   ? withCommandContext(record, null)
+                                                   : record;
+                final byte[] serialized = toWrite.toByteArray();
+                output.writeByte(sameCommandContext ? SAME_COMMAND_CONTEXT : 0);
+                output.writeInt(serialized.length);
+                output.write(serialized);
+            }
+            output.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads the frame at the position of the buffer and moves the position past it.
+     *
+     * @return the records of the frame or {@code null} if the rest of the buffer does not hold
+     *         a complete frame, in which case the position of the buffer is undefined
+     * @throws IllegalStateException if the frame is corrupted or compressed with another dictionary
+     */
+    @Nullable
+    static List<EventStorageRecord> decode(ByteBuffer buffer, byte[] dictionary) {
+        if (buffer.remaining() < HEADER_SIZE) {
+            return null;
+        }
+        final int frameLength = buffer.getInt();
+        checkState(frameLength >= HEADER_SIZE - FRAME_LENGTH_SIZE, "Invalid length of a frame: %s.", frameLength);
+        if (frameLength > buffer.remaining()) {
+            return null;
+        }
+        final int recordCount = buffer.getInt();
+        final int uncompressedLength = buffer.getInt();
+        checkState(recordCount > 0 && uncompressedLength > 0,
+                   "Invalid frame header: %s records, %s bytes.", recordCount, uncompressedLength);
+        final byte[] compressed = new byte[frameLength - HEADER_SIZE + FRAME_LENGTH_SIZE];
+        buffer.get(compressed);
+        final byte[] uncompressed = inflate(compressed, uncompressedLength, dictionary);
+        return deserialize(ByteBuffer.wrap(uncompressed), recordCount);
+    }
+
+    private static byte[] inflate(byte[] compressed, int uncompressedLength, byte[] dictionary) {
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            final byte[] result = new byte[uncompressedLength];
+            int length = inflater.inflate(result);
+            if (inflater.needsDictionary()) {
+                inflater.setDictionary(dictionary);
+                length += inflater.inflate(result, length, uncompressedLength - length);
+            }
+            checkState(length == uncompressedLength && inflater.finished(),
+                       "The frame is shorter or longer than its header states.");
+            return result;
+        } catch (DataFormatException | IllegalArgumentException e) {
+            throw new IllegalStateException("The frame is corrupted or compressed with another dictionary.", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static List<EventStorageRecord> deserialize(ByteBuffer data, int recordCount) {
+        final ImmutableList.Builder<EventStorageRecord> result = ImmutableList.builder();
+        CommandContext previous = null;
+        for (int i = 0; i < recordCount; i++) {
+            checkState(data.remaining() >= 1 + RecordFormat.LENGTH_PREFIX_SIZE, "Truncated record in a frame.");
+            final byte flags = data.get();
+            final int length = data.getInt();
+            checkState(length >= 0 && length <= data.remaining(), "Invalid length of a record in a frame: %s.", length);
+            final int start = data.arrayOffset() + data.position();
+            final byte[] array = data.array();
+            data.position(data.position() + length);
+            final EventStorageRecord parsed;
+            try {
+                parsed = EventStorageRecord.parseFrom(Arrays.copyOfRange(array, start, start + length));
+            } catch (InvalidProtocolBufferException e) {
+                throw new IllegalStateException("Corrupted record in a frame.", e);
+            }
+            final EventStorageRecord record = (flags & SAME_COMMAND_CONTEXT) != 0 && previous != null
+                                              ? withCommandContext(parsed, previous)
+                                              : parsed;
+            final EventContext context = record.getContext();
+            previous = context.hasCommandContext()
+                       ? context.getCommandContext()
+                       : null;
+            result.add(record);
+        }
+        return result.build();
+    }
+
+    private static EventStorageRecord withCommandContext(EventStorageRecord record,
+                                                         @Nullable CommandContext commandContext) {
+        final EventContext.Builder context = record.getContext()
+                                                   .toBuilder();
+        if (commandContext == null) {
+            context.clearCommandContext();
+        } else {
+            context.setCommandContext(commandContext);
+        }
+        final EventStorageRecord result = record.toBuilder()
+                                                .setContext(context)
+                                                .build();
+        return result;
+    }
+}
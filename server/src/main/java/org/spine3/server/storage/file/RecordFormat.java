@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.storage.file;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.spine3.server.event.storage.EventStorageRecord;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * The format of the records in the segment files.
+ *
+ * <p>Each record is written as its serialized size in four bytes followed by the serialized
+ * {@link EventStorageRecord}.
+ */
+final class RecordFormat {
+
+    static final int LENGTH_PREFIX_SIZE = 4;
+
+    private RecordFormat() {}
+
+    /** Serializes the record with the length prefix. */
+    static ByteBuffer encode(EventStorageRecord record) {
+        final int length = record.getSerializedSize();
+        final byte[] bytes = new byte[LENGTH_PREFIX_SIZE + length];
+        ByteBuffer.wrap(bytes)
+                  .putInt(length);
+        final CodedOutputStream output = CodedOutputStream.newInstance(bytes, LENGTH_PREFIX_SIZE, length);
+        try {
+            record.writeTo(output);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        output.checkNoSpaceLeft();
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Reads the record at the position of the buffer and moves the position past it.
+     *
+     * @return the record or {@code null} if the rest of the buffer does not hold a complete record,
+     *         in which case the position of the buffer is undefined
+     * @throws IllegalStateException if the record is corrupted
+     */
+    @Nullable
+    static EventStorageRecord readNext(ByteBuffer buffer) {
+        if (buffer.remaining() < LENGTH_PREFIX_SIZE) {
+            return null;
+        }
+        final int length = buffer.getInt();
+        checkState(length >= 0, "Negative length of a record: %s.", length);
+        if (length > buffer.remaining()) {
+            return null;
+        }
+        // The record is copied to the heap, as the parsing of the direct buffers is not reliable
+        // in the used version of Protobuf.
+        final byte[] data = new byte[length];
+        buffer.get(data);
+        try {
+            final EventStorageRecord result = EventStorageRecord.parseFrom(data);
+            return result;
+        } catch (InvalidProtocolBufferException e) {
+            throw new IllegalStateException("Corrupted record.", e);
+        }
+    }
+}
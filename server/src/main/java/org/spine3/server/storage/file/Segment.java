@@ -0,0 +1,270 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.storage.file;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A file holding a part of the event log.
+ *
+ * <p>The records are appended through a {@link FileChannel} and read through a read-only mapping of the file,
+ * which is extended as the file grows.
+ *
+ * <p>The name of the file is the sequence number of its first record, so that the names of the segments
+ * sort in the order of writing.
+ *
+ * <p>The file starts with the header, which holds the {@linkplain SegmentEncoding encoding} of the records
+ * and the dictionary for their compression. The header is followed by the entries of the records.
+ *
+ * <p>The appending is not thread-safe and must be synchronized by the caller. The reading is thread-safe.
+ */
+final class Segment implements Closeable {
+
+    static final String FILE_EXTENSION = ".events";
+
+    private static final String FILE_NAME_FORMAT = "%020d" + FILE_EXTENSION;
+
+    /** The first bytes of a segment file. */
+    private static final int MAGIC = 0x53504E45;
+
+    /** The size of the header without the dictionary: the magic, the encoding and the dictionary length. */
+    private static final int FIXED_HEADER_SIZE = 9;
+
+    /** The position of the dictionary length in the header: after the magic and the encoding. */
+    private static final int DICTIONARY_LENGTH_POSITION = 5;
+
+    private final File file;
+    private final FileChannel channel;
+    private final long firstSequence;
+    private final SegmentEncoding encoding;
+    private final byte[] dictionary;
+
+    /** The number of bytes written to the segment. */
+    private volatile long size;
+
+    /** The mapping of the beginning of the file; replaced by a longer one when the data beyond it is read. */
+    private MappedByteBuffer mapping;
+
+    private Segment(File file,
+                    FileChannel channel,
+                    long firstSequence,
+                    SegmentEncoding encoding,
+                    byte[] dictionary,
+                    long size) {
+        this.file = file;
+        this.channel = channel;
+        this.firstSequence = firstSequence;
+        this.encoding = encoding;
+        this.dictionary = dictionary;
+        this.size = size;
+    }
+
+    /**
+     * Creates an empty segment in the directory.
+     *
+     * @param directory     the directory of the storage
+     * @param firstSequence the sequence number of the first record to be written to the segment
+     * @param encoding      the encoding of the records of the segment
+     * @param dictionary    the dictionary for the compression of the records, which may be empty
+     */
+    static Segment create(File directory,
+                          long firstSequence,
+                          SegmentEncoding encoding,
+                          byte[] dictionary) throws IOException {
+        final String name = String.format(Locale.ROOT, FILE_NAME_FORMAT, firstSequence);
+        final File file = new File(directory, name);
+        checkState(!file.exists(), "Segment %s already exists.", file);
+        final FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        final ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER_SIZE + dictionary.length);
+        header.putInt(MAGIC)
+              .put(encoding.getCode())
+              .putInt(dictionary.length)
+              .put(dictionary);
+        header.flip();
+        final Segment result = new Segment(file, channel, firstSequence, encoding, dictionary, 0);
+        result.append(header);
+        return result;
+    }
+
+    /**
+     * Opens the existing segment file.
+     *
+     * @throws IllegalStateException if the file does not start with a valid segment header
+     */
+    static Segment open(File file) throws IOException {
+        final long firstSequence = firstSequenceOf(file);
+        final FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        final ByteBuffer fixedHeader = readFully(channel, 0, FIXED_HEADER_SIZE);
+        checkState(fixedHeader.getInt() == MAGIC, "%s is not a segment file.", file);
+        final SegmentEncoding encoding = SegmentEncoding.ofCode(fixedHeader.get());
+        final int dictionaryLength = fixedHeader.getInt();
+        checkState(dictionaryLength >= 0 && dictionaryLength <= channel.size() - FIXED_HEADER_SIZE,
+                   "The header of the segment %s is corrupted.", file);
+        final byte[] dictionary = new byte[dictionaryLength];
+        readFully(channel, FIXED_HEADER_SIZE, dictionaryLength).get(dictionary);
+        return new Segment(file, channel, firstSequence, encoding, dictionary, channel.size());
+    }
+
+    /**
+     * Checks if the file is too short to hold the header of a segment.
+     *
+     * <p>Such a file is left if the process stops while creating the segment.
+     */
+    static boolean hasTornHeader(File file) throws IOException {
+        try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+            final long size = channel.size();
+            if (size < FIXED_HEADER_SIZE) {
+                return true;
+            }
+            final int dictionaryLength = readFully(channel, DICTIONARY_LENGTH_POSITION, 4).getInt();
+            return size < FIXED_HEADER_SIZE + (long) dictionaryLength;
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        final ByteBuffer result = ByteBuffer.allocate(length);
+        while (result.hasRemaining()) {
+            final int read = channel.read(result, position + result.position());
+            checkState(read >= 0, "Unexpected end of the segment file.");
+        }
+        result.flip();
+        return result;
+    }
+
+    static boolean isSegmentFile(File file) {
+        final String name = file.getName();
+        return file.isFile() && name.endsWith(FILE_EXTENSION);
+    }
+
+    private static long firstSequenceOf(File file) {
+        final String name = file.getName();
+        final String number = name.substring(0, name.length() - FILE_EXTENSION.length());
+        return Long.parseLong(number);
+    }
+
+    /**
+     * Appends the data to the end of the segment.
+     *
+     * @return the position of the data in the segment
+     */
+    long append(ByteBuffer data) throws IOException {
+        final long position = size;
+        long written = 0;
+        while (data.hasRemaining()) {
+            written += channel.write(data, position + written);
+        }
+        size = position + written;
+        return position;
+    }
+
+    /**
+     * Obtains the read-only view of the part of the segment.
+     *
+     * @param position the position of the part
+     * @param length   the length of the part
+     * @return the buffer with the position of {@code 0} and the limit of {@code length}
+     */
+    ByteBuffer read(long position, int length) throws IOException {
+        final long end = position + length;
+        checkArgument(end <= size, "Cannot read beyond the end of the segment %s.", file);
+        final ByteBuffer result = mappingOf(end).duplicate();
+        result.position((int) position);
+        result.limit((int) end);
+        return result.slice();
+    }
+
+    private synchronized MappedByteBuffer mappingOf(long end) throws IOException {
+        if (mapping == null || mapping.capacity() < end) {
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        return mapping;
+    }
+
+    /** Cuts off the data beyond the given size, such as the partially written record. */
+    void truncate(long newSize) throws IOException {
+        channel.truncate(newSize);
+        size = newSize;
+        synchronized (this) {
+            mapping = null;
+        }
+    }
+
+    /** Writes the appended data to the storage device. */
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    long size() {
+        return size;
+    }
+
+    /** Obtains the position of the first entry of the segment. */
+    long getDataStart() {
+        return FIXED_HEADER_SIZE + dictionary.length;
+    }
+
+    /** Checks if the segment contains no entries. */
+    boolean isEmpty() {
+        return size == getDataStart();
+    }
+
+    SegmentEncoding getEncoding() {
+        return encoding;
+    }
+
+    /** Obtains the dictionary for the compression of the records; the array must not be modified. */
+    byte[] getDictionary() {
+        return dictionary;
+    }
+
+    long getFirstSequence() {
+        return firstSequence;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Closes the file of the segment, keeping its data available to the readers through the memory mapping.
+     *
+     * <p>The file may be removed or replaced afterwards, while the readers, which started before that,
+     * still read the data of the segment.
+     */
+    void detach() throws IOException {
+        mappingOf(size);
+        channel.close();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
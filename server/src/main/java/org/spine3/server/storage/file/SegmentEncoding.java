@@ -0,0 +1,146 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.storage.file;
+
+import com.google.common.collect.ImmutableList;
+import org.spine3.server.event.storage.EventStorageRecord;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * The way the records are written to a segment.
+ *
+ * <p>The records are written as the entries. An entry is the unit of reading: a block of the index
+ * always consists of the whole entries.
+ */
+enum SegmentEncoding {
+
+    /**
+     * Each record is an entry of the {@linkplain RecordFormat length-prefixed} serialized record.
+     */
+    PLAIN((byte) 0) {
+        @Override
+        ByteBuffer encode(List<EventStorageRecord> records, byte[] dictionary) {
+            return RecordFormat.encode(records.get(0));
+        }
+
+        @Nullable
+        @Override
+        List<EventStorageRecord> decode(ByteBuffer buffer, byte[] dictionary) {
+            final EventStorageRecord record = RecordFormat.readNext(buffer);
+            return record == null
+                   ? null
+                   : ImmutableList.of(record);
+        }
+
+        @Override
+        int maxRecordsPerEntry() {
+            return 1;
+        }
+
+        @Override
+        byte[] dictionaryOf(List<EventStorageRecord> records) {
+            return new byte[0];
+        }
+    },
+
+    /**
+     * The records written together are an entry of the {@linkplain FrameFormat compressed frame}.
+     */
+    DEFLATE((byte) 1) {
+        @Override
+        ByteBuffer encode(List<EventStorageRecord> records, byte[] dictionary) {
+            return FrameFormat.encode(records, dictionary);
+        }
+
+        @Nullable
+        @Override
+        List<EventStorageRecord> decode(ByteBuffer buffer, byte[] dictionary) {
+            return FrameFormat.decode(buffer, dictionary);
+        }
+
+        @Override
+        int maxRecordsPerEntry() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        byte[] dictionaryOf(List<EventStorageRecord> records) {
+            return FrameFormat.dictionaryOf(records);
+        }
+    };
+
+    private final byte code;
+
+    SegmentEncoding(byte code) {
+        this.code = code;
+    }
+
+    /**
+     * Encodes the records into an entry.
+     *
+     * @param records    the records, the number of which does not exceed {@link #maxRecordsPerEntry()}
+     * @param dictionary the dictionary of the segment
+     * @return the entry
+     */
+    abstract ByteBuffer encode(List<EventStorageRecord> records, byte[] dictionary);
+
+    /**
+     * Reads the entry at the position of the buffer and moves the position past it.
+     *
+     * @return the records of the entry or {@code null} if the rest of the buffer does not hold
+     *         a complete entry, in which case the position of the buffer is undefined
+     * @throws IllegalStateException if the entry is corrupted
+     */
+    @Nullable
+    abstract List<EventStorageRecord> decode(ByteBuffer buffer, byte[] dictionary);
+
+    /** Obtains the maximum number of records in an entry. */
+    abstract int maxRecordsPerEntry();
+
+    /**
+     * Creates the dictionary for a new segment.
+     *
+     * @param records the records, which are about to be written to the segment first
+     * @return the dictionary, which is empty if the encoding does not use one
+     */
+    abstract byte[] dictionaryOf(List<EventStorageRecord> records);
+
+    /** Obtains the code of the encoding written to the segment header. */
+    byte getCode() {
+        return code;
+    }
+
+    /**
+     * Obtains the encoding by its code.
+     *
+     * @throws IllegalArgumentException if there is no encoding with such a code
+     */
+    static SegmentEncoding ofCode(byte code) {
+        for (SegmentEncoding encoding : values()) {
+            if (encoding.code == code) {
+                return encoding;
+            }
+        }
+        throw new IllegalArgumentException("Unknown segment encoding: " + code);
+    }
+}
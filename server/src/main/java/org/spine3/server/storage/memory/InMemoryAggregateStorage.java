@@ -20,20 +20,21 @@
 
 package org.spine3.server.storage.memory;
 
-import com.google.common.collect.Multimap;
-import com.google.common.collect.TreeMultimap;
 import org.spine3.protobuf.Timestamps;
 import org.spine3.server.aggregate.AggregateStorage;
 import org.spine3.server.aggregate.storage.AggregateStorageRecord;
 
 import java.io.Serializable;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.collect.Maps.newHashMap;
 
 /**
  * In-memory storage for aggregate events and snapshots.
@@ -42,12 +43,15 @@ import static com.google.common.collect.Maps.newHashMap;
  */
 class InMemoryAggregateStorage<I> extends AggregateStorage<I> {
 
-    private final Multimap<I, AggregateStorageRecord> recordMap = TreeMultimap.create(
-            new AggregateStorageKeyComparator<I>(), // key comparator
-            new AggregateStorageRecordReverseComparator() // value comparator
-    );
+    /**
+     * The records of the aggregates sorted from newer to older.
+     *
+     * <p>The concurrent collections let the snapshots be written in the background
+     * while the aggregates are read and their events are written.
+     */
+    private final ConcurrentMap<I, NavigableSet<AggregateStorageRecord>> recordMap = new ConcurrentHashMap<>();
 
-    private final Map<I, Integer> eventCountMap = newHashMap();
+    private final ConcurrentMap<I, Integer> eventCountMap = new ConcurrentHashMap<>();
 
     protected InMemoryAggregateStorage(boolean multitenant) {
         super(multitenant);
@@ -60,13 +64,34 @@ class InMemoryAggregateStorage<I> extends AggregateStorage<I> {
 
     @Override
     protected void writeRecord(I id, AggregateStorageRecord record) {
-        recordMap.put(id, record);
+        recordsOf(id).add(record);
+    }
+
+    @Override
+    protected void writeRecords(I id, List<AggregateStorageRecord> records) {
+        recordsOf(id).addAll(records);
+    }
+
+    private NavigableSet<AggregateStorageRecord> recordsOf(I id) {
+        final NavigableSet<AggregateStorageRecord> existing = recordMap.get(id);
+        if (existing != null) {
+            return existing;
+        }
+        final NavigableSet<AggregateStorageRecord> created =
+                new ConcurrentSkipListSet<>(new AggregateStorageRecordReverseComparator());
+        final NavigableSet<AggregateStorageRecord> result = recordMap.putIfAbsent(id, created);
+        return result == null
+               ? created
+               : result;
     }
 
     @Override
     protected Iterator<AggregateStorageRecord> historyBackward(I id) {
         checkNotNull(id);
-        final Collection<AggregateStorageRecord> records = recordMap.get(id);
+        final NavigableSet<AggregateStorageRecord> records = recordMap.get(id);
+        if (records == null) {
+            return Collections.emptyIterator();
+        }
         return records.iterator();
     }
 
@@ -86,35 +111,26 @@ class InMemoryAggregateStorage<I> extends AggregateStorage<I> {
         eventCountMap.put(id, eventCount);
     }
 
-    /** Used for sorting by timestamp descending (from newer to older). */
+    /**
+     * Used for sorting by timestamp descending (from newer to older).
+     *
+     * <p>The records having the same timestamp, such as the events written at once, are sorted
+     * by the version descending and then by the event ID, so that none of them is lost.
+     */
     private static class AggregateStorageRecordReverseComparator implements Comparator<AggregateStorageRecord>,
                                                                             Serializable {
         private static final long serialVersionUID = 0L;
 
         @Override
         public int compare(AggregateStorageRecord first, AggregateStorageRecord second) {
-            final int result = Timestamps.compare(second.getTimestamp(), first.getTimestamp());
-            return result;
-        }
-    }
-
-    /** Used for sorting keys by the key hash codes. */
-    private static class AggregateStorageKeyComparator<K> implements Comparator<K>, Serializable {
-
-        private static final long serialVersionUID = 0L;
-
-        @Override
-        public int compare(K first, K second) {
-            int result = 0;
-            if (first.equals(second)) {
-                return result;
+            int result = Timestamps.compare(second.getTimestamp(), first.getTimestamp());
+            if (result == 0) {
+                result = Integer.compare(second.getVersion(), first.getVersion());
+            }
+            if (result == 0) {
+                result = second.getEventId()
+                               .compareTo(first.getEventId());
             }
-
-            // To define an order:
-            final int firstHashCode = first.hashCode();
-            final int secondHashCode = second.hashCode();
-
-            result = Integer.compare(firstHashCode, secondHashCode);
             return result;
         }
     }
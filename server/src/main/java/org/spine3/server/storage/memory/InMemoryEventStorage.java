@@ -20,83 +20,470 @@
 
 package org.spine3.server.storage.memory;
 
+import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
-import com.google.common.collect.Maps;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import com.google.protobuf.Any;
 import com.google.protobuf.Timestamp;
 import org.spine3.base.Event;
 import org.spine3.base.EventId;
+import org.spine3.base.Identifiers;
 import org.spine3.protobuf.Timestamps;
+import org.spine3.protobuf.TypeUrl;
+import org.spine3.server.event.EventFilter;
 import org.spine3.server.event.EventStorage;
 import org.spine3.server.event.EventStreamQuery;
 import org.spine3.server.event.MatchesStreamQuery;
 import org.spine3.server.event.storage.EventStorageRecord;
+import org.spine3.server.storage.EventIdIndex;
 
 import javax.annotation.Nullable;
-import java.io.Serializable;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.Iterators.filter;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newConcurrentMap;
+import static com.google.protobuf.util.Timestamps.fromNanos;
+import static com.google.protobuf.util.Timestamps.toNanos;
+import static org.spine3.base.Stringifiers.idToString;
 
 /**
  * In-memory implementation of {@link EventStorage}.
  *
+ * <p>The records are kept in a concurrent skip list ordered by the timestamps of the events, so that:
+ * <ul>
+ *     <li>writing a record does not block the concurrent writers and readers;
+ *     <li>the events are always read in the chronological order;
+ *     <li>a read of a time range seeks to its start in logarithmic time instead of scanning the whole storage.
+ * </ul>
+ *
+ * <p>The events with the same timestamp are read in the order of writing.
+ *
+ * <p>The records are found by the event IDs through the compact {@link EventIdIndex}, which keeps
+ * the timestamps of the events instead of the references to the records.
+ *
+ * <p>The records are also indexed by the event type and by the producer ID. If each of the
+ * {@linkplain EventFilter filters} of a query specifies either the aggregate IDs or the event type,
+ * only the records of these aggregates or of this type are read.
+ *
+ * <p>The iterators are weakly consistent: they never throw {@code ConcurrentModificationException}
+ * and may or may not reflect the records written after their creation.
+ *
+ * <p>The {@linkplain #applyRetention(org.spine3.server.event.EventRetentionPolicy) expired} records are
+ * removed from the log, the indexes and the postings, so that the memory taken by the storage stays bounded.
+ *
  * @author Alexander Litus
  * @author Alexander Yevsyukov
  */
 class InMemoryEventStorage extends EventStorage {
 
-    private static final int INITIAL_CAPACITY = 100;
+    private final ConcurrentNavigableMap<RecordKey, EventStorageRecord> log = new ConcurrentSkipListMap<>();
+
+    /** The timestamps of the events in nanoseconds by the event IDs. */
+    private final EventIdIndex index = new EventIdIndex();
 
-    @SuppressWarnings("CollectionDeclaredAsConcreteClass") // to stress that the queue is sorted.
-    private final PriorityQueue<EventStorageRecord> storage = new PriorityQueue<>(
-            INITIAL_CAPACITY,
-            new EventStorageRecordComparator());
-    private final Map<String, EventStorageRecord> index = Maps.newConcurrentMap();
+    private final ConcurrentMap<String, ConcurrentNavigableMap<RecordKey, EventStorageRecord>> byEventType =
+            newConcurrentMap();
+    private final ConcurrentMap<String, ConcurrentNavigableMap<RecordKey, EventStorageRecord>> byProducerId =
+            newConcurrentMap();
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Prevents the writers from adding the records to the postings, which are being removed as empty.
+     *
+     * <p>The writers and the removal of the records share the lock, while the removal of
+     * the empty postings takes it exclusively.
+     */
+    private final ReadWriteLock postingsLock = new ReentrantReadWriteLock();
 
     protected InMemoryEventStorage(boolean multitenant) {
         super(multitenant);
     }
 
-    /** Compares event records by timestamps of events. */
-    private static class EventStorageRecordComparator implements Comparator<EventStorageRecord>, Serializable {
+    @Override
+    public Iterator<Event> iterator(EventStreamQuery query) {
+        if (query.getFilterCount() == 0) {
+            final Iterator<EventStorageRecord> records = rangeOf(log, query).values()
+                                                                            .iterator();
+            return toEventIterator(records);
+        }
+        final Iterator<Event> events = toEventIterator(recordsMatchingIndexes(query));
+        // The time bounds are already applied by the ranges.
+        final EventStreamQuery filtersOnly = query.toBuilder()
+                                                  .clearAfter()
+                                                  .clearBefore()
+                                                  .build();
+        final Predicate<Event> matchesFilters = new MatchesStreamQuery(filtersOnly);
+        final Iterator<Event> result = filter(events, matchesFilters);
+        return result;
+    }
 
-        private static final long serialVersionUID = 0L;
+    /**
+     * Obtains the records in the time range of the query, which may match its filters judging by
+     * the event type and the producer ID.
+     *
+     * <p>If one of the filters specifies neither the aggregate IDs nor the event type, returns all
+     * the records in the range.
+     */
+    private Iterator<EventStorageRecord> recordsMatchingIndexes(EventStreamQuery query) {
+        final List<ConcurrentNavigableMap<RecordKey, EventStorageRecord>> postings = newArrayList();
+        for (EventFilter filter : query.getFilterList()) {
+            final List<ConcurrentNavigableMap<RecordKey, EventStorageRecord>> filterPostings = postingsOf(filter);
+            if (filterPostings == null) {
+                return rangeOf(log, query).values()
+                                          .iterator();
+            }
+            postings.addAll(filterPostings);
+        }
+        if (postings.size() == 1) {
+            return rangeOf(postings.get(0), query).values()
+                                                  .iterator();
+        }
+        final List<Iterator<Map.Entry<RecordKey, EventStorageRecord>>> ranges = newArrayList();
+        for (ConcurrentNavigableMap<RecordKey, EventStorageRecord> posting : postings) {
+            ranges.add(rangeOf(posting, query).entrySet()
+                                              .iterator());
+        }
+        // A record is present in several postings, if it matches several filters.
+        final Iterator<Map.Entry<RecordKey, EventStorageRecord>> merged = Iterators.mergeSorted(ranges,
+                                                                                              EntryOrder.INSTANCE);
+        return new DistinctRecordIterator(Iterators.peekingIterator(merged));
+    }
 
-        @Override
-        public int compare(EventStorageRecord record1, EventStorageRecord record2) {
-            final Timestamp time1 = record1.getTimestamp();
-            final Timestamp time2 = record2.getTimestamp();
-            final int result = Timestamps.compare(time1, time2);
+    /**
+     * Obtains the postings of the records, which may match the filter.
+     *
+     * @return the postings of the aggregates, if the filter specifies the aggregate IDs, the postings of
+     *         the event type, if the filter specifies the event type, or {@code null} otherwise
+     */
+    @Nullable
+    private List<ConcurrentNavigableMap<RecordKey, EventStorageRecord>> postingsOf(EventFilter filter) {
+        final List<ConcurrentNavigableMap<RecordKey, EventStorageRecord>> result = newArrayList();
+        if (filter.getAggregateIdCount() > 0) {
+            for (Any aggregateId : filter.getAggregateIdList()) {
+                final String producerId = idToString(Identifiers.idFromAny(aggregateId));
+                addIfPresent(result, byProducerId.get(producerId));
+            }
             return result;
         }
+        final String eventType = filter.getEventType();
+        if (!eventType.isEmpty()) {
+            final String typeName = TypeUrl.of(eventType)
+                                           .getTypeName();
+            addIfPresent(result, byEventType.get(typeName));
+            return result;
+        }
+        return null;
     }
 
-    @Override
-    public Iterator<Event> iterator(EventStreamQuery query) {
-        final Predicate<Event> matchesQuery = new MatchesStreamQuery(query);
-        final Iterator<Event> transformed = toEventIterator(storage.iterator());
-        final Iterator<Event> result = filter(transformed, matchesQuery);
-        return result;
+    private static <T> void addIfPresent(List<T> list, @Nullable T item) {
+        if (item != null) {
+            list.add(item);
+        }
+    }
+
+    /**
+     * Obtains the view of the passed records limited by the time bounds of the query.
+     *
+     * @throws IllegalArgumentException if the query has both bounds, and the lower one is not before the upper one
+     */
+    private static ConcurrentNavigableMap<RecordKey, EventStorageRecord> rangeOf(
+            ConcurrentNavigableMap<RecordKey, EventStorageRecord> records,
+            EventStreamQuery query) {
+        final boolean afterSpecified = query.hasAfter();
+        final boolean beforeSpecified = query.hasBefore();
+        if (afterSpecified && beforeSpecified) {
+            final Timestamp after = query.getAfter();
+            final Timestamp before = query.getBefore();
+            checkArgument(Timestamps.compare(after, before) < 0, "`after` must be before `before`");
+            return records.subMap(RecordKey.latestAt(after), false, RecordKey.earliestAt(before), false);
+        }
+        if (afterSpecified) {
+            return records.tailMap(RecordKey.latestAt(query.getAfter()), false);
+        }
+        if (beforeSpecified) {
+            return records.headMap(RecordKey.earliestAt(query.getBefore()), false);
+        }
+        return records;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>A record with the ID of an already stored event replaces it.
+     */
     @Override
     protected void writeRecord(EventStorageRecord record) {
         checkNotNull(record);
+        put(sequence.incrementAndGet(), record);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The sequence numbers for the whole batch are reserved at once, so the records of the batch
+     * with the same timestamp are read in the order of the batch even if other records are written concurrently.
+     */
+    @Override
+    protected void writeRecords(List<EventStorageRecord> records) {
+        checkNotNull(records);
+        final long firstSequence = sequence.getAndAdd(records.size()) + 1;
+        long nextSequence = firstSequence;
+        for (EventStorageRecord record : records) {
+            put(nextSequence, record);
+            nextSequence++;
+        }
+    }
+
+    private void put(long recordSequence, EventStorageRecord record) {
         final String eventId = record.getEventId();
         checkState(!eventId.isEmpty(), "eventId cannot be empty");
-        storage.add(record);
-        index.put(eventId, record);
+        final RecordKey key = new RecordKey(record.getTimestamp(), recordSequence);
+        final Lock lock = postingsLock.readLock();
+        lock.lock();
+        try {
+            // The record is added to the postings before the log, so that it is in the postings
+            // whenever the removal of the expired records finds it in the log.
+            postingFor(byEventType, record.getEventType()).put(key, record);
+            postingFor(byProducerId, record.getProducerId()).put(key, record);
+            log.put(key, record);
+            final Optional<Long> previousTime = index.put(eventId, toNanos(record.getTimestamp()));
+            if (previousTime.isPresent()) {
+                removePrevious(eventId, previousTime.get(), key);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Removes the records of the event, which happened at the given time, except the one with the given key. */
+    private void removePrevious(String eventId, long timeNanos, RecordKey keptKey) {
+        for (Map.Entry<RecordKey, EventStorageRecord> entry : recordsAt(timeNanos).entrySet()) {
+            final RecordKey key = entry.getKey();
+            final EventStorageRecord record = entry.getValue();
+            if (!key.equals(keptKey) && eventId.equals(record.getEventId()) && log.remove(key, record)) {
+                removeFromPostings(key, record);
+            }
+        }
+    }
+
+    private ConcurrentNavigableMap<RecordKey, EventStorageRecord> recordsAt(long timeNanos) {
+        final Timestamp time = fromNanos(timeNanos);
+        return log.subMap(RecordKey.earliestAt(time), true, RecordKey.latestAt(time), true);
+    }
+
+    private void removeFromPostings(RecordKey key, EventStorageRecord record) {
+        postingFor(byEventType, record.getEventType()).remove(key);
+        postingFor(byProducerId, record.getProducerId()).remove(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The expired records are removed right away. The postings of the event types and
+     * the producers left without records are removed as well.
+     */
+    @Override
+    protected long removeRecords(Predicate<EventStorageRecord> expired) {
+        checkNotNull(expired);
+        long result = 0;
+        final Lock lock = postingsLock.readLock();
+        lock.lock();
+        try {
+            for (Map.Entry<RecordKey, EventStorageRecord> entry : log.entrySet()) {
+                final RecordKey key = entry.getKey();
+                final EventStorageRecord record = entry.getValue();
+                if (expired.apply(record) && log.remove(key, record)) {
+                    removeFromPostings(key, record);
+                    index.remove(record.getEventId(), toNanos(record.getTimestamp()));
+                    result++;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        removeEmptyPostings();
+        return result;
+    }
+
+    private void removeEmptyPostings() {
+        final Lock lock = postingsLock.writeLock();
+        lock.lock();
+        try {
+            removeEmpty(byEventType);
+            removeEmpty(byProducerId);
+        } finally {
+            lock.unlock();
+        }
     }
 
+    private static void removeEmpty(ConcurrentMap<String, ConcurrentNavigableMap<RecordKey, EventStorageRecord>> postings) {
+        final Iterator<ConcurrentNavigableMap<RecordKey, EventStorageRecord>> iterator = postings.values()
+                                                                                                 .iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next()
+                        .isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static ConcurrentNavigableMap<RecordKey, EventStorageRecord> postingFor(
+            ConcurrentMap<String, ConcurrentNavigableMap<RecordKey, EventStorageRecord>> postings,
+            String value) {
+        final ConcurrentNavigableMap<RecordKey, EventStorageRecord> existing = postings.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        final ConcurrentNavigableMap<RecordKey, EventStorageRecord> created = new ConcurrentSkipListMap<>();
+        final ConcurrentNavigableMap<RecordKey, EventStorageRecord> previous = postings.putIfAbsent(value, created);
+        final ConcurrentNavigableMap<RecordKey, EventStorageRecord> result = previous == null
+                                                                            ? created
+                                                                            : previous;
+        return result;
+    }
+
+    @Override
+    protected Optional<Timestamp> getEarliestTime() {
+        return timeOf(log.firstEntry());
+    }
+
+    @Override
+    protected Optional<Timestamp> getLatestTime() {
+        return timeOf(log.lastEntry());
+    }
+
+    private static Optional<Timestamp> timeOf(@Nullable Map.Entry<RecordKey, EventStorageRecord> entry) {
+        if (entry == null) {
+            return Optional.absent();
+        }
+        return Optional.of(entry.getKey().timestamp);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The timestamp of the event is found by the ID index, and the record is then looked up
+     * among the records with this timestamp.
+     */
     @Nullable
     @Override
     protected EventStorageRecord readRecord(EventId eventId) {
-        final EventStorageRecord result = index.get(eventId.getUuid());
-        return result;
+        final String id = eventId.getUuid();
+        final Optional<Long> time = index.get(id);
+        if (!time.isPresent()) {
+            return null;
+        }
+        for (EventStorageRecord record : recordsAt(time.get()).descendingMap()
+                                                              .values()) {
+            if (id.equals(record.getEventId())) {
+                return record;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The position of a record in the log.
+     *
+     * <p>Orders the records by the timestamps of the events, and then by the order of writing.
+     */
+    private static final class RecordKey implements Comparable<RecordKey> {
+
+        private final Timestamp timestamp;
+        private final long sequence;
+
+        private RecordKey(Timestamp timestamp, long sequence) {
+            this.timestamp = timestamp;
+            this.sequence = sequence;
+        }
+
+        /** Creates the key preceding all the records with the given timestamp. */
+        private static RecordKey earliestAt(Timestamp timestamp) {
+            return new RecordKey(timestamp, Long.MIN_VALUE);
+        }
+
+        /** Creates the key following all the records with the given timestamp. */
+        private static RecordKey latestAt(Timestamp timestamp) {
+            return new RecordKey(timestamp, Long.MAX_VALUE);
+        }
+
+        @Override
+        public int compareTo(RecordKey other) {
+            final int byTime = Timestamps.compare(timestamp, other.timestamp);
+            if (byTime != 0) {
+                return byTime;
+            }
+            final int result = Long.compare(sequence, other.sequence);
+            return result;
+        }
+
+        @Override
+        public boolean equals(@Nullable Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof RecordKey)) {
+                return false;
+            }
+            final RecordKey other = (RecordKey) obj;
+            return compareTo(other) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (sequence ^ (sequence >>> 32));
+        }
+    }
+
+    /** Orders the entries of the postings by their keys. */
+    private enum EntryOrder implements Comparator<Map.Entry<RecordKey, EventStorageRecord>> {
+        INSTANCE;
+
+        @Override
+        public int compare(Map.Entry<RecordKey, EventStorageRecord> first,
+                           Map.Entry<RecordKey, EventStorageRecord> second) {
+            return first.getKey()
+                        .compareTo(second.getKey());
+        }
+    }
+
+    /** Obtains the records from the ordered entries, skipping the repeated ones. */
+    private static class DistinctRecordIterator extends AbstractIterator<EventStorageRecord> {
+
+        private final PeekingIterator<Map.Entry<RecordKey, EventStorageRecord>> entries;
+
+        private DistinctRecordIterator(PeekingIterator<Map.Entry<RecordKey, EventStorageRecord>> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        protected EventStorageRecord computeNext() {
+            if (!entries.hasNext()) {
+                return endOfData();
+            }
+            final Map.Entry<RecordKey, EventStorageRecord> entry = entries.next();
+            while (entries.hasNext() && entries.peek()
+                                               .getKey()
+                                               .equals(entry.getKey())) {
+                entries.next();
+            }
+            return entry.getValue();
+        }
     }
 }
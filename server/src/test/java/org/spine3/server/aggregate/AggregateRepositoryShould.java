@@ -20,13 +20,17 @@
 
 package org.spine3.server.aggregate;
 
+import com.google.common.collect.Iterables;
 import com.google.protobuf.Message;
 import com.google.protobuf.StringValue;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
 import org.mockito.internal.matchers.GreaterThan;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.spine3.base.Command;
 import org.spine3.base.CommandContext;
 import org.spine3.base.CommandId;
@@ -53,15 +57,31 @@ import org.spine3.test.aggregate.event.ProjectCreated;
 import org.spine3.test.aggregate.event.ProjectStarted;
 import org.spine3.test.aggregate.event.TaskAdded;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
-
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Lists.newCopyOnWriteArrayList;
 import static com.google.common.collect.Maps.newConcurrentMap;
+import static com.google.common.util.concurrent.Uninterruptibles.awaitUninterruptibly;
 import static java.util.Collections.emptyIterator;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.eq;
@@ -69,12 +89,14 @@ import static org.mockito.Mockito.intThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.spine3.base.Commands.getId;
 import static org.spine3.base.Events.getMessage;
 import static org.spine3.base.Identifiers.newUuid;
 import static org.spine3.protobuf.AnyPacker.unpack;
+import static org.spine3.protobuf.Durations.isPositive;
 import static org.spine3.testdata.TestBoundedContextFactory.newBoundedContext;
 import static org.spine3.testdata.TestCommandContextFactory.createCommandContext;
 import static org.spine3.validate.Validate.isDefault;
@@ -90,6 +112,7 @@ public class AggregateRepositoryShould {
 
     private CommandStore commandStore;
     private EventBus eventBus;
+    private BoundedContext boundedContext;
 
     private final ProjectId projectId = Given.newProjectId();
 
@@ -102,7 +125,7 @@ public class AggregateRepositoryShould {
         final CommandBus commandBus = CommandBus.newBuilder()
                                                 .setCommandStore(commandStore)
                                                 .build();
-        final BoundedContext boundedContext = newBoundedContext(commandBus, eventBus);
+        boundedContext = newBoundedContext(commandBus, eventBus);
         repository = new TestAggregateRepository(boundedContext);
         repositorySpy = spy(repository);
     }
@@ -179,6 +202,162 @@ public class AggregateRepositoryShould {
         verify(storage).writeEventCountAfterLastSnapshot(any(ProjectId.class), intThat(new GreaterThan<>(0)));
     }
 
+    @Test
+    public void write_events_at_once_with_at_most_one_snapshot() {
+        final AggregateStorage<ProjectId> storage = givenAggregateStorageMock();
+        final ProjectAggregate aggregate = givenAggregateWithUncommittedEvents();
+        final List<Event> events = aggregate.getUncommittedEvents();
+        repositorySpy.setSnapshotTrigger(1);
+
+        repositorySpy.store(aggregate);
+
+        verify(storage).writeEvents(aggregate.getId(), events);
+        verify(storage, never()).writeEvent(any(ProjectId.class), any(Event.class));
+        verify(storage, times(1)).write(any(ProjectId.class), any(Snapshot.class));
+        verify(storage).writeEventCountAfterLastSnapshot(aggregate.getId(), 0);
+    }
+
+    @Test
+    public void store_snapshot_if_snapshot_policy_demands() {
+        final AggregateStorage<ProjectId> storage = givenAggregateStorageMock();
+        final ProjectAggregate aggregate = givenAggregateWithUncommittedEvents();
+        final int eventCount = aggregate.getUncommittedEvents()
+                                        .size();
+        final SnapshotPolicy policy = mock(SnapshotPolicy.class);
+        doReturn(true).when(policy)
+                      .shouldSnapshot(any(SnapshotCandidate.class));
+        repositorySpy.setSnapshotPolicy(policy);
+
+        repositorySpy.store(aggregate);
+
+        final ArgumentCaptor<SnapshotCandidate> candidate = ArgumentCaptor.forClass(SnapshotCandidate.class);
+        verify(policy).shouldSnapshot(candidate.capture());
+        assertEquals(eventCount, candidate.getValue()
+                                          .getEventCount());
+        assertEquals(aggregate.getState(), candidate.getValue()
+                                                    .getState());
+        verify(storage).write(any(ProjectId.class), any(Snapshot.class));
+        verify(storage).writeEventCountAfterLastSnapshot(any(ProjectId.class), eq(0));
+    }
+
+    @Test
+    public void not_consult_snapshot_policy_if_no_events_stored() {
+        final SnapshotPolicy policy = mock(SnapshotPolicy.class);
+        repository.setSnapshotPolicy(policy);
+
+        repository.store(new ProjectAggregate(Given.newProjectId()));
+
+        verify(policy, never()).shouldSnapshot(any(SnapshotCandidate.class));
+    }
+
+    @Test
+    public void replace_snapshot_policy_with_event_count_upon_setting_snapshot_trigger() {
+        final SnapshotPolicy policy = mock(SnapshotPolicy.class);
+        repository.setSnapshotPolicy(policy);
+
+        repository.setSnapshotTrigger(10);
+
+        assertNotSame(policy, repository.getSnapshotPolicy());
+    }
+
+    @Test
+    public void measure_replay_time_of_loaded_aggregate() {
+        final ProjectId id = Given.newProjectId();
+        repository.store(givenAggregateWithUncommittedEvents(id));
+
+        final ProjectAggregate loaded = repository.loadOrCreate(id);
+
+        final SnapshotCandidate candidate = new SnapshotCandidate(loaded.getState(), 3, loaded.getEventTail());
+        assertTrue(isPositive(candidate.getReplayTime()));
+        assertTrue(candidate.getEventSize() > 0);
+    }
+
+    @Test
+    public void estimate_replay_time_of_created_aggregate_by_applied_events() {
+        final ProjectAggregate aggregate = givenAggregateWithUncommittedEvents();
+
+        final SnapshotCandidate candidate = new SnapshotCandidate(aggregate.getState(), 3, aggregate.getEventTail());
+        assertTrue(isPositive(candidate.getReplayTime()));
+    }
+
+    @Test
+    public void write_snapshots_in_store_by_default() {
+        assertFalse(repository.isBackgroundSnapshots());
+    }
+
+    @Test
+    public void write_snapshot_in_background_thread() {
+        final AggregateStorage<ProjectId> storage = givenAggregateStorageMock();
+        final ProjectAggregate aggregate = givenAggregateWithUncommittedEvents();
+        final Snapshot expected = aggregate.toSnapshot();
+        final Queue<Thread> writingThreads = new ConcurrentLinkedQueue<>();
+        doAnswer(recordThread(writingThreads)).when(storage)
+                                              .write(any(ProjectId.class), any(Snapshot.class));
+        repositorySpy.setSnapshotTrigger(1);
+        repositorySpy.setBackgroundSnapshots(true);
+
+        repositorySpy.store(aggregate);
+
+        verify(storage).writeEventCountAfterLastSnapshot(aggregate.getId(), 0);
+        final ArgumentCaptor<Snapshot> snapshot = ArgumentCaptor.forClass(Snapshot.class);
+        verify(storage, timeout(1000)).write(eq(aggregate.getId()), snapshot.capture());
+        assertEquals(expected.getState(), snapshot.getValue()
+                                                  .getState());
+        assertEquals(expected.getVersion(), snapshot.getValue()
+                                                    .getVersion());
+        final Thread writingThread = writingThreads.peek();
+        assertNotSame(Thread.currentThread(), writingThread);
+        assertEquals(Thread.MIN_PRIORITY, writingThread.getPriority());
+    }
+
+    @Test
+    public void write_pending_snapshots_upon_closing() throws Exception {
+        final AggregateRepository<ProjectId, ProjectAggregate> another =
+                spy(new TestAggregateRepository(boundedContext));
+        @SuppressWarnings("unchecked")
+        final AggregateStorage<ProjectId> storage = mock(AggregateStorage.class);
+        doReturn(storage).when(another)
+                         .aggregateStorage();
+        final Queue<Thread> writingThreads = new ConcurrentLinkedQueue<>();
+        doAnswer(recordThread(writingThreads)).when(storage)
+                                              .write(any(ProjectId.class), any(Snapshot.class));
+        another.setSnapshotTrigger(1);
+        another.setBackgroundSnapshots(true);
+        final int aggregateCount = 10;
+        for (int i = 0; i < aggregateCount; i++) {
+            another.store(givenAggregateWithUncommittedEvents());
+        }
+
+        another.close();
+
+        assertEquals(aggregateCount, writingThreads.size());
+        assertFalse(another.isBackgroundSnapshots());
+    }
+
+    @Test
+    public void load_aggregate_from_snapshot_written_in_background() throws InterruptedException {
+        final ProjectId id = Given.newProjectId();
+        final ProjectAggregate expected = givenAggregateWithUncommittedEvents(id);
+        repository.setSnapshotTrigger(expected.getUncommittedEvents()
+                                              .size());
+        repository.setBackgroundSnapshots(true);
+
+        repository.store(expected);
+        // Lets the pending snapshot be written.
+        repository.setBackgroundSnapshots(false);
+        final AggregateStorage<ProjectId> storage = repository.aggregateStorage();
+        for (int attempt = 0; attempt < 100 && !storage.read(id)
+                                                       .hasSnapshot(); attempt++) {
+            Thread.sleep(10);
+        }
+
+        final AggregateEvents stored = storage.read(id);
+        assertTrue(stored.hasSnapshot());
+        assertEquals(0, stored.getEventCount());
+        assertEquals(expected.getState(), repository.loadOrCreate(id)
+                                                    .getState());
+    }
+
     @Test
     public void dispatch_command() {
         assertDispatches(Given.Command.createProject());
@@ -266,6 +445,40 @@ public class AggregateRepositoryShould {
         verify(commandStore).updateStatus(id, Errors.fromThrowable(throwable));
     }
 
+    @Test
+    public void dispatch_batch_of_commands_to_aggregate_loaded_once() {
+        final ProjectId id = Given.newProjectId();
+        final List<Command> commands = newArrayList(Given.Command.createProject(id),
+                                                    Given.Command.addTask(id),
+                                                    Given.Command.startProject(id));
+
+        repositorySpy.dispatchAll(commands);
+
+        verify(repositorySpy, times(1)).loadOrCreate(id);
+        verify(repositorySpy, times(1)).store(any(ProjectAggregate.class));
+        for (Command cmd : commands) {
+            ProjectAggregate.assertHandled(cmd);
+            verify(commandStore).setCommandStatusOk(getId(cmd));
+        }
+        final ArgumentCaptor<Iterable> eventsCaptor = ArgumentCaptor.forClass(Iterable.class);
+        verify(eventBus).post(eventsCaptor.capture());
+        assertEquals(commands.size(), Iterables.size(eventsCaptor.getValue()));
+        final AggregateEvents stored = repository.aggregateStorage()
+                                                 .read(id);
+        assertEquals(commands.size(), stored.getEventCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void do_not_accept_empty_batch_of_commands() {
+        repository.dispatchAll(Collections.<Command>emptyList());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void do_not_accept_batch_of_commands_to_different_aggregates() {
+        repository.dispatchAll(newArrayList(Given.Command.createProject(Given.newProjectId()),
+                                            Given.Command.createProject(Given.newProjectId())));
+    }
+
     @Test
     public void return_aggregate_class() {
         assertEquals(ProjectAggregate.class, repository.getAggregateClass());
@@ -327,6 +540,195 @@ public class AggregateRepositoryShould {
         verify(storage, times(2 * 2 + 1)).readEventCountAfterLastSnapshot(projectId);
     }
 
+    @Test
+    public void not_cache_aggregates_by_default() {
+        assertFalse(repository.isCacheEnabled());
+
+        repository.dispatch(Given.Command.createProject());
+
+        assertEquals(0, repository.getCacheSize());
+    }
+
+    @Test
+    public void dispatch_commands_to_cached_aggregate_without_loading_it() {
+        repositorySpy.enableCache(10, 1, TimeUnit.MINUTES);
+        final ProjectId id = Given.newProjectId();
+
+        assertDispatches(repositorySpy, Given.Command.createProject(id));
+        assertDispatches(repositorySpy, Given.Command.addTask(id));
+        assertDispatches(repositorySpy, Given.Command.startProject(id));
+
+        verify(repositorySpy, times(1)).loadOrCreate(id);
+        final ArgumentCaptor<ProjectAggregate> stored = ArgumentCaptor.forClass(ProjectAggregate.class);
+        verify(repositorySpy, times(3)).store(stored.capture());
+        final ProjectAggregate aggregate = stored.getAllValues()
+                                                 .get(0);
+        for (ProjectAggregate storedAggregate : stored.getAllValues()) {
+            assertSame(aggregate, storedAggregate);
+        }
+        assertEquals(1, repositorySpy.getCacheSize());
+    }
+
+    @Test
+    public void load_cached_aggregate_if_its_events_were_stored_elsewhere() {
+        repositorySpy.enableCache(10, 1, TimeUnit.MINUTES);
+        final ProjectId id = Given.newProjectId();
+        repositorySpy.dispatch(Given.Command.createProject(id));
+
+        // Another instance of the aggregate handles a command and stores the event bypassing the cache.
+        final ProjectAggregate another = repository.loadOrCreate(id);
+        another.dispatchForTest(Given.CommandMessage.addTask(id), createCommandContext());
+        repository.store(another);
+
+        repositorySpy.dispatch(Given.Command.startProject(id));
+
+        verify(repositorySpy, times(2)).loadOrCreate(id);
+        final AggregateEvents events = repository.aggregateStorage()
+                                                 .read(id);
+        assertEquals(3, events.getEventCount());
+    }
+
+    @Test
+    public void not_cache_aggregate_if_command_handling_failed() {
+        repositorySpy.enableCache(10, 1, TimeUnit.MINUTES);
+
+        dispatchCmdToAggregateThrowing(new Exception(newUuid()));
+
+        assertEquals(0, repositorySpy.getCacheSize());
+    }
+
+    @Test
+    public void evict_aggregates_exceeding_cache_size() {
+        repositorySpy.enableCache(1, 1, TimeUnit.MINUTES);
+        final ProjectId firstId = Given.newProjectId();
+        final ProjectId secondId = Given.newProjectId();
+
+        repositorySpy.dispatch(Given.Command.createProject(firstId));
+        repositorySpy.dispatch(Given.Command.createProject(secondId));
+        repositorySpy.dispatch(Given.Command.addTask(firstId));
+
+        verify(repositorySpy, times(2)).loadOrCreate(firstId);
+        assertEquals(1, repositorySpy.getCacheSize());
+    }
+
+    @Test
+    public void drop_cached_aggregates_when_cache_disabled() {
+        repository.enableCache(10, 1, TimeUnit.MINUTES);
+        repository.dispatch(Given.Command.createProject());
+
+        repository.disableCache();
+
+        assertFalse(repository.isCacheEnabled());
+        assertEquals(0, repository.getCacheSize());
+    }
+
+    @Test
+    public void dispatch_commands_optimistically_by_default() {
+        assertFalse(repository.isSerialDispatching());
+    }
+
+    @Test
+    public void allow_to_switch_serial_dispatching() {
+        repository.setSerialDispatching(true);
+        assertTrue(repository.isSerialDispatching());
+
+        repository.setSerialDispatching(false);
+        assertFalse(repository.isSerialDispatching());
+    }
+
+    @Test
+    public void dispatch_concurrent_commands_to_aggregate_without_repeating_in_serial_mode() throws Exception {
+        repositorySpy.setSerialDispatching(true);
+        final ProjectId id = Given.newProjectId();
+        repositorySpy.dispatch(Given.Command.createProject(id));
+        final int threadCount = 8;
+        final List<Command> commands = newArrayList();
+        for (int i = 0; i < threadCount; i++) {
+            commands.add(Given.Command.addTask(id));
+        }
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        for (final Command cmd : commands) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    awaitUninterruptibly(start);
+                    repositorySpy.dispatch(cmd);
+                }
+            });
+        }
+
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        for (Command cmd : commands) {
+            ProjectAggregate.assertHandled(cmd);
+        }
+        // Each command is dispatched once, so the aggregate is never loaded again.
+        verify(repositorySpy, times(threadCount + 1)).loadOrCreate(id);
+    }
+
+    @Test
+    public void not_hold_aggregate_lock_while_posting_events_in_serial_mode() throws Exception {
+        repository.setSerialDispatching(true);
+        final ProjectId first = Given.newProjectId();
+        final ProjectId second = Given.newProjectId();
+        repository.dispatch(Given.Command.createProject(first));
+        repository.dispatch(Given.Command.createProject(second));
+        // Both threads post the events at the same time and then dispatch commands to each other's aggregates.
+        final CyclicBarrier bothPosting = new CyclicBarrier(2);
+        final List<Command> reactions = newCopyOnWriteArrayList();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                final Iterable<Event> events = invocation.getArgument(0);
+                for (Event event : events) {
+                    final Message message = getMessage(event);
+                    if (message instanceof ProjectStarted) {
+                        final ProjectId started = ((ProjectStarted) message).getProjectId();
+                        final ProjectId target = started.equals(first)
+                                                 ? second
+                                                 : first;
+                        final Command reaction = Given.Command.addTask(target);
+                        reactions.add(reaction);
+                        bothPosting.await(10, TimeUnit.SECONDS);
+                        repository.dispatch(reaction);
+                    }
+                }
+                return null;
+            }
+        }).when(eventBus)
+          .post(ArgumentMatchers.<Event>anyIterable());
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        for (final ProjectId id : newArrayList(first, second)) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    repository.dispatch(Given.Command.startProject(id));
+                }
+            });
+        }
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(2, reactions.size());
+        for (Command reaction : reactions) {
+            ProjectAggregate.assertHandled(reaction);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void do_not_accept_zero_cache_size() {
+        repository.enableCache(0, 1, TimeUnit.MINUTES);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void do_not_accept_zero_cache_expiration() {
+        repository.enableCache(10, 0, TimeUnit.MINUTES);
+    }
+
 
 
     /*
@@ -367,6 +769,16 @@ public class AggregateRepositoryShould {
                                    .loadOrCreate(any(ProjectId.class));
     }
 
+    private static Answer<Void> recordThread(final Queue<Thread> threads) {
+        return new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                threads.add(Thread.currentThread());
+                return null;
+            }
+        };
+    }
+
     private AggregateStorage<ProjectId> givenAggregateStorageMock() {
         @SuppressWarnings("unchecked")
         final AggregateStorage<ProjectId> storage = mock(AggregateStorage.class);
@@ -376,14 +788,21 @@ public class AggregateRepositoryShould {
     }
 
     private void assertDispatches(Command cmd) {
+        assertDispatches(repository, cmd);
+    }
+
+    private static void assertDispatches(AggregateRepository<ProjectId, ProjectAggregate> repository,
+                                         Command cmd) {
         repository.dispatch(cmd);
         ProjectAggregate.assertHandled(cmd);
     }
 
     private Event verifyEventPosted() {
-        final ArgumentCaptor<Event> eventCaptor = ArgumentCaptor.forClass(Event.class);
-        verify(eventBus).post(eventCaptor.capture());
-        return eventCaptor.getValue();
+        final ArgumentCaptor<Iterable> eventsCaptor = ArgumentCaptor.forClass(Iterable.class);
+        verify(eventBus).post(eventsCaptor.capture());
+        @SuppressWarnings("unchecked") // The captured value is the list of events passed by the repository.
+        final Iterable<Event> events = eventsCaptor.getValue();
+        return Iterables.getOnlyElement(events);
     }
 
     private static ProjectAggregate verifyAggregateStored(AggregateRepository<ProjectId, ProjectAggregate> repository) {
@@ -29,6 +29,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.spine3.base.Event;
+import org.spine3.base.EventContext;
 import org.spine3.server.aggregate.storage.AggregateEvents;
 import org.spine3.server.aggregate.storage.AggregateStorageRecord;
 import org.spine3.server.aggregate.storage.Snapshot;
@@ -38,6 +39,7 @@ import org.spine3.test.aggregate.Project;
 import org.spine3.test.aggregate.ProjectId;
 
 import javax.annotation.Nullable;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
@@ -51,6 +53,7 @@ import static org.junit.Assert.assertTrue;
 import static org.spine3.base.Identifiers.newUuid;
 import static org.spine3.protobuf.Durations.seconds;
 import static org.spine3.protobuf.Timestamps.getCurrentTime;
+import static org.spine3.testdata.TestEventContextFactory.createEventContext;
 
 /**
  * @author Alexander Litus
@@ -216,6 +219,50 @@ public abstract class AggregateStorageShould extends AbstractStorageShould<Proje
         testWriteRecordsAndLoadHistory(time3);
     }
 
+    @Test
+    public void write_events_at_once_and_read_them_in_order_of_versions() {
+        final Timestamp time = getCurrentTime();
+        final List<Event> events = newArrayList();
+        for (int version = 0; version < 5; version++) {
+            final EventContext context = createEventContext(id).toBuilder()
+                                                               .setTimestamp(time)
+                                                               .setVersion(version)
+                                                               .build();
+            events.add(Given.Event.taskAdded(id, context));
+        }
+
+        storage.writeEvents(id, events);
+
+        assertEquals(events, storage.read(id)
+                                    .getEventList());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throw_exception_if_try_to_write_empty_event_list() {
+        storage.writeEvents(id, Collections.<Event>emptyList());
+    }
+
+    @Test
+    public void return_empty_last_event_id_if_no_events_stored() {
+        assertEquals("", storage.readLastEventId(id));
+    }
+
+    @Test
+    public void read_id_of_last_event_skipping_snapshots() {
+        final Duration delta = seconds(10);
+        final Timestamp time1 = getCurrentTime();
+        final Timestamp time2 = add(time1, delta);
+        final Timestamp time3 = add(time2, delta);
+        final AggregateStorageRecord first = Given.StorageRecord.create(time1, Given.Event.projectCreated(id));
+        final AggregateStorageRecord last = Given.StorageRecord.create(time2, Given.Event.taskAdded(id));
+
+        storage.writeRecord(id, first);
+        storage.writeRecord(id, last);
+        storage.write(id, newSnapshot(time3));
+
+        assertEquals(last.getEventId(), storage.readLastEventId(id));
+    }
+
     @Test
     public void return_zero_event_count_after_last_snapshot_by_default() {
         assertEquals(0, storage.readEventCountAfterLastSnapshot(id));
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.spine3.server.aggregate;
+
+import com.google.protobuf.Message;
+import org.junit.Test;
+import org.spine3.base.Event;
+import org.spine3.server.aggregate.storage.AggregateEvents;
+import org.spine3.test.aggregate.Project;
+import org.spine3.test.aggregate.ProjectId;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.spine3.protobuf.Durations.ZERO;
+import static org.spine3.protobuf.Durations.milliseconds;
+import static org.spine3.protobuf.Durations.minutes;
+import static org.spine3.protobuf.Durations.seconds;
+import static org.spine3.protobuf.Timestamps.getCurrentTime;
+import static org.spine3.protobuf.Timestamps.minutesAgo;
+import static org.spine3.test.Tests.hasPrivateParameterlessCtor;
+
+@SuppressWarnings("InstanceMethodNamingConvention")
+public class SnapshotPoliciesShould {
+
+    private final ProjectId id = Given.newProjectId();
+
+    @Test
+    public void have_private_constructor() {
+        assertTrue(hasPrivateParameterlessCtor(SnapshotPolicies.class));
+    }
+
+    @Test
+    public void snapshot_after_event_count() {
+        final SnapshotPolicy policy = SnapshotPolicies.eventCount(3);
+
+        assertFalse(policy.shouldSnapshot(candidate(2, new EventTail())));
+        assertTrue(policy.shouldSnapshot(candidate(3, new EventTail())));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void not_accept_zero_event_count() {
+        SnapshotPolicies.eventCount(0);
+    }
+
+    @Test
+    public void snapshot_when_replay_time_reaches_threshold() {
+        final EventTail tail = new EventTail();
+        final long loadTime = milliseconds(10).getNanos();
+        tail.onLoaded(AggregateEvents.newBuilder()
+                                     .addEvent(Given.Event.projectCreated(id))
+                                     .build(), loadTime);
+        final SnapshotPolicy policy = SnapshotPolicies.replayTime(milliseconds(50));
+
+        assertFalse(policy.shouldSnapshot(candidate(4, tail)));
+        assertTrue(policy.shouldSnapshot(candidate(5, tail)));
+    }
+
+    @Test
+    public void estimate_replay_time_by_applied_events_if_nothing_was_replayed() {
+        final EventTail tail = new EventTail();
+        tail.onApplied(2, milliseconds(20).getNanos());
+        final SnapshotPolicy policy = SnapshotPolicies.replayTime(milliseconds(50));
+
+        assertFalse(policy.shouldSnapshot(candidate(4, tail)));
+        assertTrue(policy.shouldSnapshot(candidate(5, tail)));
+    }
+
+    @Test
+    public void not_snapshot_by_replay_time_if_nothing_was_replayed_or_applied() {
+        final SnapshotPolicy policy = SnapshotPolicies.replayTime(milliseconds(1));
+
+        assertFalse(policy.shouldSnapshot(candidate(1000, new EventTail())));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void not_accept_zero_replay_time() {
+        SnapshotPolicies.replayTime(ZERO);
+    }
+
+    @Test
+    public void snapshot_when_events_outgrow_state() {
+        final Project state = Project.newBuilder()
+                                     .setId(id)
+                                     .setName("A project with a long enough name to outweigh a single event")
+                                     .build();
+        final Event event = Given.Event.taskAdded(id);
+        final EventTail tail = new EventTail();
+        final SnapshotPolicy policy = SnapshotPolicies.stateSizeRatio(1.0);
+        int eventCount = 0;
+        while (tail.getSerializedSize() < state.getSerializedSize()) {
+            assertFalse(policy.shouldSnapshot(candidate(state, eventCount, tail)));
+            tail.onStored(Collections.singletonList(event));
+            ++eventCount;
+        }
+
+        assertTrue(policy.shouldSnapshot(candidate(state, eventCount, tail)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void not_accept_zero_state_size_ratio() {
+        SnapshotPolicies.stateSizeRatio(0);
+    }
+
+    @Test
+    public void snapshot_when_period_elapses_since_last_snapshot() {
+        final EventTail tail = new EventTail();
+        tail.onSnapshot(minutesAgo(10));
+        tail.onStored(Collections.singletonList(Given.Event.taskAdded(id)));
+
+        assertTrue(SnapshotPolicies.elapsedTime(minutes(5))
+                                   .shouldSnapshot(candidate(1, tail)));
+        assertFalse(SnapshotPolicies.elapsedTime(minutes(15))
+                                    .shouldSnapshot(candidate(1, tail)));
+    }
+
+    @Test
+    public void count_period_from_first_event_if_there_are_no_snapshots() {
+        final EventTail tail = new EventTail();
+        tail.onStored(Collections.singletonList(Given.Event.taskAdded(id)));
+
+        assertFalse(SnapshotPolicies.elapsedTime(minutes(5))
+                                    .shouldSnapshot(candidate(1, tail)));
+    }
+
+    @Test
+    public void not_snapshot_by_elapsed_time_without_new_events() {
+        final EventTail tail = new EventTail();
+        tail.onSnapshot(minutesAgo(10));
+
+        assertFalse(SnapshotPolicies.elapsedTime(seconds(1))
+                                    .shouldSnapshot(candidate(0, tail)));
+    }
+
+    @Test
+    public void snapshot_if_any_of_policies_demands() {
+        final SnapshotPolicy policy = SnapshotPolicies.anyOf(SnapshotPolicies.eventCount(10),
+                                                             SnapshotPolicies.eventCount(3));
+
+        assertFalse(policy.shouldSnapshot(candidate(2, new EventTail())));
+        assertTrue(policy.shouldSnapshot(candidate(3, new EventTail())));
+    }
+
+    @Test
+    public void provide_time_of_first_event_after_snapshot() {
+        final EventTail tail = new EventTail();
+        final Event event = Given.Event.taskAdded(id);
+        tail.onStored(Collections.singletonList(event));
+
+        final SnapshotCandidate candidate = candidate(1, tail);
+
+        assertEquals(event.getContext()
+                          .getTimestamp(), candidate.getFirstEventTime()
+                                                    .get());
+        tail.onSnapshot(getCurrentTime());
+        assertFalse(candidate(0, tail).getFirstEventTime()
+                                      .isPresent());
+    }
+
+    private SnapshotCandidate candidate(int eventCount, EventTail tail) {
+        return candidate(Project.newBuilder()
+                                .setId(id)
+                                .build(), eventCount, tail);
+    }
+
+    private static SnapshotCandidate candidate(Message state, int eventCount, EventTail tail) {
+        return new SnapshotCandidate(state, eventCount, tail);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.delivery;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("InstanceMethodNamingConvention")
+public class ConsumerIndexShould {
+
+    @Test
+    public void return_same_empty_index_for_no_consumers() {
+        final ConsumerIndex<Object> index = ConsumerIndex.of(ImmutableList.of());
+
+        assertSame(ConsumerIndex.empty(), index);
+        assertTrue(index.isEmpty());
+        assertTrue(index.getOfClass(Object.class)
+                        .isEmpty());
+    }
+
+    @Test
+    public void keep_all_consumers_in_order() {
+        final ImmutableList<Object> consumers = ImmutableList.<Object>of("first", 2, "third");
+        final ConsumerIndex<Object> index = ConsumerIndex.of(consumers);
+
+        assertEquals(consumers, index.getAll());
+        assertEquals(consumers.size(), index.size());
+    }
+
+    @Test
+    public void index_consumers_by_exact_class() {
+        final ConsumerIndex<Object> index = ConsumerIndex.<Object>of(ImmutableList.of("first", 2, "third"));
+
+        assertEquals(ImmutableList.of("first", "third"), index.getOfClass(String.class));
+        assertEquals(ImmutableList.of(2), index.getOfClass(Integer.class));
+        assertTrue(index.getOfClass(Number.class)
+                        .isEmpty());
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.delivery;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("InstanceMethodNamingConvention")
+public class DeliveryShould {
+
+    @Test
+    public void deliver_once_to_each_of_consumers_of_same_class() {
+        final Consumer first = new Consumer();
+        final Consumer second = new Consumer();
+        final TestDelivery delivery = new TestDelivery(first, second);
+
+        delivery.deliver("item");
+
+        assertEquals(ImmutableList.of("item"), first.getReceived());
+        assertEquals(ImmutableList.of("item"), second.getReceived());
+    }
+
+    @Test
+    public void deliver_now_only_to_consumers_of_given_class() {
+        final Consumer consumer = new Consumer();
+        final AnotherConsumer anotherConsumer = new AnotherConsumer();
+        final TestDelivery delivery = new TestDelivery(consumer, anotherConsumer);
+
+        delivery.deliverNow("item", AnotherConsumer.class);
+
+        assertTrue(consumer.getReceived()
+                           .isEmpty());
+        assertEquals(ImmutableList.of("item"), anotherConsumer.getReceived());
+    }
+
+    private static class TestDelivery extends Delivery<String, Consumer> {
+
+        private final List<Consumer> consumers;
+
+        private TestDelivery(Consumer... consumers) {
+            super();
+            this.consumers = ImmutableList.copyOf(consumers);
+        }
+
+        @Override
+        protected boolean shouldPostponeDelivery(String deliverable, Consumer consumer) {
+            return false;
+        }
+
+        @Override
+        protected Runnable getDeliveryAction(final Consumer consumer, final String deliverable) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    consumer.receive(deliverable);
+                }
+            };
+        }
+
+        @Override
+        protected Collection<Consumer> consumersFor(String deliverable) {
+            return consumers;
+        }
+    }
+
+    private static class Consumer {
+
+        private final List<String> received = Lists.newArrayList();
+
+        void receive(String item) {
+            received.add(item);
+        }
+
+        List<String> getReceived() {
+            return received;
+        }
+    }
+
+    private static class AnotherConsumer extends Consumer {
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.delivery;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("InstanceMethodNamingConvention")
+public class PartitionedExecutorShould {
+
+    private static final int PARTITION_COUNT = 4;
+
+    private PartitionedExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new PartitionedExecutor(PARTITION_COUNT, 2, "test-partition");
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        executor.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void not_accept_zero_partition_count() {
+        new PartitionedExecutor(0, 1, "no-partitions");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void not_accept_zero_capacity() {
+        new PartitionedExecutor(1, 0, "no-capacity");
+    }
+
+    @Test
+    public void return_partition_count() {
+        assertEquals(PARTITION_COUNT, executor.getPartitionCount());
+    }
+
+    @Test
+    public void execute_tasks_with_same_key_in_order() throws InterruptedException {
+        final List<Integer> executed = Collections.synchronizedList(Lists.<Integer>newArrayList());
+        final int taskCount = 100;
+        for (int i = 0; i < taskCount; i++) {
+            final int number = i;
+            executor.execute("key", new Runnable() {
+                @Override
+                public void run() {
+                    executed.add(number);
+                }
+            });
+        }
+
+        executor.close();
+
+        assertEquals(taskCount, executed.size());
+        for (int i = 0; i < taskCount; i++) {
+            assertEquals(i, executed.get(i)
+                                    .intValue());
+        }
+    }
+
+    @Test
+    public void execute_tasks_of_different_partitions_in_parallel() throws InterruptedException {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        final Runnable awaitOther = new Runnable() {
+            @Override
+            public void run() {
+                bothStarted.countDown();
+                try {
+                    bothStarted.await(1, TimeUnit.SECONDS);
+                } catch (InterruptedException ignored) {
+                    Thread.currentThread()
+                          .interrupt();
+                }
+            }
+        };
+        // Integer keys fall into the partitions matching their values.
+        executor.execute(0, awaitOther);
+        executor.execute(1, awaitOther);
+
+        assertTrue(bothStarted.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void drain_queued_tasks_on_close() throws InterruptedException {
+        final AtomicInteger counter = new AtomicInteger();
+        final int taskCount = 50;
+        for (int i = 0; i < taskCount; i++) {
+            executor.execute(i, new Runnable() {
+                @Override
+                public void run() {
+                    counter.incrementAndGet();
+                }
+            });
+        }
+
+        executor.close();
+
+        assertEquals(taskCount, counter.get());
+        assertEquals(0, executor.getQueuedTaskCount());
+    }
+
+    @Test
+    public void continue_execution_after_task_failure() throws InterruptedException {
+        final AtomicInteger counter = new AtomicInteger();
+        executor.execute("key", new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("Failing on purpose.");
+            }
+        });
+        executor.execute("key", new Runnable() {
+            @Override
+            public void run() {
+                counter.incrementAndGet();
+            }
+        });
+
+        executor.close();
+
+        assertEquals(1, counter.get());
+    }
+
+    @Test
+    public void accept_tasks_submitted_from_worker_to_full_queue() throws InterruptedException {
+        final AtomicInteger counter = new AtomicInteger();
+        final Runnable increment = new Runnable() {
+            @Override
+            public void run() {
+                counter.incrementAndGet();
+            }
+        };
+        executor.execute("key", new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 10; i++) {
+                    executor.execute("key", increment);
+                }
+            }
+        });
+
+        executor.close();
+
+        assertEquals(10, counter.get());
+    }
+
+    @Test
+    public void keep_order_of_tasks_submitted_from_worker_to_full_queue() throws InterruptedException {
+        final List<String> executed = Collections.synchronizedList(Lists.<String>newArrayList());
+        final List<String> expected = Lists.newArrayList("submitter");
+        final CountDownLatch submitted = new CountDownLatch(1);
+        for (int i = 0; i < 10; i++) {
+            expected.add(String.valueOf(i));
+        }
+        executor.execute("key", new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 10; i++) {
+                    executor.execute("key", record(executed, String.valueOf(i)));
+                }
+                executed.add("submitter");
+                submitted.countDown();
+            }
+        });
+        submitted.await();
+
+        executor.close();
+
+        assertEquals(expected, executed);
+    }
+
+    @Test
+    public void accept_tasks_submitted_from_worker_of_same_group_to_full_queue() throws InterruptedException {
+        final Set<Thread> workerGroup = Sets.newConcurrentHashSet();
+        final PartitionedExecutor first = new PartitionedExecutor(1, 1, "test-first", workerGroup);
+        final PartitionedExecutor second = new PartitionedExecutor(1, 1, "test-second", workerGroup);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch submitted = new CountDownLatch(1);
+        final AtomicInteger counter = new AtomicInteger();
+        second.execute("key", await(release));
+        second.execute("key", increment(counter));
+        first.execute("key", new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 10; i++) {
+                    second.execute("key", increment(counter));
+                }
+                submitted.countDown();
+            }
+        });
+
+        final boolean notBlocked = submitted.await(10, TimeUnit.SECONDS);
+        release.countDown();
+        first.close();
+        second.close();
+
+        assertTrue(notBlocked);
+        assertEquals(11, counter.get());
+        assertTrue(workerGroup.isEmpty());
+    }
+
+    @Test
+    public void execute_exclusive_task_between_tasks_of_all_partitions() throws InterruptedException {
+        final List<String> executed = Collections.synchronizedList(Lists.<String>newArrayList());
+        for (int partition = 0; partition < PARTITION_COUNT; partition++) {
+            executor.execute(partition, record(executed, "before"));
+        }
+        executor.executeExclusively(record(executed, "exclusive"));
+        for (int partition = 0; partition < PARTITION_COUNT; partition++) {
+            executor.execute(partition, record(executed, "after"));
+        }
+
+        executor.close();
+
+        assertEquals(PARTITION_COUNT * 2 + 1, executed.size());
+        assertEquals("exclusive", executed.get(PARTITION_COUNT));
+    }
+
+    @Test
+    public void reject_exclusive_task_submitted_from_worker() throws InterruptedException {
+        final List<String> executed = Collections.synchronizedList(Lists.<String>newArrayList());
+        executor.execute("key", new Runnable() {
+            @Override
+            public void run() {
+                assertTrue(executor.isWorkerThread());
+                try {
+                    executor.executeExclusively(record(executed, "exclusive"));
+                } catch (IllegalStateException ignored) {
+                    executed.add("rejected");
+                }
+            }
+        });
+
+        executor.close();
+
+        assertEquals(Lists.newArrayList("rejected"), executed);
+        assertFalse(executor.isWorkerThread());
+    }
+
+    private static Runnable increment(final AtomicInteger counter) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                counter.incrementAndGet();
+            }
+        };
+    }
+
+    private static Runnable await(final CountDownLatch latch) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+    }
+
+    private static Runnable record(final List<String> executed, final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                executed.add(name);
+            }
+        };
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void reject_tasks_after_close() throws InterruptedException {
+        executor.close();
+        executor.execute("key", new Runnable() {
+            @Override
+            public void run() {
+                // Do nothing.
+            }
+        });
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.event;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+import org.spine3.base.Event;
+import org.spine3.server.type.EventClass;
+import org.spine3.test.event.ProjectCreated;
+import org.spine3.test.event.ProjectStarted;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("InstanceMethodNamingConvention")
+public class DeadEventBufferShould {
+
+    @Test
+    public void have_default_capacity() {
+        assertEquals(DeadEventBuffer.DEFAULT_CAPACITY, new DeadEventBuffer().getCapacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void not_accept_non_positive_capacity() {
+        new DeadEventBuffer(0);
+    }
+
+    @Test
+    public void be_empty_initially() {
+        final DeadEventBuffer buffer = new DeadEventBuffer();
+
+        assertEquals(0, buffer.getTotalCount());
+        assertEquals(0, buffer.getCount(EventClass.of(ProjectCreated.class)));
+        assertTrue(buffer.getCounts()
+                         .isEmpty());
+        assertTrue(buffer.getRecent()
+                         .isEmpty());
+    }
+
+    @Test
+    public void count_dead_events_by_class() {
+        final DeadEventBuffer buffer = new DeadEventBuffer();
+
+        buffer.onDeadEvent(Given.Event.projectCreated());
+        buffer.onDeadEvent(Given.Event.projectCreated());
+        buffer.onDeadEvent(Given.Event.projectStarted());
+
+        final EventClass created = EventClass.of(ProjectCreated.class);
+        final EventClass started = EventClass.of(ProjectStarted.class);
+        assertEquals(2, buffer.getCount(created));
+        assertEquals(1, buffer.getCount(started));
+        assertEquals(3, buffer.getTotalCount());
+        assertEquals(ImmutableMap.of(created, 2L, started, 1L), buffer.getCounts());
+    }
+
+    @Test
+    public void keep_most_recent_events_in_order() {
+        final DeadEventBuffer buffer = new DeadEventBuffer(2);
+        final Event first = Given.Event.projectCreated();
+        final Event second = Given.Event.projectStarted();
+        final Event third = Given.Event.projectCreated(Given.AggregateId.newProjectId());
+
+        buffer.onDeadEvent(first);
+        assertEquals(ImmutableList.of(first), buffer.getRecent());
+
+        buffer.onDeadEvent(second);
+        buffer.onDeadEvent(third);
+        assertEquals(ImmutableList.of(second, third), buffer.getRecent());
+        assertEquals(3, buffer.getTotalCount());
+    }
+}
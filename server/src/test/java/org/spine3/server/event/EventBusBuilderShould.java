@@ -24,6 +24,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.spine3.base.Event;
 import org.spine3.server.event.enrich.EventEnricher;
+import org.spine3.server.event.metrics.EventMetrics;
+import org.spine3.server.event.metrics.NoOpEventMetrics;
 import org.spine3.server.storage.StorageFactory;
 import org.spine3.server.storage.memory.InMemoryStorageFactory;
 import org.spine3.server.validate.MessageValidator;
@@ -35,7 +37,10 @@ import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 
@@ -145,10 +150,13 @@ public class EventBusBuilderShould {
 
     @Test
     public void set_direct_SubscriberEventDelivery_if_not_set_explicitly() {
-        assertEquals(SubscriberEventDelivery.directDelivery(), EventBus.newBuilder()
-                                                                       .setStorageFactory(storageFactory)
-                                                                       .build()
-                                                                       .getSubscriberEventDelivery());
+        final SubscriberEventDelivery actualValue = EventBus.newBuilder()
+                                                            .setStorageFactory(storageFactory)
+                                                            .build()
+                                                            .getSubscriberEventDelivery();
+        assertNotNull(actualValue);
+        assertEquals(SubscriberEventDelivery.directDelivery()
+                                            .getClass(), actualValue.getClass());
     }
 
     @Test
@@ -157,7 +165,22 @@ public class EventBusBuilderShould {
                                                             .setStorageFactory(storageFactory)
                                                             .build()
                                                             .getDispatcherEventDelivery();
-        assertEquals(DispatcherEventDelivery.directDelivery(), actualValue);
+        assertNotNull(actualValue);
+        assertEquals(DispatcherEventDelivery.directDelivery()
+                                            .getClass(), actualValue.getClass());
+    }
+
+    @Test
+    public void not_share_default_deliveries_between_buses() {
+        final EventBus first = EventBus.newBuilder()
+                                       .setStorageFactory(storageFactory)
+                                       .build();
+        final EventBus second = EventBus.newBuilder()
+                                        .setStorageFactory(storageFactory)
+                                        .build();
+
+        assertNotSame(first.getSubscriberEventDelivery(), second.getSubscriberEventDelivery());
+        assertNotSame(first.getDispatcherEventDelivery(), second.getDispatcherEventDelivery());
     }
 
     @Test
@@ -187,6 +210,102 @@ public class EventBusBuilderShould {
                                        .get());
     }
 
+    @Test
+    public void return_set_posting_partition_count() {
+        final int count = 4;
+        assertEquals(count, EventBus.newBuilder()
+                                    .setPostingPartitionCount(count)
+                                    .getPostingPartitionCount()
+                                    .get()
+                                    .intValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void do_not_accept_zero_posting_partition_count() {
+        EventBus.newBuilder()
+                .setPostingPartitionCount(0);
+    }
+
+    @Test
+    public void return_set_posting_queue_capacity() {
+        final int capacity = 10;
+        assertEquals(capacity, EventBus.newBuilder()
+                                       .setPostingQueueCapacity(capacity)
+                                       .getPostingQueueCapacity()
+                                       .get()
+                                       .intValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void do_not_accept_negative_posting_queue_capacity() {
+        EventBus.newBuilder()
+                .setPostingQueueCapacity(-1);
+    }
+
+    @Test
+    public void deliver_events_synchronously_by_default() {
+        assertNull(EventBus.newBuilder()
+                           .setStorageFactory(storageFactory)
+                           .build()
+                           .getPostingExecutor());
+    }
+
+    @Test
+    public void return_set_dead_event_sink() {
+        final DeadEventSink sink = mock(DeadEventSink.class);
+        assertEquals(sink, EventBus.newBuilder()
+                                   .setDeadEventSink(sink)
+                                   .getDeadEventSink()
+                                   .get());
+    }
+
+    @Test
+    public void return_set_unconsumed_event_policy() {
+        assertEquals(UnconsumedEventPolicy.DROP, EventBus.newBuilder()
+                                                         .setUnconsumedEventPolicy(UnconsumedEventPolicy.DROP)
+                                                         .getUnconsumedEventPolicy()
+                                                         .get());
+    }
+
+    @Test
+    public void use_dead_event_buffer_by_default() {
+        final DeadEventSink sink = EventBus.newBuilder()
+                                           .setStorageFactory(storageFactory)
+                                           .build()
+                                           .getDeadEventSink();
+        assertTrue(sink instanceof DeadEventBuffer);
+    }
+
+    @Test
+    public void return_set_metrics() {
+        final EventMetrics metrics = mock(EventMetrics.class);
+        assertEquals(metrics, EventBus.newBuilder()
+                                      .setMetrics(metrics)
+                                      .getMetrics()
+                                      .get());
+    }
+
+    @Test
+    public void use_no_op_metrics_by_default() {
+        final EventMetrics metrics = EventBus.newBuilder()
+                                             .setStorageFactory(storageFactory)
+                                             .build()
+                                             .getMetrics();
+        assertSame(NoOpEventMetrics.getInstance(), metrics);
+    }
+
+    @Test
+    public void create_posting_executor_if_posting_partition_count_set() throws Exception {
+        final int count = 3;
+        final EventBus eventBus = EventBus.newBuilder()
+                                          .setStorageFactory(storageFactory)
+                                          .setPostingPartitionCount(count)
+                                          .build();
+        assertEquals(count, eventBus.getPostingExecutor()
+                                    .getPartitionCount());
+        eventBus.close();
+    }
+
     @Test(expected = IllegalStateException.class)
     public void not_accept_StorageFactory_if_EventStore_already_specified() {
         final EventBus.Builder builder = EventBus.newBuilder()
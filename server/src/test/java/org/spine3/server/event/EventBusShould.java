@@ -22,11 +22,13 @@ package org.spine3.server.event;
 
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.protobuf.Message;
 import io.grpc.stub.StreamObserver;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentMatchers;
 import org.spine3.base.Event;
 import org.spine3.base.EventContext;
 import org.spine3.base.Events;
@@ -35,6 +37,7 @@ import org.spine3.base.Responses;
 import org.spine3.server.event.enrich.EventEnricher;
 import org.spine3.server.event.error.InvalidEventException;
 import org.spine3.server.event.error.UnsupportedEventException;
+import org.spine3.server.event.metrics.EventMetrics;
 import org.spine3.server.storage.StorageFactory;
 import org.spine3.server.storage.memory.InMemoryStorageFactory;
 import org.spine3.server.type.EventClass;
@@ -46,18 +49,26 @@ import org.spine3.validate.ConstraintViolation;
 
 import javax.annotation.Nullable;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.util.concurrent.Uninterruptibles.awaitUninterruptibly;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.doReturn;
@@ -199,6 +210,153 @@ public class EventBusShould {
         assertEquals(event, subscriber.getEventHandled());
     }
 
+    @Test
+    public void deliver_batch_of_events_in_order() {
+        final CountingDispatcher dispatcher = new CountingDispatcher();
+        eventBus.register(dispatcher);
+        final ProjectId projectId = Given.AggregateId.newProjectId();
+        final List<Event> events = newArrayList(Given.Event.projectCreated(projectId),
+                                                Given.Event.projectCreated(projectId),
+                                                Given.Event.projectCreated(projectId));
+
+        eventBus.post(events);
+
+        assertEquals(events, dispatcher.getDispatched());
+    }
+
+    @Test
+    public void report_event_processing_to_metrics() {
+        final EventMetrics metrics = mock(EventMetrics.class);
+        final EventBus eventBus = EventBus.newBuilder()
+                                          .setStorageFactory(storageFactory)
+                                          .setMetrics(metrics)
+                                          .build();
+        eventBus.subscribe(new ProjectCreatedSubscriber());
+        final EventClass eventClass = EventClass.of(ProjectCreated.class);
+
+        eventBus.post(Given.Event.projectCreated());
+
+        verify(metrics).onPosted(eventClass);
+        verify(metrics).onStored(eq(1), anyLong());
+        verify(metrics).onDelivered(eq(eventClass), anyLong());
+        verify(metrics).onHandled(eq(ProjectCreatedSubscriber.class), anyLong());
+        verify(metrics, never()).onEnriched(any(EventClass.class), anyLong());
+    }
+
+    @Test
+    public void report_handling_to_own_metrics_if_another_bus_is_built() {
+        final EventMetrics metrics = mock(EventMetrics.class);
+        final EventBus eventBus = EventBus.newBuilder()
+                                          .setStorageFactory(storageFactory)
+                                          .setMetrics(metrics)
+                                          .build();
+        eventBus.subscribe(new ProjectCreatedSubscriber());
+        EventBus.newBuilder()
+                .setStorageFactory(storageFactory)
+                .build();
+
+        eventBus.post(Given.Event.projectCreated());
+
+        verify(metrics).onHandled(eq(ProjectCreatedSubscriber.class), anyLong());
+    }
+
+    @Test
+    public void report_storing_of_batch_to_metrics() {
+        final EventMetrics metrics = mock(EventMetrics.class);
+        final EventBus eventBus = EventBus.newBuilder()
+                                          .setStorageFactory(storageFactory)
+                                          .setMetrics(metrics)
+                                          .build();
+        eventBus.register(new CountingDispatcher());
+
+        eventBus.post(newArrayList(Given.Event.projectCreated(), Given.Event.projectCreated()));
+
+        verify(metrics).onStored(eq(2), anyLong());
+    }
+
+    @Test
+    public void report_posting_queue_depth_to_metrics_in_async_mode() throws Exception {
+        final EventMetrics metrics = mock(EventMetrics.class);
+        final EventBus asyncBus = EventBus.newBuilder()
+                                          .setStorageFactory(storageFactory)
+                                          .setPostingPartitionCount(1)
+                                          .setMetrics(metrics)
+                                          .build();
+        asyncBus.register(new CountingDispatcher());
+
+        asyncBus.post(Given.Event.projectCreated());
+        asyncBus.close();
+
+        verify(metrics).onQueueDepth(eq("EventBus-posting"), anyLong());
+    }
+
+    @Test
+    public void store_batch_of_events_at_once() {
+        final EventStore eventStore = mock(EventStore.class);
+        final EventBus eventBus = EventBus.newBuilder()
+                                          .setEventStore(eventStore)
+                                          .build();
+        final List<Event> events = newArrayList(Given.Event.projectCreated(), Given.Event.projectStarted());
+
+        eventBus.post(events);
+
+        verify(eventStore).appendAll(events);
+        verify(eventStore, never()).append(any(Event.class));
+    }
+
+    @Test
+    public void do_nothing_on_posting_empty_batch() {
+        final EventStore eventStore = mock(EventStore.class);
+        final EventBus eventBus = EventBus.newBuilder()
+                                          .setEventStore(eventStore)
+                                          .build();
+
+        eventBus.post(Collections.<Event>emptyList());
+
+        verify(eventStore, never()).appendAll(ArgumentMatchers.<Iterable<Event>>any());
+    }
+
+    @Test
+    public void deliver_all_posted_events_before_close_in_async_mode() throws Exception {
+        final EventBus asyncBus = EventBus.newBuilder()
+                                          .setStorageFactory(storageFactory)
+                                          .setPostingPartitionCount(2)
+                                          .setPostingQueueCapacity(1)
+                                          .build();
+        final CountingDispatcher dispatcher = new CountingDispatcher();
+        asyncBus.register(dispatcher);
+        final int eventCount = 20;
+        for (int i = 0; i < eventCount; i++) {
+            asyncBus.post(Given.Event.projectCreated(Given.AggregateId.newProjectId()));
+        }
+
+        asyncBus.close();
+
+        assertEquals(eventCount, dispatcher.getDispatched()
+                                           .size());
+    }
+
+    @Test
+    public void keep_order_of_events_of_one_producer_in_async_mode() throws Exception {
+        final EventBus asyncBus = EventBus.newBuilder()
+                                          .setStorageFactory(storageFactory)
+                                          .setPostingPartitionCount(4)
+                                          .build();
+        final CountingDispatcher dispatcher = new CountingDispatcher();
+        asyncBus.register(dispatcher);
+        final ProjectId projectId = Given.AggregateId.newProjectId();
+        final List<Event> posted = newArrayList();
+        for (int i = 0; i < 10; i++) {
+            final Event event = Given.Event.projectCreated(projectId);
+            posted.add(event);
+            asyncBus.post(event);
+        }
+
+        asyncBus.close();
+
+        assertEquals(posted, dispatcher.getDispatched());
+    }
+
     @Test
     public void register_dispatchers() {
         final EventDispatcher dispatcher = new BareDispatcher();
@@ -281,6 +439,60 @@ public class EventBusShould {
         verify(delegateSubscriberExecutor).execute(any(Runnable.class));
     }
 
+    @Test
+    public void pass_event_without_consumers_to_dead_event_sink() {
+        final DeadEventSink sink = mock(DeadEventSink.class);
+        final EventBus eventBus = EventBus.newBuilder()
+                                          .setStorageFactory(storageFactory)
+                                          .setDeadEventSink(sink)
+                                          .build();
+        final Event event = Given.Event.projectCreated();
+
+        eventBus.post(event);
+
+        verify(sink).onDeadEvent(event);
+    }
+
+    @Test
+    public void not_pass_delivered_event_to_dead_event_sink() {
+        final DeadEventSink sink = mock(DeadEventSink.class);
+        final EventBus eventBus = EventBus.newBuilder()
+                                          .setStorageFactory(storageFactory)
+                                          .setDeadEventSink(sink)
+                                          .build();
+        eventBus.register(new BareDispatcher());
+
+        eventBus.post(Given.Event.projectCreated());
+
+        verify(sink, never()).onDeadEvent(any(Event.class));
+    }
+
+    @Test
+    public void register_dispatchers_concurrently() throws InterruptedException {
+        final int threadCount = 8;
+        final int dispatchersPerThread = 50;
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        final CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < threadCount; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    awaitUninterruptibly(start);
+                    for (int j = 0; j < dispatchersPerThread; j++) {
+                        eventBus.register(new BareDispatcher());
+                    }
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        final EventClass eventClass = EventClass.of(ProjectCreated.class);
+        assertEquals(threadCount * dispatchersPerThread, eventBus.getDispatchers(eventClass)
+                                                                 .size());
+    }
+
     @Test
     public void unregister_dispatchers() {
         final EventDispatcher dispatcherOne = new BareDispatcher();
@@ -414,6 +626,76 @@ public class EventBusShould {
         verify(enricher, never()).enrich(any(Event.class));
     }
 
+    @Test
+    public void not_enrich_event_without_consumers() {
+        final EventEnricher enricher = mock(EventEnricher.class);
+        doReturn(true).when(enricher)
+                      .canBeEnriched(any(Event.class));
+        setUp(enricher);
+
+        eventBus.post(Given.Event.projectCreated());
+
+        verify(enricher, never()).enrich(any(Event.class));
+    }
+
+    @Test
+    public void store_event_without_consumers_by_default() {
+        final EventStore eventStore = mock(EventStore.class);
+        final EventBus eventBus = EventBus.newBuilder()
+                                          .setEventStore(eventStore)
+                                          .build();
+        final Event event = Given.Event.projectCreated();
+
+        eventBus.post(event);
+
+        verify(eventStore).append(event);
+    }
+
+    @Test
+    public void drop_events_without_consumers_if_configured() {
+        final EventStore eventStore = mock(EventStore.class);
+        final DeadEventSink sink = mock(DeadEventSink.class);
+        final EventBus eventBus = EventBus.newBuilder()
+                                          .setEventStore(eventStore)
+                                          .setDeadEventSink(sink)
+                                          .setUnconsumedEventPolicy(UnconsumedEventPolicy.DROP)
+                                          .build();
+        final Event event = Given.Event.projectCreated();
+
+        eventBus.post(event);
+
+        verify(eventStore, never()).append(any(Event.class));
+        verify(sink).onDeadEvent(event);
+    }
+
+    @Test
+    public void store_only_consumed_events_of_batch_if_dropping_unconsumed() {
+        final EventStore eventStore = mock(EventStore.class);
+        final EventBus eventBus = EventBus.newBuilder()
+                                          .setEventStore(eventStore)
+                                          .setUnconsumedEventPolicy(UnconsumedEventPolicy.DROP)
+                                          .build();
+        eventBus.register(new BareDispatcher());
+        final Event consumed = Given.Event.projectCreated();
+        final Event unconsumed = Given.Event.projectStarted();
+
+        eventBus.post(newArrayList(consumed, unconsumed));
+
+        verify(eventStore).appendAll(newArrayList(consumed));
+    }
+
+    @Test
+    public void route_event_to_consumers_registered_later() {
+        final CountingDispatcher dispatcher = new CountingDispatcher();
+        final Event event = Given.Event.projectCreated();
+        eventBus.post(event);
+
+        eventBus.register(dispatcher);
+        eventBus.post(event);
+
+        assertEquals(newArrayList(event), dispatcher.getDispatched());
+    }
+
     @Test
     public void allow_enrichment_configuration_at_runtime_if_enricher_not_set_previously() {
         setUp(null);
@@ -538,6 +820,26 @@ public class EventBusShould {
         }
     }
 
+    /** A dispatcher which remembers the dispatched events. */
+    private static class CountingDispatcher implements EventDispatcher {
+
+        private final List<Event> dispatched = Collections.synchronizedList(Lists.<Event>newArrayList());
+
+        @Override
+        public Set<EventClass> getEventClasses() {
+            return ImmutableSet.of(EventClass.of(ProjectCreated.class));
+        }
+
+        @Override
+        public void dispatch(Event event) {
+            dispatched.add(event);
+        }
+
+        List<Event> getDispatched() {
+            return dispatched;
+        }
+    }
+
     private static class TestResponseObserver implements StreamObserver<Response> {
 
         private Response response;
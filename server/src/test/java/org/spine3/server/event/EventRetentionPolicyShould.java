@@ -0,0 +1,141 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.event;
+
+import com.google.common.base.Predicate;
+import com.google.protobuf.Timestamp;
+import org.junit.Test;
+import org.spine3.server.event.storage.EventStorageRecord;
+import org.spine3.server.storage.Given;
+import org.spine3.test.storage.event.ProjectCreated;
+
+import javax.annotation.Nullable;
+
+import static com.google.protobuf.util.Timestamps.subtract;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.spine3.protobuf.Durations.hours;
+import static org.spine3.protobuf.Durations.seconds;
+import static org.spine3.protobuf.Timestamps.getCurrentTime;
+
+@SuppressWarnings("InstanceMethodNamingConvention")
+public class EventRetentionPolicyShould {
+
+    @Test
+    public void expire_events_older_than_retention_period_of_their_class() {
+        final Timestamp now = getCurrentTime();
+        final EventRetentionPolicy policy = EventRetentionPolicy.newBuilder()
+                                                                .setRetention(ProjectCreated.class, hours(24))
+                                                                .build();
+
+        final Predicate<EventStorageRecord> expired = policy.expiredAt(now);
+
+        assertTrue(expired.apply(Given.EventStorageRecord.projectCreated(subtract(now, hours(25)))));
+        assertFalse(expired.apply(Given.EventStorageRecord.projectCreated(subtract(now, hours(23)))));
+    }
+
+    @Test
+    public void keep_events_of_other_classes() {
+        final Timestamp now = getCurrentTime();
+        final EventRetentionPolicy policy = EventRetentionPolicy.newBuilder()
+                                                                .setRetention(ProjectCreated.class, hours(24))
+                                                                .build();
+
+        final Predicate<EventStorageRecord> expired = policy.expiredAt(now);
+
+        assertFalse(expired.apply(Given.EventStorageRecord.taskAdded(subtract(now, hours(25)))));
+    }
+
+    @Test
+    public void expire_events_before_snapshot_of_their_aggregate() {
+        final Timestamp now = getCurrentTime();
+        final EventStorageRecord beforeSnapshot = Given.EventStorageRecord.taskAdded(subtract(now, seconds(10)));
+        final EventStorageRecord afterSnapshot = beforeSnapshot.toBuilder()
+                                                               .setTimestamp(now)
+                                                               .build();
+        final EventStorageRecord ofAnotherProducer = Given.EventStorageRecord.taskAdded(subtract(now, seconds(10)));
+        final EventRetentionPolicy policy =
+                EventRetentionPolicy.newBuilder()
+                                    .setSnapshotHorizon(new FixedHorizon(beforeSnapshot,
+                                                                         subtract(now, seconds(5))))
+                                    .build();
+
+        final Predicate<EventStorageRecord> expired = policy.expiredAt(now);
+
+        assertTrue(expired.apply(beforeSnapshot));
+        assertFalse(expired.apply(afterSnapshot));
+        assertFalse(expired.apply(ofAnotherProducer));
+    }
+
+    @Test
+    public void not_expire_events_of_another_aggregate_type_with_equal_id() {
+        final Timestamp now = getCurrentTime();
+        final EventStorageRecord ofSnapshotAggregate = Given.EventStorageRecord.taskAdded(subtract(now, seconds(10)));
+        final EventStorageRecord ofAnotherAggregate =
+                Given.EventStorageRecord.projectCreated(subtract(now, seconds(10)))
+                                        .toBuilder()
+                                        .setProducerId(ofSnapshotAggregate.getProducerId())
+                                        .build();
+        final EventRetentionPolicy policy =
+                EventRetentionPolicy.newBuilder()
+                                    .setSnapshotHorizon(new FixedHorizon(ofSnapshotAggregate,
+                                                                         subtract(now, seconds(5))))
+                                    .build();
+
+        final Predicate<EventStorageRecord> expired = policy.expiredAt(now);
+
+        assertTrue(expired.apply(ofSnapshotAggregate));
+        assertFalse(expired.apply(ofAnotherAggregate));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void not_accept_non_positive_retention_period() {
+        EventRetentionPolicy.newBuilder()
+                            .setRetention(ProjectCreated.class, seconds(0));
+    }
+
+    /**
+     * The horizon, which has the snapshot of a single aggregate.
+     *
+     * <p>The type of the aggregate is told by the type of its events.
+     */
+    private static class FixedHorizon implements SnapshotHorizon {
+
+        private final String eventType;
+        private final String producerId;
+        private final Timestamp snapshotTime;
+
+        private FixedHorizon(EventStorageRecord ofAggregate, Timestamp snapshotTime) {
+            this.eventType = ofAggregate.getEventType();
+            this.producerId = ofAggregate.getProducerId();
+            this.snapshotTime = snapshotTime;
+        }
+
+        @Nullable
+        @Override
+        public Timestamp getSnapshotTime(EventStorageRecord record) {
+            final boolean ofAggregate = eventType.equals(record.getEventType())
+                                        && producerId.equals(record.getProducerId());
+            return ofAggregate
+                   ? snapshotTime
+                   : null;
+        }
+    }
+}
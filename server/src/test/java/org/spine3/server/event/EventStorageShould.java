@@ -28,6 +28,7 @@ import com.google.protobuf.Timestamp;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.spine3.base.CommandContext;
 import org.spine3.base.Event;
 import org.spine3.base.EventContext;
 import org.spine3.base.EventId;
@@ -51,6 +52,7 @@ import static com.google.protobuf.util.Timestamps.add;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.spine3.base.Events.generateId;
@@ -60,6 +62,7 @@ import static org.spine3.protobuf.Durations.seconds;
 import static org.spine3.protobuf.Timestamps.getCurrentTime;
 import static org.spine3.server.event.EventStorage.toEvent;
 import static org.spine3.server.event.EventStorage.toEventList;
+import static org.spine3.testdata.TestCommandContextFactory.createCommandContext;
 
 @SuppressWarnings({"InstanceMethodNamingConvention", "ClassWithTooManyMethods"})
 public abstract class EventStorageShould extends AbstractStorageShould<EventId, Event> {
@@ -140,6 +143,86 @@ public abstract class EventStorageShould extends AbstractStorageShould<EventId,
         assertStorageContainsOnly(expected);
     }
 
+    @Test
+    public void read_events_in_chronological_order_regardless_of_order_of_writing() {
+        final Timestamp time = getCurrentTime();
+        final EventStorageRecord first = org.spine3.server.storage.Given.EventStorageRecord.projectCreated(time);
+        final EventStorageRecord second =
+                org.spine3.server.storage.Given.EventStorageRecord.taskAdded(add(time, seconds(POSITIVE_DELTA)));
+        final EventStorageRecord third =
+                org.spine3.server.storage.Given.EventStorageRecord.projectStarted(add(time, seconds(2 * POSITIVE_DELTA)));
+
+        writeAll(third, first, second);
+
+        assertStorageContainsOnly(toEventList(first, second, third));
+    }
+
+    @Test
+    public void read_events_with_same_timestamp_in_order_of_writing() {
+        final Timestamp time = getCurrentTime();
+        final EventStorageRecord first = org.spine3.server.storage.Given.EventStorageRecord.projectStarted(time);
+        final EventStorageRecord second = org.spine3.server.storage.Given.EventStorageRecord.projectCreated(time);
+        final EventStorageRecord third = org.spine3.server.storage.Given.EventStorageRecord.taskAdded(time);
+
+        writeAll(first, second, third);
+
+        assertStorageContainsOnly(toEventList(first, second, third));
+    }
+
+    @Test
+    public void write_batch_of_events() {
+        final Timestamp time = getCurrentTime();
+        final Event first = toEvent(org.spine3.server.storage.Given.EventStorageRecord.projectCreated(time));
+        final Event second = toEvent(org.spine3.server.storage.Given.EventStorageRecord.taskAdded(time));
+        final Event third =
+                toEvent(org.spine3.server.storage.Given.EventStorageRecord.projectStarted(add(time, seconds(POSITIVE_DELTA))));
+        final List<Event> batch = ImmutableList.of(third, first, second);
+
+        storage.writeAll(batch);
+
+        assertStorageContainsOnly(ImmutableList.of(first, second, third));
+        final EventId id = second.getContext()
+                                 .getEventId();
+        assertEquals(second, storage.read(id));
+    }
+
+    @Test
+    public void not_write_any_event_of_batch_with_invalid_event() {
+        final Event valid = toEvent(org.spine3.server.storage.Given.EventStorageRecord.projectCreated());
+        final Event invalid = valid.toBuilder()
+                                   .setContext(valid.getContext()
+                                                    .toBuilder()
+                                                    .clearTimestamp())
+                                   .build();
+        try {
+            storage.writeAll(ImmutableList.of(valid, invalid));
+            fail("The batch with an invalid event must not be written.");
+        } catch (IllegalArgumentException ignored) {
+            // Expected.
+        }
+
+        assertFalse(findAll().hasNext());
+    }
+
+    @Test
+    public void partition_query_by_time_without_losing_events() {
+        final Timestamp time = getCurrentTime();
+        final List<EventStorageRecord> records = newArrayList();
+        for (int i = 0; i < 20; i++) {
+            records.add(org.spine3.server.storage.Given.EventStorageRecord.projectCreated(add(time, seconds(i))));
+        }
+        writeAll(records.toArray(new EventStorageRecord[records.size()]));
+        final EventStreamQuery query = EventStreamQuery.getDefaultInstance();
+
+        final List<EventStreamQuery> partitions = storage.partitionByTime(query, 4);
+
+        final List<Event> events = newArrayList();
+        for (EventStreamQuery partition : partitions) {
+            events.addAll(newArrayList(storage.iterator(partition)));
+        }
+        assertEquals(newArrayList(storage.iterator(query)), events);
+    }
+
     @Test
     public void return_iterator_pointed_to_first_element_if_read_all_events_several_times() {
         givenSequentialRecords();
@@ -168,6 +251,58 @@ public abstract class EventStorageShould extends AbstractStorageShould<EventId,
         assertEquals(expected, actual);
     }
 
+    @Test
+    public void filter_events_by_type_given_as_type_url() {
+        givenSequentialRecords();
+        final String typeUrl = TypeUrl.of(record2.getEventType())
+                                      .value();
+        final EventFilter filter = EventFilter.newBuilder()
+                                              .setEventType(typeUrl)
+                                              .build();
+        final EventStreamQuery query = EventStreamQuery.newBuilder()
+                                                       .addFilter(filter)
+                                                       .build();
+
+        final List<Event> actual = newArrayList(storage.iterator(query));
+
+        assertEquals(toEventList(record2), actual);
+    }
+
+    @Test
+    public void return_event_matching_several_filters_once_in_chronological_order() {
+        givenSequentialRecords();
+        final EventFilter byFirstType = EventFilter.newBuilder()
+                                                   .setEventType(record1.getEventType())
+                                                   .build();
+        final EventFilter byThirdType = EventFilter.newBuilder()
+                                                   .setEventType(record3.getEventType())
+                                                   .build();
+        final EventStreamQuery query = EventStreamQuery.newBuilder()
+                                                       .addFilter(byThirdType)
+                                                       .addFilter(byFirstType)
+                                                       .addFilter(newEventFilterFor(record1))
+                                                       .build();
+
+        final List<Event> actual = newArrayList(storage.iterator(query));
+
+        assertEquals(toEventList(record1, record3), actual);
+    }
+
+    @Test
+    public void find_nothing_by_type_which_was_never_stored() {
+        givenSequentialRecords();
+        final EventFilter filter = EventFilter.newBuilder()
+                                              .setEventType(TypeUrl.of(EventId.class)
+                                                                   .getTypeName())
+                                              .build();
+        final EventStreamQuery query = EventStreamQuery.newBuilder()
+                                                       .addFilter(filter)
+                                                       .build();
+
+        assertFalse(storage.iterator(query)
+                           .hasNext());
+    }
+
     @Test
     public void filter_events_by_aggregate_id() {
         givenSequentialRecords();
@@ -324,6 +459,41 @@ public abstract class EventStorageShould extends AbstractStorageShould<EventId,
         assertAreSame(ImmutableList.of(record1, record2, record3), events);
     }
 
+    @Test
+    public void share_equal_command_context_between_records() {
+        givenSequentialRecords();
+        final CommandContext commandContext = createCommandContext();
+        final EventStorageRecord record = withCommandContext(record1, commandContext.toBuilder()
+                                                                                   .build());
+
+        final EventStorageRecord shared = EventStorage.shareCommandContext(record, commandContext);
+
+        assertSame(commandContext, shared.getContext()
+                                         .getCommandContext());
+        assertEquals(record, shared);
+    }
+
+    @Test
+    public void not_share_different_command_context() {
+        givenSequentialRecords();
+        final EventStorageRecord record = withCommandContext(record1, createCommandContext());
+
+        final EventStorageRecord result = EventStorage.shareCommandContext(record, createCommandContext());
+
+        assertSame(record, result);
+    }
+
+    private static EventStorageRecord withCommandContext(EventStorageRecord record, CommandContext commandContext) {
+        final EventContext context = record.getContext()
+                                           .toBuilder()
+                                           .setCommandContext(commandContext)
+                                           .build();
+        final EventStorageRecord result = record.toBuilder()
+                                                .setContext(context)
+                                                .build();
+        return result;
+    }
+
     /*
      * Find events which happened AFTER a point in time tests.
      *************************************************************/
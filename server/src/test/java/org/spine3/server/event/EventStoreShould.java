@@ -0,0 +1,441 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.event;
+
+import com.google.common.collect.UnmodifiableIterator;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.Any;
+import com.google.protobuf.Timestamp;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.spine3.base.Event;
+import org.spine3.protobuf.AnyPacker;
+import org.spine3.server.storage.Given;
+import org.spine3.server.storage.memory.InMemoryStorageFactory;
+import org.spine3.test.storage.ProjectId;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.protobuf.util.Timestamps.add;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.spine3.protobuf.Durations.seconds;
+import static org.spine3.protobuf.Timestamps.getCurrentTime;
+import static org.spine3.testdata.TestEventContextFactory.createEventContext;
+
+@SuppressWarnings("InstanceMethodNamingConvention")
+public class EventStoreShould {
+
+    private static final ProjectId PROJECT_ID = ProjectId.newBuilder()
+                                                         .setId("event-store-test")
+                                                         .build();
+    private static final int EVENT_COUNT = 5;
+
+    private EventStore eventStore;
+    private List<Event> events;
+
+    @Before
+    public void setUp() {
+        eventStore = EventStore.newBuilder()
+                               .setStreamExecutor(MoreExecutors.directExecutor())
+                               .setStorage(InMemoryStorageFactory.getInstance()
+                                                                 .createEventStorage())
+                               .build();
+        events = newArrayList();
+        final Timestamp start = getCurrentTime();
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            final Timestamp time = add(start, seconds(i));
+            final Event event = Given.Event.projectCreated(PROJECT_ID, createEventContext(PROJECT_ID, time));
+            eventStore.append(event);
+            events.add(event);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        eventStore.close();
+    }
+
+    @Test
+    public void pass_all_events_to_observer() {
+        final MemoizingObserver observer = new MemoizingObserver();
+
+        eventStore.read(EventStreamQuery.getDefaultInstance(), observer);
+
+        assertEquals(events, observer.events);
+        assertTrue(observer.completed);
+    }
+
+    @Test
+    public void close_failed_event_stream_and_pass_error_to_observer() throws Exception {
+        final FailingIterator iterator = new FailingIterator(events.get(0));
+        final EventStore failingStore = new EventStore(MoreExecutors.directExecutor(), null) {
+            @Override
+            protected void store(Event event) {
+                // Do nothing.
+            }
+
+            @Override
+            protected Iterator<Event> iterator(EventStreamQuery query) {
+                return iterator;
+            }
+
+            @Override
+            public void close() {
+                // Do nothing.
+            }
+        };
+        final StreamObserver<Event> observer = newStreamObserver();
+
+        failingStore.read(EventStreamQuery.getDefaultInstance(), observer);
+
+        verify(observer).onNext(events.get(0));
+        verify(observer).onError(any(IllegalStateException.class));
+        verify(observer, never()).onCompleted();
+        assertTrue(iterator.closed);
+    }
+
+    @Test
+    public void pass_events_to_call_only_while_it_is_ready() {
+        final FlowControlledObserver observer = new FlowControlledObserver(2);
+
+        eventStore.read(EventStreamQuery.getDefaultInstance(), observer);
+
+        assertEquals(events.subList(0, 2), observer.events);
+        assertFalse(observer.completed);
+
+        observer.allowMore(2);
+        assertEquals(events.subList(0, 4), observer.events);
+        assertFalse(observer.completed);
+
+        observer.allowMore(EVENT_COUNT);
+        assertEquals(events, observer.events);
+        assertTrue(observer.completed);
+    }
+
+    @Test
+    public void stop_passing_events_to_cancelled_call() {
+        final FlowControlledObserver observer = new FlowControlledObserver(1);
+        eventStore.read(EventStreamQuery.getDefaultInstance(), observer);
+
+        observer.cancel();
+        observer.allowMore(EVENT_COUNT);
+
+        assertEquals(1, observer.events.size());
+        assertFalse(observer.completed);
+    }
+
+    @Test
+    public void resume_stream_after_last_received_event() {
+        final FlowControlledObserver interrupted = new FlowControlledObserver(2);
+        final EventStreamQuery query = EventStreamQuery.getDefaultInstance();
+        eventStore.read(query, interrupted);
+        interrupted.cancel();
+        final Event lastReceived = interrupted.events.get(interrupted.events.size() - 1);
+
+        final MemoizingObserver resumed = new MemoizingObserver();
+        eventStore.read(EventStreamCursors.resumeAfter(query, lastReceived), resumed);
+
+        assertEquals(events.subList(2, EVENT_COUNT), resumed.events);
+    }
+
+    @Test
+    public void read_events_in_parallel_in_chronological_order() throws Exception {
+        final EventStore parallelStore = newParallelStore();
+        final List<Event> expected = appendProjectEvents(parallelStore, 3, 20);
+        final MemoizingObserver observer = new MemoizingObserver();
+
+        parallelStore.read(EventStreamQuery.getDefaultInstance(), observer);
+
+        assertEquals(expected, observer.events);
+        assertTrue(observer.completed);
+        parallelStore.close();
+    }
+
+    @Test
+    public void resume_stream_read_in_parallel() throws Exception {
+        final EventStore parallelStore = newParallelStore();
+        final List<Event> expected = appendProjectEvents(parallelStore, 3, 20);
+        final EventStreamQuery query = EventStreamCursors.resumeAfter(EventStreamQuery.getDefaultInstance(),
+                                                                      expected.get(9));
+        final MemoizingObserver observer = new MemoizingObserver();
+
+        parallelStore.read(query, observer);
+
+        assertEquals(expected.subList(10, expected.size()), observer.events);
+        parallelStore.close();
+    }
+
+    @Test
+    public void read_events_of_each_producer_in_chronological_order() throws Exception {
+        final EventStore parallelStore = newParallelStore();
+        final int projectCount = 4;
+        final List<Event> stored = appendProjectEvents(parallelStore, projectCount, 20);
+        final EventStreamQuery query = perProducerQuery(projectCount);
+        final MemoizingObserver observer = new MemoizingObserver();
+
+        parallelStore.read(query, observer);
+
+        assertEquals(stored.size(), observer.events.size());
+        for (int i = 0; i < projectCount; i++) {
+            final Any producerId = AnyPacker.pack(projectId(i));
+            assertEquals(eventsOf(producerId, stored), eventsOf(producerId, observer.events));
+        }
+        parallelStore.close();
+    }
+
+    @Test
+    public void not_hold_read_threads_while_call_is_not_ready() throws Exception {
+        final EventStore parallelStore = newParallelStore();
+        final int projectCount = 12;
+        // More events than the readers of a query buffer in advance.
+        final List<Event> stored = appendProjectEvents(parallelStore, projectCount, 400);
+        final EventStreamQuery query = perProducerQuery(projectCount);
+        final FlowControlledObserver stalled = new FlowControlledObserver(1);
+        parallelStore.read(query, stalled);
+
+        final MemoizingObserver observer = new MemoizingObserver();
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final Future<?> reading = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                parallelStore.read(query, observer);
+            }
+        });
+
+        reading.get(10, TimeUnit.SECONDS);
+        assertEquals(stored.size(), observer.events.size());
+        assertTrue(observer.completed);
+        assertEquals(1, stalled.events.size());
+        stalled.cancel();
+        executor.shutdown();
+        parallelStore.close();
+    }
+
+    private static EventStreamQuery perProducerQuery(int projectCount) {
+        final EventFilter.Builder filter = EventFilter.newBuilder();
+        for (int i = 0; i < projectCount; i++) {
+            filter.addAggregateId(AnyPacker.pack(projectId(i)));
+        }
+        final EventStreamQuery result = EventStreamQuery.newBuilder()
+                                                        .addFilter(filter)
+                                                        .setOrder(EventStreamOrder.PER_PRODUCER)
+                                                        .build();
+        return result;
+    }
+
+    private static EventStore newParallelStore() {
+        return EventStore.newBuilder()
+                         .setStreamExecutor(MoreExecutors.directExecutor())
+                         .setStorage(InMemoryStorageFactory.getInstance()
+                                                           .createEventStorage())
+                         .setReadParallelism(3)
+                         .build();
+    }
+
+    /** Appends the events of the projects interleaved in time, and returns them in the chronological order. */
+    private static List<Event> appendProjectEvents(EventStore store, int projectCount, int eventsPerProject) {
+        final List<Event> result = newArrayList();
+        final Timestamp start = getCurrentTime();
+        for (int i = 0; i < eventsPerProject; i++) {
+            for (int project = 0; project < projectCount; project++) {
+                final Timestamp time = add(start, seconds(i * projectCount + project));
+                final ProjectId projectId = projectId(project);
+                final Event event = Given.Event.projectCreated(projectId, createEventContext(projectId, time));
+                store.append(event);
+                result.add(event);
+            }
+        }
+        return result;
+    }
+
+    private static ProjectId projectId(int number) {
+        return ProjectId.newBuilder()
+                        .setId("project-" + number)
+                        .build();
+    }
+
+    private static List<Event> eventsOf(Any producerId, List<Event> events) {
+        final List<Event> result = newArrayList();
+        for (Event event : events) {
+            if (event.getContext()
+                     .getProducerId()
+                     .equals(producerId)) {
+                result.add(event);
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")  // Mockito does not support generics.
+    private static StreamObserver<Event> newStreamObserver() {
+        return mock(StreamObserver.class);
+    }
+
+    /** The iterator, which returns a single event and fails afterwards. */
+    private static class FailingIterator extends UnmodifiableIterator<Event> implements AutoCloseable {
+
+        private final Event event;
+        private boolean returned = false;
+        private boolean closed = false;
+
+        private FailingIterator(Event event) {
+            this.event = event;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return true;
+        }
+
+        @Override
+        public Event next() {
+            if (returned) {
+                throw new IllegalStateException("Cannot read the next event.");
+            }
+            returned = true;
+            return event;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static class MemoizingObserver implements StreamObserver<Event> {
+
+        private final List<Event> events = newArrayList();
+        private boolean completed = false;
+
+        @Override
+        public void onNext(Event value) {
+            events.add(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            throw new IllegalStateException(t);
+        }
+
+        @Override
+        public void onCompleted() {
+            completed = true;
+        }
+    }
+
+    /**
+     * The observer of a call, which is ready to take a limited number of events.
+     */
+    private static class FlowControlledObserver extends ServerCallStreamObserver<Event> {
+
+        private final List<Event> events = newArrayList();
+        private boolean completed = false;
+        private int capacity;
+        private boolean cancelled = false;
+        private Runnable onReadyHandler;
+        private Runnable onCancelHandler;
+
+        private FlowControlledObserver(int capacity) {
+            this.capacity = capacity;
+        }
+
+        private void allowMore(int count) {
+            capacity += count;
+            onReadyHandler.run();
+        }
+
+        private void cancel() {
+            cancelled = true;
+            onCancelHandler.run();
+        }
+
+        @Override
+        public void onNext(Event value) {
+            assertTrue(isReady());
+            events.add(value);
+            capacity--;
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            throw new IllegalStateException(t);
+        }
+
+        @Override
+        public void onCompleted() {
+            completed = true;
+        }
+
+        @Override
+        public boolean isReady() {
+            return !cancelled && capacity > 0;
+        }
+
+        @Override
+        public void setOnReadyHandler(Runnable onReadyHandler) {
+            this.onReadyHandler = onReadyHandler;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public void setOnCancelHandler(Runnable onCancelHandler) {
+            this.onCancelHandler = onCancelHandler;
+        }
+
+        @Override
+        public void setCompression(String compression) {
+            // Not used in the tests.
+        }
+
+        @Override
+        public void disableAutoInboundFlowControl() {
+            // Not used in the tests.
+        }
+
+        @Override
+        public void request(int count) {
+            // Not used in the tests.
+        }
+
+        @Override
+        public void setMessageCompression(boolean enable) {
+            // Not used in the tests.
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.event;
+
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.Timestamp;
+import org.junit.Before;
+import org.junit.Test;
+import org.spine3.base.Event;
+import org.spine3.server.storage.Given;
+import org.spine3.server.storage.memory.InMemoryStorageFactory;
+import org.spine3.test.storage.ProjectId;
+
+import java.util.Iterator;
+import java.util.List;
+
+import static com.google.protobuf.util.Timestamps.add;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.spine3.protobuf.Durations.seconds;
+import static org.spine3.protobuf.Timestamps.getCurrentTime;
+import static org.spine3.test.Tests.hasPrivateParameterlessCtor;
+import static org.spine3.testdata.TestEventContextFactory.createEventContext;
+
+@SuppressWarnings("InstanceMethodNamingConvention")
+public class EventStreamCursorsShould {
+
+    private static final ProjectId PROJECT_ID = ProjectId.newBuilder()
+                                                         .setId("cursor-test")
+                                                         .build();
+
+    private EventStorage storage;
+    private EventStreamCursors.StorageQuery storageQuery;
+    private Timestamp start;
+
+    @Before
+    public void setUp() {
+        storage = InMemoryStorageFactory.getInstance()
+                                        .createEventStorage();
+        storageQuery = new EventStreamCursors.StorageQuery() {
+            @Override
+            public Iterator<Event> iterator(EventStreamQuery query) {
+                return storage.iterator(query);
+            }
+        };
+        start = getCurrentTime();
+    }
+
+    @Test
+    public void have_private_constructor() {
+        assertTrue(hasPrivateParameterlessCtor(EventStreamCursors.class));
+    }
+
+    @Test
+    public void point_at_event() {
+        final Event event = store(start);
+
+        final EventStreamCursor cursor = EventStreamCursors.cursorOf(event);
+
+        assertEquals(event.getContext()
+                          .getEventId(), cursor.getEventId());
+        assertEquals(start, cursor.getTimestamp());
+    }
+
+    @Test
+    public void resume_stream_after_event() {
+        final Event first = store(start);
+        final Event second = store(add(start, seconds(1)));
+        final Event third = store(add(start, seconds(2)));
+        final EventStreamQuery query = EventStreamQuery.getDefaultInstance();
+
+        final EventStreamQuery resumed = EventStreamCursors.resumeAfter(query, first);
+
+        assertEquals(ImmutableList.of(second, third), read(resumed));
+    }
+
+    @Test
+    public void resume_stream_among_events_with_same_time() {
+        final Event first = store(start);
+        final Event second = store(start);
+        final Event third = store(start);
+        final Event fourth = store(add(start, seconds(1)));
+        final EventStreamQuery query = EventStreamQuery.getDefaultInstance();
+
+        assertEquals(ImmutableList.of(first, second, third, fourth), read(query));
+        final EventStreamQuery resumed = EventStreamCursors.resumeAfter(query, second);
+
+        assertEquals(ImmutableList.of(third, fourth), read(resumed));
+    }
+
+    @Test
+    public void not_skip_events_with_same_time_if_cursor_event_not_found() {
+        final Event missing = Given.Event.projectCreated(PROJECT_ID, createEventContext(PROJECT_ID, start));
+        final Event stored = store(start);
+        final EventStreamQuery query = EventStreamQuery.getDefaultInstance();
+
+        final EventStreamQuery resumed = EventStreamCursors.resumeAfter(query, missing);
+
+        assertEquals(ImmutableList.of(stored), read(resumed));
+    }
+
+    @Test
+    public void ignore_cursor_preceding_start_of_stream() {
+        final Event first = store(start);
+        final Event second = store(add(start, seconds(2)));
+        final EventStreamQuery query = EventStreamQuery.newBuilder()
+                                                       .setAfter(add(start, seconds(1)))
+                                                       .build();
+
+        final EventStreamQuery resumed = EventStreamCursors.resumeAfter(query, first);
+
+        assertEquals(ImmutableList.of(second), read(resumed));
+    }
+
+    @Test
+    public void return_no_events_if_cursor_follows_end_of_stream() {
+        store(start);
+        final Event last = store(add(start, seconds(2)));
+        final EventStreamQuery query = EventStreamQuery.newBuilder()
+                                                       .setBefore(add(start, seconds(1)))
+                                                       .build();
+
+        final EventStreamQuery resumed = EventStreamCursors.resumeAfter(query, last);
+
+        assertTrue(read(resumed).isEmpty());
+    }
+
+    private Event store(Timestamp time) {
+        final Event event = Given.Event.projectCreated(PROJECT_ID, createEventContext(PROJECT_ID, time));
+        storage.write(event.getContext()
+                           .getEventId(), event);
+        return event;
+    }
+
+    private List<Event> read(EventStreamQuery query) {
+        return ImmutableList.copyOf(EventStreamCursors.eventsAfterCursor(query, storageQuery));
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.event;
+
+import com.google.protobuf.Any;
+import org.junit.Test;
+import org.spine3.base.Event;
+import org.spine3.base.FieldFilter;
+import org.spine3.protobuf.AnyPacker;
+import org.spine3.protobuf.TypeUrl;
+import org.spine3.test.event.ProjectCreated;
+import org.spine3.test.event.ProjectId;
+import org.spine3.test.event.ProjectStarted;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("InstanceMethodNamingConvention")
+public class MatchFilterShould {
+
+    @Test
+    public void match_event_type_by_type_name() {
+        final MatchFilter filter = new MatchFilter(EventFilter.newBuilder()
+                                                              .setEventType(typeNameOf(ProjectCreated.class))
+                                                              .build());
+
+        assertTrue(filter.apply(Given.Event.projectCreated()));
+        assertFalse(filter.apply(Given.Event.projectStarted()));
+    }
+
+    @Test
+    public void match_event_type_by_type_url() {
+        final String typeUrl = TypeUrl.of(ProjectCreated.class)
+                                      .value();
+        final MatchFilter filter = new MatchFilter(EventFilter.newBuilder()
+                                                              .setEventType(typeUrl)
+                                                              .build());
+
+        assertTrue(filter.apply(Given.Event.projectCreated()));
+    }
+
+    @Test
+    public void not_match_type_with_same_name_suffix() {
+        final Event event = Given.Event.projectCreated();
+        final String typeName = typeNameOf(ProjectCreated.class);
+        final Any message = event.getMessage()
+                                 .toBuilder()
+                                 .setTypeUrl("type.example.org/Not" + typeName)
+                                 .build();
+        final Event otherTypeEvent = event.toBuilder()
+                                          .setMessage(message)
+                                          .build();
+        final MatchFilter filter = new MatchFilter(EventFilter.newBuilder()
+                                                              .setEventType(typeName)
+                                                              .build());
+
+        assertFalse(filter.apply(otherTypeEvent));
+    }
+
+    @Test
+    public void match_aggregate_ids() {
+        final ProjectId projectId = Given.AggregateId.newProjectId();
+        final MatchFilter filter = new MatchFilter(EventFilter.newBuilder()
+                                                              .addAggregateId(AnyPacker.pack(projectId))
+                                                              .build());
+
+        assertTrue(filter.apply(Given.Event.projectCreated(projectId)));
+        assertFalse(filter.apply(Given.Event.projectCreated(Given.AggregateId.newProjectId())));
+    }
+
+    @Test
+    public void match_event_field_in_java_and_protobuf_notation() {
+        final ProjectId projectId = Given.AggregateId.newProjectId();
+        final Event event = Given.Event.projectCreated(projectId);
+
+        assertTrue(fieldFilter(ProjectCreated.class.getName() + ".projectId", projectId).apply(event));
+        assertTrue(fieldFilter("project_id", projectId).apply(event));
+        assertFalse(fieldFilter("projectId", Given.AggregateId.newProjectId()).apply(event));
+    }
+
+    @Test
+    public void reuse_compiled_field_filter_for_events_of_different_types() {
+        final ProjectId projectId = Given.AggregateId.newProjectId();
+        final MatchFilter filter = fieldFilter("projectId", projectId);
+
+        assertTrue(filter.apply(Given.Event.projectCreated(projectId)));
+        assertFalse(filter.apply(Given.Event.projectStarted()));
+        assertTrue(filter.apply(Given.Event.projectCreated(projectId)));
+    }
+
+    @Test
+    public void not_match_event_without_filtered_field() {
+        final ProjectId projectId = Given.AggregateId.newProjectId();
+
+        assertFalse(fieldFilter("noSuchField", projectId).apply(Given.Event.projectCreated(projectId)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void not_accept_empty_field_name() {
+        fieldFilter(ProjectStarted.class.getName() + '.', Given.AggregateId.newProjectId());
+    }
+
+    private static MatchFilter fieldFilter(String fieldPath, ProjectId expectedValue) {
+        final FieldFilter fieldFilter = FieldFilter.newBuilder()
+                                                   .setFieldPath(fieldPath)
+                                                   .addValue(AnyPacker.pack(expectedValue))
+                                                   .build();
+        final MatchFilter result = new MatchFilter(EventFilter.newBuilder()
+                                                              .addEventFieldFilter(fieldFilter)
+                                                              .build());
+        return result;
+    }
+
+    private static String typeNameOf(Class<ProjectCreated> messageClass) {
+        return TypeUrl.of(messageClass)
+                      .getTypeName();
+    }
+}
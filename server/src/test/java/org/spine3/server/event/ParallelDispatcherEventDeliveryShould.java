@@ -0,0 +1,358 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.event;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.protobuf.Message;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.spine3.base.Event;
+import org.spine3.base.Events;
+import org.spine3.server.entity.IdSetEventFunction;
+import org.spine3.server.entity.TargetedEventDispatcher;
+import org.spine3.server.storage.memory.InMemoryStorageFactory;
+import org.spine3.server.type.EventClass;
+import org.spine3.test.event.ProjectCreated;
+import org.spine3.test.event.ProjectId;
+import org.spine3.test.event.ProjectStarted;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.spine3.base.Events.getMessage;
+
+@SuppressWarnings("InstanceMethodNamingConvention")
+public class ParallelDispatcherEventDeliveryShould {
+
+    private ParallelDispatcherEventDelivery delivery;
+    private EventBus eventBus;
+
+    @Before
+    public void setUp() {
+        delivery = ParallelDispatcherEventDelivery.newBuilder()
+                                                  .setParallelism(4)
+                                                  .setLaneCapacity(10)
+                                                  .build();
+        eventBus = EventBus.newBuilder()
+                           .setStorageFactory(InMemoryStorageFactory.getInstance())
+                           .setDispatcherEventDelivery(delivery)
+                           .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        eventBus.close();
+    }
+
+    @Test
+    public void dispatch_events_in_lane_threads() throws Exception {
+        final ThreadRecordingDispatcher dispatcher = new ThreadRecordingDispatcher();
+        eventBus.register(dispatcher);
+
+        eventBus.post(Given.Event.projectCreated());
+        delivery.close();
+
+        assertEquals(1, dispatcher.threads.size());
+        assertNotEquals(Thread.currentThread(), dispatcher.threads.get(0));
+    }
+
+    @Test
+    public void dispatch_events_of_same_entity_sequentially() throws Exception {
+        final EntityDispatcher dispatcher = new EntityDispatcher();
+        eventBus.register(dispatcher);
+        final List<ProjectId> ids = Lists.newArrayList();
+        for (int i = 0; i < 5; i++) {
+            ids.add(Given.AggregateId.newProjectId());
+        }
+        final int eventsPerEntity = 20;
+        for (int i = 0; i < eventsPerEntity; i++) {
+            for (ProjectId id : ids) {
+                eventBus.post(Given.Event.projectCreated(id));
+            }
+        }
+        delivery.close();
+
+        assertFalse(dispatcher.overlapDetected.get());
+        assertEquals(ids.size() * eventsPerEntity, dispatcher.dispatchedCount.get());
+        assertEquals(ids.size() * eventsPerEntity, dispatcher.targetIdsCount.get());
+        for (ProjectId id : ids) {
+            assertEquals(eventsPerEntity, dispatcher.countOf(id));
+        }
+    }
+
+    @Test
+    public void stop_lane_of_unregistered_dispatcher() {
+        final ThreadRecordingDispatcher dispatcher = new ThreadRecordingDispatcher();
+        eventBus.register(dispatcher);
+        eventBus.post(Given.Event.projectCreated());
+        assertEquals(1, delivery.getLaneCount());
+
+        eventBus.unregister(dispatcher);
+
+        assertEquals(0, delivery.getLaneCount());
+        assertEquals(1, dispatcher.threads.size());
+    }
+
+    @Test
+    public void dispatch_event_posted_by_lane_to_several_entities() throws Exception {
+        final ChainingDispatcher dispatcher = new ChainingDispatcher(eventBus);
+        eventBus.register(dispatcher);
+
+        eventBus.post(Given.Event.projectCreated());
+        delivery.close();
+
+        // Both the posted event and the one posted by the dispatcher reach two entities each.
+        assertEquals(4, dispatcher.dispatchedCount.get());
+    }
+
+    @Test
+    public void not_deadlock_lanes_posting_to_each_other() throws Exception {
+        final ParallelDispatcherEventDelivery delivery = ParallelDispatcherEventDelivery.newBuilder()
+                                                                                        .setParallelism(1)
+                                                                                        .setLaneCapacity(1)
+                                                                                        .build();
+        final EventBus eventBus = EventBus.newBuilder()
+                                          .setStorageFactory(InMemoryStorageFactory.getInstance())
+                                          .setDispatcherEventDelivery(delivery)
+                                          .build();
+        final int reactionCount = 100;
+        final AtomicInteger budget = new AtomicInteger(reactionCount);
+        final CountDownLatch dispatched = new CountDownLatch(reactionCount + 1);
+        eventBus.register(new ReactingDispatcher(eventBus, ProjectCreated.class, budget, dispatched));
+        eventBus.register(new ReactingDispatcher(eventBus, ProjectStarted.class, budget, dispatched));
+
+        eventBus.post(Given.Event.projectCreated());
+
+        assertTrue(dispatched.await(10, TimeUnit.SECONDS));
+        eventBus.close();
+    }
+
+    @Test
+    public void dispatch_to_non_entity_dispatcher_sequentially() {
+        assertEquals(1, delivery.parallelismOf(new ThreadRecordingDispatcher()));
+    }
+
+    @Test
+    public void use_parallelism_set_for_dispatcher_class() {
+        final ParallelDispatcherEventDelivery.Builder builder = ParallelDispatcherEventDelivery.newBuilder()
+                                                                                              .setParallelism(2);
+        builder.setParallelism(EntityDispatcher.class, 3);
+
+        assertEquals(3, builder.build()
+                               .parallelismOf(new EntityDispatcher()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void not_accept_non_positive_parallelism() {
+        ParallelDispatcherEventDelivery.newBuilder()
+                                       .setParallelism(0);
+    }
+
+    @Test
+    public void dispatch_in_posting_thread_after_close() throws Exception {
+        final ThreadRecordingDispatcher dispatcher = new ThreadRecordingDispatcher();
+        eventBus.register(dispatcher);
+        delivery.close();
+
+        eventBus.post(Given.Event.projectCreated());
+
+        assertEquals(Thread.currentThread(), dispatcher.threads.get(0));
+    }
+
+    private static class ThreadRecordingDispatcher implements EventDispatcher {
+
+        private final List<Thread> threads = Collections.synchronizedList(Lists.<Thread>newArrayList());
+
+        @Override
+        public Set<EventClass> getEventClasses() {
+            return ImmutableSet.of(EventClass.of(ProjectCreated.class));
+        }
+
+        @Override
+        public void dispatch(Event event) {
+            threads.add(Thread.currentThread());
+        }
+    }
+
+    /** Dispatches each event to two projects and posts another event upon the first dispatching. */
+    private static class ChainingDispatcher implements TargetedEventDispatcher<ProjectId> {
+
+        private final EventBus eventBus;
+        private final AtomicBoolean posted = new AtomicBoolean();
+        private final AtomicInteger dispatchedCount = new AtomicInteger();
+
+        private ChainingDispatcher(EventBus eventBus) {
+            this.eventBus = eventBus;
+        }
+
+        @Override
+        public Set<EventClass> getEventClasses() {
+            return ImmutableSet.of(EventClass.of(ProjectCreated.class));
+        }
+
+        @Override
+        public <E extends Message> Optional<IdSetEventFunction<ProjectId, E>> getIdSetFunction(Class<E> eventClass) {
+            return Optional.absent();
+        }
+
+        @Override
+        public Set<ProjectId> getTargetIds(Event event) {
+            return ImmutableSet.of(Given.AggregateId.newProjectId(), Given.AggregateId.newProjectId());
+        }
+
+        @Override
+        public void dispatch(Event event) {
+            dispatch(event, getTargetIds(event));
+        }
+
+        @Override
+        public void dispatch(Event event, Set<ProjectId> targetIds) {
+            dispatchedCount.addAndGet(targetIds.size());
+            if (posted.compareAndSet(false, true)) {
+                eventBus.post(Given.Event.projectCreated());
+            }
+        }
+    }
+
+    /**
+     * Reacts on the events of one class by posting two events of the other class, like a process manager
+     * repository, which emits commands producing the events for another process manager repository.
+     */
+    private static class ReactingDispatcher implements TargetedEventDispatcher<ProjectId> {
+
+        private final EventBus eventBus;
+        private final Class<? extends Message> eventClass;
+        private final AtomicInteger budget;
+        private final CountDownLatch dispatched;
+
+        private ReactingDispatcher(EventBus eventBus,
+                                   Class<? extends Message> eventClass,
+                                   AtomicInteger budget,
+                                   CountDownLatch dispatched) {
+            this.eventBus = eventBus;
+            this.eventClass = eventClass;
+            this.budget = budget;
+            this.dispatched = dispatched;
+        }
+
+        @Override
+        public Set<EventClass> getEventClasses() {
+            return ImmutableSet.of(EventClass.of(eventClass));
+        }
+
+        @Override
+        public <E extends Message> Optional<IdSetEventFunction<ProjectId, E>> getIdSetFunction(Class<E> eventClass) {
+            return Optional.absent();
+        }
+
+        @Override
+        public Set<ProjectId> getTargetIds(Event event) {
+            final ProjectId id = Events.getProducer(event.getContext());
+            return ImmutableSet.of(id);
+        }
+
+        @Override
+        public void dispatch(Event event) {
+            dispatch(event, getTargetIds(event));
+        }
+
+        @Override
+        public void dispatch(Event event, Set<ProjectId> targetIds) {
+            for (int i = 0; i < 2; i++) {
+                if (budget.getAndDecrement() > 0) {
+                    final Event reaction = eventClass.equals(ProjectCreated.class)
+                                           ? Given.Event.projectStarted()
+                                           : Given.Event.projectCreated();
+                    eventBus.post(reaction);
+                }
+            }
+            dispatched.countDown();
+        }
+    }
+
+    /** Dispatches the events to the projects, detecting the concurrent dispatching to the same project. */
+    private static class EntityDispatcher implements TargetedEventDispatcher<ProjectId> {
+
+        private final ConcurrentMap<ProjectId, AtomicInteger> counters = new ConcurrentHashMap<>();
+        private final Set<ProjectId> inProgress =
+                Collections.newSetFromMap(new ConcurrentHashMap<ProjectId, Boolean>());
+        private final AtomicBoolean overlapDetected = new AtomicBoolean();
+        private final AtomicInteger dispatchedCount = new AtomicInteger();
+        private final AtomicInteger targetIdsCount = new AtomicInteger();
+
+        @Override
+        public Set<EventClass> getEventClasses() {
+            return ImmutableSet.of(EventClass.of(ProjectCreated.class));
+        }
+
+        @Override
+        public <E extends Message> Optional<IdSetEventFunction<ProjectId, E>> getIdSetFunction(Class<E> eventClass) {
+            return Optional.absent();
+        }
+
+        @Override
+        public Set<ProjectId> getTargetIds(Event event) {
+            targetIdsCount.incrementAndGet();
+            final ProjectCreated message = getMessage(event);
+            return ImmutableSet.of(message.getProjectId());
+        }
+
+        @Override
+        public void dispatch(Event event) {
+            dispatch(event, getTargetIds(event));
+        }
+
+        @Override
+        public void dispatch(Event event, Set<ProjectId> targetIds) {
+            final ProjectId id = targetIds.iterator()
+                                          .next();
+            if (!inProgress.add(id)) {
+                overlapDetected.set(true);
+            }
+            Thread.yield();
+            counterOf(id).incrementAndGet();
+            dispatchedCount.incrementAndGet();
+            inProgress.remove(id);
+        }
+
+        private AtomicInteger counterOf(ProjectId id) {
+            counters.putIfAbsent(id, new AtomicInteger());
+            return counters.get(id);
+        }
+
+        private int countOf(ProjectId id) {
+            return counterOf(id).get();
+        }
+    }
+}
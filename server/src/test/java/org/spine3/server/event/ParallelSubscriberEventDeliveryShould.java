@@ -0,0 +1,243 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.event;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.spine3.base.Event;
+import org.spine3.base.EventContext;
+import org.spine3.server.storage.memory.InMemoryStorageFactory;
+import org.spine3.test.event.ProjectCreated;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("InstanceMethodNamingConvention")
+public class ParallelSubscriberEventDeliveryShould {
+
+    private static final int SUBSCRIBER_COUNT = 4;
+
+    private SlowestRecordingDelivery delivery;
+    private EventBus eventBus;
+
+    @Before
+    public void setUp() {
+        delivery = new SlowestRecordingDelivery(ParallelSubscriberEventDelivery.newBuilder()
+                                                                               .setParallelism(SUBSCRIBER_COUNT));
+        eventBus = EventBus.newBuilder()
+                           .setStorageFactory(InMemoryStorageFactory.getInstance())
+                           .setSubscriberEventDelivery(delivery)
+                           .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        eventBus.close();
+    }
+
+    @Test
+    public void call_subscribers_of_event_in_parallel() {
+        final CountDownLatch allStarted = new CountDownLatch(SUBSCRIBER_COUNT);
+        final LatchSubscriber[] subscribers = new LatchSubscriber[SUBSCRIBER_COUNT];
+        for (int i = 0; i < SUBSCRIBER_COUNT; i++) {
+            subscribers[i] = new LatchSubscriber(allStarted);
+            eventBus.subscribe(subscribers[i]);
+        }
+
+        eventBus.post(Given.Event.projectCreated());
+
+        for (LatchSubscriber subscriber : subscribers) {
+            assertTrue(subscriber.othersStarted);
+        }
+    }
+
+    @Test
+    public void complete_delivery_when_all_subscribers_are_done() {
+        final SlowSubscriber first = new SlowSubscriber(10);
+        final SlowSubscriber second = new SlowSubscriber(20);
+        eventBus.subscribe(first);
+        eventBus.subscribe(second);
+
+        eventBus.post(Given.Event.projectCreated());
+
+        assertTrue(first.handled);
+        assertTrue(second.handled);
+    }
+
+    @Test
+    public void report_slowest_subscriber() {
+        final SlowSubscriber fast = new SlowSubscriber(0);
+        final SlowSubscriber slow = new SlowSubscriber(50);
+        eventBus.subscribe(fast);
+        eventBus.subscribe(slow);
+
+        eventBus.post(Given.Event.projectCreated());
+
+        assertEquals(slow, delivery.slowest.get());
+        assertTrue(delivery.slowestNanos >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void isolate_failure_of_subscriber() {
+        final SlowSubscriber subscriber = new SlowSubscriber(0);
+        eventBus.subscribe(new FaultySubscriber());
+        eventBus.subscribe(subscriber);
+
+        eventBus.post(Given.Event.projectCreated());
+
+        assertTrue(subscriber.handled);
+        assertNotNull(delivery.slowest.get());
+    }
+
+    @Test
+    public void call_single_subscriber_in_posting_thread() {
+        final ThreadRecordingSubscriber subscriber = new ThreadRecordingSubscriber();
+        eventBus.subscribe(subscriber);
+
+        eventBus.post(Given.Event.projectCreated());
+
+        assertEquals(Thread.currentThread(), subscriber.thread);
+        assertNull(delivery.slowest.get());
+    }
+
+    @Test
+    public void not_shut_down_pool_set_in_builder() throws InterruptedException {
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        final ParallelSubscriberEventDelivery delivery = ParallelSubscriberEventDelivery.newBuilder()
+                                                                                        .setPool(pool)
+                                                                                        .build();
+        delivery.close();
+
+        assertFalse(pool.isShutdown());
+        pool.shutdown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void not_accept_min_fan_out_of_one() {
+        ParallelSubscriberEventDelivery.newBuilder()
+                                       .setMinFanOut(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void not_accept_non_positive_parallelism() {
+        ParallelSubscriberEventDelivery.newBuilder()
+                                       .setParallelism(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void not_accept_negative_slow_subscriber_threshold() {
+        ParallelSubscriberEventDelivery.newBuilder()
+                                       .setSlowSubscriberThreshold(-1, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void return_set_builder_values() {
+        final ParallelSubscriberEventDelivery.Builder builder = ParallelSubscriberEventDelivery.newBuilder();
+        builder.setParallelism(3)
+               .setMinFanOut(5)
+               .setSlowSubscriberThreshold(2, TimeUnit.SECONDS);
+
+        assertEquals(3, builder.getParallelism());
+        assertEquals(5, builder.getMinFanOut());
+        assertEquals(TimeUnit.SECONDS.toNanos(2), builder.getSlowSubscriberThresholdNanos()
+                                                         .get()
+                                                         .longValue());
+        assertFalse(builder.getPool()
+                           .isPresent());
+    }
+
+    /** The delivery, which remembers the slowest subscriber of the last event. */
+    private static class SlowestRecordingDelivery extends ParallelSubscriberEventDelivery {
+
+        private final AtomicReference<EventSubscriber> slowest = new AtomicReference<>();
+        private volatile long slowestNanos;
+
+        private SlowestRecordingDelivery(Builder builder) {
+            super(builder);
+        }
+
+        @Override
+        protected void onSlowestSubscriber(Event event, EventSubscriber subscriber, long nanos) {
+            super.onSlowestSubscriber(event, subscriber, nanos);
+            slowestNanos = nanos;
+            slowest.set(subscriber);
+        }
+    }
+
+    /** The subscriber, which waits until all the other subscribers start handling the event. */
+    private static class LatchSubscriber extends EventSubscriber {
+
+        private final CountDownLatch allStarted;
+        private volatile boolean othersStarted;
+
+        private LatchSubscriber(CountDownLatch allStarted) {
+            this.allStarted = allStarted;
+        }
+
+        @Subscribe
+        public void on(ProjectCreated event) throws InterruptedException {
+            allStarted.countDown();
+            othersStarted = allStarted.await(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static class SlowSubscriber extends EventSubscriber {
+
+        private final long delayMillis;
+        private volatile boolean handled;
+
+        private SlowSubscriber(long delayMillis) {
+            this.delayMillis = delayMillis;
+        }
+
+        @Subscribe
+        public void on(ProjectCreated event) throws InterruptedException {
+            Thread.sleep(delayMillis);
+            handled = true;
+        }
+    }
+
+    private static class FaultySubscriber extends EventSubscriber {
+
+        @Subscribe
+        public void on(ProjectCreated event, EventContext context) {
+            throw new UnsupportedOperationException("The subscriber always fails.");
+        }
+    }
+
+    private static class ThreadRecordingSubscriber extends EventSubscriber {
+
+        private volatile Thread thread;
+
+        @Subscribe
+        public void on(ProjectCreated event) {
+            thread = Thread.currentThread();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.event;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.spine3.base.Event;
+import org.spine3.base.EventContext;
+import org.spine3.server.storage.Given;
+import org.spine3.test.storage.ProjectId;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.collect.Maps.newHashMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.spine3.server.event.PartitionedEventIterator.Ordering.INTERLEAVED;
+import static org.spine3.server.event.PartitionedEventIterator.Ordering.SEQUENTIAL;
+import static org.spine3.testdata.TestEventContextFactory.createEventContext;
+
+@SuppressWarnings("InstanceMethodNamingConvention")
+public class PartitionedEventIteratorShould {
+
+    private static final int PARALLELISM = 2;
+    private static final int PARTITION_COUNT = 5;
+    private static final int EVENTS_PER_PARTITION = 50;
+
+    /** The partitions are told apart by the event type in the filter. */
+    private final List<EventStreamQuery> partitions = Lists.newArrayList();
+    private final Map<EventStreamQuery, List<Event>> eventsByPartition = newHashMap();
+    private final EventStreamCursors.StorageQuery storage = new EventStreamCursors.StorageQuery() {
+        @Override
+        public Iterator<Event> iterator(EventStreamQuery query) {
+            return eventsByPartition.get(query)
+                                    .iterator();
+        }
+    };
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(PARALLELISM);
+        for (int partition = 0; partition < PARTITION_COUNT; partition++) {
+            final EventStreamQuery query = EventStreamQuery.newBuilder()
+                                                           .addFilter(EventFilter.newBuilder()
+                                                                                 .setEventType("partition" + partition))
+                                                           .build();
+            final ProjectId projectId = ProjectId.newBuilder()
+                                                 .setId("project-" + partition)
+                                                 .build();
+            final List<Event> events = Lists.newArrayList();
+            for (int i = 0; i < EVENTS_PER_PARTITION; i++) {
+                final EventContext context = createEventContext(projectId);
+                events.add(Given.Event.projectCreated(projectId, context));
+            }
+            partitions.add(query);
+            eventsByPartition.put(query, events);
+        }
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void return_events_of_partitions_one_by_one() {
+        final Iterator<Event> iterator = new PartitionedEventIterator(partitions, storage, executor,
+                                                                      PARALLELISM, 4, SEQUENTIAL);
+
+        final List<Event> expected = Lists.newArrayList();
+        for (EventStreamQuery partition : partitions) {
+            expected.addAll(eventsByPartition.get(partition));
+        }
+        assertEquals(expected, ImmutableList.copyOf(iterator));
+    }
+
+    @Test
+    public void keep_order_of_each_partition_when_interleaving() {
+        final Iterator<Event> iterator = new PartitionedEventIterator(partitions, storage, executor,
+                                                                      PARALLELISM, 4, INTERLEAVED);
+
+        final List<Event> actual = ImmutableList.copyOf(iterator);
+
+        assertEquals(PARTITION_COUNT * EVENTS_PER_PARTITION, actual.size());
+        for (EventStreamQuery partition : partitions) {
+            final List<Event> expected = eventsByPartition.get(partition);
+            final List<Event> actualOfPartition = Lists.newArrayList();
+            for (Event event : actual) {
+                if (expected.contains(event)) {
+                    actualOfPartition.add(event);
+                }
+            }
+            assertEquals(expected, actualOfPartition);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void propagate_failure_of_reading_partition() {
+        final EventStreamCursors.StorageQuery failingStorage = new EventStreamCursors.StorageQuery() {
+            @Override
+            public Iterator<Event> iterator(EventStreamQuery query) {
+                throw new IllegalStateException("Cannot read the partition.");
+            }
+        };
+        final Iterator<Event> iterator = new PartitionedEventIterator(partitions, failingStorage, executor,
+                                                                      PARALLELISM, 4, SEQUENTIAL);
+        iterator.hasNext();
+    }
+
+    @Test
+    public void stop_reading_when_closed() throws InterruptedException {
+        final PartitionedEventIterator iterator = new PartitionedEventIterator(partitions, storage, executor,
+                                                                               PARALLELISM, 1, SEQUENTIAL);
+        iterator.next();
+
+        iterator.close();
+
+        assertFalse(iterator.hasNext());
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.event;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.spine3.base.Event;
+import org.spine3.base.EventContext;
+import org.spine3.server.event.metrics.EventMetrics;
+import org.spine3.server.event.metrics.NoOpEventMetrics;
+import org.spine3.server.storage.memory.InMemoryStorageFactory;
+import org.spine3.test.event.ProjectCreated;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.spine3.base.Events.getMessage;
+
+@SuppressWarnings("InstanceMethodNamingConvention")
+public class PostponedEventDeliveryShould {
+
+    private RecordingSubscriber subscriber;
+
+    @Before
+    public void setUp() {
+        subscriber = new RecordingSubscriber();
+    }
+
+    @Test
+    public void deliver_events_if_subscriber_class_is_not_postponed() {
+        final PostponedEventDelivery delivery = PostponedEventDelivery.newBuilder()
+                                                                      .build();
+        final EventBus eventBus = newEventBus(delivery);
+
+        eventBus.post(Given.Event.projectCreated());
+
+        assertEquals(1, subscriber.getHandled()
+                                  .size());
+    }
+
+    @Test
+    public void keep_events_until_flushed() {
+        final PostponedEventDelivery delivery = PostponedEventDelivery.newBuilder()
+                                                                      .build();
+        delivery.postpone(RecordingSubscriber.class);
+        final EventBus eventBus = newEventBus(delivery);
+        final List<Event> events = postEvents(eventBus, 3);
+
+        assertTrue(subscriber.getHandled()
+                             .isEmpty());
+        assertEquals(events.size(), delivery.getPostponedCount(RecordingSubscriber.class));
+
+        final int flushed = delivery.flush(RecordingSubscriber.class);
+
+        assertEquals(events.size(), flushed);
+        assertEquals(messagesOf(events), subscriber.getHandled());
+        assertEquals(0, delivery.getPostponedCount(RecordingSubscriber.class));
+    }
+
+    @Test
+    public void queue_event_once_for_several_subscribers_of_same_class() {
+        final PostponedEventDelivery delivery = PostponedEventDelivery.newBuilder()
+                                                                      .build();
+        delivery.postpone(RecordingSubscriber.class);
+        final EventBus eventBus = newEventBus(delivery);
+        final RecordingSubscriber anotherSubscriber = new RecordingSubscriber();
+        eventBus.subscribe(anotherSubscriber);
+
+        eventBus.post(Given.Event.projectCreated());
+        delivery.flush(RecordingSubscriber.class);
+
+        assertEquals(1, subscriber.getHandled()
+                                  .size());
+        assertEquals(1, anotherSubscriber.getHandled()
+                                         .size());
+    }
+
+    @Test
+    public void deliver_event_once_to_several_subscribers_of_same_class_if_flushed_upon_posting() {
+        final PostponedEventDelivery delivery = PostponedEventDelivery.newBuilder()
+                                                                      .setFlushSize(1)
+                                                                      .build();
+        delivery.postpone(RecordingSubscriber.class);
+        final EventBus eventBus = newEventBus(delivery);
+        final RecordingSubscriber anotherSubscriber = new RecordingSubscriber();
+        eventBus.subscribe(anotherSubscriber);
+
+        eventBus.post(Given.Event.projectCreated());
+
+        assertEquals(1, subscriber.getHandled()
+                                  .size());
+        assertEquals(1, anotherSubscriber.getHandled()
+                                         .size());
+        assertEquals(0, delivery.getPostponedCount(RecordingSubscriber.class));
+    }
+
+    @Test
+    public void flush_backlog_upon_resume() {
+        final PostponedEventDelivery delivery = PostponedEventDelivery.newBuilder()
+                                                                      .build();
+        delivery.postpone(RecordingSubscriber.class);
+        final EventBus eventBus = newEventBus(delivery);
+        final List<Event> events = postEvents(eventBus, 2);
+
+        delivery.resume(RecordingSubscriber.class);
+        events.addAll(postEvents(eventBus, 1));
+
+        assertFalse(delivery.isPostponed(RecordingSubscriber.class));
+        assertEquals(messagesOf(events), subscriber.getHandled());
+        assertEquals(0, delivery.getPostponedCount(RecordingSubscriber.class));
+    }
+
+    @Test
+    public void stop_periodic_flushing_and_flush_backlogs_upon_close() {
+        final ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        final ScheduledFuture<?> expiryCheck = mock(ScheduledFuture.class);
+        doReturn(expiryCheck).when(scheduler)
+                             .scheduleWithFixedDelay(any(Runnable.class), anyLong(), anyLong(),
+                                                     any(TimeUnit.class));
+        final PostponedEventDelivery delivery = PostponedEventDelivery.newBuilder()
+                                                                      .setMaxDelay(1, TimeUnit.MINUTES)
+                                                                      .setScheduler(scheduler)
+                                                                      .build();
+        delivery.postpone(RecordingSubscriber.class);
+        final EventBus eventBus = newEventBus(delivery);
+        final List<Event> events = postEvents(eventBus, 2);
+
+        delivery.close();
+
+        verify(expiryCheck).cancel(false);
+        assertEquals(messagesOf(events), subscriber.getHandled());
+    }
+
+    @Test
+    public void flush_when_flush_size_is_reached() {
+        final PostponedEventDelivery delivery = PostponedEventDelivery.newBuilder()
+                                                                      .setFlushSize(3)
+                                                                      .build();
+        delivery.postpone(RecordingSubscriber.class);
+        final EventBus eventBus = newEventBus(delivery);
+
+        postEvents(eventBus, 2);
+        assertTrue(subscriber.getHandled()
+                             .isEmpty());
+
+        postEvents(eventBus, 1);
+        assertEquals(3, subscriber.getHandled()
+                                  .size());
+    }
+
+    @Test
+    public void flush_when_max_delay_expires() {
+        final FakeTicker ticker = new FakeTicker();
+        final PostponedEventDelivery delivery = PostponedEventDelivery.newBuilder()
+                                                                      .setMaxDelay(1, TimeUnit.SECONDS)
+                                                                      .setTicker(ticker)
+                                                                      .build();
+        delivery.postpone(RecordingSubscriber.class);
+        final EventBus eventBus = newEventBus(delivery);
+        postEvents(eventBus, 2);
+
+        assertEquals(0, delivery.flushExpired());
+
+        ticker.advance(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(2, delivery.flushExpired());
+        assertEquals(2, subscriber.getHandled()
+                                  .size());
+    }
+
+    @Test
+    public void deliver_oldest_batch_when_capacity_is_exceeded_without_spill_storage() {
+        final PostponedEventDelivery delivery = PostponedEventDelivery.newBuilder()
+                                                                      .setCapacity(3)
+                                                                      .setBatchSize(2)
+                                                                      .build();
+        delivery.postpone(RecordingSubscriber.class);
+        final EventBus eventBus = newEventBus(delivery);
+
+        final List<Event> events = postEvents(eventBus, 4);
+
+        assertEquals(messagesOf(events.subList(0, 2)), subscriber.getHandled());
+        assertEquals(2, delivery.getPostponedCount(RecordingSubscriber.class));
+    }
+
+    @Test
+    public void spill_events_exceeding_capacity_and_flush_them_in_order() {
+        final TestSpillStorage spillStorage = new TestSpillStorage();
+        final PostponedEventDelivery delivery = PostponedEventDelivery.newBuilder()
+                                                                      .setCapacity(3)
+                                                                      .setBatchSize(2)
+                                                                      .setSpillStorage(spillStorage)
+                                                                      .build();
+        delivery.postpone(RecordingSubscriber.class);
+        final EventBus eventBus = newEventBus(delivery);
+
+        final List<Event> events = postEvents(eventBus, 7);
+
+        assertTrue(subscriber.getHandled()
+                             .isEmpty());
+        assertEquals(4, spillStorage.getSpilledCount());
+        assertEquals(events.size(), delivery.getPostponedCount(RecordingSubscriber.class));
+
+        delivery.flush(RecordingSubscriber.class);
+
+        assertEquals(messagesOf(events), subscriber.getHandled());
+        assertEquals(0, spillStorage.getSpilledCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void not_allow_scheduler_without_max_delay() {
+        PostponedEventDelivery.newBuilder()
+                              .setScheduler(Executors.newSingleThreadScheduledExecutor())
+                              .build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void not_accept_non_positive_capacity() {
+        PostponedEventDelivery.newBuilder()
+                              .setCapacity(0);
+    }
+
+    @Test
+    public void report_backlog_depth_upon_postponing_and_flushing() {
+        final PostponedEventDelivery delivery = PostponedEventDelivery.newBuilder()
+                                                                      .build();
+        delivery.postpone(RecordingSubscriber.class);
+        final EventMetrics metrics = mock(EventMetrics.class);
+        final EventBus eventBus = newEventBus(delivery, metrics);
+        final String queueName = "postponed." + RecordingSubscriber.class.getName();
+
+        postEvents(eventBus, 2);
+        delivery.flush(RecordingSubscriber.class);
+
+        final InOrder inOrder = inOrder(metrics);
+        inOrder.verify(metrics)
+               .onQueueDepth(queueName, 1);
+        inOrder.verify(metrics)
+               .onQueueDepth(queueName, 2);
+        inOrder.verify(metrics)
+               .onQueueDepth(queueName, 0);
+    }
+
+    @Test
+    public void report_backlog_depth_after_relieving_it() {
+        final PostponedEventDelivery delivery = PostponedEventDelivery.newBuilder()
+                                                                      .setCapacity(2)
+                                                                      .setBatchSize(2)
+                                                                      .build();
+        delivery.postpone(RecordingSubscriber.class);
+        final EventMetrics metrics = mock(EventMetrics.class);
+        final EventBus eventBus = newEventBus(delivery, metrics);
+        final String queueName = "postponed." + RecordingSubscriber.class.getName();
+
+        postEvents(eventBus, 3);
+
+        final InOrder inOrder = inOrder(metrics);
+        inOrder.verify(metrics)
+               .onQueueDepth(queueName, 3);
+        inOrder.verify(metrics)
+               .onQueueDepth(queueName, 1);
+    }
+
+    private EventBus newEventBus(PostponedEventDelivery delivery) {
+        return newEventBus(delivery, NoOpEventMetrics.getInstance());
+    }
+
+    private EventBus newEventBus(PostponedEventDelivery delivery, EventMetrics metrics) {
+        final EventBus result = EventBus.newBuilder()
+                                        .setStorageFactory(InMemoryStorageFactory.getInstance())
+                                        .setSubscriberEventDelivery(delivery)
+                                        .setMetrics(metrics)
+                                        .build();
+        result.subscribe(subscriber);
+        return result;
+    }
+
+    private static List<Event> postEvents(EventBus eventBus, int count) {
+        final List<Event> result = Lists.newArrayList();
+        for (int i = 0; i < count; i++) {
+            final Event event = Given.Event.projectCreated(Given.AggregateId.newProjectId());
+            eventBus.post(event);
+            result.add(event);
+        }
+        return result;
+    }
+
+    private static List<ProjectCreated> messagesOf(List<Event> events) {
+        final ImmutableList.Builder<ProjectCreated> result = ImmutableList.builder();
+        for (Event event : events) {
+            final ProjectCreated message = getMessage(event);
+            result.add(message);
+        }
+        return result.build();
+    }
+
+    private static class RecordingSubscriber extends EventSubscriber {
+
+        private final List<ProjectCreated> handled = Lists.newArrayList();
+
+        @Subscribe
+        public void on(ProjectCreated event, EventContext context) {
+            handled.add(event);
+        }
+
+        List<ProjectCreated> getHandled() {
+            return handled;
+        }
+    }
+
+    private static class TestSpillStorage implements PostponedEventDelivery.SpillStorage {
+
+        private final ListMultimap<Class<?>, Event> spilled = ArrayListMultimap.create();
+
+        @Override
+        public void spill(Class<?> subscriberClass, List<Event> events) {
+            spilled.putAll(subscriberClass, events);
+        }
+
+        @Override
+        public List<Event> restore(Class<?> subscriberClass, int maxCount) {
+            final List<Event> events = spilled.get(subscriberClass);
+            final List<Event> batch = events.subList(0, Math.min(maxCount, events.size()));
+            final List<Event> result = ImmutableList.copyOf(batch);
+            batch.clear();
+            return result;
+        }
+
+        int getSpilledCount() {
+            return spilled.size();
+        }
+    }
+
+    private static class FakeTicker extends Ticker {
+
+        private long nanos;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        void advance(long nanos) {
+            this.nanos += nanos;
+        }
+    }
+}
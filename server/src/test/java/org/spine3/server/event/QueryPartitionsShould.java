@@ -0,0 +1,171 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.event;
+
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.Any;
+import com.google.protobuf.Timestamp;
+import org.junit.Before;
+import org.junit.Test;
+import org.spine3.base.Event;
+import org.spine3.protobuf.AnyPacker;
+import org.spine3.server.storage.Given;
+import org.spine3.server.storage.memory.InMemoryStorageFactory;
+import org.spine3.test.storage.ProjectId;
+
+import java.util.List;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.protobuf.util.Timestamps.add;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.spine3.protobuf.Durations.nanos;
+import static org.spine3.protobuf.Durations.seconds;
+import static org.spine3.protobuf.Timestamps.getCurrentTime;
+import static org.spine3.test.Tests.hasPrivateParameterlessCtor;
+import static org.spine3.testdata.TestEventContextFactory.createEventContext;
+
+@SuppressWarnings("InstanceMethodNamingConvention")
+public class QueryPartitionsShould {
+
+    private static final int EVENT_COUNT = 100;
+
+    private EventStorage storage;
+    private Timestamp start;
+    private Timestamp end;
+
+    @Before
+    public void setUp() {
+        storage = InMemoryStorageFactory.getInstance()
+                                        .createEventStorage();
+        start = getCurrentTime();
+        end = add(start, seconds(EVENT_COUNT - 1));
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            final Timestamp time = add(start, seconds(i));
+            // Two events at the same time, so that some of them fall onto the cuts.
+            store(newProjectId("project-" + i), time);
+            store(newProjectId("other-project-" + i), time);
+        }
+    }
+
+    @Test
+    public void have_private_constructor() {
+        assertTrue(hasPrivateParameterlessCtor(QueryPartitions.class));
+    }
+
+    @Test
+    public void split_by_time_into_consecutive_ranges() {
+        final EventStreamQuery query = EventStreamQuery.getDefaultInstance();
+
+        final List<EventStreamQuery> partitions = QueryPartitions.byTime(query, start, end, 7);
+
+        assertEquals(7, partitions.size());
+        assertEquals(readAll(query), readAll(partitions));
+    }
+
+    @Test
+    public void keep_time_bounds_of_query_when_splitting_by_time() {
+        final EventStreamQuery query = EventStreamQuery.newBuilder()
+                                                       .setAfter(add(start, seconds(10)))
+                                                       .setBefore(add(start, seconds(60)))
+                                                       .build();
+
+        final List<EventStreamQuery> partitions = QueryPartitions.byTime(query, start, end, 4);
+
+        assertEquals(query.getAfter(), partitions.get(0)
+                                                 .getAfter());
+        assertEquals(query.getBefore(), partitions.get(partitions.size() - 1)
+                                                  .getBefore());
+        assertEquals(readAll(query), readAll(partitions));
+    }
+
+    @Test
+    public void not_split_range_shorter_than_number_of_partitions() {
+        final EventStreamQuery query = EventStreamQuery.getDefaultInstance();
+
+        final List<EventStreamQuery> partitions = QueryPartitions.byTime(query, start, add(start, nanos(2)), 3);
+
+        assertEquals(ImmutableList.of(query), partitions);
+    }
+
+    @Test
+    public void split_by_producer_into_disjoint_groups() {
+        final EventFilter.Builder filter = EventFilter.newBuilder();
+        for (int i = 0; i < 10; i++) {
+            filter.addAggregateId(AnyPacker.pack(newProjectId("project-" + i)));
+        }
+        final EventStreamQuery query = EventStreamQuery.newBuilder()
+                                                       .addFilter(filter)
+                                                       .build();
+
+        final List<EventStreamQuery> partitions = QueryPartitions.byProducer(query, 3);
+
+        final List<Any> aggregateIds = newArrayList();
+        for (EventStreamQuery partition : partitions) {
+            for (EventFilter partitionFilter : partition.getFilterList()) {
+                aggregateIds.addAll(partitionFilter.getAggregateIdList());
+            }
+        }
+        assertEquals(10, aggregateIds.size());
+        assertTrue(aggregateIds.containsAll(filter.getAggregateIdList()));
+        assertEquals(readAll(query).size(), readAll(partitions).size());
+    }
+
+    @Test
+    public void not_split_by_producer_query_without_aggregate_ids() {
+        final EventStreamQuery query = EventStreamQuery.newBuilder()
+                                                       .addFilter(EventFilter.newBuilder()
+                                                                             .setEventType("some.Type"))
+                                                       .build();
+
+        assertFalse(QueryPartitions.isSplittableByProducer(query));
+        assertFalse(QueryPartitions.isSplittableByProducer(EventStreamQuery.getDefaultInstance()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throw_exception_on_splitting_by_producer_query_without_aggregate_ids() {
+        QueryPartitions.byProducer(EventStreamQuery.getDefaultInstance(), 2);
+    }
+
+    private void store(ProjectId projectId, Timestamp time) {
+        final Event event = Given.Event.projectCreated(projectId, createEventContext(projectId, time));
+        storage.write(event.getContext()
+                           .getEventId(), event);
+    }
+
+    private static ProjectId newProjectId(String id) {
+        return ProjectId.newBuilder()
+                        .setId(id)
+                        .build();
+    }
+
+    private List<Event> readAll(EventStreamQuery query) {
+        return ImmutableList.copyOf(storage.iterator(query));
+    }
+
+    private List<Event> readAll(List<EventStreamQuery> partitions) {
+        final List<Event> result = newArrayList();
+        for (EventStreamQuery partition : partitions) {
+            result.addAll(readAll(partition));
+        }
+        return result;
+    }
+}
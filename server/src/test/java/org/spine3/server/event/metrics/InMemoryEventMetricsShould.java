@@ -0,0 +1,162 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.event.metrics;
+
+import com.google.common.base.Ticker;
+import org.junit.Test;
+import org.spine3.server.type.EventClass;
+import org.spine3.test.event.ProjectCreated;
+import org.spine3.test.event.ProjectStarted;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("InstanceMethodNamingConvention")
+public class InMemoryEventMetricsShould {
+
+    private static final EventClass PROJECT_CREATED = EventClass.of(ProjectCreated.class);
+    private static final EventClass PROJECT_STARTED = EventClass.of(ProjectStarted.class);
+
+    @Test
+    public void count_posted_events_by_class() {
+        final InMemoryEventMetrics metrics = new InMemoryEventMetrics();
+
+        metrics.onPosted(PROJECT_CREATED);
+        metrics.onPosted(PROJECT_CREATED);
+        metrics.onPosted(PROJECT_STARTED);
+
+        assertEquals(2, metrics.getPostedCount(PROJECT_CREATED));
+        assertEquals(1, metrics.getPostedCount(PROJECT_STARTED));
+        final Map<String, Number> dump = metrics.dump();
+        assertEquals(2L, dump.get("posted." + ProjectCreated.class.getName()));
+        assertEquals(1L, dump.get("posted." + ProjectStarted.class.getName()));
+    }
+
+    @Test
+    public void return_zero_count_for_not_posted_class() {
+        assertEquals(0, new InMemoryEventMetrics().getPostedCount(PROJECT_CREATED));
+    }
+
+    @Test
+    public void dump_processing_latencies() {
+        final InMemoryEventMetrics metrics = new InMemoryEventMetrics();
+
+        metrics.onStored(1, 100);
+        metrics.onEnriched(PROJECT_CREATED, 200);
+        metrics.onDelivered(PROJECT_CREATED, 300);
+
+        final Map<String, Number> dump = metrics.dump();
+        assertEquals(1L, dump.get("store.latency.count"));
+        assertEquals(100L, dump.get("store.latency.max"));
+        assertEquals(200L, dump.get("enrich.latency.max"));
+        assertEquals(300L, dump.get("deliver.latency.mean"));
+        assertTrue(dump.containsKey("deliver.latency.p50"));
+        assertTrue(dump.containsKey("deliver.latency.p90"));
+        assertTrue(dump.containsKey("deliver.latency.p99"));
+    }
+
+    @Test
+    public void dump_post_rate_by_class_and_total() {
+        final FakeTicker ticker = new FakeTicker();
+        final InMemoryEventMetrics metrics = new InMemoryEventMetrics(ticker);
+
+        metrics.onPosted(PROJECT_CREATED);
+        metrics.onPosted(PROJECT_CREATED);
+        metrics.onPosted(PROJECT_STARTED);
+        ticker.advance(TimeUnit.SECONDS.toNanos(2));
+
+        assertEquals(1.0, metrics.getPostRate(PROJECT_CREATED), 0.0);
+        final Map<String, Number> dump = metrics.dump();
+        assertEquals(1.0, dump.get("posted." + ProjectCreated.class.getName() + ".rate"));
+        assertEquals(0.5, dump.get("posted." + ProjectStarted.class.getName() + ".rate"));
+        assertEquals(1.5, dump.get("posted.rate"));
+    }
+
+    @Test
+    public void dump_enrichment_and_delivery_latencies_by_event_class() {
+        final InMemoryEventMetrics metrics = new InMemoryEventMetrics();
+
+        metrics.onEnriched(PROJECT_CREATED, 100);
+        metrics.onDelivered(PROJECT_CREATED, 1_000);
+        metrics.onDelivered(PROJECT_STARTED, 10);
+        metrics.onDelivered(PROJECT_STARTED, 30);
+
+        final Map<String, Number> dump = metrics.dump();
+        final String created = ProjectCreated.class.getName();
+        final String started = ProjectStarted.class.getName();
+        assertEquals(100L, dump.get("enrich." + created + ".max"));
+        assertEquals(1_000L, dump.get("deliver." + created + ".max"));
+        assertEquals(2L, dump.get("deliver." + started + ".count"));
+        assertEquals(30L, dump.get("deliver." + started + ".max"));
+        assertFalse(dump.containsKey("enrich." + started + ".count"));
+        assertEquals(3L, dump.get("deliver.latency.count"));
+    }
+
+    @Test
+    public void dump_handler_latencies_by_consumer_class() {
+        final InMemoryEventMetrics metrics = new InMemoryEventMetrics();
+
+        metrics.onHandled(String.class, 10);
+        metrics.onHandled(String.class, 30);
+        metrics.onHandled(Integer.class, 5);
+
+        final Map<String, Number> dump = metrics.dump();
+        assertEquals(2L, dump.get("handler.java.lang.String.count"));
+        assertEquals(20L, dump.get("handler.java.lang.String.mean"));
+        assertEquals(1L, dump.get("handler.java.lang.Integer.count"));
+    }
+
+    @Test
+    public void dump_last_and_max_queue_depth() {
+        final InMemoryEventMetrics metrics = new InMemoryEventMetrics();
+
+        metrics.onQueueDepth("posting", 5);
+        metrics.onQueueDepth("posting", 12);
+        metrics.onQueueDepth("posting", 3);
+
+        final Map<String, Number> dump = metrics.dump();
+        assertEquals(3L, dump.get("queue.posting.depth"));
+        assertEquals(12L, dump.get("queue.posting.maxDepth"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void return_unmodifiable_dump() {
+        new InMemoryEventMetrics().dump()
+                                  .clear();
+    }
+
+    private static class FakeTicker extends Ticker {
+
+        private long nanos;
+
+        private void advance(long nanos) {
+            this.nanos += nanos;
+        }
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+    }
+}
@@ -21,6 +21,7 @@
 package org.spine3.server.procman;
 
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.google.protobuf.Int32Value;
@@ -203,11 +204,13 @@ public class ProcessManagerRepositoryShould
     public void dispatch_command_and_post_events() throws InvocationTargetException {
         testDispatchCommand(Given.CommandMessage.addTask(ID));
 
-        final ArgumentCaptor<Event> argumentCaptor = ArgumentCaptor.forClass(Event.class);
+        final ArgumentCaptor<Iterable> argumentCaptor = ArgumentCaptor.forClass(Iterable.class);
 
         verify(eventBus, times(1)).post(argumentCaptor.capture());
 
-        final Event event = argumentCaptor.getValue();
+        @SuppressWarnings("unchecked") // The captured value is the list of events passed by the repository.
+        final Iterable<Event> events = argumentCaptor.getValue();
+        final Event event = Iterables.getOnlyElement(events);
 
         assertNotNull(event);
         final TaskAdded message = unpack(event.getMessage());
@@ -140,7 +140,7 @@ public class StandFunnelShould {
 
         standFunnel.post(entity);
 
-        verify(delivery).deliverNow(eq(entity), eq(Stand.class));
+        verify(delivery).getDeliveryAction(eq(stand), eq(entity));
     }
 
     // **** Negative scenarios (unit) ****
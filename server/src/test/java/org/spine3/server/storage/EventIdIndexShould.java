@@ -0,0 +1,154 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.storage;
+
+import com.google.common.base.Optional;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("InstanceMethodNamingConvention")
+public class EventIdIndexShould {
+
+    private final EventIdIndex index = new EventIdIndex();
+
+    @Test
+    public void find_position_of_event_with_uuid() {
+        final String eventId = UUID.randomUUID()
+                                   .toString();
+
+        index.put(eventId, 42);
+
+        assertEquals(Optional.of(42L), index.get(eventId));
+    }
+
+    @Test
+    public void find_position_of_event_with_arbitrary_id() {
+        index.put("project_created_1", 1);
+        index.put("PROJECT_CREATED_1", 2);
+
+        assertEquals(Optional.of(1L), index.get("project_created_1"));
+        assertEquals(Optional.of(2L), index.get("PROJECT_CREATED_1"));
+    }
+
+    @Test
+    public void tell_uuid_from_its_upper_case_form() {
+        final String eventId = UUID.randomUUID()
+                                   .toString();
+        index.put(eventId, 1);
+
+        index.put(eventId.toUpperCase(), 2);
+
+        assertEquals(Optional.of(1L), index.get(eventId));
+        assertEquals(Optional.of(2L), index.get(eventId.toUpperCase()));
+    }
+
+    @Test
+    public void return_absent_for_unknown_event() {
+        index.put(newEventId(), 1);
+
+        assertFalse(index.get(newEventId())
+                         .isPresent());
+    }
+
+    @Test
+    public void return_previous_position_upon_put() {
+        final String eventId = newEventId();
+
+        assertFalse(index.put(eventId, 1)
+                         .isPresent());
+        assertEquals(Optional.of(1L), index.put(eventId, 2));
+        assertEquals(Optional.of(2L), index.get(eventId));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void replace_only_expected_position() {
+        final String eventId = newEventId();
+        index.put(eventId, 1);
+
+        assertFalse(index.replace(eventId, 2, 3));
+        assertTrue(index.replace(eventId, 1, 3));
+        assertEquals(Optional.of(3L), index.get(eventId));
+    }
+
+    @Test
+    public void remove_only_expected_position() {
+        final String eventId = newEventId();
+        index.put(eventId, 1);
+
+        assertFalse(index.remove(eventId, 2));
+        assertTrue(index.remove(eventId, 1));
+        assertFalse(index.get(eventId)
+                         .isPresent());
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void keep_finding_events_after_growing_and_removing() {
+        final List<String> eventIds = newArrayList();
+        final int count = 10000;
+        for (int i = 0; i < count; i++) {
+            final String eventId = newEventId();
+            eventIds.add(eventId);
+            index.put(eventId, i);
+        }
+        for (int i = 0; i < count; i += 2) {
+            assertTrue(index.remove(eventIds.get(i), i));
+        }
+
+        assertEquals(count / 2, index.size());
+        for (int i = 0; i < count; i++) {
+            final Optional<Long> position = index.get(eventIds.get(i));
+            if (i % 2 == 0) {
+                assertFalse(position.isPresent());
+            } else {
+                assertEquals(Optional.of((long) i), position);
+            }
+        }
+    }
+
+    @Test
+    public void reject_most_of_unknown_events_by_bloom_filter() {
+        final int count = 10000;
+        for (int i = 0; i < count; i++) {
+            index.put(newEventId(), i);
+        }
+        int passed = 0;
+        for (int i = 0; i < count; i++) {
+            if (index.mightContain(newEventId())) {
+                passed++;
+            }
+        }
+
+        assertTrue(passed < count / 20);
+    }
+
+    private static String newEventId() {
+        return UUID.randomUUID()
+                   .toString();
+    }
+}
@@ -0,0 +1,556 @@
+/*
+ * Copyright 2017, TeamDev Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.spine3.server.storage.file;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import com.google.protobuf.Timestamp;
+import org.junit.After;
+import org.junit.Test;
+import org.spine3.base.CommandContext;
+import org.spine3.base.Event;
+import org.spine3.base.EventContext;
+import org.spine3.base.EventId;
+import org.spine3.base.Events;
+import org.spine3.server.event.EventRetentionPolicy;
+import org.spine3.server.event.EventStorage;
+import org.spine3.server.event.EventStorageShould;
+import org.spine3.server.event.EventStreamQuery;
+import org.spine3.server.event.storage.EventStorageRecord;
+import org.spine3.test.storage.event.ProjectCreated;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.protobuf.util.Timestamps.add;
+import static com.google.protobuf.util.Timestamps.subtract;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.spine3.protobuf.Durations.hours;
+import static org.spine3.protobuf.Durations.seconds;
+import static org.spine3.protobuf.Timestamps.getCurrentTime;
+import static org.spine3.testdata.TestCommandContextFactory.createCommandContext;
+
+@SuppressWarnings("InstanceMethodNamingConvention")
+public class FileEventStorageShould extends EventStorageShould {
+
+    private final List<File> directories = newArrayList();
+
+    @Override
+    protected EventStorage getStorage() {
+        final File directory = Files.createTempDir();
+        directories.add(directory);
+        final FileEventStorage storage = open(directory);
+        return storage;
+    }
+
+    @After
+    public void deleteDirectories() {
+        for (File directory : directories) {
+            deleteRecursively(directory);
+        }
+    }
+
+    @Test
+    public void roll_segments_upon_reaching_max_size() {
+        final File directory = Files.createTempDir();
+        directories.add(directory);
+        final FileEventStorage storage = FileEventStorage.newBuilder()
+                                                         .setDirectory(directory)
+                                                         .setMaxSegmentSize(512)
+                                                         .build();
+        final List<EventStorageRecord> records = writeRecords(storage, 20, getCurrentTime());
+
+        assertTrue(segmentFilesIn(directory).length > 1);
+        assertEquals(toEvents(records), readAll(storage));
+        final EventStorageRecord last = records.get(records.size() - 1);
+        assertEquals(last.getEventId(), storage.readRecord(eventIdOf(last)).getEventId());
+    }
+
+    @Test
+    public void roll_segments_while_writing_batch() {
+        final File directory = Files.createTempDir();
+        directories.add(directory);
+        final FileEventStorage storage = FileEventStorage.newBuilder()
+                                                         .setDirectory(directory)
+                                                         .setMaxSegmentSize(512)
+                                                         .build();
+        final Timestamp start = getCurrentTime();
+        final List<Event> batch = newArrayList();
+        for (int i = 0; i < 20; i++) {
+            batch.add(toEvent(recordAt(add(start, seconds(i)))));
+        }
+
+        storage.writeAll(batch);
+
+        assertTrue(segmentFilesIn(directory).length > 1);
+        assertEquals(batch, readAll(storage));
+    }
+
+    @Test
+    public void read_events_written_before_reopening() throws Exception {
+        final File directory = Files.createTempDir();
+        directories.add(directory);
+        final FileEventStorage storage = open(directory);
+        final Timestamp start = getCurrentTime();
+        final List<EventStorageRecord> records = newArrayList(writeRecords(storage, 5, start));
+        storage.close();
+
+        final FileEventStorage reopened = open(directory);
+        records.addAll(writeRecords(reopened, 5, add(start, seconds(100))));
+
+        assertEquals(toEvents(records), readAll(reopened));
+        reopened.close();
+    }
+
+    @Test
+    public void cut_off_partially_written_record() throws Exception {
+        final File directory = Files.createTempDir();
+        directories.add(directory);
+        final FileEventStorage storage = open(directory);
+        final Timestamp start = getCurrentTime();
+        final List<EventStorageRecord> records = newArrayList(writeRecords(storage, 3, start));
+        storage.close();
+        final File[] segments = segmentFilesIn(directory);
+        appendGarbage(segments[segments.length - 1]);
+
+        final FileEventStorage recovered = open(directory);
+        assertEquals(toEvents(records), readAll(recovered));
+        records.addAll(writeRecords(recovered, 1, add(start, seconds(100))));
+        recovered.close();
+
+        final FileEventStorage reopened = open(directory);
+        assertEquals(toEvents(records), readAll(reopened));
+        reopened.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void fail_to_open_if_sealed_segment_is_corrupted() throws Exception {
+        final File directory = Files.createTempDir();
+        directories.add(directory);
+        final FileEventStorage storage = openSmallSegments(directory);
+        writeRecords(storage, 20, getCurrentTime());
+        storage.close();
+        final File[] segments = segmentFilesIn(directory);
+        assertTrue(segments.length > 1);
+        // The length prefix of the first record, which follows the header without a dictionary.
+        overwrite(segments[0], 9, new byte[]{-1, -1, -1, -1});
+
+        openSmallSegments(directory);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void fail_to_open_if_sealed_segment_is_truncated() throws Exception {
+        final File directory = Files.createTempDir();
+        directories.add(directory);
+        final FileEventStorage storage = openSmallSegments(directory);
+        writeRecords(storage, 20, getCurrentTime());
+        storage.close();
+        final File[] segments = segmentFilesIn(directory);
+        assertTrue(segments.length > 1);
+        truncate(segments[0], segments[0].length() - 1);
+
+        openSmallSegments(directory);
+    }
+
+    @Test
+    public void delete_last_segment_with_partially_written_header() throws Exception {
+        final File directory = Files.createTempDir();
+        directories.add(directory);
+        final FileEventStorage storage = open(directory);
+        final Timestamp start = getCurrentTime();
+        final List<EventStorageRecord> records = newArrayList(writeRecords(storage, 3, start));
+        storage.close();
+        final File torn = new File(directory, String.format("%020d.events", records.size()));
+        try (FileOutputStream output = new FileOutputStream(torn)) {
+            output.write(new byte[]{0x53, 0x50, 0x4E});
+        }
+
+        final FileEventStorage recovered = open(directory);
+        assertEquals(toEvents(records), readAll(recovered));
+        records.addAll(writeRecords(recovered, 1, add(start, seconds(100))));
+        recovered.close();
+
+        final FileEventStorage reopened = open(directory);
+        assertEquals(toEvents(records), readAll(reopened));
+        reopened.close();
+    }
+
+    @Test
+    public void delete_empty_last_segment() throws Exception {
+        final File directory = Files.createTempDir();
+        directories.add(directory);
+        final FileEventStorage storage = openCompressed(directory);
+        final List<Event> events = newArrayList(batchOfOneCommand(3, getCurrentTime()));
+        storage.writeAll(events);
+        storage.close();
+        final File empty = new File(directory, String.format("%020d.events", events.size()));
+        assertTrue(empty.createNewFile());
+
+        final FileEventStorage recovered = openCompressed(directory);
+        assertEquals(events, readAll(recovered));
+        assertEquals(1, segmentFilesIn(directory).length);
+        recovered.close();
+    }
+
+    @Test
+    public void read_time_range_of_events_written_out_of_order() {
+        final File directory = Files.createTempDir();
+        directories.add(directory);
+        final FileEventStorage storage = FileEventStorage.newBuilder()
+                                                         .setDirectory(directory)
+                                                         .setIndexInterval(2)
+                                                         .build();
+        final Timestamp start = getCurrentTime();
+        final int[] offsets = {5, 1, 9, 3, 7, 2, 8, 0, 6, 4};
+        for (int offset : offsets) {
+            storage.writeRecord(recordAt(add(start, seconds(offset))));
+        }
+        final EventStreamQuery query = EventStreamQuery.newBuilder()
+                                                       .setAfter(add(start, seconds(2)))
+                                                       .setBefore(add(start, seconds(7)))
+                                                       .build();
+
+        final List<Event> events = ImmutableList.copyOf(storage.iterator(query));
+
+        assertEquals(4, events.size());
+        for (int i = 0; i < events.size(); i++) {
+            final Timestamp expected = add(start, seconds(3 + i));
+            assertEquals(expected, events.get(i)
+                                         .getContext()
+                                         .getTimestamp());
+        }
+    }
+
+    @Test
+    public void read_compressed_events_written_before_reopening() throws Exception {
+        final File directory = Files.createTempDir();
+        directories.add(directory);
+        final FileEventStorage storage = openCompressed(directory);
+        final Timestamp start = getCurrentTime();
+        final List<Event> events = batchOfOneCommand(10, start);
+        storage.writeAll(events);
+        storage.close();
+
+        final FileEventStorage reopened = openCompressed(directory);
+        final List<Event> expected = newArrayList(events);
+        final List<EventStorageRecord> records = writeRecords(reopened, 5, add(start, seconds(100)));
+        expected.addAll(toEvents(records));
+
+        assertEquals(expected, readAll(reopened));
+        final EventStorageRecord last = records.get(records.size() - 1);
+        assertEquals(last.getEventId(), reopened.readRecord(eventIdOf(last)).getEventId());
+        reopened.close();
+    }
+
+    @Test
+    public void read_segments_written_with_and_without_compression() throws Exception {
+        final File directory = Files.createTempDir();
+        directories.add(directory);
+        final FileEventStorage plain = open(directory);
+        final Timestamp start = getCurrentTime();
+        final List<EventStorageRecord> records = newArrayList(writeRecords(plain, 3, start));
+        plain.close();
+
+        final FileEventStorage compressed = openCompressed(directory);
+        records.addAll(writeRecords(compressed, 3, add(start, seconds(100))));
+        compressed.close();
+
+        final FileEventStorage reopened = open(directory);
+        assertEquals(2, segmentFilesIn(directory).length);
+        assertEquals(toEvents(records), readAll(reopened));
+        reopened.close();
+    }
+
+    @Test
+    public void roll_compressed_segments_while_writing_batch() {
+        final File directory = Files.createTempDir();
+        directories.add(directory);
+        final FileEventStorage storage = FileEventStorage.newBuilder()
+                                                         .setDirectory(directory)
+                                                         .setMaxSegmentSize(512)
+                                                         .setIndexInterval(2)
+                                                         .setCompressed(true)
+                                                         .build();
+        final List<Event> batch = batchOfOneCommand(20, getCurrentTime());
+
+        storage.writeAll(batch);
+
+        assertTrue(segmentFilesIn(directory).length > 1);
+        assertEquals(batch, readAll(storage));
+    }
+
+    @Test
+    public void store_events_of_one_command_in_less_space_if_compressed() throws Exception {
+        final File plainDirectory = Files.createTempDir();
+        final File compressedDirectory = Files.createTempDir();
+        directories.add(plainDirectory);
+        directories.add(compressedDirectory);
+        final List<Event> batch = batchOfOneCommand(100, getCurrentTime());
+
+        final FileEventStorage plain = open(plainDirectory);
+        plain.writeAll(batch);
+        plain.close();
+        final FileEventStorage compressed = openCompressed(compressedDirectory);
+        compressed.writeAll(batch);
+        compressed.close();
+
+        final long plainSize = segmentFilesIn(plainDirectory)[0].length();
+        final long compressedSize = segmentFilesIn(compressedDirectory)[0].length();
+        assertTrue(compressedSize * 2 < plainSize);
+    }
+
+    @Test
+    public void share_command_context_between_compressed_events_of_one_command() throws Exception {
+        final File directory = Files.createTempDir();
+        directories.add(directory);
+        final FileEventStorage storage = openCompressed(directory);
+        storage.writeAll(batchOfOneCommand(3, getCurrentTime()));
+        storage.close();
+
+        final FileEventStorage reopened = openCompressed(directory);
+        final List<Event> events = readAll(reopened);
+        final CommandContext first = events.get(0)
+                                           .getContext()
+                                           .getCommandContext();
+        for (Event event : events) {
+            assertSame(first, event.getContext()
+                                   .getCommandContext());
+        }
+        reopened.close();
+    }
+
+    @Test
+    public void cut_off_partially_written_compressed_entry() throws Exception {
+        final File directory = Files.createTempDir();
+        directories.add(directory);
+        final FileEventStorage storage = openCompressed(directory);
+        final List<Event> events = newArrayList(batchOfOneCommand(3, getCurrentTime()));
+        storage.writeAll(events);
+        storage.close();
+        final File[] segments = segmentFilesIn(directory);
+        appendGarbage(segments[segments.length - 1]);
+
+        final FileEventStorage recovered = openCompressed(directory);
+        assertEquals(events, readAll(recovered));
+        recovered.close();
+    }
+
+    @Test
+    public void move_segments_of_expired_events_to_archive() throws Exception {
+        final File directory = Files.createTempDir();
+        final File archiveDirectory = Files.createTempDir();
+        directories.add(directory);
+        directories.add(archiveDirectory);
+        final FileEventStorage storage = FileEventStorage.newBuilder()
+                                                         .setDirectory(directory)
+                                                         .setArchiveDirectory(archiveDirectory)
+                                                         .setMaxSegmentSize(512)
+                                                         .build();
+        final Timestamp now = getCurrentTime();
+        writeRecords(storage, 20, subtract(now, hours(48)));
+        final EventStorageRecord recent = recordAt(now);
+        storage.writeRecord(recent);
+        final int segmentCount = segmentFilesIn(directory).length;
+
+        final long removed = storage.applyRetention(retainProjectCreatedForDay());
+
+        assertTrue(removed > 0);
+        final List<Event> remaining = readAll(storage);
+        assertEquals(21, removed + remaining.size());
+        assertEquals(toEvent(recent), remaining.get(remaining.size() - 1));
+        assertTrue(segmentFilesIn(directory).length < segmentCount);
+        storage.close();
+
+        final FileEventStorage archive = open(archiveDirectory);
+        assertEquals(removed, readAll(archive).size());
+        archive.close();
+    }
+
+    @Test
+    public void rewrite_segment_with_mostly_expired_events() throws Exception {
+        final File directory = Files.createTempDir();
+        directories.add(directory);
+        final FileEventStorage plain = open(directory);
+        final Timestamp now = getCurrentTime();
+        writeRecords(plain, 3, subtract(now, hours(48)));
+        final EventStorageRecord first = recordAt(subtract(now, seconds(10)));
+        plain.writeRecord(first);
+        plain.close();
+        // The compressed storage starts a new segment, so that the plain one is not written anymore.
+        final FileEventStorage storage = openCompressed(directory);
+        final EventStorageRecord second = recordAt(now);
+        storage.writeRecord(second);
+
+        final long removed = storage.applyRetention(retainProjectCreatedForDay());
+
+        assertEquals(3, removed);
+        final List<Event> expected = toEvents(ImmutableList.of(first, second));
+        assertEquals(expected, readAll(storage));
+        assertEquals(first.getEventId(), storage.readRecord(eventIdOf(first)).getEventId());
+        storage.close();
+
+        final FileEventStorage reopened = open(directory);
+        assertEquals(expected, readAll(reopened));
+        reopened.close();
+    }
+
+    @Test
+    public void keep_segment_with_few_expired_events() throws Exception {
+        final File directory = Files.createTempDir();
+        directories.add(directory);
+        final FileEventStorage plain = open(directory);
+        final Timestamp now = getCurrentTime();
+        final List<EventStorageRecord> records = newArrayList(writeRecords(plain, 1, subtract(now, hours(48))));
+        records.addAll(writeRecords(plain, 3, subtract(now, seconds(10))));
+        plain.close();
+        final FileEventStorage storage = openCompressed(directory);
+        records.add(recordAt(add(now, seconds(10))));
+        storage.writeRecord(records.get(records.size() - 1));
+
+        final long removed = storage.applyRetention(retainProjectCreatedForDay());
+
+        assertEquals(0, removed);
+        assertEquals(toEvents(records), readAll(storage));
+    }
+
+    private static EventRetentionPolicy retainProjectCreatedForDay() {
+        return EventRetentionPolicy.newBuilder()
+                                   .setRetention(ProjectCreated.class, hours(24))
+                                   .build();
+    }
+
+    private static FileEventStorage open(File directory) {
+        return FileEventStorage.newBuilder()
+                               .setDirectory(directory)
+                               .build();
+    }
+
+    private static FileEventStorage openSmallSegments(File directory) {
+        return FileEventStorage.newBuilder()
+                               .setDirectory(directory)
+                               .setMaxSegmentSize(512)
+                               .build();
+    }
+
+    private static FileEventStorage openCompressed(File directory) {
+        return FileEventStorage.newBuilder()
+                               .setDirectory(directory)
+                               .setCompressed(true)
+                               .build();
+    }
+
+    /** Creates the events produced by the same command, one per second starting from the given time. */
+    private static List<Event> batchOfOneCommand(int count, Timestamp start) {
+        final CommandContext commandContext = createCommandContext();
+        final List<Event> result = newArrayList();
+        for (int i = 0; i < count; i++) {
+            final EventStorageRecord record = recordAt(add(start, seconds(i)));
+            final EventContext context = record.getContext()
+                                               .toBuilder()
+                                               .setCommandContext(commandContext)
+                                               .build();
+            result.add(Events.createEvent(record.getMessage(), context));
+        }
+        return result;
+    }
+
+    private static List<EventStorageRecord> writeRecords(FileEventStorage storage, int count, Timestamp start) {
+        final List<EventStorageRecord> result = newArrayList();
+        for (int i = 0; i < count; i++) {
+            final EventStorageRecord record = recordAt(add(start, seconds(i)));
+            storage.writeRecord(record);
+            result.add(record);
+        }
+        return result;
+    }
+
+    private static EventStorageRecord recordAt(Timestamp time) {
+        final EventStorageRecord record = org.spine3.server.storage.Given.EventStorageRecord.projectCreated(time);
+        // The IDs generated by `Given` are unique only per second of the event time.
+        final EventStorageRecord result = record.toBuilder()
+                                                .setEventId(record.getEventId() + '_' + time.getSeconds())
+                                                .build();
+        return result;
+    }
+
+    private static EventId eventIdOf(EventStorageRecord record) {
+        return EventId.newBuilder()
+                      .setUuid(record.getEventId())
+                      .build();
+    }
+
+    private static List<Event> toEvents(List<EventStorageRecord> records) {
+        final List<Event> result = newArrayList();
+        for (EventStorageRecord record : records) {
+            result.add(toEvent(record));
+        }
+        return result;
+    }
+
+    private static Event toEvent(EventStorageRecord record) {
+        return Events.createEvent(record.getMessage(), record.getContext());
+    }
+
+    private static List<Event> readAll(FileEventStorage storage) {
+        return ImmutableList.copyOf(storage.iterator(EventStreamQuery.getDefaultInstance()));
+    }
+
+    private static File[] segmentFilesIn(File directory) {
+        final File[] result = directory.listFiles();
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static void appendGarbage(File file) throws IOException {
+        try (FileOutputStream output = new FileOutputStream(file, true)) {
+            output.write(new byte[]{0, 0, 1, 0, 42});
+        }
+    }
+
+    private static void overwrite(File file, long position, byte[] bytes) throws IOException {
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.seek(position);
+            output.write(bytes);
+        }
+    }
+
+    private static void truncate(File file, long size) throws IOException {
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.setLength(size);
+        }
+    }
+
+    private static void deleteRecursively(File directory) {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
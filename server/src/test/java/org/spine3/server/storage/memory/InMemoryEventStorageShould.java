@@ -20,14 +20,42 @@
 
 package org.spine3.server.storage.memory;
 
+import com.google.protobuf.Timestamp;
+import org.junit.Test;
+import org.spine3.base.Event;
+import org.spine3.base.EventId;
+import org.spine3.protobuf.Timestamps;
+import org.spine3.server.event.EventFilter;
+import org.spine3.server.event.EventRetentionPolicy;
 import org.spine3.server.event.EventStorage;
 import org.spine3.server.event.EventStorageShould;
+import org.spine3.server.event.EventStreamQuery;
+import org.spine3.server.event.storage.EventStorageRecord;
+import org.spine3.server.storage.Given;
+import org.spine3.test.storage.event.ProjectCreated;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.protobuf.util.Timestamps.subtract;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.spine3.protobuf.Durations.hours;
+import static org.spine3.protobuf.Durations.seconds;
+import static org.spine3.protobuf.Timestamps.getCurrentTime;
 
 /**
  * In-memory implementation of {@link EventStorage} tests.
  *
  * @author Alexander Litus
  */
+@SuppressWarnings("InstanceMethodNamingConvention")
 public class InMemoryEventStorageShould extends EventStorageShould {
 
     private final InMemoryStorageFactory factory = InMemoryStorageFactory.getInstance();
@@ -37,4 +65,115 @@ public class InMemoryEventStorageShould extends EventStorageShould {
         final InMemoryEventStorage storage = (InMemoryEventStorage) factory.createEventStorage();
         return storage;
     }
+
+    @Test
+    public void keep_chronological_order_of_events_written_concurrently() throws InterruptedException {
+        final InMemoryEventStorage storage = (InMemoryEventStorage) getStorage();
+        final Timestamp start = getCurrentTime();
+        final int threadCount = 4;
+        final int recordsPerThread = 250;
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        for (int thread = 0; thread < threadCount; thread++) {
+            final int offset = thread;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < recordsPerThread; i++) {
+                        final long secondsFromStart = (long) i * threadCount + offset;
+                        final Timestamp time = com.google.protobuf.util.Timestamps.add(start,
+                                                                                       seconds(secondsFromStart));
+                        storage.writeRecord(recordAt(time));
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        final List<Event> events = newArrayList(storage.iterator(EventStreamQuery.getDefaultInstance()));
+
+        assertEquals(threadCount * recordsPerThread, events.size());
+        assertChronological(events);
+    }
+
+    @Test
+    public void start_reading_at_lower_time_bound() {
+        final InMemoryEventStorage storage = (InMemoryEventStorage) getStorage();
+        final Timestamp start = getCurrentTime();
+        final int recordCount = 100;
+        for (int i = recordCount - 1; i >= 0; i--) {
+            storage.writeRecord(recordAt(com.google.protobuf.util.Timestamps.add(start, seconds(i))));
+        }
+        final Timestamp after = com.google.protobuf.util.Timestamps.add(start, seconds(recordCount / 2));
+        final EventStreamQuery query = EventStreamQuery.newBuilder()
+                                                       .setAfter(after)
+                                                       .build();
+
+        final List<Event> events = newArrayList(storage.iterator(query));
+
+        assertEquals(recordCount / 2 - 1, events.size());
+        assertTrue(Timestamps.isLaterThan(events.get(0)
+                                                .getContext()
+                                                .getTimestamp(), after));
+        assertChronological(events);
+    }
+
+    @Test
+    public void remove_expired_events_from_log_and_indexes() {
+        final InMemoryEventStorage storage = (InMemoryEventStorage) getStorage();
+        final Timestamp now = getCurrentTime();
+        final EventStorageRecord expired = recordAt(subtract(now, hours(25)));
+        final EventStorageRecord retained = recordAt(subtract(now, hours(23)));
+        final EventStorageRecord ofAnotherClass = Given.EventStorageRecord.taskAdded(subtract(now, hours(25)));
+        storage.writeRecord(expired);
+        storage.writeRecord(retained);
+        storage.writeRecord(ofAnotherClass);
+        final EventRetentionPolicy policy = EventRetentionPolicy.newBuilder()
+                                                                .setRetention(ProjectCreated.class, hours(24))
+                                                                .build();
+
+        final long removed = storage.applyRetention(policy);
+
+        assertEquals(1, removed);
+        assertNull(storage.readRecord(eventIdOf(expired)));
+        final List<Event> events = newArrayList(storage.iterator(EventStreamQuery.getDefaultInstance()));
+        assertEquals(2, events.size());
+        final EventStreamQuery byProducer =
+                EventStreamQuery.newBuilder()
+                                .addFilter(EventFilter.newBuilder()
+                                                      .addAggregateId(expired.getContext()
+                                                                             .getProducerId()))
+                                .build();
+        assertFalse(storage.iterator(byProducer)
+                           .hasNext());
+    }
+
+    private static EventId eventIdOf(EventStorageRecord record) {
+        return EventId.newBuilder()
+                      .setUuid(record.getEventId())
+                      .build();
+    }
+
+    private static EventStorageRecord recordAt(Timestamp time) {
+        final EventStorageRecord record = org.spine3.server.storage.Given.EventStorageRecord.projectCreated(time);
+        // The IDs generated by `Given` are unique only per second of the event time.
+        final EventStorageRecord result = record.toBuilder()
+                                                .setEventId(record.getEventId() + '_' + time.getNanos())
+                                                .build();
+        return result;
+    }
+
+    private static void assertChronological(Iterable<Event> events) {
+        final Iterator<Event> iterator = events.iterator();
+        Timestamp previous = iterator.next()
+                                     .getContext()
+                                     .getTimestamp();
+        while (iterator.hasNext()) {
+            final Timestamp current = iterator.next()
+                                              .getContext()
+                                              .getTimestamp();
+            assertTrue(Timestamps.compare(previous, current) <= 0);
+            previous = current;
+        }
+    }
 }